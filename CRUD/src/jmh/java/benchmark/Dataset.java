@@ -0,0 +1,171 @@
+package benchmark;
+
+import application.CRUD;
+import application.User;
+import exceptions.CRUDException;
+import exceptions.XMLProcessException;
+import org.apache.log4j.Level;
+import org.apache.log4j.LogManager;
+import xml.ColumnarHandler;
+import xml.FlushPolicy;
+import xml.MappedHandler;
+import xml.StorageEngine;
+import xml.StorageSettings;
+import xml.XMLHandler;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Класс наборов данных для измерений производительности хранилища. Набор данных - XML файл хранилища с заданным
+ * количеством пользователей и различных имен (фамилий). Файл создается при первом измерении с этими параметрами
+ * и хранится во временном каталоге (java.io.tmpdir), а каждое измерение работает с его копией.
+ * <p>Пользователь с номером i имеет имя First(i mod names), фамилию Second((7i + 3) mod names) и дату рождения
+ * 1940-01-01 плюс (i mod 20000) дней, поэтому количество различных дат рождения не больше 20000.</p>
+ * */
+public final class Dataset
+{
+    private static final int batchSize = 10000;
+    private static final int maxBirthDates = 20000;
+    private static final LocalDate firstBirthDate = LocalDate.of(1940, 1, 1);
+    /** Окно записи хранилища: изменения записываются в файл только при закрытии хранилища. */
+    private static final long flushWindow = 60 * 60 * 1000;
+    private static final String[] storageSuffixes = {"", ".wal", ".users", ".values", ".offsets"};
+
+    static
+    {
+        // измеряется работа хранилища, а не вывод журнала: сообщения уровня INFO не записываются
+        LogManager.getRootLogger().setLevel(Level.WARN);
+    }
+
+    private Dataset()
+    {
+    }
+
+    /**
+     * Метод получения XML файла набора данных. Если файла нет, он создается пакетным добавлением пользователей.
+     * @param users количество пользователей;
+     * @param names количество различных имен и фамилий.
+     * @return путь к XML файлу набора данных.
+     * @exception CRUDException throws в случае ошибки создания хранилища.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public static String prepare(int users, int names) throws CRUDException, IOException
+    {
+        File file = new File(System.getProperty("java.io.tmpdir"),
+                new StringBuilder("crud-jmh-").append(users).append('-').append(names).append(".xml").toString());
+        if (file.exists()) return file.getPath();
+
+        // набор данных создается во временном файле, чтобы прерванное создание не оставило неполный набор
+        File temp = new File(file.getPath() + ".part");
+        delete(temp.getPath());
+        CRUD storage = new ColumnarHandler(temp.getPath(), settings(FlushPolicy.interval));
+        try
+        {
+            List<User> batch = new ArrayList<>(batchSize);
+            for (int i = 0; i < users; i++)
+            {
+                batch.add(user(i, names));
+                if (batch.size() == batchSize || i == users - 1)
+                {
+                    storage.createAll(batch);
+                    batch.clear();
+                }
+            }
+        }
+        finally
+        {
+            storage.close();
+        }
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return file.getPath();
+    }
+
+    /**
+     * Метод копирования XML файла набора данных во временный файл.
+     * @param path путь к XML файлу набора данных.
+     * @return путь к копии.
+     * @exception IOException throws в случае ошибки копирования.
+     * */
+    public static String copy(String path) throws IOException
+    {
+        File copy = File.createTempFile("crud-jmh-", ".xml");
+        Files.copy(new File(path).toPath(), copy.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        return copy.getPath();
+    }
+
+    /**
+     * Метод удаления XML файла хранилища вместе с журналом и файлами {@link MappedHandler}.
+     * @param path путь к XML файлу хранилища.
+     * */
+    public static void delete(String path)
+    {
+        for (String suffix : storageSuffixes)
+        {
+            new File(path + suffix).delete();
+        }
+    }
+
+    /**
+     * Метод открытия хранилища.
+     * @param engine имя способа хранения данных {@link StorageEngine};
+     * @param path путь к XML файлу хранилища;
+     * @param flushPolicy имя политики записи хранилища в файл {@link FlushPolicy}.
+     * @return объект {@link CRUD} открытого хранилища.
+     * @exception XMLProcessException throws в случае ошибки открытия хранилища.
+     * */
+    public static CRUD open(String engine, String path, String flushPolicy) throws XMLProcessException
+    {
+        StorageSettings settings = settings(FlushPolicy.valueOf(flushPolicy));
+        switch (StorageEngine.valueOf(engine))
+        {
+            case columnar:
+                return new ColumnarHandler(path, settings);
+            case mapped:
+                return new MappedHandler(path, settings);
+            default:
+                return new XMLHandler(path, settings);
+        }
+    }
+
+    /**
+     * @param i номер пользователя;
+     * @param names количество различных имен и фамилий.
+     * @return объект {@link User} пользователя набора данных с номером i.
+     * */
+    public static User user(int i, int names)
+    {
+        return new User(firstName(i % names), secondName((int) ((7L * i + 3) % names)),
+                firstBirthDate.plusDays(i % maxBirthDates).toString());
+    }
+
+    /**
+     * @return имя с номером i.
+     * */
+    public static String firstName(int i)
+    {
+        return "First" + i;
+    }
+
+    /**
+     * @return фамилия с номером i.
+     * */
+    public static String secondName(int i)
+    {
+        return "Second" + i;
+    }
+
+    private static StorageSettings settings(FlushPolicy flushPolicy)
+    {
+        StorageSettings settings = new StorageSettings();
+        settings.setFlushPolicy(flushPolicy);
+        settings.setFlushWindow(flushWindow);
+        settings.setFlushOperations(Integer.MAX_VALUE);
+        return settings;
+    }
+}
@@ -0,0 +1,114 @@
+package benchmark;
+
+import exceptions.CRUDException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Измерения добавления и удаления пользователей хранилища. Добавление и удаление изменяют количество пользователей,
+ * поэтому измеряется время пакета из {@link MutationBenchmark#batchSize} операций, а после каждого пакета хранилище
+ * возвращается к исходному количеству пользователей: добавленные пользователи удаляются, удаленные - добавляются.
+ * <p>Запуск: mvn -P jmh compile exec:exec -Djmh.args="MutationBenchmark -p users=100000".
+ * Результат - время пакета в миллисекундах; скорость выделения памяти выводит профилировщик -prof gc.</p>
+ * */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 10, batchSize = MutationBenchmark.batchSize)
+@Measurement(iterations = 30, batchSize = MutationBenchmark.batchSize)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class MutationBenchmark
+{
+    static final int batchSize = 100;
+
+    /**
+     * Добавление пользователя с именем, фамилией и датой рождения набора данных ({@link application.CRUD#create}).
+     * */
+    @Benchmark
+    public Integer create(Created state) throws CRUDException
+    {
+        Integer id = state.storage.create(Dataset.user(state.next++, state.names));
+        state.created.add(id);
+        return id;
+    }
+
+    /**
+     * Удаление пользователя ({@link application.CRUD#delete(Integer)}).
+     * */
+    @Benchmark
+    public void delete(Deleted state) throws CRUDException
+    {
+        Integer id = state.deleted.get(state.position++);
+        state.storage.delete(id);
+    }
+
+    /**
+     * Состояние измерения добавления: пользователи, добавленные за пакет, удаляются после пакета.
+     * */
+    @State(Scope.Benchmark)
+    public static class Created extends StorageState
+    {
+        private final List<Integer> created = new ArrayList<>(batchSize);
+        private int next;
+
+        @TearDown(Level.Iteration)
+        public void removeCreated() throws CRUDException
+        {
+            for (Integer id : created) storage.delete(id);
+            created.clear();
+        }
+    }
+
+    /**
+     * Состояние измерения удаления: перед пакетом выбираются случайные пользователи, а после пакета
+     * они добавляются снова (с новыми идентификаторами).
+     * */
+    @State(Scope.Benchmark)
+    public static class Deleted extends StorageState
+    {
+        private final List<Integer> deleted = new ArrayList<>(batchSize);
+        private int position;
+
+        @Setup(Level.Iteration)
+        public void chooseDeleted()
+        {
+            // выбранные идентификаторы переносятся в конец списка и удаляются из него
+            ThreadLocalRandom random = ThreadLocalRandom.current();
+            int count = Math.min(batchSize, usersId.size());
+            for (int i = 0; i < count; i++)
+            {
+                Collections.swap(usersId, random.nextInt(usersId.size() - i), usersId.size() - 1 - i);
+            }
+            List<Integer> tail = usersId.subList(usersId.size() - count, usersId.size());
+            deleted.addAll(tail);
+            tail.clear();
+            position = 0;
+        }
+
+        @TearDown(Level.Iteration)
+        public void restoreDeleted() throws CRUDException
+        {
+            for (int i = 0; i < position; i++)
+            {
+                usersId.add(storage.create(Dataset.user(ThreadLocalRandom.current().nextInt(users), names)));
+            }
+            for (int i = position; i < deleted.size(); i++) usersId.add(deleted.get(i));
+            deleted.clear();
+        }
+    }
+}
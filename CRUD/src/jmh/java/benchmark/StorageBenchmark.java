@@ -0,0 +1,76 @@
+package benchmark;
+
+import application.User;
+import exceptions.CRUDException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Измерения пропускной способности чтения и обновления пользователей хранилища.
+ * <p>Запуск: mvn -P jmh compile exec:exec -Djmh.args="StorageBenchmark -p users=100000".
+ * Профилировщик сборщика мусора (-prof gc) включен всегда и выводит скорость выделения памяти
+ * (gc.alloc.rate, gc.alloc.rate.norm - байт на операцию).</p>
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class StorageBenchmark extends StorageState
+{
+    /**
+     * Получение пользователя по идентификатору ({@link application.CRUD#read(Integer)}).
+     * */
+    @Benchmark
+    public User readById() throws CRUDException
+    {
+        return storage.read(randomId());
+    }
+
+    /**
+     * Получение идентификаторов всех пользователей ({@link application.CRUD#read()}).
+     * */
+    @Benchmark
+    public List<Integer> readAll() throws CRUDException
+    {
+        return storage.read();
+    }
+
+    /**
+     * Поиск пользователей по имени и фамилии ({@link application.CRUD#read(User)}).
+     * */
+    @Benchmark
+    public List<Integer> readByParameters() throws CRUDException
+    {
+        User user = Dataset.user(ThreadLocalRandom.current().nextInt(users), names);
+        return storage.read(new User(user.getFirstName(), user.getSecondName(), null));
+    }
+
+    /**
+     * Изменение имени пользователя на другое имя набора данных ({@link application.CRUD#update(Integer, User)}),
+     * поэтому количество различных имен не изменяется.
+     * */
+    @Benchmark
+    public User update() throws CRUDException
+    {
+        String firstName = Dataset.firstName(ThreadLocalRandom.current().nextInt(names));
+        return storage.update(randomId(), new User(firstName, null, null));
+    }
+
+    private Integer randomId()
+    {
+        return usersId.get(ThreadLocalRandom.current().nextInt(usersId.size()));
+    }
+}
@@ -0,0 +1,60 @@
+package benchmark;
+
+import application.CRUD;
+import exceptions.CRUDException;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Базовый класс состояния измерений хранилища {@link CRUD}. Перед измерениями открывает хранилище на копии набора
+ * данных {@link Dataset}, после измерений закрывает его и удаляет копию.
+ * <p>Параметры задаются аргументом -p запуска JMH, например -p users=1000,100000 -p engine=xml,mapped.</p>
+ * */
+@State(Scope.Benchmark)
+public abstract class StorageState
+{
+    /** Количество пользователей набора данных. */
+    @Param({"1000", "100000", "1000000"})
+    public int users;
+    /** Количество различных имен и фамилий набора данных. */
+    @Param({"100", "10000"})
+    public int names;
+    /** Способ хранения данных: xml | columnar | mapped (см. xml.StorageEngine). */
+    @Param({"xml"})
+    public String engine;
+    /** Политика записи хранилища в файл: sync | group | interval (см. xml.FlushPolicy). */
+    @Param({"interval"})
+    public String flush;
+
+    protected CRUD storage;
+    protected List<Integer> usersId;
+    private String path;
+
+    @Setup(Level.Trial)
+    public void open() throws CRUDException, IOException
+    {
+        this.path = Dataset.copy(Dataset.prepare(users, names));
+        this.storage = Dataset.open(engine, path, flush);
+        this.usersId = storage.read();
+    }
+
+    @TearDown(Level.Trial)
+    public void close() throws CRUDException
+    {
+        try
+        {
+            storage.close();
+        }
+        finally
+        {
+            Dataset.delete(path);
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package benchmark;
+
+import exceptions.CRUDException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.xml.sax.SAXException;
+import util.XMLUtil;
+import xml.IDGroups;
+import xml.StorageIndex;
+import xml.SupportGroups;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Измерения методов {@link XMLUtil}, используемых {@link xml.XMLHandler}: поиска значения вспомогательной группы,
+ * получения и освобождения идентификатора и записи XML файла хранилища. Документ и индексы хранилища строятся
+ * из XML файла набора данных {@link Dataset}.
+ * <p>Запуск: mvn -P jmh compile exec:exec -Djmh.args="XMLUtilBenchmark -p users=100000".</p>
+ * */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public class XMLUtilBenchmark
+{
+    /** Количество пользователей набора данных. */
+    @Param({"1000", "100000", "1000000"})
+    public int users;
+    /** Количество различных имен и фамилий набора данных. */
+    @Param({"100", "10000"})
+    public int names;
+
+    private Document xmlDocument;
+    private StorageIndex index;
+    private long revision;
+    private String path;
+
+    @Setup(Level.Trial)
+    public void open() throws CRUDException, IOException, SAXException, ParserConfigurationException
+    {
+        String dataset = Dataset.prepare(users, names);
+        this.xmlDocument = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(dataset);
+        this.index = XMLUtil.buildIndex(xmlDocument);
+        this.revision = XMLUtil.getRevision(xmlDocument, index);
+        this.path = File.createTempFile("crud-jmh-", ".xml").getPath();
+    }
+
+    @TearDown(Level.Trial)
+    public void close()
+    {
+        Dataset.delete(path);
+    }
+
+    /**
+     * Поиск идентификатора имени ({@link XMLUtil#checkStorage(Document, StorageIndex, SupportGroups, String)}).
+     * */
+    @Benchmark
+    public Integer checkStorage() throws CRUDException
+    {
+        String value = Dataset.firstName(ThreadLocalRandom.current().nextInt(names));
+        return XMLUtil.checkStorage(xmlDocument, index, SupportGroups.firstNameGroup, value);
+    }
+
+    /**
+     * Получение свободного идентификатора пользователя и его освобождение
+     * ({@link XMLUtil#getFreeId(Document, StorageIndex, IDGroups)},
+     * {@link XMLUtil#addFreeId(Document, StorageIndex, IDGroups, Integer)}).
+     * */
+    @Benchmark
+    public Integer freeId()
+    {
+        Integer id = XMLUtil.getFreeId(xmlDocument, index, IDGroups.MGID);
+        XMLUtil.addFreeId(xmlDocument, index, IDGroups.MGID, id);
+        return id;
+    }
+
+    /**
+     * Запись XML файла хранилища ({@link XMLUtil#writeDocument(Document, StorageIndex, long, String)}).
+     * */
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public void writeDocument() throws IOException
+    {
+        XMLUtil.writeDocument(xmlDocument, index, revision, path);
+    }
+}
@@ -0,0 +1,27 @@
+package application;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Класс предназначен для хранения результата обработки одного элемента пакетного запроса в теле ответа.
+ * */
+public class BatchResponseBodyClass
+{
+    @Getter @Setter private String userURI;
+    @Getter @Setter private int status;
+    @Getter @Setter private String message;
+
+    /**
+     * Конструктор класса.
+     * @param id идентификатор пользователя или null, если пользователь не был добавлен;
+     * @param inStatus HTTP статус обработки элемента;
+     * @param inMessage описание ошибки или null.
+     * */
+    public BatchResponseBodyClass(Integer id, int inStatus, String inMessage)
+    {
+        this.userURI = id == null ? null : new ResponseBodyClass(id).getUserURI();
+        this.status = inStatus;
+        this.message = inMessage;
+    }
+}
@@ -0,0 +1,59 @@
+package application;
+
+import exceptions.CRUDException;
+import lombok.Getter;
+
+/**
+ * Класс для хранения результата обработки одного элемента пакетной операции с хранилищем.
+ * */
+public class BatchResult
+{
+    /**
+     * Код успешной обработки элемента.
+     * */
+    public static final int SUCCESS = 0;
+
+    @Getter private final Integer id;
+    @Getter private final int code;
+    @Getter private final String message;
+
+    /**
+     * Конструктор класса.
+     * @param inId идентификатор пользователя или null, если пользователь не был добавлен;
+     * @param inCode {@link BatchResult#SUCCESS} или код исключения {@link CRUDException}, возникшего при обработке элемента;
+     * @param inMessage описание ошибки или null.
+     * */
+    public BatchResult(Integer inId, int inCode, String inMessage)
+    {
+        this.id = inId;
+        this.code = inCode;
+        this.message = inMessage;
+    }
+
+    /**
+     * Конструктор класса для успешно обработанного элемента.
+     * @param inId идентификатор пользователя.
+     * */
+    public BatchResult(Integer inId)
+    {
+        this(inId, SUCCESS, null);
+    }
+
+    /**
+     * Конструктор класса для элемента, обработка которого завершилась ошибкой.
+     * @param inId идентификатор пользователя или null;
+     * @param e исключение, возникшее при обработке элемента.
+     * */
+    public BatchResult(Integer inId, CRUDException e)
+    {
+        this(inId, e.getCode(), e.getMessage());
+    }
+
+    /**
+     * @return true, если элемент обработан успешно.
+     * */
+    public boolean isSuccessful()
+    {
+        return code == SUCCESS;
+    }
+}
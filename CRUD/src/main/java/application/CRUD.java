@@ -3,7 +3,10 @@ package application;
 import application.User;
 import exceptions.CRUDException;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * Интерфейс определяет методы для работы с хранилищем для текущего REST API.
@@ -17,6 +20,15 @@ public interface CRUD
      * @exception CRUDException throws в случае возникновения ошибки добовления.
      * */
     Integer create(User user) throws CRUDException;
+    /**
+     * Метод пакетного добавления информации о пользователях в хранилище. Все пользователи добавляются
+     * под одной блокировкой, а хранилище записывается в файл один раз.
+     * @param users список {@link List} объектов {@link User}, хранящих информацию о пользователях.
+     * @return список {@link List} результатов {@link BatchResult} в порядке входного списка. Ошибка добавления
+     * одного пользователя (например, незаданные поля) не прерывает добавление остальных.
+     * @exception CRUDException throws в случае возникновения ошибки записи хранилища.
+     * */
+    List<BatchResult> createAll(List<User> users) throws CRUDException;
     /**
      * Метод получения информации о всех пользователях в хранилище.
      * @return список {@link List} идентификаторов полученных пользователей.
@@ -30,13 +42,59 @@ public interface CRUD
      * @exception CRUDException throws в случае возникновения ошибки получения информации.
      * */
     List<Integer> read(User parameters) throws CRUDException;
+    /**
+     * Метод получения информации о всех пользователях в хранилище, удовлетворяющих запросу.
+     * @param query объект {@link UserQuery} содержит допустимые и исключаемые значения имени, фамилии и даты рождения.
+     * @return список {@link List} идентификаторов полученных пользователей в порядке возрастания.
+     * @exception CRUDException throws в случае возникновения ошибки получения информации.
+     * */
+    List<Integer> read(UserQuery query) throws CRUDException;
+    /**
+     * Метод постраничного получения информации о пользователях в хранилище, удовлетворяющих запросу.
+     * Хранилище не строит полный список пользователей: возвращается только заданная страница.
+     * @param query объект {@link UserQuery} содержит параметры запроса. Пустому запросу удовлетворяют все пользователи;
+     * @param cursor идентификатор, после которого начинается страница (последний идентификатор предыдущей страницы),
+     *               или null для первой страницы;
+     * @param limit наибольшее количество идентификаторов на странице.
+     * @return список {@link List} идентификаторов пользователей, больших cursor, в порядке возрастания.
+     * Если список содержит меньше limit идентификаторов, страница последняя.
+     * @exception CRUDException throws в случае возникновения ошибки получения информации.
+     * */
+    List<Integer> read(UserQuery query, Integer cursor, int limit) throws CRUDException;
+    /**
+     * Метод нечеткого поиска пользователей по имени и фамилии с учетом опечаток. Регистр не учитывается.
+     * Допустимое количество опечаток (расстояние Левенштейна) зависит от длины искомой строки: 0 для строк
+     * до 2 символов, 1 для строк до 5 символов, 2 для более длинных строк.
+     * @param text искомое имя или фамилия;
+     * @param limit наибольшее количество идентификаторов.
+     * @return список {@link List} идентификаторов пользователей, имя или фамилия которых близки к искомой строке,
+     * в порядке возрастания расстояния, а при равном расстоянии - в порядке возрастания идентификаторов.
+     * @exception CRUDException throws в случае возникновения ошибки получения информации.
+     * */
+    List<Integer> search(String text, int limit) throws CRUDException;
     /**
      * Метод получения информации о пользователе в хранилище по заданному идентификатору.
      * @param id идентификатор пользователя в хранилище.
-     * @return объект {@link User} содержит информацию о полученном пользователе.
+     * @return объект {@link User} содержит информацию о полученном пользователе и его версию.
      * @exception CRUDException throws в случае возникновения ошибки получения информации.
      * */
     User read(Integer id) throws CRUDException;
+    /**
+     * Метод получения информации о нескольких пользователях в хранилище по заданным идентификаторам за одно обращение.
+     * @param ids идентификаторы пользователей в хранилище.
+     * @return {@link Map}, сопоставляющий идентификатору объект {@link User} в порядке ids. Идентификаторы,
+     * которых нет в хранилище, в результат не попадают.
+     * @exception CRUDException throws в случае возникновения ошибки получения информации.
+     * */
+    Map<Integer, User> read(Collection<Integer> ids) throws CRUDException;
+    /**
+     * Метод получения версии пользователя в хранилище по заданному идентификатору без получения информации о нем.
+     * Версия меняется при каждом изменении пользователя, подробнее см. {@link User#getVersion()}.
+     * @param id идентификатор пользователя в хранилище.
+     * @return версия пользователя.
+     * @exception CRUDException throws в случае возникновения ошибки получения информации.
+     * */
+    long readVersion(Integer id) throws CRUDException;
     /**
      * Метод обновление информации о пользователе в хранилище по заданному идентификатору.
      * @param id идентификатор пользователя в хранилище;
@@ -45,10 +103,112 @@ public interface CRUD
      * @exception CRUDException throws в случае возникновения ошибки обновления информации.
      * */
     User update(Integer id, User user) throws CRUDException;
+    /**
+     * Метод условного обновления информации о пользователе в хранилище по заданному идентификатору.
+     * Проверка версии и обновление выполняются атомарно.
+     * @param id идентификатор пользователя в хранилище;
+     * @param user содержит информацию для обновления;
+     * @param versions допустимые текущие версии пользователя или null, если версия не проверяется.
+     * @return объект {@link User} содержит информацию об обновленном пользователе и его новую версию.
+     * @exception CRUDException throws в случае возникновения ошибки обновления информации или в случае,
+     * если текущая версия пользователя не содержится в versions.
+     * */
+    User update(Integer id, User user, Collection<Long> versions) throws CRUDException;
+    /**
+     * Метод пакетного обновления информации о пользователях в хранилище. Все изменения выполняются
+     * под одной блокировкой, а хранилище записывается в файл один раз.
+     * @param users {@link Map}, сопоставляющий идентификатору пользователя информацию для обновления.
+     * @return список {@link List} результатов {@link BatchResult} в порядке обхода users.
+     * @exception CRUDException throws в случае возникновения ошибки записи хранилища.
+     * */
+    List<BatchResult> updateAll(Map<Integer, User> users) throws CRUDException;
     /**
      * Метод удаления информации о пользователе в хранилище по заданному идентификатору.
      * @param id идентификатор пользователя в хранилище.
      * @exception CRUDException throws в случае возникновения ошибки удаления информации.
      * */
     void delete(Integer id) throws CRUDException;
+    /**
+     * Метод пакетного удаления информации о пользователях из хранилища. Все пользователи удаляются
+     * под одной блокировкой, а хранилище записывается в файл один раз.
+     * @param ids список {@link List} идентификаторов пользователей.
+     * @return список {@link List} результатов {@link BatchResult} в порядке входного списка.
+     * @exception CRUDException throws в случае возникновения ошибки записи хранилища.
+     * */
+    List<BatchResult> deleteAll(List<Integer> ids) throws CRUDException;
+    /**
+     * Метод получения распределения количества ссылок пользователей на значения вспомогательных групп хранилища.
+     * Позволяет оценить, насколько эффективно хранилище исключает повторяющиеся значения.
+     * @return {@link Map}, сопоставляющий имени вспомогательной группы распределение, в котором количеству ссылок
+     * соответствует число значений с таким количеством ссылок.
+     * @exception CRUDException throws в случае возникновения ошибки получения информации.
+     * */
+    Map<String, Map<Integer, Integer>> getReferenceDistribution() throws CRUDException;
+    /**
+     * Метод добавления информации о пользователе без ожидания записи хранилища вызывающим потоком.
+     * По умолчанию выполняет {@link CRUD#create(User)} в вызывающем потоке.
+     * @param user объект {@link User} хранит информацию о пользователе.
+     * @return {@link CompletableFuture}, завершаемый идентификатором добавленного пользователя после записи хранилища
+     * или исключением {@link CRUDException}.
+     * */
+    default CompletableFuture<Integer> createAsync(User user)
+    {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        try
+        {
+            result.complete(create(user));
+        }
+        catch (CRUDException e)
+        {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+    /**
+     * Метод условного обновления информации о пользователе без ожидания записи хранилища вызывающим потоком.
+     * По умолчанию выполняет {@link CRUD#update(Integer, User, Collection)} в вызывающем потоке.
+     * @param id идентификатор пользователя в хранилище;
+     * @param user содержит информацию для обновления;
+     * @param versions допустимые текущие версии пользователя или null, если версия не проверяется.
+     * @return {@link CompletableFuture}, завершаемый объектом {@link User} обновленного пользователя после записи
+     * хранилища или исключением {@link CRUDException}.
+     * */
+    default CompletableFuture<User> updateAsync(Integer id, User user, Collection<Long> versions)
+    {
+        CompletableFuture<User> result = new CompletableFuture<>();
+        try
+        {
+            result.complete(update(id, user, versions));
+        }
+        catch (CRUDException e)
+        {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+    /**
+     * Метод удаления информации о пользователе без ожидания записи хранилища вызывающим потоком.
+     * По умолчанию выполняет {@link CRUD#delete(Integer)} в вызывающем потоке.
+     * @param id идентификатор пользователя в хранилище.
+     * @return {@link CompletableFuture}, завершаемый после записи хранилища или исключением {@link CRUDException}.
+     * */
+    default CompletableFuture<Void> deleteAsync(Integer id)
+    {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        try
+        {
+            delete(id);
+            result.complete(null);
+        }
+        catch (CRUDException e)
+        {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
+    /**
+     * Метод записи накопленных изменений и освобождения ресурсов хранилища.
+     * @exception CRUDException throws в случае возникновения ошибки записи хранилища.
+     * */
+    void close() throws CRUDException;
 }
\ No newline at end of file
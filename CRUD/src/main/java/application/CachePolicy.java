@@ -0,0 +1,22 @@
+package application;
+
+/**
+ * Enum класс содержит политики вытеснения кэша пользователей {@link CachingCRUD}.
+ * Политика задается в application.properties параметром cache.policy.
+ * */
+public enum CachePolicy {
+    /**
+     * Кэш не используется, запросы передаются хранилищу напрямую.
+     * */
+    none,
+    /**
+     * Вытесняется пользователь, к которому дольше всего не обращались ({@link util.LruCache}).
+     * */
+    lru,
+    /**
+     * W-TinyLFU ({@link util.TinyLfuCache}): новые пользователи попадают в небольшое LRU окно, а из окна
+     * в основную часть кэша переходят, только если к ним обращались чаще, чем к вытесняемому пользователю.
+     * Однократные обращения (например, обход всех пользователей) не вытесняют из кэша часто запрашиваемых.
+     * */
+    tinylfu;
+}
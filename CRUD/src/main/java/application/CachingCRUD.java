@@ -0,0 +1,454 @@
+package application;
+
+import exceptions.CRUDException;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import util.Cache;
+import util.LruCache;
+import util.TinyLfuCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Класс кэша пользователей, реализующий интерфейс {@link CRUD} поверх хранилища. Информация о пользователе,
+ * полученная по идентификатору, сохраняется в ограниченном по размеру кэше {@link Cache}, поэтому повторные
+ * запросы часто запрашиваемых пользователей не обращаются к хранилищу. Обновление и удаление пользователя
+ * удаляют его из кэша, остальные операции передаются хранилищу без изменений.
+ * <p>Кэш разделен на сегменты по идентификатору пользователя, у каждого сегмента своя блокировка, поэтому
+ * запросы разных пользователей не ожидают друг друга. Кэш хранит и возвращает копии объектов {@link User},
+ * поэтому изменение полученного объекта не влияет на кэш.</p>
+ * <p>Пользователь удаляется из кэша до передачи изменения хранилищу, и пока изменение выполняется (в том числе
+ * пока хранилище ожидает записи файла), значения, полученные из хранилища, в сегмент кэша не помещаются.
+ * Значение также не помещается в кэш, если с начала его получения началось или завершилось изменение,
+ * иначе в кэш могла бы попасть устаревшая информация.</p>
+ * */
+public class CachingCRUD implements CRUD
+{
+    private static Logger logger = LogManager.getLogger(CachingCRUD.class);
+
+    private static final int maxSegments = 16;
+
+    private final CRUD storage;
+    private final Segment[] segments;
+    private final CachePolicy policy;
+    private final int capacity;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Конструктор класса.
+     * @param inStorage хранилище, запросы к которому кэшируются;
+     * @param inPolicy политика вытеснения {@link CachePolicy}, отличная от {@link CachePolicy#none};
+     * @param inCapacity наибольшее количество пользователей в кэше.
+     * */
+    public CachingCRUD(CRUD inStorage, CachePolicy inPolicy, int inCapacity)
+    {
+        this.storage = inStorage;
+        this.policy = inPolicy;
+        this.capacity = inCapacity;
+
+        // количество сегментов - степень двойки, не больше размера кэша
+        int count = Integer.highestOneBit(Math.max(1, Math.min(maxSegments, inCapacity)));
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++)
+        {
+            int segmentCapacity = inCapacity / count + (i < inCapacity % count ? 1 : 0);
+            this.segments[i] = new Segment(inPolicy == CachePolicy.tinylfu ?
+                    new TinyLfuCache<>(segmentCapacity) : new LruCache<>(segmentCapacity));
+        }
+
+        logger.info(new StringBuilder("User cache policy: ").append(inPolicy)
+                .append("\tcapacity: ").append(inCapacity).append("\tsegments: ").append(count).toString());
+    }
+
+    /**
+     * Метод получения статистики работы кэша.
+     * @return {@link Map} со значениями policy, capacity, size, hits, misses, evictions.
+     * */
+    public Map<String, Object> getStatistics()
+    {
+        int size = 0;
+        long evictions = 0;
+        for (Segment segment : segments)
+        {
+            synchronized (segment)
+            {
+                size += segment.cache.size();
+                evictions += segment.cache.getEvictions();
+            }
+        }
+
+        Map<String, Object> statistics = new LinkedHashMap<>();
+        statistics.put("policy", policy);
+        statistics.put("capacity", capacity);
+        statistics.put("size", size);
+        statistics.put("hits", hits.sum());
+        statistics.put("misses", misses.sum());
+        statistics.put("evictions", evictions);
+        return statistics;
+    }
+
+    @Override
+    public User read(Integer id) throws CRUDException
+    {
+        Segment segment = segmentOf(id);
+        long seen;
+        synchronized (segment)
+        {
+            User user = segment.cache.get(id);
+            if (user != null)
+            {
+                hits.increment();
+                return copy(user);
+            }
+            seen = segment.invalidations;
+        }
+        misses.increment();
+
+        User user = storage.read(id);
+
+        synchronized (segment)
+        {
+            if (segment.isUnchanged(seen)) segment.cache.put(id, copy(user));
+        }
+        return user;
+    }
+
+    /**
+     * Метод получения версии пользователя. Если пользователь есть в кэше, версия берется из кэша,
+     * иначе запрашивается у хранилища без помещения пользователя в кэш.
+     * */
+    @Override
+    public long readVersion(Integer id) throws CRUDException
+    {
+        Segment segment = segmentOf(id);
+        synchronized (segment)
+        {
+            User user = segment.cache.get(id);
+            if (user != null)
+            {
+                hits.increment();
+                return user.getVersion();
+            }
+        }
+        misses.increment();
+        return storage.readVersion(id);
+    }
+
+    @Override
+    public Map<Integer, User> read(Collection<Integer> ids) throws CRUDException
+    {
+        Map<Integer, User> users = new LinkedHashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        // состояние каждого сегмента запоминается при первом промахе в нем
+        long[] seen = new long[segments.length];
+        boolean[] missed = new boolean[segments.length];
+        for (Integer id : ids)
+        {
+            if (id == null || users.containsKey(id)) continue;
+            int index = indexOf(id);
+            Segment segment = segments[index];
+            synchronized (segment)
+            {
+                User user = segment.cache.get(id);
+                if (user != null)
+                {
+                    hits.increment();
+                    users.put(id, copy(user));
+                    continue;
+                }
+                if (!missed[index])
+                {
+                    missed[index] = true;
+                    seen[index] = segment.invalidations;
+                }
+            }
+            misses.increment();
+            // место в порядке ids сохраняется до получения пользователя из хранилища
+            users.put(id, null);
+            missing.add(id);
+        }
+        if (missing.isEmpty()) return users;
+
+        Map<Integer, User> loaded = storage.read(missing);
+
+        for (Map.Entry<Integer, User> user : loaded.entrySet())
+        {
+            int index = indexOf(user.getKey());
+            Segment segment = segments[index];
+            synchronized (segment)
+            {
+                if (segment.isUnchanged(seen[index])) segment.cache.put(user.getKey(), copy(user.getValue()));
+            }
+        }
+        for (Integer id : missing)
+        {
+            User user = loaded.get(id);
+            if (user == null) users.remove(id);
+            else users.put(id, user);
+        }
+        return users;
+    }
+
+    @Override
+    public User update(Integer id, User user) throws CRUDException
+    {
+        begin(id);
+        try
+        {
+            return storage.update(id, user);
+        }
+        finally
+        {
+            end(id);
+        }
+    }
+
+    @Override
+    public User update(Integer id, User user, Collection<Long> versions) throws CRUDException
+    {
+        begin(id);
+        try
+        {
+            return storage.update(id, user, versions);
+        }
+        finally
+        {
+            end(id);
+        }
+    }
+
+    @Override
+    public List<BatchResult> updateAll(Map<Integer, User> users) throws CRUDException
+    {
+        List<Integer> ids = new ArrayList<>(users.keySet());
+        begin(ids);
+        try
+        {
+            return storage.updateAll(users);
+        }
+        finally
+        {
+            end(ids);
+        }
+    }
+
+    @Override
+    public void delete(Integer id) throws CRUDException
+    {
+        begin(id);
+        try
+        {
+            storage.delete(id);
+        }
+        finally
+        {
+            end(id);
+        }
+    }
+
+    @Override
+    public List<BatchResult> deleteAll(List<Integer> ids) throws CRUDException
+    {
+        List<Integer> changed = new ArrayList<>(ids);
+        begin(changed);
+        try
+        {
+            return storage.deleteAll(ids);
+        }
+        finally
+        {
+            end(changed);
+        }
+    }
+
+    @Override
+    public CompletableFuture<User> updateAsync(Integer id, User user, Collection<Long> versions)
+    {
+        begin(id);
+        CompletableFuture<User> future;
+        try
+        {
+            future = storage.updateAsync(id, user, versions);
+        }
+        catch (RuntimeException e)
+        {
+            end(id);
+            throw e;
+        }
+        return future.whenComplete((result, error) -> end(id));
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAsync(Integer id)
+    {
+        begin(id);
+        CompletableFuture<Void> future;
+        try
+        {
+            future = storage.deleteAsync(id);
+        }
+        catch (RuntimeException e)
+        {
+            end(id);
+            throw e;
+        }
+        return future.whenComplete((result, error) -> end(id));
+    }
+
+    @Override
+    public CompletableFuture<Integer> createAsync(User user)
+    {
+        return storage.createAsync(user);
+    }
+
+    @Override
+    public Integer create(User user) throws CRUDException
+    {
+        return storage.create(user);
+    }
+
+    @Override
+    public List<BatchResult> createAll(List<User> users) throws CRUDException
+    {
+        return storage.createAll(users);
+    }
+
+    @Override
+    public List<Integer> read() throws CRUDException
+    {
+        return storage.read();
+    }
+
+    @Override
+    public List<Integer> read(User parameters) throws CRUDException
+    {
+        return storage.read(parameters);
+    }
+
+    @Override
+    public List<Integer> read(UserQuery query) throws CRUDException
+    {
+        return storage.read(query);
+    }
+
+    @Override
+    public List<Integer> read(UserQuery query, Integer cursor, int limit) throws CRUDException
+    {
+        return storage.read(query, cursor, limit);
+    }
+
+    @Override
+    public List<Integer> search(String text, int limit) throws CRUDException
+    {
+        return storage.search(text, limit);
+    }
+
+    @Override
+    public Map<String, Map<Integer, Integer>> getReferenceDistribution() throws CRUDException
+    {
+        return storage.getReferenceDistribution();
+    }
+
+    @Override
+    public void close() throws CRUDException
+    {
+        logger.info(new StringBuilder("User cache statistics - ").append(getStatistics()).toString());
+        storage.close();
+    }
+
+    /**
+     * Метод начала изменения пользователя: пользователь удаляется из кэша, и до завершения изменения
+     * значения, полученные из хранилища, в сегмент кэша не помещаются.
+     * */
+    private void begin(Integer id)
+    {
+        if (id == null) return;
+        Segment segment = segmentOf(id);
+        synchronized (segment)
+        {
+            segment.writers++;
+            segment.invalidate(id);
+        }
+    }
+
+    /**
+     * Метод завершения изменения пользователя, начатого {@link CachingCRUD#begin(Integer)}.
+     * */
+    private void end(Integer id)
+    {
+        if (id == null) return;
+        Segment segment = segmentOf(id);
+        synchronized (segment)
+        {
+            segment.writers--;
+            segment.invalidate(id);
+        }
+    }
+
+    private void begin(Collection<Integer> ids)
+    {
+        for (Integer id : ids) begin(id);
+    }
+
+    private void end(Collection<Integer> ids)
+    {
+        for (Integer id : ids) end(id);
+    }
+
+    private Segment segmentOf(Integer id)
+    {
+        return segments[indexOf(id)];
+    }
+
+    private int indexOf(Integer id)
+    {
+        int h = id * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (segments.length - 1);
+    }
+
+    private static User copy(User user)
+    {
+        User copy = new User(user.getFirstName(), user.getSecondName(), user.getBirthDate());
+        copy.setVersion(user.getVersion());
+        return copy;
+    }
+
+    /**
+     * Класс сегмента кэша. Все поля изменяются под блокировкой объекта сегмента.
+     * */
+    private static final class Segment
+    {
+        private final Cache<Integer, User> cache;
+        /** Количество начатых и завершенных изменений пользователей сегмента. */
+        private long invalidations;
+        /** Количество выполняющихся изменений пользователей сегмента. */
+        private int writers;
+
+        private Segment(Cache<Integer, User> inCache)
+        {
+            this.cache = inCache;
+        }
+
+        /**
+         * @param seen значение invalidations в начале получения пользователя из хранилища.
+         * @return true, если полученное значение можно поместить в кэш.
+         * */
+        private boolean isUnchanged(long seen)
+        {
+            return writers == 0 && invalidations == seen;
+        }
+
+        private void invalidate(Integer id)
+        {
+            invalidations++;
+            cache.remove(id);
+        }
+    }
+}
@@ -1,6 +1,11 @@
 package application;
 
 import exceptions.XMLProcessException;
+import xml.ColumnarHandler;
+import xml.FlushPolicy;
+import xml.MappedHandler;
+import xml.StorageEngine;
+import xml.StorageSettings;
 import xml.XMLHandler;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
@@ -17,8 +22,75 @@ public class ConfigurationClass
     @Value("${storage.path}")
     private String path;
 
+    @Value("${storage.engine:xml}")
+    private String engine;
+
+    @Value("${storage.flush:sync}")
+    private String flushPolicy;
+
+    @Value("${storage.flush.window:50}")
+    private long flushWindow;
+
+    @Value("${storage.flush.operations:1000}")
+    private int flushOperations;
+
+    @Value("${storage.wal.enabled:false}")
+    private boolean walEnabled;
+
+    @Value("${storage.wal.maxSize:16777216}")
+    private long walMaxSize;
+
+    @Value("${storage.wal.snapshotInterval:600000}")
+    private long snapshotInterval;
+
+    @Value("${storage.queue.capacity:0}")
+    private int queueCapacity;
+
+    @Value("${storage.queue.batch:256}")
+    private int queueBatchSize;
+
+    @Value("${storage.uniqueUsers:false}")
+    private boolean uniqueUsers;
+
+    @Value("${cache.policy:none}")
+    private String cachePolicy;
+
+    @Value("${cache.size:10000}")
+    private int cacheSize;
+
     @Bean
-    public CRUD configureXMLHandler() throws XMLProcessException {
-        return new XMLHandler(path);
+    public StorageSettings configureStorageSettings()
+    {
+        StorageSettings settings = new StorageSettings();
+        settings.setFlushPolicy(FlushPolicy.valueOf(flushPolicy));
+        settings.setFlushWindow(flushWindow);
+        settings.setFlushOperations(flushOperations);
+        settings.setWalEnabled(walEnabled);
+        settings.setWalMaxSize(walMaxSize);
+        settings.setSnapshotInterval(snapshotInterval);
+        settings.setQueueCapacity(queueCapacity);
+        settings.setQueueBatchSize(queueBatchSize);
+        settings.setUniqueUsers(uniqueUsers);
+        return settings;
+    }
+
+    @Bean(destroyMethod = "close")
+    public CRUD configureXMLHandler(StorageSettings settings) throws XMLProcessException {
+        CRUD storage;
+        switch (StorageEngine.valueOf(engine))
+        {
+            case columnar:
+                storage = new ColumnarHandler(path, settings);
+                break;
+            case mapped:
+                storage = new MappedHandler(path, settings);
+                break;
+            default:
+                storage = new XMLHandler(path, settings);
+        }
+
+        CachePolicy policy = CachePolicy.valueOf(cachePolicy);
+        if (policy == CachePolicy.none || cacheSize <= 0) return storage;
+        return new CachingCRUD(storage, policy, cacheSize);
     }
 }
@@ -1,17 +1,32 @@
 package application;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import exceptions.CRUDException;
 import exceptions.XMLProcessException;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
-import org.springframework.context.ApplicationContext;
-import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.MultiValueMap;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.web.servlet.support.ServletUriComponentsBuilder;
+import util.DateUtil;
+import xml.SupportGroups;
 
 import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import static org.springframework.web.bind.annotation.RequestMethod.*;
 
 /**
@@ -22,15 +37,40 @@ public class InputController
 {
     private static Logger logger = LogManager.getLogger(InputController.class);
 
+    private static final Map<String, SupportGroups> queryParameters = new HashMap<>();
+    private static final Map<String, SupportGroups> prefixParameters = new HashMap<>();
+
+    static
+    {
+        queryParameters.put("firstName", SupportGroups.firstNameGroup);
+        queryParameters.put("secondName", SupportGroups.secondNameGroup);
+        queryParameters.put("birthDate", SupportGroups.birthDateGroup);
+        prefixParameters.put("firstNamePrefix", SupportGroups.firstNameGroup);
+        prefixParameters.put("secondNamePrefix", SupportGroups.secondNameGroup);
+    }
+
+    /**
+     * Количество идентификаторов, получаемых из хранилища за один раз при потоковой записи ответа.
+     * */
+    private static final int streamPageSize = 4096;
+    /**
+     * Количество идентификаторов, возвращаемых нечетким поиском, если limit не задан.
+     * */
+    private static final int searchLimit = 100;
+    // ответ сбрасывается в сокет один раз на страницу, а не после каждого URI
+    private static final ObjectMapper jsonMapper = new ObjectMapper()
+            .disable(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+
     private CRUD xmlHandler;
 
     /**
      * Конструктор класса.
+     * @param inStorage хранилище, создаваемое {@link ConfigurationClass}. Внедряется Spring'ом, поэтому приложение
+     *                  использует единственный экземпляр хранилища, который закрывается вместе с приложением.
      * */
-    public InputController()
+    public InputController(CRUD inStorage)
     {
-        ApplicationContext applicationContext = new AnnotationConfigApplicationContext(ConfigurationClass.class);
-        this.xmlHandler = applicationContext.getBean(CRUD.class);
+        this.xmlHandler = inStorage;
     }
 
     /**
@@ -51,80 +91,129 @@ public class InputController
      * Обработка HTTP POST запроса на добавление информации о пользователе.
      * @param user объект {@link User}, содержащий информацию о пользователе. Данный объект формирует Spring'ом
      *             по средствам десериализации тела входящего запроса.
-     * @param hsr объект {@link HttpServletResponse}, позволяющий настраивать HTTP ответ.
+     * @return {@link CompletableFuture} ответа, завершаемый после записи хранилища. Поток запроса не ожидает
+     *            записи хранилища: ответ отправляется, когда изменение применено очередью изменений хранилища.
      *
      * <p>В случае успешного добавления, в ответе устанавливается статус CREATED. В заголовках ответа устанавливается
      *            заголов "location" со значение URI добавленного пользователя.</p>
-     * <p>В случае отсутствия какой либо информации о пользователе, в ответе устанавливается статус BAD_REQUEST.</p>
+     * <p>В случае отсутствия какой либо информации о пользователе или если дата рождения не является прошедшей датой
+     *            в формате yyyy-MM-dd, в ответе устанавливается статус BAD_REQUEST.</p>
+     * <p>Если очередь изменений хранилища заполнена, в ответе устанавливается статус SERVICE_UNAVAILABLE.</p>
      * <p>В случае ошибки работы с XML файлом, в ответе устанавливается статус INTERNAL_SERVER_ERROR.</p>
      * */
     @RequestMapping(method = POST, value = "/users")
-    private void create(@RequestBody User user, HttpServletResponse hsr)
+    private CompletableFuture<ResponseEntity<Void>> create(@RequestBody User user)
     {
         logger.info("Input create request - user: " + user.toString());
 
         if (user == null || user.hasNull() == true)
         {
             logger.info("Input user data contains null value fields");
-            hsr.setStatus(HttpStatus.BAD_REQUEST.value());
-            return;
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
         }
-        else
-        {
-            Integer id = null;
-            try
-            {
-                id = xmlHandler.create(user);
-            }
-            catch (CRUDException e)
+
+        return xmlHandler.createAsync(user).handle((id, error) -> {
+            if (error != null)
             {
-                logger.error(e);
-                hsr.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
-                return;
+                return ResponseEntity.status(errorStatus(unwrap(error))).build();
             }
 
             logger.info("Create new user info successfully");
-            hsr.setStatus(HttpStatus.CREATED.value());
-            hsr.setHeader("Location", new ResponseBodyClass(id).getUserURI());
-            return;
+            return ResponseEntity.status(HttpStatus.CREATED)
+                    .header(HttpHeaders.LOCATION, new ResponseBodyClass(id).getUserURI()).build();
+        });
+    }
+
+    /**
+     * Метод для получения, обработки и формирования ответа.
+     * Обработка HTTP POST запроса на пакетное добавление информации о пользователях.
+     * @param users список {@link List} объектов {@link User}, формируемый Spring'ом из JSON массива в теле запроса.
+     * @param hsr объект {@link HttpServletResponse}, позволяющий настраивать HTTP ответ.
+     *
+     * <p>В случае успешной обработки пакета, в ответе устанавливается статус OK. Тело ответа содержит для каждого
+     *            элемента пакета URI добавленного пользователя и статус: CREATED, BAD_REQUEST, если не заданы
+     *            какие либо данные пользователя или дата рождения неверна, или INTERNAL_SERVER_ERROR.</p>
+     * <p>Если тело запроса пустое, в ответе устанавливается статус BAD_REQUEST.</p>
+     * <p>В случае ошибки записи хранилища, в ответе устанавливается статус INTERNAL_SERVER_ERROR.</p>
+     * */
+    @RequestMapping(method = POST, value = "/users/batch")
+    private List<BatchResponseBodyClass> createAll(@RequestBody List<User> users, HttpServletResponse hsr)
+    {
+        logger.info(new StringBuilder("Input create batch request - size: ").append(users == null ? 0 : users.size()).toString());
+
+        if (users == null || users.isEmpty())
+        {
+            logger.info("Input batch is empty");
+            hsr.setStatus(HttpStatus.BAD_REQUEST.value());
+            return null;
+        }
+
+        List<BatchResult> results;
+        try
+        {
+            results = xmlHandler.createAll(users);
+        }
+        catch (CRUDException e)
+        {
+            logger.error(e);
+            hsr.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            return null;
         }
+
+        logger.info("Create batch successfully");
+        hsr.setStatus(HttpStatus.OK.value());
+        return toResponse(results, HttpStatus.CREATED);
     }
 
     /**
      * Метод для получения, обработки и формирования ответа.
      * Обработка HTTP GET запроса на получение информации о всех пользователях.
+     * @param ids идентификаторы пользователей через запятую. Необязательный параметр запроса. Если параметр задан,
+     *            тело ответа содержит URI и информацию о каждом найденном пользователе в порядке ids,
+     *            а идентификаторы, которых нет в хранилище, пропускаются;
+     * @param cursor идентификатор, после которого начинается страница. Необязательный параметр запроса;
+     * @param limit наибольшее количество URI на странице. Необязательный параметр запроса. Если параметр задан,
+     *              пользователи возвращаются в порядке возрастания идентификаторов, а если страница заполнена
+     *              полностью, в заголовке ответа "Link" передается URI следующей страницы (rel="next");
+     * @param expand если true, то вместе с URI возвращается информация о пользователе, полученная из хранилища
+     *               одним обращением для всей страницы.
      * @param hsr объект {@link HttpServletResponse}, позволяющий настраивать HTTP ответ.
      *
      * <p>В случае успешного получения данных, в ответе устанавливается статус OK. Тело ответа содержится список
      *            URI для каждой ячейки хранилица.</p>
+     * <p>Если limit не больше нуля, в ответе устанавливается статус BAD_REQUEST.</p>
      * <p>В случае ошибки работы с XML файлом, в ответе устанавливается статус INTERNAL_SERVER_ERROR.</p>
      * */
     @RequestMapping(method = GET, value = "/users")
-    private List<ResponseBodyClass> read(HttpServletResponse hsr)
+    private List<ResponseBodyClass> read(@RequestParam(value = "ids", required = false) List<Integer> ids,
+                                         @RequestParam(value = "cursor", required = false) Integer cursor,
+                                         @RequestParam(value = "limit", required = false) Integer limit,
+                                         @RequestParam(value = "expand", defaultValue = "false") boolean expand,
+                                         HttpServletResponse hsr)
     {
-        logger.info("Input read all users URI request");
+        logger.info(new StringBuilder("Input read all users URI request - ids: ").append(ids)
+                .append("\tcursor: ").append(cursor).append("\tlimit: ").append(limit)
+                .append("\texpand: ").append(expand).toString());
 
-        List<Integer> id = null;
+        if (ids == null)
+        {
+            return read(new UserQuery(), cursor, limit, expand, hsr);
+        }
 
+        List<ResponseBodyClass> responseBodyClasses;
         try
         {
-            id = xmlHandler.read();
+            responseBodyClasses = toResponse(ids, true);
         }
-        catch (CRUDException e) {
+        catch (CRUDException e)
+        {
             logger.error(e);
             hsr.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
             return null;
         }
 
-        List<ResponseBodyClass> responseBodyClasses = new ArrayList<>();
-
-        for (Integer var : id)
-        {
-            responseBodyClasses.add(new ResponseBodyClass(var));
-        }
-
         hsr.setStatus(HttpStatus.OK.value());
-        logger.info("read all users URI successfully");
+        logger.info("read users by ids successfully");
         return responseBodyClasses;
     }
 
@@ -132,18 +221,26 @@ public class InputController
      * Метод для получения, обработки и формирования ответа.
      * Обработка HTTP GET запроса на получение информации о пользователе с конкретным id.
      * @param id идентификатор пользователя в хранилище. Является частью URI.
+     * @param ifNoneMatch значение заголовка If-None-Match: ETag ранее полученных версий пользователя или "*".
+     *                    Необязательный заголовок запроса;
      * @param hsr объект {@link HttpServletResponse}, позволяющий настраивать HTTP ответ.
      *
      * <p>В случае успешного получения данных, в ответе устанавливается статус OK. Тело ответа содержит информацию о
-     *            получкнном пользователе.</p>
+     *            получкнном пользователе, а заголовок ETag - его версию.</p>
+     * <p>Если текущая версия пользователя совпадает с одной из версий If-None-Match, в ответе устанавливается
+     *            статус NOT_MODIFIED и заголовок ETag без тела ответа, а информация о пользователе не извлекается
+     *            из хранилища.</p>
      * <p>Если id равен null, в ответе устанавливается BAD_REQUEST.</p>
      * <p>В случае остутствия информации о пользовател, в ответе устанавливается статус NOT_FOUND.</p>
      * <p>В случае ошибки работы с XML файлом, в ответе устанавливается статус INTERNAL_SERVER_ERROR.</p>
      * */
     @RequestMapping(method = GET, value = "/user/{id}")
-    private User read(@PathVariable Integer id, HttpServletResponse hsr)
+    private User read(@PathVariable Integer id,
+                      @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                      HttpServletResponse hsr)
     {
-        logger.info("Input read request - id: " + id);
+        logger.info(new StringBuilder("Input read request - id: ").append(id)
+                .append("\tIf-None-Match: ").append(ifNoneMatch).toString());
 
         if (id == null)
         {
@@ -154,6 +251,17 @@ public class InputController
         User user = null;
         try
         {
+            if (ifNoneMatch != null)
+            {
+                long version = xmlHandler.readVersion(id);
+                if (isAny(ifNoneMatch) || parseETags(ifNoneMatch, true).contains(version))
+                {
+                    logger.info("User is not modified - id: " + id);
+                    hsr.setHeader(HttpHeaders.ETAG, eTag(version));
+                    hsr.setStatus(HttpStatus.NOT_MODIFIED.value());
+                    return null;
+                }
+            }
             user = xmlHandler.read(id);
         }
         catch (CRUDException e)
@@ -171,6 +279,7 @@ public class InputController
         }
 
         logger.info("Read user info successfully - id: " + id);
+        hsr.setHeader(HttpHeaders.ETAG, eTag(user.getVersion()));
         hsr.setStatus(HttpStatus.OK.value());
         return user;
     }
@@ -180,35 +289,132 @@ public class InputController
      * Обработка HTTP GET запроса на получение информации о пользователе с заданными параметрами.
      * Заданные параметры передаются в качестве параметров запроса.
      * В качестве параметра можно задать имя (firstName), фамилию (secondName) или дату рождения (birthDate).
+     * Параметр можно повторить несколько раз, тогда значение пользователя должно совпадать с одним из заданных.
+     * Параметр, имя которого оканчивается на "!" (например, secondName!=Ivanov), исключает пользователей
+     * с заданным значением. Параметры birthDateFrom и birthDateTo задают диапазон дат рождения (включительно)
+     * в формате yyyy-MM-dd; одна из границ может быть опущена. Параметры firstNamePrefix и secondNamePrefix задают
+     * префикс имени и фамилии (например, secondNamePrefix=Petr). Неизвестные параметры игнорируются.
+     * @param parameters объект {@link MultiValueMap}, содержащий все параметры запроса.
+     * @param cursor идентификатор, после которого начинается страница. Необязательный параметр запроса;
+     * @param limit наибольшее количество URI на странице. Необязательный параметр запроса,
+     *              подробнее см. {@link InputController#read(List, Integer, Integer, boolean, HttpServletResponse)};
+     * @param expand если true, то вместе с URI возвращается информация о пользователе.
      * @param hsr объект {@link HttpServletResponse}, позволяющий настраивать HTTP ответ.
      *
      * <p>В случае успешного получения данных, в ответе устанавливается статус OK. Тело ответа содержится список URI
      *           для соответствующих ячеек хранилица.</p>
+     * <p>Если limit не больше нуля или граница диапазона дат рождения не является датой, в ответе устанавливается
+     *           статус BAD_REQUEST.</p>
      * <p>В случае ошибки работы с XML файлом, в ответе устанавливается статус INTERNAL_SERVER_ERROR.</p>
      * */
     @RequestMapping(method = GET, value = "/users/")
-    private List<ResponseBodyClass> read(@RequestParam(value = "firstName") String firstName,
-                                        @RequestParam(value = "secondName") String secondName,
-                                        @RequestParam(value = "birthDate") String birthDate,
-                                        HttpServletResponse hsr)
+    private List<ResponseBodyClass> read(@RequestParam MultiValueMap<String, String> parameters,
+                                         @RequestParam(value = "cursor", required = false) Integer cursor,
+                                         @RequestParam(value = "limit", required = false) Integer limit,
+                                         @RequestParam(value = "expand", defaultValue = "false") boolean expand,
+                                         HttpServletResponse hsr)
     {
-        User parameters = new User(firstName, secondName, birthDate);
+        UserQuery query = parseQuery(parameters);
+        if (query == null)
+        {
+            hsr.setStatus(HttpStatus.BAD_REQUEST.value());
+            return null;
+        }
 
-        logger.info(new StringBuilder("Input read users URI request with params - ")
-        .append(parameters.toString()).toString());
+        logger.info(new StringBuilder("Input read users URI request with params -")
+        .append(query.toString()).append("\tcursor: ").append(cursor).append("\tlimit: ").append(limit)
+        .append("\texpand: ").append(expand).toString());
+
+        return read(query, cursor, limit, expand, hsr);
+    }
 
-        if (parameters.getFirstName() == null &&
-                parameters.getSecondName() == null &&
-                parameters.getBirthDate() == null)
+    /**
+     * Метод для получения, обработки и формирования ответа.
+     * Обработка HTTP GET запроса на получение информации о пользователях с параметром stream=true.
+     * Параметры запроса такие же, как у
+     * {@link InputController#read(MultiValueMap, Integer, Integer, boolean, HttpServletResponse)}.
+     * Список URI записывается в тело ответа по частям: идентификаторы получаются из хранилища страницами
+     * по {@link InputController#streamPageSize}, поэтому полный список не строится ни в хранилище, ни в памяти ответа.
+     * @param hsr объект {@link HttpServletResponse}, позволяющий настраивать HTTP ответ.
+     *
+     * <p>В случае успешного начала записи, в ответе устанавливается статус OK.</p>
+     * <p>Если limit не больше нуля, граница диапазона дат рождения не является датой или задан параметр ids
+     *           (получение пользователей по списку идентификаторов не выполняется по частям), в ответе
+     *           устанавливается статус BAD_REQUEST.</p>
+     * <p>В случае ошибки работы с хранилищем во время записи, ответ прерывается.</p>
+     * */
+    @RequestMapping(method = GET, value = {"/users", "/users/"}, params = "stream=true")
+    private StreamingResponseBody stream(@RequestParam MultiValueMap<String, String> parameters,
+                                         @RequestParam(value = "cursor", required = false) Integer cursor,
+                                         @RequestParam(value = "limit", required = false) Integer limit,
+                                         @RequestParam(value = "expand", defaultValue = "false") boolean expand,
+                                         HttpServletResponse hsr)
+    {
+        if (parameters.containsKey("ids"))
         {
-            return this.read(hsr);
+            logger.info("Input ids can't be streamed");
+            hsr.setStatus(HttpStatus.BAD_REQUEST.value());
+            return null;
         }
 
-        List<Integer> id;
+        UserQuery query = parseQuery(parameters);
+        if (query == null)
+        {
+            hsr.setStatus(HttpStatus.BAD_REQUEST.value());
+            return null;
+        }
+
+        logger.info(new StringBuilder("Input stream users URI request with params -")
+        .append(query.toString()).append("\tcursor: ").append(cursor).append("\tlimit: ").append(limit)
+        .append("\texpand: ").append(expand).toString());
+
+        if (limit != null && limit <= 0)
+        {
+            logger.info("Input limit is not positive");
+            hsr.setStatus(HttpStatus.BAD_REQUEST.value());
+            return null;
+        }
 
+        hsr.setStatus(HttpStatus.OK.value());
+        hsr.setContentType(MediaType.APPLICATION_JSON_UTF8_VALUE);
+        return outputStream -> writeUsers(query, cursor, limit, expand, outputStream);
+    }
+
+    /**
+     * Метод для получения, обработки и формирования ответа.
+     * Обработка HTTP GET запроса на нечеткий поиск пользователей по имени и фамилии с учетом опечаток
+     * (например, /users/search?q=Chystov находит пользователей с фамилией Chistov), подробнее см.
+     * {@link CRUD#search(String, int)}.
+     * @param text искомое имя или фамилия. Параметр запроса q;
+     * @param limit наибольшее количество URI. Необязательный параметр запроса, по умолчанию {@link InputController#searchLimit};
+     * @param expand если true, то вместе с URI возвращается информация о пользователе.
+     * @param hsr объект {@link HttpServletResponse}, позволяющий настраивать HTTP ответ.
+     *
+     * <p>В случае успешного поиска, в ответе устанавливается статус OK. Тело ответа содержит список URI найденных
+     *           пользователей, начиная с наиболее близких к искомой строке.</p>
+     * <p>Если q не задан или пуст, или limit не больше нуля, в ответе устанавливается статус BAD_REQUEST.</p>
+     * <p>В случае ошибки работы с XML файлом, в ответе устанавливается статус INTERNAL_SERVER_ERROR.</p>
+     * */
+    @RequestMapping(method = GET, value = "/users/search")
+    private List<ResponseBodyClass> search(@RequestParam(value = "q", required = false) String text,
+                                           @RequestParam(value = "limit", defaultValue = "" + searchLimit) int limit,
+                                           @RequestParam(value = "expand", defaultValue = "false") boolean expand,
+                                           HttpServletResponse hsr)
+    {
+        logger.info(new StringBuilder("Input search users URI request - q: ").append(text)
+                .append("\tlimit: ").append(limit).append("\texpand: ").append(expand).toString());
+
+        if (text == null || text.trim().isEmpty() || limit <= 0)
+        {
+            logger.info("Input search text is empty or limit is not positive");
+            hsr.setStatus(HttpStatus.BAD_REQUEST.value());
+            return null;
+        }
+
+        List<ResponseBodyClass> responseBodyClasses;
         try
         {
-            id = xmlHandler.read(parameters);
+            responseBodyClasses = toResponse(xmlHandler.search(text, limit), expand);
         }
         catch (CRUDException e)
         {
@@ -217,18 +423,249 @@ public class InputController
             return null;
         }
 
-        List<ResponseBodyClass> responseBodyClasses = new ArrayList<>();
+        hsr.setStatus(HttpStatus.OK.value());
+        logger.info("search users successfully");
+        return responseBodyClasses;
+    }
+
+    private List<ResponseBodyClass> read(UserQuery query, Integer cursor, Integer limit, boolean expand,
+                                         HttpServletResponse hsr)
+    {
+        if (limit != null && limit <= 0)
+        {
+            logger.info("Input limit is not positive");
+            hsr.setStatus(HttpStatus.BAD_REQUEST.value());
+            return null;
+        }
+
+        List<Integer> id;
+        List<ResponseBodyClass> responseBodyClasses;
+
+        try
+        {
+            if (cursor != null || limit != null)
+            {
+                id = xmlHandler.read(query, cursor, limit == null ? Integer.MAX_VALUE : limit);
+            }
+            else if (query.isEmpty())
+            {
+                id = xmlHandler.read();
+            }
+            else
+            {
+                id = xmlHandler.read(query);
+            }
+            responseBodyClasses = toResponse(id, expand);
+        }
+        catch (CRUDException e)
+        {
+            logger.error(e);
+            hsr.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            return null;
+        }
 
-        for (Integer var : id)
+        if (limit != null && id.size() == limit)
         {
-            responseBodyClasses.add(new ResponseBodyClass(var));
+            String next = ServletUriComponentsBuilder.fromCurrentRequest()
+                    .replaceQueryParam("cursor", id.get(id.size() - 1)).build().toUriString();
+            hsr.setHeader("Link", new StringBuilder("<").append(next).append(">; rel=\"next\"").toString());
         }
 
         hsr.setStatus(HttpStatus.OK.value());
-        logger.info("read parameterised users URI successfully");
+        logger.info("read users URI successfully");
         return responseBodyClasses;
     }
 
+    private void writeUsers(UserQuery query, Integer cursor, Integer limit, boolean expand, OutputStream outputStream)
+            throws IOException
+    {
+        JsonGenerator generator = jsonMapper.getFactory().createGenerator(outputStream);
+        generator.writeStartArray();
+
+        int remaining = limit == null ? Integer.MAX_VALUE : limit;
+        Integer position = cursor;
+        try
+        {
+            while (remaining > 0)
+            {
+                int pageLimit = Math.min(streamPageSize, remaining);
+                List<Integer> id = xmlHandler.read(query, position, pageLimit);
+                for (ResponseBodyClass responseBodyClass : toResponse(id, expand))
+                {
+                    generator.writeObject(responseBodyClass);
+                }
+                generator.flush();
+
+                if (id.size() < pageLimit) break;
+                position = id.get(id.size() - 1);
+                remaining -= id.size();
+            }
+        }
+        catch (CRUDException e)
+        {
+            logger.error(e);
+            throw new IOException(e);
+        }
+
+        generator.writeEndArray();
+        generator.flush();
+        logger.info("stream users URI successfully");
+    }
+
+    private List<ResponseBodyClass> toResponse(List<Integer> id, boolean expand) throws CRUDException
+    {
+        List<ResponseBodyClass> responseBodyClasses = new ArrayList<>(id.size());
+
+        if (!expand)
+        {
+            for (Integer var : id)
+            {
+                responseBodyClasses.add(new ResponseBodyClass(var));
+            }
+            return responseBodyClasses;
+        }
+
+        for (Map.Entry<Integer, User> user : xmlHandler.read(id).entrySet())
+        {
+            responseBodyClasses.add(new UserResponseBodyClass(user.getKey(), user.getValue()));
+        }
+        return responseBodyClasses;
+    }
+
+    private static String eTag(long version)
+    {
+        return new StringBuilder().append('"').append(version).append('"').toString();
+    }
+
+    private static boolean isAny(String header)
+    {
+        return header.trim().equals("*");
+    }
+
+    /**
+     * Метод разбора списка ETag заголовков If-Match и If-None-Match.
+     * @param header значение заголовка;
+     * @param weak true, если слабые ETag (W/"...") допускаются (If-None-Match), или false, если они не совпадают
+     *             ни с одной версией (If-Match).
+     * @return версии пользователя. ETag, которые не могли быть выданы хранилищем, пропускаются.
+     * */
+    private static List<Long> parseETags(String header, boolean weak)
+    {
+        List<Long> versions = new ArrayList<>();
+        for (String tag : header.split(","))
+        {
+            tag = tag.trim();
+            if (tag.startsWith("W/"))
+            {
+                if (!weak) continue;
+                tag = tag.substring(2);
+            }
+            if (tag.length() < 3 || tag.charAt(0) != '"' || tag.charAt(tag.length() - 1) != '"') continue;
+            try
+            {
+                versions.add(Long.parseLong(tag.substring(1, tag.length() - 1)));
+            }
+            catch (NumberFormatException e)
+            {
+                logger.debug(new StringBuilder("Skip foreign ETag: ").append(tag).toString());
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * Метод получения исключения хранилища, которым завершился {@link CompletableFuture}.
+     * @return исключение {@link CRUDException} или null, если причиной ошибки является другое исключение.
+     * */
+    private static CRUDException unwrap(Throwable error)
+    {
+        if (error instanceof CompletionException && error.getCause() != null) error = error.getCause();
+        if (error instanceof CRUDException) return (CRUDException) error;
+
+        logger.error(error);
+        return null;
+    }
+
+    /**
+     * Метод выбора статуса ответа для ошибки хранилища, не обработанной отдельно.
+     * @return SERVICE_UNAVAILABLE, если очередь изменений хранилища заполнена, BAD_REQUEST, если данные пользователя
+     * неверны (например, дата рождения не является датой), иначе INTERNAL_SERVER_ERROR.
+     * */
+    private static HttpStatus errorStatus(CRUDException e)
+    {
+        if (e != null && e.getCode() == XMLProcessException.XML_QUEUE_FULL_EXCEPTION)
+        {
+            logger.info(e);
+            return HttpStatus.SERVICE_UNAVAILABLE;
+        }
+        if (e != null && e.getCode() == XMLProcessException.XML_USER_DATA_EXCEPTION)
+        {
+            logger.info(e);
+            return HttpStatus.BAD_REQUEST;
+        }
+        if (e != null) logger.error(e);
+        return HttpStatus.INTERNAL_SERVER_ERROR;
+    }
+
+    private static List<BatchResponseBodyClass> toResponse(List<BatchResult> results, HttpStatus success)
+    {
+        List<BatchResponseBodyClass> response = new ArrayList<>(results.size());
+
+        for (BatchResult result : results)
+        {
+            HttpStatus status;
+            if (result.isSuccessful()) status = success;
+            else if (result.getCode() == XMLProcessException.XML_USER_DATA_EXCEPTION) status = HttpStatus.BAD_REQUEST;
+            else if (result.getCode() == XMLProcessException.XML_USER_SEARCH_EXCEPTION) status = HttpStatus.NOT_FOUND;
+            else status = HttpStatus.INTERNAL_SERVER_ERROR;
+
+            response.add(new BatchResponseBodyClass(result.getId(), status.value(), result.getMessage()));
+        }
+        return response;
+    }
+
+    /**
+     * Метод разбора параметров запроса поиска пользователей.
+     * @return объект {@link UserQuery} или null, если граница диапазона дат рождения не является датой.
+     * */
+    private static UserQuery parseQuery(MultiValueMap<String, String> parameters)
+    {
+        UserQuery query = new UserQuery();
+
+        String from = parameters.getFirst("birthDateFrom");
+        String to = parameters.getFirst("birthDateTo");
+        if (from != null || to != null)
+        {
+            Integer fromDay = from == null ? null : DateUtil.toEpochDay(from);
+            Integer toDay = to == null ? null : DateUtil.toEpochDay(to);
+            if ((from != null && fromDay == null) || (to != null && toDay == null))
+            {
+                logger.info(new StringBuilder("Input birth date range is not a date range - from: ").append(from)
+                        .append("\tto: ").append(to).toString());
+                return null;
+            }
+            query.birthDateRange(fromDay, toDay);
+        }
+
+        for (Map.Entry<String, SupportGroups> parameter : prefixParameters.entrySet())
+        {
+            String prefix = parameters.getFirst(parameter.getKey());
+            if (prefix != null) query.prefix(parameter.getValue(), prefix);
+        }
+
+        for (Map.Entry<String, List<String>> parameter : parameters.entrySet())
+        {
+            String name = parameter.getKey();
+            boolean negated = name.endsWith("!");
+            SupportGroups group = queryParameters.get(negated ? name.substring(0, name.length() - 1) : name);
+            if (group == null) continue;
+
+            if (negated) query.exclude(group, parameter.getValue());
+            else query.include(group, parameter.getValue());
+        }
+        return query;
+    }
+
     /**
      * Метод для получения, обработки и формирования ответа.
      * Обработка HTTP DELETE запроса на удаление информации о всех пользователях.
@@ -246,47 +683,81 @@ public class InputController
      * Метод для получения, обработки и формирования ответа.
      * Обработка HTTP DELETE запроса на удаление информации о пользователе с конкретным id.
      * @param id идентификатор пользователя в хранилище. Является частью URI.
-     * @param hsr объект {@link HttpServletResponse}, позволяющий настраивать HTTP ответ.
+     * @return {@link CompletableFuture} ответа, завершаемый после записи хранилища.
      *
      * <p>В случае успешного удаления данных, в ответе устанавливается статус NO_CONTENT.</p>
      * <p>Если id равен null, в ответе устанавливается BAD_REQUEST.</p>
      * <p>В случае остутствия информации о пользовател, в ответе устанавливается статус NOT_FOUND.</p>
+     * <p>Если очередь изменений хранилища заполнена, в ответе устанавливается статус SERVICE_UNAVAILABLE.</p>
      * <p>В случае ошибки работы с XML файлом, в ответе устанавливается статус INTERNAL_SERVER_ERROR.</p>
      * */
     @RequestMapping(method = DELETE, value = "/user/{id}")
-    private void delete(@PathVariable Integer id,
-                          HttpServletResponse hsr)
+    private CompletableFuture<ResponseEntity<Void>> delete(@PathVariable Integer id)
     {
         logger.info("Input delete user data request - id " + id);
 
         if (id == null)
         {
             logger.info("Input id is null");
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
+        }
+
+        return xmlHandler.deleteAsync(id).handle((result, error) -> {
+            if (error != null)
+            {
+                CRUDException e = unwrap(error);
+                if (e != null && e.getCode() == XMLProcessException.XML_USER_SEARCH_EXCEPTION)
+                {
+                    logger.error(new StringBuilder("User with id: ").append(id).append("does not exist").toString());
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+                }
+                return ResponseEntity.status(errorStatus(e)).build();
+            }
+
+            logger.info("Delete user successfully");
+            return ResponseEntity.status(HttpStatus.NO_CONTENT).build();
+        });
+    }
+
+    /**
+     * Метод для получения, обработки и формирования ответа.
+     * Обработка HTTP DELETE запроса на пакетное удаление информации о пользователях.
+     * @param ids список {@link List} идентификаторов пользователей, формируемый Spring'ом из JSON массива в теле запроса.
+     * @param hsr объект {@link HttpServletResponse}, позволяющий настраивать HTTP ответ.
+     *
+     * <p>В случае успешной обработки пакета, в ответе устанавливается статус OK. Тело ответа содержит для каждого
+     *            элемента пакета URI пользователя и статус: NO_CONTENT, NOT_FOUND в случае остутствия информации
+     *            о пользователе, BAD_REQUEST, если идентификатор равен null, или INTERNAL_SERVER_ERROR.</p>
+     * <p>Если тело запроса пустое, в ответе устанавливается статус BAD_REQUEST.</p>
+     * <p>В случае ошибки записи хранилища, в ответе устанавливается статус INTERNAL_SERVER_ERROR.</p>
+     * */
+    @RequestMapping(method = DELETE, value = "/users/batch")
+    private List<BatchResponseBodyClass> deleteAll(@RequestBody List<Integer> ids, HttpServletResponse hsr)
+    {
+        logger.info(new StringBuilder("Input delete batch request - size: ").append(ids == null ? 0 : ids.size()).toString());
+
+        if (ids == null || ids.isEmpty())
+        {
+            logger.info("Input batch is empty");
             hsr.setStatus(HttpStatus.BAD_REQUEST.value());
-            return;
+            return null;
         }
 
+        List<BatchResult> results;
         try
         {
-            xmlHandler.delete(id);
+            results = xmlHandler.deleteAll(ids);
         }
         catch (CRUDException e)
         {
-            if (e.getCode() == XMLProcessException.XML_USER_SEARCH_EXCEPTION)
-            {
-                logger.error(new StringBuilder("User with id: ").append(id).append("does not exist").toString());
-                hsr.setStatus(HttpStatus.NOT_FOUND.value());
-                return;
-            }
-
             logger.error(e);
             hsr.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
-            return;
+            return null;
         }
 
-        logger.info("Delete user successfully");
-        hsr.setStatus(HttpStatus.NO_CONTENT.value());
-        return;
+        logger.info("Delete batch successfully");
+        hsr.setStatus(HttpStatus.OK.value());
+        return toResponse(results, HttpStatus.NO_CONTENT);
     }
 
     /**
@@ -302,64 +773,170 @@ public class InputController
         return;
     }
 
+    /**
+     * Метод для получения, обработки и формирования ответа.
+     * Обработка HTTP PUT запроса на пакетное обновление информации о пользователях.
+     * @param users {@link Map}, формируемый Spring'ом из JSON объекта в теле запроса, в котором ключом является
+     *              идентификатор пользователя, а значением - информация для обновления. Некоторые поля могут быть не заданы.
+     * @param hsr объект {@link HttpServletResponse}, позволяющий настраивать HTTP ответ.
+     *
+     * <p>В случае успешной обработки пакета, в ответе устанавливается статус OK. Тело ответа содержит для каждого
+     *            элемента пакета URI пользователя и статус: OK, NOT_FOUND в случае остутствия информации
+     *            о пользователе, BAD_REQUEST, если данные для обновления не заданы или дата рождения неверна,
+     *            или INTERNAL_SERVER_ERROR.</p>
+     * <p>Если тело запроса пустое, в ответе устанавливается статус BAD_REQUEST.</p>
+     * <p>В случае ошибки записи хранилища, в ответе устанавливается статус INTERNAL_SERVER_ERROR.</p>
+     * */
+    @RequestMapping(method = PUT, value = "/users/batch")
+    private List<BatchResponseBodyClass> updateAll(@RequestBody Map<Integer, User> users, HttpServletResponse hsr)
+    {
+        logger.info(new StringBuilder("Input update batch request - size: ").append(users == null ? 0 : users.size()).toString());
+
+        if (users == null || users.isEmpty())
+        {
+            logger.info("Input batch is empty");
+            hsr.setStatus(HttpStatus.BAD_REQUEST.value());
+            return null;
+        }
+
+        List<BatchResult> results;
+        try
+        {
+            results = xmlHandler.updateAll(users);
+        }
+        catch (CRUDException e)
+        {
+            logger.error(e);
+            hsr.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+            return null;
+        }
+
+        logger.info("Update batch successfully");
+        hsr.setStatus(HttpStatus.OK.value());
+        return toResponse(results, HttpStatus.OK);
+    }
+
     /**
      * Метод для получения, обработки и формирования ответа.
      * Обработка HTTP PUT запроса на обновление информации о пользователе с конкретным id.
      * @param id идентификатор пользователя в хранилище. Является частью URI.
      * @param user объект {@link User}, содержащий информацию о пользователе. Данный объект формирует Spring'ом
      *             по средствам десериализации тела входящего запроса. Некоторые поля могут быть не заданы.
-     * @param hsr объект {@link HttpServletResponse}, позволяющий настраивать HTTP ответ.
+     * @param ifMatch значение заголовка If-Match: ETag версий пользователя, которые допускается обновить, или "*".
+     *                Необязательный заголовок запроса. Проверка версии и обновление выполняются атомарно.
+     * @return {@link CompletableFuture} ответа, завершаемый после записи хранилища.
      *
      * <p>В случае успешного удаления данных, в ответе устанавливается статус OK. Тело ответа содержит
-     *            информацию об обновленном пользователе.</p>
-     * <p>Если id равен null, в ответе устанавливается BAD_REQUEST.</p>
+     *            информацию об обновленном пользователе, а заголовок ETag - его новую версию.</p>
+     * <p>Если id равен null или дата рождения не является прошедшей датой в формате yyyy-MM-dd, в ответе
+     *            устанавливается BAD_REQUEST.</p>
      * <p>В случае остутствия информации о пользовател, в ответе устанавливается статус NOT_FOUND.</p>
+     * <p>Если текущая версия пользователя не совпадает ни с одной из версий If-Match, пользователь не обновляется,
+     *            а в ответе устанавливается статус PRECONDITION_FAILED.</p>
+     * <p>Если очередь изменений хранилища заполнена, в ответе устанавливается статус SERVICE_UNAVAILABLE.</p>
      * <p>В случае ошибки работы с XML файлом, в ответе устанавливается статус INTERNAL_SERVER_ERROR.</p>
      * */
     @RequestMapping(method = PUT, value = "/user/{id}")
-    private User update(@PathVariable Integer id,
+    private CompletableFuture<ResponseEntity<User>> update(@PathVariable Integer id,
                                     @RequestBody User user,
-                                    HttpServletResponse hsr)
+                                    @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch)
     {
-        logger.info(new StringBuilder("Input update user data request - id ").append(id).append("\t").append(user.toString()));
+        logger.info(new StringBuilder("Input update user data request - id ").append(id).append("\t").append(user.toString())
+                .append("\tIf-Match: ").append(ifMatch).toString());
 
         if (id == null)
         {
             logger.info("Input id is null");
-            hsr.setStatus(HttpStatus.BAD_REQUEST.value());
-            return null;
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
         }
         if (user.getFirstName() == null &&
                 user.getSecondName() == null &&
                 user.getBirthDate() == null)
         {
             logger.info("Input user data is null");
-            hsr.setStatus(HttpStatus.BAD_REQUEST.value());
-            return null;
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.BAD_REQUEST).build());
         }
 
-        User newUser = null;
+        List<Long> versions = ifMatch == null || isAny(ifMatch) ? null : parseETags(ifMatch, false);
+
+        return xmlHandler.updateAsync(id, user, versions).handle((newUser, error) -> {
+            if (error != null)
+            {
+                CRUDException e = unwrap(error);
+                if (e != null && e.getCode() == XMLProcessException.XML_USER_SEARCH_EXCEPTION)
+                {
+                    logger.error(new StringBuilder("User with id: ").append(id).append("does not exist").toString());
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+                }
+                if (e != null && e.getCode() == XMLProcessException.XML_VERSION_CONFLICT_EXCEPTION)
+                {
+                    logger.info(new StringBuilder("User with id: ").append(id).append(" was modified").toString());
+                    return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED).build();
+                }
+                return ResponseEntity.status(errorStatus(e)).build();
+            }
+
+            logger.info("Update user info successfully");
+            return ResponseEntity.ok().eTag(eTag(newUser.getVersion())).body(newUser);
+        });
+    }
+
+    /**
+     * Метод для получения, обработки и формирования ответа.
+     * Обработка HTTP GET запроса на получение распределения количества ссылок пользователей на значения
+     * вспомогательных групп хранилища (имен, фамилий и дат рождения).
+     * @param hsr объект {@link HttpServletResponse}, позволяющий настраивать HTTP ответ.
+     *
+     * <p>В случае успешного получения данных, в ответе устанавливается статус OK. Тело ответа содержит для каждой
+     *            вспомогательной группы соответствие количества ссылок числу значений с таким количеством ссылок.</p>
+     * <p>В случае ошибки работы с хранилищем, в ответе устанавливается статус INTERNAL_SERVER_ERROR.</p>
+     * */
+    @RequestMapping(method = GET, value = "/debug/references")
+    private Map<String, Map<Integer, Integer>> readReferenceDistribution(HttpServletResponse hsr)
+    {
+        logger.info("Input read reference distribution request");
+
+        Map<String, Map<Integer, Integer>> distribution = null;
 
         try
         {
-            newUser = xmlHandler.update(id, user);
+            distribution = xmlHandler.getReferenceDistribution();
         }
         catch (CRUDException e)
         {
-            if (e.getCode() == XMLProcessException.XML_USER_SEARCH_EXCEPTION)
-            {
-                logger.error(new StringBuilder("User with id: ").append(id).append("does not exist").toString());
-                hsr.setStatus(HttpStatus.NOT_FOUND.value());
-                return null;
-            }
-
             logger.error(e);
             hsr.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
             return null;
         }
 
-        logger.info("Update user info successfully");
         hsr.setStatus(HttpStatus.OK.value());
-        return newUser;
+        logger.info("Read reference distribution successfully");
+        return distribution;
+    }
+
+    /**
+     * Метод для получения, обработки и формирования ответа.
+     * Обработка HTTP GET запроса на получение статистики кэша пользователей.
+     * @param hsr объект {@link HttpServletResponse}, позволяющий настраивать HTTP ответ.
+     *
+     * <p>Если кэш используется, в ответе устанавливается статус OK. Тело ответа содержит политику вытеснения,
+     *            размер кэша и количество попаданий, промахов и вытеснений, подробнее см.
+     *            {@link CachingCRUD#getStatistics()}.</p>
+     * <p>Если кэш отключен (cache.policy=none), в ответе устанавливается статус NOT_FOUND.</p>
+     * */
+    @RequestMapping(method = GET, value = "/debug/cache")
+    private Map<String, Object> readCacheStatistics(HttpServletResponse hsr)
+    {
+        logger.info("Input read cache statistics request");
+
+        if (!(xmlHandler instanceof CachingCRUD))
+        {
+            logger.info("User cache is disabled");
+            hsr.setStatus(HttpStatus.NOT_FOUND.value());
+            return null;
+        }
+
+        hsr.setStatus(HttpStatus.OK.value());
+        return ((CachingCRUD) xmlHandler).getStatistics();
     }
 }
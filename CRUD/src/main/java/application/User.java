@@ -1,5 +1,6 @@
 package application;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -10,7 +11,17 @@ public class User{
 
     @Setter @Getter private String firstName;
     @Setter @Getter private String secondName;
+    /**
+     * Дата рождения в формате yyyy-MM-dd. Хранилище проверяет дату рождения при записи и приводит к этому формату
+     * даты без ведущих нулей и даты в формате dd.MM.yyyy.
+     * */
     @Setter @Getter private String birthDate;
+    /**
+     * Версия информации о пользователе, присвоенная хранилищем при последнем изменении. Версия только возрастает
+     * и не повторяется, в том числе для разных пользователей с одним идентификатором. Не передается в теле
+     * HTTP запросов и ответов, а используется как ETag.
+     * */
+    @Setter @Getter @JsonIgnore private long version;
 
     /**
      * Конструктор класса.
@@ -0,0 +1,183 @@
+package application;
+
+import util.DateUtil;
+import util.XMLUtil;
+import xml.SupportGroups;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+
+/**
+ * Класс для хранения параметров поиска пользователей. Для каждой вспомогательной группы (имени, фамилии и даты
+ * рождения) задаются допустимые и исключаемые значения. Пользователь удовлетворяет запросу, если для каждой группы
+ * с допустимыми значениями его значение совпадает с одним из них и ни одно его значение не совпадает с исключаемым.
+ * Кроме того, может быть задан диапазон дат рождения: тогда дата рождения пользователя должна попадать в диапазон,
+ * и префиксы имени и фамилии: тогда имя (фамилия) пользователя должно начинаться с префикса.
+ * */
+public class UserQuery
+{
+    private final EnumMap<SupportGroups, List<String>> included = new EnumMap<>(SupportGroups.class);
+    private final EnumMap<SupportGroups, List<String>> excluded = new EnumMap<>(SupportGroups.class);
+    private final EnumMap<SupportGroups, String> prefixes = new EnumMap<>(SupportGroups.class);
+    private Integer birthDateFrom;
+    private Integer birthDateTo;
+
+    /**
+     * Конструктор класса. Пустому запросу удовлетворяют все пользователи.
+     * */
+    public UserQuery()
+    {
+    }
+
+    /**
+     * Конструктор класса.
+     * @param parameters объект {@link User}, ненулевые атрибуты которого становятся допустимыми значениями групп.
+     * */
+    public UserQuery(User parameters)
+    {
+        for (SupportGroups group : SupportGroups.values())
+        {
+            String value = XMLUtil.getParameter(parameters, group);
+            if (value != null) include(group, Collections.singletonList(value));
+        }
+    }
+
+    /**
+     * Метод добавления допустимых значений группы.
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param values допустимые значения.
+     * @return текущий объект.
+     * */
+    public UserQuery include(SupportGroups groupName, Collection<String> values)
+    {
+        included.computeIfAbsent(groupName, group -> new ArrayList<>()).addAll(values);
+        return this;
+    }
+
+    /**
+     * Метод добавления исключаемых значений группы.
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param values исключаемые значения.
+     * @return текущий объект.
+     * */
+    public UserQuery exclude(SupportGroups groupName, Collection<String> values)
+    {
+        excluded.computeIfAbsent(groupName, group -> new ArrayList<>()).addAll(values);
+        return this;
+    }
+
+    /**
+     * Метод задания префикса значения группы.
+     * @param groupName объект {@link SupportGroups}, содержащий имя группы имени или фамилии
+     *                  ({@link SupportGroups#firstNameGroup}, {@link SupportGroups#secondNameGroup});
+     * @param prefix префикс значения.
+     * @return текущий объект.
+     * */
+    public UserQuery prefix(SupportGroups groupName, String prefix)
+    {
+        if (groupName == SupportGroups.birthDateGroup)
+        {
+            throw new IllegalArgumentException("Prefix search is supported for first and second names only");
+        }
+        prefixes.put(groupName, prefix);
+        return this;
+    }
+
+    /**
+     * Метод задания диапазона дат рождения.
+     * @param from начало диапазона включительно в днях от 1970-01-01 или null, если диапазон не ограничен снизу;
+     * @param to конец диапазона включительно в днях от 1970-01-01 или null, если диапазон не ограничен сверху.
+     * @return текущий объект.
+     * */
+    public UserQuery birthDateRange(Integer from, Integer to)
+    {
+        this.birthDateFrom = from;
+        this.birthDateTo = to;
+        return this;
+    }
+
+    /**
+     * @return true, если задан диапазон дат рождения.
+     * */
+    public boolean hasBirthDateRange()
+    {
+        return birthDateFrom != null || birthDateTo != null;
+    }
+
+    /**
+     * @return начало диапазона дат рождения в днях от 1970-01-01 или {@link Integer#MIN_VALUE}, если диапазон
+     * не ограничен снизу.
+     * */
+    public int getBirthDateFrom()
+    {
+        return birthDateFrom == null ? Integer.MIN_VALUE : birthDateFrom;
+    }
+
+    /**
+     * @return конец диапазона дат рождения в днях от 1970-01-01 или {@link Integer#MAX_VALUE}, если диапазон
+     * не ограничен сверху.
+     * */
+    public int getBirthDateTo()
+    {
+        return birthDateTo == null ? Integer.MAX_VALUE : birthDateTo;
+    }
+
+    /**
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы.
+     * @return допустимые значения группы или пустой список, если значение группы не ограничено.
+     * */
+    public List<String> getIncluded(SupportGroups groupName)
+    {
+        return included.getOrDefault(groupName, Collections.emptyList());
+    }
+
+    /**
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы.
+     * @return исключаемые значения группы.
+     * */
+    public List<String> getExcluded(SupportGroups groupName)
+    {
+        return excluded.getOrDefault(groupName, Collections.emptyList());
+    }
+
+    /**
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы.
+     * @return префикс значения группы или null, если префикс не задан.
+     * */
+    public String getPrefix(SupportGroups groupName)
+    {
+        return prefixes.get(groupName);
+    }
+
+    /**
+     * @return true, если запрос не содержит ни допустимых, ни исключаемых значений, ни префиксов, ни диапазона
+     * дат рождения.
+     * */
+    public boolean isEmpty()
+    {
+        return included.isEmpty() && excluded.isEmpty() && prefixes.isEmpty() && !hasBirthDateRange();
+    }
+
+    /**
+     * Переопределение методы {@link Object#toString()}.
+     * @return строка {@link String} формата: группа=значения для допустимых и группа!=значения для исключаемых значений,
+     * группа^=префикс для префиксов, birthDateFrom=начало и birthDateTo=конец для диапазона дат рождения.
+     * */
+    @Override
+    public String toString()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (SupportGroups group : SupportGroups.values())
+        {
+            if (included.containsKey(group)) sb.append("\t").append(group).append("=").append(included.get(group));
+            if (excluded.containsKey(group)) sb.append("\t").append(group).append("!=").append(excluded.get(group));
+            if (prefixes.containsKey(group)) sb.append("\t").append(group).append("^=").append(prefixes.get(group));
+        }
+        if (birthDateFrom != null) sb.append("\tbirthDateFrom=").append(DateUtil.format(birthDateFrom));
+        if (birthDateTo != null) sb.append("\tbirthDateTo=").append(DateUtil.format(birthDateTo));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,27 @@
+package application;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Класс предназначен для хранения URI пользователя вместе с информацией о нем в теле ответа.
+ * */
+public class UserResponseBodyClass extends ResponseBodyClass
+{
+    @Getter @Setter private String firstName;
+    @Getter @Setter private String secondName;
+    @Getter @Setter private String birthDate;
+
+    /**
+     * Конструктор класса.
+     * @param id идентификатор пользователя, на основе которого формируется URI;
+     * @param user объект {@link User}, содержащий информацию о пользователе.
+     * */
+    public UserResponseBodyClass(Integer id, User user)
+    {
+        super(id);
+        this.firstName = user.getFirstName();
+        this.secondName = user.getSecondName();
+        this.birthDate = user.getBirthDate();
+    }
+}
@@ -12,6 +12,10 @@ public class XMLProcessException extends CRUDException
     public static final int XML_USER_SEARCH_EXCEPTION = 3;
     public static final int XML_UPDATE_FILE_EXCEPTION = 4;
     public static final int XML_ATTRIBUTE_EXCEPTION = 5;
+    public static final int XML_LOG_EXCEPTION = 6;
+    public static final int XML_USER_DATA_EXCEPTION = 7;
+    public static final int XML_VERSION_CONFLICT_EXCEPTION = 8;
+    public static final int XML_QUEUE_FULL_EXCEPTION = 9;
 
     public XMLProcessException(int inCode, String message)
     {
@@ -0,0 +1,32 @@
+package util;
+
+/**
+ * Интерфейс ограниченного по размеру кэша. Реализации не потокобезопасны, синхронизацию выполняет вызывающий код.
+ * */
+public interface Cache<K, V>
+{
+    /**
+     * @param key ключ.
+     * @return значение или null, если ключа нет в кэше.
+     * */
+    V get(K key);
+    /**
+     * Метод добавления значения в кэш. Если кэш заполнен, одно из значений вытесняется.
+     * @param key ключ;
+     * @param value значение.
+     * */
+    void put(K key, V value);
+    /**
+     * Метод удаления значения из кэша.
+     * @param key ключ.
+     * */
+    void remove(K key);
+    /**
+     * @return количество значений в кэше.
+     * */
+    int size();
+    /**
+     * @return количество значений, вытесненных из кэша или не допущенных в него из-за ограничения размера.
+     * */
+    long getEvictions();
+}
@@ -0,0 +1,87 @@
+package util;
+
+import exceptions.XMLProcessException;
+
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+
+/**
+ * Класс содержит набор статических методов для работы с датами рождения пользователей. В хранилище дата рождения
+ * хранится в формате yyyy-MM-dd (ISO 8601), а в индексе дат рождения - в виде количества дней от 1970-01-01
+ * ({@link LocalDate#toEpochDay()}). При записи принимаются также даты без ведущих нулей (1990-1-2) и в формате
+ * dd.MM.yyyy; такие даты приводятся к формату хранилища.
+ * */
+public class DateUtil
+{
+    private static final DateTimeFormatter[] formats = {
+            DateTimeFormatter.ofPattern("uuuu-M-d").withResolverStyle(ResolverStyle.STRICT),
+            DateTimeFormatter.ofPattern("d.M.uuuu").withResolverStyle(ResolverStyle.STRICT)
+    };
+
+    private DateUtil()
+    {
+    }
+
+    /**
+     * Метод разбора даты.
+     * @param value дата в одном из поддерживаемых форматов.
+     * @return количество дней от 1970-01-01 или null, если value не является датой.
+     * */
+    public static Integer toEpochDay(String value)
+    {
+        if (value == null) return null;
+
+        String trimmed = value.trim();
+        for (DateTimeFormatter format : formats)
+        {
+            try
+            {
+                return (int) LocalDate.parse(trimmed, format).toEpochDay();
+            }
+            catch (DateTimeException e)
+            {
+                // пробуем следующий формат
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param epochDay количество дней от 1970-01-01.
+     * @return дата в формате yyyy-MM-dd.
+     * */
+    public static String format(int epochDay)
+    {
+        return LocalDate.ofEpochDay(epochDay).toString();
+    }
+
+    /**
+     * Метод приведения даты к формату хранилища без проверки.
+     * @param value дата.
+     * @return дата в формате yyyy-MM-dd или исходная строка, если value не является датой.
+     * */
+    public static String canonical(String value)
+    {
+        Integer epochDay = toEpochDay(value);
+        return epochDay == null ? value : format(epochDay);
+    }
+
+    /**
+     * Метод проверки даты рождения и приведения ее к формату хранилища.
+     * @param value дата рождения.
+     * @return дата рождения в формате yyyy-MM-dd.
+     * @exception XMLProcessException throws в случае, если value не является датой или дата рождения еще не наступила.
+     * */
+    public static String normalizeBirthDate(String value) throws XMLProcessException
+    {
+        Integer epochDay = toEpochDay(value);
+        if (epochDay == null || epochDay > LocalDate.now().toEpochDay())
+        {
+            throw new XMLProcessException(XMLProcessException.XML_USER_DATA_EXCEPTION,
+                    new StringBuilder("Birth date must be a past date in yyyy-MM-dd format: ").append(value).toString());
+        }
+        return format(epochDay);
+    }
+}
@@ -0,0 +1,114 @@
+package util;
+
+import exceptions.XMLProcessException;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Класс выделения идентификаторов группы хранилища. Свободные идентификаторы хранятся в битовой карте,
+ * первым выделяется наименьший свободный идентификатор, а если свободных нет - следующий еще не выданный.
+ * Состояние соответствует группам MGID, FNID, SNID, BDID XML хранилища: на позиции
+ * {@link XMLUtil#maxIdValuePosition} хранится следующий еще не выданный идентификатор, на остальных -
+ * свободные идентификаторы в порядке возрастания.
+ * */
+public class IdAllocator
+{
+    private final BitSet free = new BitSet();
+    private int next;
+    private int lowestFree;
+
+    /**
+     * Конструктор класса.
+     * @param ids идентификаторы группы в порядке хранения в XML хранилище.
+     * @exception XMLProcessException throws в случае, если группа не содержит следующего идентификатора.
+     * */
+    public IdAllocator(int[] ids) throws XMLProcessException
+    {
+        if (ids.length == 0)
+        {
+            throw new XMLProcessException(XMLProcessException.XML_FORMAT_EXCEPTION, "ID group is empty");
+        }
+        this.next = ids[XMLUtil.maxIdValuePosition];
+        for (int i = XMLUtil.priorityFreeIdPosition; i < ids.length; i++)
+        {
+            this.free.set(ids[i]);
+        }
+        this.lowestFree = this.free.nextSetBit(0);
+    }
+
+    /**
+     * Метод выделения идентификатора.
+     * @return наименьший свободный идентификатор или следующий еще не выданный идентификатор.
+     * */
+    public int allocate()
+    {
+        if (lowestFree < 0) return next++;
+
+        int id = lowestFree;
+        free.clear(id);
+        lowestFree = free.nextSetBit(id + 1);
+        return id;
+    }
+
+    /**
+     * @return следующий еще не выданный идентификатор. Все идентификаторы, меньшие его, заняты или свободны.
+     * */
+    public int getNext()
+    {
+        return next;
+    }
+
+    /**
+     * Метод занятия заданного идентификатора. Если идентификатор не меньше следующего еще не выданного,
+     * то пропущенные идентификаторы становятся свободными.
+     * @param id занимаемый идентификатор.
+     * @exception XMLProcessException throws в случае, если идентификатор уже занят.
+     * */
+    public void claim(int id) throws XMLProcessException
+    {
+        if (id >= next)
+        {
+            if (id > next && (lowestFree < 0 || next < lowestFree)) lowestFree = next;
+            free.set(next, id);
+            next = id + 1;
+        }
+        else if (free.get(id))
+        {
+            free.clear(id);
+            if (id == lowestFree) lowestFree = free.nextSetBit(id + 1);
+        }
+        else
+        {
+            throw new XMLProcessException(XMLProcessException.XML_FORMAT_EXCEPTION,
+                    new StringBuilder("ID ").append(id).append(" is not free").toString());
+        }
+    }
+
+    /**
+     * Метод освобождения идентификатора.
+     * @param id освобождаемый идентификатор.
+     * */
+    public void release(int id)
+    {
+        free.set(id);
+        if (lowestFree < 0 || id < lowestFree) lowestFree = id;
+    }
+
+    /**
+     * Метод записи идентификаторов группы в XML хранилище.
+     * @param writer объект {@link StorageWriter}, в который записывается группа;
+     * @param groupName имя группы.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public void write(StorageWriter writer, String groupName) throws IOException
+    {
+        writer.startGroup(groupName);
+        writer.id(next);
+        for (int id = free.nextSetBit(0); id >= 0; id = free.nextSetBit(id + 1))
+        {
+            writer.id(id);
+        }
+        writer.endGroup();
+    }
+}
@@ -0,0 +1,717 @@
+package util;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Сжатая битовая карта чисел типа int (по схеме Roaring). Число делится на старшие и младшие 16 бит:
+ * старшие биты являются ключом контейнера, младшие хранятся в контейнере. Контейнер, содержащий не более
+ * {@link IntBitmap#arrayLimit} чисел, хранит их в отсортированном массиве char, иначе - в битовой карте
+ * из 1024 чисел long (8 КБ на 65536 чисел).
+ * <p>Используется как список пользователей, ссылающихся на значение вспомогательной группы хранилища.
+ * Операции {@link IntBitmap#and(IntBitmap)}, {@link IntBitmap#or(IntBitmap)} и {@link IntBitmap#andNot(IntBitmap)}
+ * выполняются для пар контейнеров с одинаковыми ключами, для битовых карт - пословно, и возвращают новую
+ * битовую карту, не изменяя исходные.</p>
+ * */
+public class IntBitmap
+{
+    private static final int arrayLimit = 4096;
+    private static final int bitmapWords = 1024;
+
+    private char[] keys;
+    private Container[] containers;
+    private int size;
+
+    /**
+     * Конструктор класса.
+     * */
+    public IntBitmap()
+    {
+        this(2);
+    }
+
+    private IntBitmap(int capacity)
+    {
+        this.keys = new char[capacity];
+        this.containers = new Container[capacity];
+    }
+
+    /**
+     * Метод добавления числа.
+     * @param value число.
+     * */
+    public void add(int value)
+    {
+        char key = (char) (value >>> 16);
+        int position = find(key);
+        if (position >= 0)
+        {
+            containers[position] = containers[position].add((char) value);
+            return;
+        }
+
+        position = -position - 1;
+        insert(position, key, new ArrayContainer().add((char) value));
+    }
+
+    /**
+     * Метод удаления числа.
+     * @param value число.
+     * */
+    public void remove(int value)
+    {
+        int position = find((char) (value >>> 16));
+        if (position < 0) return;
+
+        Container container = containers[position].remove((char) value);
+        if (container.cardinality() == 0)
+        {
+            System.arraycopy(keys, position + 1, keys, position, size - position - 1);
+            System.arraycopy(containers, position + 1, containers, position, size - position - 1);
+            containers[--size] = null;
+        }
+        else
+        {
+            containers[position] = container;
+        }
+    }
+
+    /**
+     * @param value число.
+     * @return true, если число есть в битовой карте.
+     * */
+    public boolean contains(int value)
+    {
+        int position = find((char) (value >>> 16));
+        return position >= 0 && containers[position].contains((char) value);
+    }
+
+    /**
+     * @return количество чисел в битовой карте.
+     * */
+    public int cardinality()
+    {
+        int cardinality = 0;
+        for (int i = 0; i < size; i++)
+        {
+            cardinality += containers[i].cardinality();
+        }
+        return cardinality;
+    }
+
+    /**
+     * @return true, если битовая карта не содержит чисел.
+     * */
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Метод пересечения битовых карт.
+     * @param other битовая карта.
+     * @return новая битовая карта, содержащая числа, которые есть в обеих битовых картах.
+     * */
+    public IntBitmap and(IntBitmap other)
+    {
+        IntBitmap result = new IntBitmap(Math.max(1, Math.min(size, other.size)));
+        int i = 0;
+        int j = 0;
+        while (i < size && j < other.size)
+        {
+            if (keys[i] < other.keys[j]) i++;
+            else if (keys[i] > other.keys[j]) j++;
+            else
+            {
+                result.append(keys[i], containers[i].and(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Метод объединения битовых карт.
+     * @param other битовая карта.
+     * @return новая битовая карта, содержащая числа, которые есть хотя бы в одной из битовых карт.
+     * */
+    public IntBitmap or(IntBitmap other)
+    {
+        IntBitmap result = new IntBitmap(Math.max(1, size + other.size));
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size)
+        {
+            if (j == other.size || (i < size && keys[i] < other.keys[j]))
+            {
+                result.append(keys[i], containers[i].copy());
+                i++;
+            }
+            else if (i == size || keys[i] > other.keys[j])
+            {
+                result.append(other.keys[j], other.containers[j].copy());
+                j++;
+            }
+            else
+            {
+                result.append(keys[i], containers[i].or(other.containers[j]));
+                i++;
+                j++;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Метод объединения нескольких битовых карт. В отличие от последовательного вызова {@link IntBitmap#or(IntBitmap)}
+     * промежуточные битовые карты не создаются: контейнеры с одинаковыми ключами накапливаются в битовой карте
+     * из 1024 чисел long, поэтому время объединения пропорционально суммарному количеству чисел и контейнеров.
+     * @param bitmaps битовые карты.
+     * @return новая битовая карта, содержащая числа, которые есть хотя бы в одной из битовых карт.
+     * */
+    public static IntBitmap or(Collection<IntBitmap> bitmaps)
+    {
+        IntHashMap<long[]> words = new IntHashMap<>();
+        for (IntBitmap bitmap : bitmaps)
+        {
+            for (int i = 0; i < bitmap.size; i++)
+            {
+                long[] keyWords = words.get(bitmap.keys[i]);
+                if (keyWords == null)
+                {
+                    keyWords = new long[bitmapWords];
+                    words.put(bitmap.keys[i], keyWords);
+                }
+                bitmap.containers[i].orInto(keyWords);
+            }
+        }
+
+        int[] keys = new int[words.size()];
+        int[] count = {0};
+        words.forEach((key, keyWords) -> keys[count[0]++] = key);
+        Arrays.sort(keys);
+
+        IntBitmap result = new IntBitmap(Math.max(1, keys.length));
+        for (int key : keys)
+        {
+            result.append((char) key, new BitmapContainer(words.get(key), 0).normalize());
+        }
+        return result;
+    }
+
+    /**
+     * Метод вычитания битовых карт.
+     * @param other вычитаемая битовая карта.
+     * @return новая битовая карта, содержащая числа этой битовой карты, которых нет в other.
+     * */
+    public IntBitmap andNot(IntBitmap other)
+    {
+        IntBitmap result = new IntBitmap(Math.max(1, size));
+        int j = 0;
+        for (int i = 0; i < size; i++)
+        {
+            while (j < other.size && other.keys[j] < keys[i]) j++;
+            if (j < other.size && other.keys[j] == keys[i])
+            {
+                result.append(keys[i], containers[i].andNot(other.containers[j]));
+            }
+            else
+            {
+                result.append(keys[i], containers[i].copy());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Метод добавления чисел битовой карты в список.
+     * @param values список {@link List}, в который числа добавляются в порядке возрастания.
+     * */
+    public void addTo(List<Integer> values)
+    {
+        addTo(-1, Integer.MAX_VALUE, values);
+    }
+
+    /**
+     * Метод добавления в список чисел битовой карты, больших заданного. Контейнеры с меньшими ключами пропускаются.
+     * @param after число, после которого начинается добавление;
+     * @param limit наибольшее количество добавляемых чисел;
+     * @param values список {@link List}, в который числа добавляются в порядке возрастания.
+     * @return количество добавленных чисел.
+     * */
+    public int addTo(int after, int limit, List<Integer> values)
+    {
+        if (after == Integer.MAX_VALUE) return 0;
+
+        int from = Math.max(0, after + 1);
+        char key = (char) (from >>> 16);
+        int count = 0;
+        for (int i = 0; i < size && count < limit; i++)
+        {
+            if (keys[i] < key) continue;
+            int low = keys[i] == key ? from & 0xFFFF : 0;
+            count += containers[i].addTo(keys[i] << 16, low, limit - count, values);
+        }
+        return count;
+    }
+
+    /**
+     * Метод обхода чисел битовой карты в порядке возрастания без упаковки в {@link Integer}.
+     * @param visitor объект {@link Visitor}, который будет вызван для каждого числа.
+     * */
+    public void forEach(Visitor visitor)
+    {
+        for (int i = 0; i < size; i++)
+        {
+            containers[i].forEach(keys[i] << 16, visitor);
+        }
+    }
+
+    /**
+     * Интерфейс для обхода чисел методом {@link IntBitmap#forEach(Visitor)}.
+     * */
+    public interface Visitor
+    {
+        void visit(int value);
+    }
+
+    private int find(char key)
+    {
+        // последний контейнер проверяется первым: идентификаторы пользователей выделяются в порядке возрастания
+        if (size > 0 && keys[size - 1] == key) return size - 1;
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insert(int position, char key, Container container)
+    {
+        if (size == keys.length)
+        {
+            keys = Arrays.copyOf(keys, size * 2);
+            containers = Arrays.copyOf(containers, size * 2);
+        }
+        System.arraycopy(keys, position, keys, position + 1, size - position);
+        System.arraycopy(containers, position, containers, position + 1, size - position);
+        keys[position] = key;
+        containers[position] = container;
+        size++;
+    }
+
+    private void append(char key, Container container)
+    {
+        if (container.cardinality() == 0) return;
+        insert(size, key, container);
+    }
+
+    /**
+     * Контейнер младших 16 бит чисел с одинаковыми старшими битами. Методы изменения возвращают контейнер,
+     * который следует хранить вместо текущего, так как при переполнении массив заменяется битовой картой и наоборот.
+     * */
+    private static abstract class Container
+    {
+        abstract Container add(char value);
+
+        abstract Container remove(char value);
+
+        abstract boolean contains(char value);
+
+        abstract int cardinality();
+
+        abstract Container and(Container other);
+
+        abstract Container or(Container other);
+
+        abstract Container andNot(Container other);
+
+        abstract Container copy();
+
+        /**
+         * Метод добавления чисел контейнера в битовую карту из 1024 чисел long.
+         * */
+        abstract void orInto(long[] words);
+
+        abstract int addTo(int high, int from, int limit, List<Integer> values);
+
+        abstract void forEach(int high, Visitor visitor);
+    }
+
+    private static final class ArrayContainer extends Container
+    {
+        private char[] content;
+        private int cardinality;
+
+        ArrayContainer()
+        {
+            this(new char[4], 0);
+        }
+
+        ArrayContainer(char[] inContent, int inCardinality)
+        {
+            this.content = inContent;
+            this.cardinality = inCardinality;
+        }
+
+        @Override
+        Container add(char value)
+        {
+            if (cardinality == 0 || content[cardinality - 1] < value)
+            {
+                if (cardinality == arrayLimit) return toBitmap().add(value);
+                ensureCapacity(cardinality + 1);
+                content[cardinality++] = value;
+                return this;
+            }
+
+            int position = Arrays.binarySearch(content, 0, cardinality, value);
+            if (position >= 0) return this;
+            if (cardinality == arrayLimit) return toBitmap().add(value);
+
+            position = -position - 1;
+            ensureCapacity(cardinality + 1);
+            System.arraycopy(content, position, content, position + 1, cardinality - position);
+            content[position] = value;
+            cardinality++;
+            return this;
+        }
+
+        @Override
+        Container remove(char value)
+        {
+            int position = Arrays.binarySearch(content, 0, cardinality, value);
+            if (position < 0) return this;
+
+            System.arraycopy(content, position + 1, content, position, cardinality - position - 1);
+            cardinality--;
+            return this;
+        }
+
+        @Override
+        boolean contains(char value)
+        {
+            return Arrays.binarySearch(content, 0, cardinality, value) >= 0;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other)
+        {
+            char[] result = new char[Math.min(cardinality, other.cardinality())];
+            int count = 0;
+            if (other instanceof ArrayContainer)
+            {
+                ArrayContainer array = (ArrayContainer) other;
+                int i = 0;
+                int j = 0;
+                while (i < cardinality && j < array.cardinality)
+                {
+                    if (content[i] < array.content[j]) i++;
+                    else if (content[i] > array.content[j]) j++;
+                    else
+                    {
+                        result[count++] = content[i];
+                        i++;
+                        j++;
+                    }
+                }
+            }
+            else
+            {
+                for (int i = 0; i < cardinality; i++)
+                {
+                    if (other.contains(content[i])) result[count++] = content[i];
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container or(Container other)
+        {
+            if (other instanceof BitmapContainer) return other.or(this);
+
+            ArrayContainer array = (ArrayContainer) other;
+            if (cardinality + array.cardinality > arrayLimit)
+            {
+                BitmapContainer bitmap = toBitmap();
+                for (int i = 0; i < array.cardinality; i++)
+                {
+                    bitmap.set(array.content[i]);
+                }
+                return bitmap.normalize();
+            }
+
+            char[] result = new char[cardinality + array.cardinality];
+            int count = 0;
+            int i = 0;
+            int j = 0;
+            while (i < cardinality || j < array.cardinality)
+            {
+                if (j == array.cardinality || (i < cardinality && content[i] < array.content[j]))
+                {
+                    result[count++] = content[i++];
+                }
+                else if (i == cardinality || content[i] > array.content[j])
+                {
+                    result[count++] = array.content[j++];
+                }
+                else
+                {
+                    result[count++] = content[i];
+                    i++;
+                    j++;
+                }
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container andNot(Container other)
+        {
+            char[] result = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < cardinality; i++)
+            {
+                if (!other.contains(content[i])) result[count++] = content[i];
+            }
+            return new ArrayContainer(result, count);
+        }
+
+        @Override
+        Container copy()
+        {
+            return new ArrayContainer(Arrays.copyOf(content, cardinality), cardinality);
+        }
+
+        @Override
+        void orInto(long[] words)
+        {
+            for (int i = 0; i < cardinality; i++)
+            {
+                words[content[i] >>> 6] |= 1L << content[i];
+            }
+        }
+
+        @Override
+        int addTo(int high, int from, int limit, List<Integer> values)
+        {
+            int position = Arrays.binarySearch(content, 0, cardinality, (char) from);
+            if (position < 0) position = -position - 1;
+
+            int count = 0;
+            for (int i = position; i < cardinality && count < limit; i++, count++)
+            {
+                values.add(high | content[i]);
+            }
+            return count;
+        }
+
+        @Override
+        void forEach(int high, Visitor visitor)
+        {
+            for (int i = 0; i < cardinality; i++)
+            {
+                visitor.visit(high | content[i]);
+            }
+        }
+
+        private BitmapContainer toBitmap()
+        {
+            BitmapContainer bitmap = new BitmapContainer(new long[bitmapWords], 0);
+            for (int i = 0; i < cardinality; i++)
+            {
+                bitmap.set(content[i]);
+            }
+            return bitmap;
+        }
+
+        private void ensureCapacity(int capacity)
+        {
+            if (capacity <= content.length) return;
+            content = Arrays.copyOf(content, Math.min(arrayLimit, Math.max(capacity, content.length * 2)));
+        }
+    }
+
+    private static final class BitmapContainer extends Container
+    {
+        private final long[] words;
+        private int cardinality;
+
+        BitmapContainer(long[] inWords, int inCardinality)
+        {
+            this.words = inWords;
+            this.cardinality = inCardinality;
+        }
+
+        @Override
+        Container add(char value)
+        {
+            set(value);
+            return this;
+        }
+
+        @Override
+        Container remove(char value)
+        {
+            long mask = 1L << value;
+            if ((words[value >>> 6] & mask) == 0) return this;
+
+            words[value >>> 6] &= ~mask;
+            cardinality--;
+            return cardinality <= arrayLimit ? toArray() : this;
+        }
+
+        @Override
+        boolean contains(char value)
+        {
+            return (words[value >>> 6] & (1L << value)) != 0;
+        }
+
+        @Override
+        int cardinality()
+        {
+            return cardinality;
+        }
+
+        @Override
+        Container and(Container other)
+        {
+            if (other instanceof ArrayContainer) return other.and(this);
+
+            long[] otherWords = ((BitmapContainer) other).words;
+            long[] result = new long[bitmapWords];
+            for (int i = 0; i < bitmapWords; i++)
+            {
+                result[i] = words[i] & otherWords[i];
+            }
+            return new BitmapContainer(result, 0).normalize();
+        }
+
+        @Override
+        Container or(Container other)
+        {
+            long[] result = words.clone();
+            if (other instanceof ArrayContainer)
+            {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++)
+                {
+                    result[array.content[i] >>> 6] |= 1L << array.content[i];
+                }
+            }
+            else
+            {
+                long[] otherWords = ((BitmapContainer) other).words;
+                for (int i = 0; i < bitmapWords; i++)
+                {
+                    result[i] |= otherWords[i];
+                }
+            }
+            return new BitmapContainer(result, 0).normalize();
+        }
+
+        @Override
+        Container andNot(Container other)
+        {
+            long[] result = words.clone();
+            if (other instanceof ArrayContainer)
+            {
+                ArrayContainer array = (ArrayContainer) other;
+                for (int i = 0; i < array.cardinality; i++)
+                {
+                    result[array.content[i] >>> 6] &= ~(1L << array.content[i]);
+                }
+            }
+            else
+            {
+                long[] otherWords = ((BitmapContainer) other).words;
+                for (int i = 0; i < bitmapWords; i++)
+                {
+                    result[i] &= ~otherWords[i];
+                }
+            }
+            return new BitmapContainer(result, 0).normalize();
+        }
+
+        @Override
+        Container copy()
+        {
+            return new BitmapContainer(words.clone(), cardinality);
+        }
+
+        @Override
+        void orInto(long[] otherWords)
+        {
+            for (int i = 0; i < bitmapWords; i++)
+            {
+                otherWords[i] |= words[i];
+            }
+        }
+
+        @Override
+        int addTo(int high, int from, int limit, List<Integer> values)
+        {
+            int count = 0;
+            for (int i = from >>> 6; i < bitmapWords && count < limit; i++)
+            {
+                long word = i == from >>> 6 ? words[i] & (-1L << from) : words[i];
+                for (; word != 0 && count < limit; word &= word - 1, count++)
+                {
+                    values.add(high | (i << 6) | Long.numberOfTrailingZeros(word));
+                }
+            }
+            return count;
+        }
+
+        @Override
+        void forEach(int high, Visitor visitor)
+        {
+            for (int i = 0; i < bitmapWords; i++)
+            {
+                for (long word = words[i]; word != 0; word &= word - 1)
+                {
+                    visitor.visit(high | (i << 6) | Long.numberOfTrailingZeros(word));
+                }
+            }
+        }
+
+        private void set(char value)
+        {
+            long mask = 1L << value;
+            if ((words[value >>> 6] & mask) != 0) return;
+
+            words[value >>> 6] |= mask;
+            cardinality++;
+        }
+
+        private Container normalize()
+        {
+            int count = 0;
+            for (long word : words)
+            {
+                count += Long.bitCount(word);
+            }
+            cardinality = count;
+            return cardinality <= arrayLimit ? toArray() : this;
+        }
+
+        private ArrayContainer toArray()
+        {
+            char[] content = new char[cardinality];
+            int count = 0;
+            for (int i = 0; i < bitmapWords; i++)
+            {
+                for (long word = words[i]; word != 0; word &= word - 1)
+                {
+                    content[count++] = (char) ((i << 6) | Long.numberOfTrailingZeros(word));
+                }
+            }
+            return new ArrayContainer(content, count);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Хеш таблица с ключами примитивного типа int и открытой адресацией (линейное пробирование).
+ * Позволяет избежать упаковки ключей в {@link Integer} при поиске элементов хранилища по идентификатору.
+ * @param <V> тип хранимых значений.
+ * */
+public class IntHashMap<V>
+{
+    private static final int defaultCapacity = 16;
+    private static final float loadFactor = 0.5f;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int threshold;
+
+    /**
+     * Конструктор класса.
+     * */
+    public IntHashMap()
+    {
+        this(defaultCapacity);
+    }
+
+    /**
+     * Конструктор класса.
+     * @param expectedSize ожидаемое количество элементов.
+     * */
+    public IntHashMap(int expectedSize)
+    {
+        int capacity = defaultCapacity;
+        while (capacity * loadFactor < expectedSize) capacity <<= 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Метод получения значения по ключу.
+     * @param key ключ.
+     * @return найденное значение или null, если значения с таким ключом нет.
+     * */
+    @SuppressWarnings("unchecked")
+    public V get(int key)
+    {
+        int mask = keys.length - 1;
+        for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask)
+        {
+            if (keys[i] == key) return (V) values[i];
+        }
+        return null;
+    }
+
+    /**
+     * Метод проверки наличия ключа.
+     * @param key ключ.
+     * @return true, если значение с таким ключом есть.
+     * */
+    public boolean containsKey(int key)
+    {
+        return get(key) != null;
+    }
+
+    /**
+     * Метод добавления значения по ключу.
+     * @param key ключ;
+     * @param value значение, не может быть null.
+     * @return предыдущее значение или null.
+     * */
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value)
+    {
+        if (value == null) throw new IllegalArgumentException("IntHashMap doesn't support null values");
+
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (; values[i] != null; i = (i + 1) & mask)
+        {
+            if (keys[i] == key)
+            {
+                V previous = (V) values[i];
+                values[i] = value;
+                return previous;
+            }
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        if (++size > threshold) resize(keys.length << 1);
+        return null;
+    }
+
+    /**
+     * Метод удаления значения по ключу.
+     * @param key ключ.
+     * @return удаленное значение или null, если значения с таким ключом нет.
+     * */
+    @SuppressWarnings("unchecked")
+    public V remove(int key)
+    {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        for (; values[i] != null; i = (i + 1) & mask)
+        {
+            if (keys[i] == key) break;
+        }
+        if (values[i] == null) return null;
+
+        V previous = (V) values[i];
+        values[i] = null;
+        size--;
+
+        // сдвигаем следующие элементы цепочки, чтобы не оставлять "дыр" при поиске
+        for (int j = (i + 1) & mask; values[j] != null; j = (j + 1) & mask)
+        {
+            int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - i) & mask))
+            {
+                keys[i] = keys[j];
+                values[i] = values[j];
+                values[j] = null;
+                i = j;
+            }
+        }
+        return previous;
+    }
+
+    /**
+     * Метод обхода всех элементов.
+     * @param visitor объект {@link Visitor}, который будет вызван для каждой пары ключ-значение.
+     * */
+    @SuppressWarnings("unchecked")
+    public void forEach(Visitor<V> visitor)
+    {
+        for (int i = 0; i < keys.length; i++)
+        {
+            if (values[i] != null) visitor.visit(keys[i], (V) values[i]);
+        }
+    }
+
+    /**
+     * @return количество элементов.
+     * */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Метод удаления всех элементов.
+     * */
+    public void clear()
+    {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    private void resize(int capacity)
+    {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(capacity);
+
+        int mask = capacity - 1;
+        for (int j = 0; j < oldKeys.length; j++)
+        {
+            if (oldValues[j] == null) continue;
+            int i = hash(oldKeys[j]) & mask;
+            while (values[i] != null) i = (i + 1) & mask;
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        threshold = (int) (capacity * loadFactor);
+    }
+
+    /**
+     * Интерфейс для обхода элементов методом {@link IntHashMap#forEach(Visitor)}.
+     * @param <V> тип хранимых значений.
+     * */
+    public interface Visitor<V>
+    {
+        void visit(int key, V value);
+    }
+
+    private static int hash(int key)
+    {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
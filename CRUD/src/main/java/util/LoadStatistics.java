@@ -0,0 +1,51 @@
+package util;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+/**
+ * Класс для измерения времени загрузки хранилища и потребления памяти кучи во время загрузки.
+ * Измерение начинается при создании объекта и завершается вызовом {@link LoadStatistics#finish(int)}.
+ * */
+public class LoadStatistics
+{
+    private static final long megabyte = 1024 * 1024;
+
+    private final long start;
+
+    /**
+     * Конструктор класса. Сбрасывает пиковые значения использования пулов памяти кучи.
+     * */
+    public LoadStatistics()
+    {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+        this.start = System.nanoTime();
+    }
+
+    /**
+     * Метод завершения измерения.
+     * @param users количество загруженных пользователей.
+     * @return строка {@link String} с количеством пользователей, временем загрузки, текущим и пиковым
+     * использованием памяти кучи.
+     * */
+    public String finish(int users)
+    {
+        long time = (System.nanoTime() - start) / 1000000;
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+        {
+            if (pool.getType() == MemoryType.HEAP) peak += pool.getPeakUsage().getUsed();
+        }
+        Runtime runtime = Runtime.getRuntime();
+
+        return new StringBuilder("users: ").append(users)
+                .append("\ttime: ").append(time).append(" ms")
+                .append("\theap used: ").append((runtime.totalMemory() - runtime.freeMemory()) / megabyte).append(" MB")
+                .append("\tpeak heap: ").append(peak / megabyte).append(" MB").toString();
+    }
+}
@@ -0,0 +1,61 @@
+package util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Класс кэша, вытесняющего значение, к которому дольше всего не обращались. Основан на {@link LinkedHashMap}
+ * с порядком доступа.
+ * */
+public class LruCache<K, V> implements Cache<K, V>
+{
+    private final Map<K, V> entries;
+    private long evictions;
+
+    /**
+     * Конструктор класса.
+     * @param capacity наибольшее количество значений в кэше.
+     * */
+    public LruCache(int capacity)
+    {
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest)
+            {
+                if (size() <= capacity) return false;
+                evictions++;
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public V get(K key)
+    {
+        return entries.get(key);
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        entries.put(key, value);
+    }
+
+    @Override
+    public void remove(K key)
+    {
+        entries.remove(key);
+    }
+
+    @Override
+    public int size()
+    {
+        return entries.size();
+    }
+
+    @Override
+    public long getEvictions()
+    {
+        return evictions;
+    }
+}
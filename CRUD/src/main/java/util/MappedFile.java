@@ -0,0 +1,139 @@
+package util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Класс файла, отображенного в память ({@link MappedByteBuffer}). Чтение и запись выполняются по абсолютным
+ * позициям, поэтому чтение из нескольких потоков не требует блокировки. При нехватке места файл увеличивается
+ * вдвое и отображается заново; ранее полученное отображение остается действительным, поэтому поток,
+ * читающий без блокировки, в худшем случае получит исключение выхода за границу и повторит чтение.
+ * */
+public class MappedFile implements Closeable
+{
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private volatile MappedByteBuffer buffer;
+
+    /**
+     * Конструктор класса. Открывает файл и отображает его в память. Если файл меньше заданного размера,
+     * он увеличивается.
+     * @param path путь к файлу;
+     * @param initialSize наименьший размер файла в байтах.
+     * @exception IOException throws в случае ошибки открытия или отображения файла.
+     * */
+    public MappedFile(String path, int initialSize) throws IOException
+    {
+        this.file = new RandomAccessFile(path, "rw");
+        this.channel = this.file.getChannel();
+        map(Math.max(initialSize, (int) Math.min(this.channel.size(), Integer.MAX_VALUE)));
+    }
+
+    /**
+     * @return размер отображенной части файла в байтах.
+     * */
+    public int size()
+    {
+        return buffer.capacity();
+    }
+
+    /**
+     * Метод увеличения файла. Файл увеличивается не менее чем вдвое.
+     * @param size необходимый размер файла в байтах.
+     * @exception IOException throws в случае ошибки отображения файла или если размер превышает 2 ГБ.
+     * */
+    public void ensureCapacity(long size) throws IOException
+    {
+        if (size <= buffer.capacity()) return;
+        if (size > Integer.MAX_VALUE) throw new IOException("Mapped file can't exceed 2 GB");
+
+        map((int) Math.min(Math.max(size, 2L * buffer.capacity()), Integer.MAX_VALUE));
+    }
+
+    public int getInt(int position)
+    {
+        return buffer.getInt(position);
+    }
+
+    public void putInt(int position, int value)
+    {
+        buffer.putInt(position, value);
+    }
+
+    public long getLong(int position)
+    {
+        return buffer.getLong(position);
+    }
+
+    public void putLong(int position, long value)
+    {
+        buffer.putLong(position, value);
+    }
+
+    /**
+     * @param position позиция первого байта;
+     * @param length количество байтов.
+     * @return массив байтов файла.
+     * */
+    public byte[] getBytes(int position, int length)
+    {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Метод сравнения байтов файла с массивом байтов без копирования.
+     * @param position позиция первого байта;
+     * @param bytes массив байтов.
+     * @return true, если байты файла, начиная с позиции, совпадают с массивом.
+     * */
+    public boolean matches(int position, byte[] bytes)
+    {
+        MappedByteBuffer current = buffer;
+        for (int i = 0; i < bytes.length; i++)
+        {
+            if (current.get(position + i) != bytes[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Метод записи массива байтов в файл.
+     * @param position позиция первого байта.
+     * */
+    public void putBytes(int position, byte[] bytes)
+    {
+        ByteBuffer view = buffer.duplicate();
+        view.position(position);
+        view.put(bytes);
+    }
+
+    /**
+     * Метод сброса измененных страниц файла на диск.
+     * */
+    public void force()
+    {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        buffer.force();
+        channel.close();
+        file.close();
+    }
+
+    private void map(int size) throws IOException
+    {
+        if (channel.size() < size) file.setLength(size);
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+}
@@ -0,0 +1,176 @@
+package util;
+
+import exceptions.XMLProcessException;
+import xml.IDGroups;
+import xml.SupportGroups;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * Класс потокового (StAX) чтения файла XML хранилища без построения DOM.
+ * Каждый элемент групп хранилища передается объекту {@link Visitor} сразу после чтения,
+ * что позволяет загружать хранилище в компактные структуры данных.
+ * */
+public class StorageReader
+{
+    private static Logger logger = LogManager.getLogger(StorageReader.class);
+
+    private static final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+
+    /**
+     * Метод чтения файла XML хранилища.
+     * @param path путь к файлу XML хранилища;
+     * @param visitor объект {@link Visitor}, которому передаются прочитанные элементы.
+     * @exception XMLProcessException throws в случае ошибки чтения файла или нарушения структуры XML хранилища.
+     * */
+    public static void read(String path, Visitor visitor) throws XMLProcessException
+    {
+        try (InputStream input = new BufferedInputStream(Files.newInputStream(Paths.get(path)), 1 << 16))
+        {
+            XMLStreamReader reader = inputFactory.createXMLStreamReader(input);
+            try
+            {
+                read(reader, visitor);
+            }
+            finally
+            {
+                reader.close();
+            }
+        }
+        catch (IOException | XMLStreamException | NumberFormatException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_INIT_EXCEPTION, e);
+        }
+    }
+
+    private static void read(XMLStreamReader reader, Visitor visitor) throws XMLStreamException, XMLProcessException
+    {
+        int depth = 0;
+        String group = null;
+        SupportGroups supportGroup = null;
+        IDGroups idGroup = null;
+        int position = 0;
+
+        while (reader.hasNext())
+        {
+            int event = reader.next();
+
+            if (event == XMLStreamConstants.END_ELEMENT)
+            {
+                depth--;
+                continue;
+            }
+            if (event != XMLStreamConstants.START_ELEMENT) continue;
+
+            depth++;
+            if (depth == 1)
+            {
+                if (!reader.getLocalName().equals(XMLUtil.root))
+                {
+                    throw new XMLProcessException(XMLProcessException.XML_FORMAT_EXCEPTION,
+                            new StringBuilder("Unexpected root element: ").append(reader.getLocalName()).toString());
+                }
+            }
+            else if (depth == 2)
+            {
+                group = reader.getLocalName();
+                supportGroup = supportGroup(group);
+                idGroup = idGroup(group);
+                position = 0;
+                visitor.group(group);
+                if (XMLUtil.mainGroup.equals(group))
+                {
+                    visitor.revision(parseVersion(reader.getAttributeValue(null, XMLUtil.versionField)));
+                }
+            }
+            else if (depth == 3)
+            {
+                if (idGroup != null)
+                {
+                    visitor.freeId(idGroup, position++, Integer.parseInt(reader.getElementText().trim()));
+                    depth--;
+                }
+                else if (supportGroup != null)
+                {
+                    visitor.item(supportGroup,
+                            Integer.parseInt(reader.getAttributeValue(null, XMLUtil.idField)),
+                            reader.getAttributeValue(null, XMLUtil.mainValueField));
+                }
+                else if (XMLUtil.mainGroup.equals(group))
+                {
+                    visitor.user(Integer.parseInt(reader.getAttributeValue(null, XMLUtil.idField)),
+                            Integer.parseInt(reader.getAttributeValue(null, XMLUtil.firstNameIdField)),
+                            Integer.parseInt(reader.getAttributeValue(null, XMLUtil.secondNameIdField)),
+                            Integer.parseInt(reader.getAttributeValue(null, XMLUtil.birthDateIdField)),
+                            parseVersion(reader.getAttributeValue(null, XMLUtil.versionField)));
+                }
+            }
+        }
+    }
+
+    private static long parseVersion(String value)
+    {
+        return value == null ? 0 : Long.parseLong(value);
+    }
+
+    private static SupportGroups supportGroup(String groupName)
+    {
+        for (SupportGroups group : SupportGroups.values())
+        {
+            if (group.toString().equals(groupName)) return group;
+        }
+        return null;
+    }
+
+    private static IDGroups idGroup(String groupName)
+    {
+        for (IDGroups group : IDGroups.values())
+        {
+            if (group.toString().equals(groupName)) return group;
+        }
+        return null;
+    }
+
+    /**
+     * Интерфейс обработки элементов, прочитанных из файла XML хранилища.
+     * */
+    public interface Visitor
+    {
+        /**
+         * Вызывается в начале каждой группы хранилища.
+         * @param groupName имя группы.
+         * */
+        void group(String groupName) throws XMLProcessException;
+        /**
+         * Вызывается для счетчика изменений хранилища, хранящегося в атрибуте группы mainGroup.
+         * @param revision счетчик изменений или 0, если он не записан.
+         * */
+        void revision(long revision) throws XMLProcessException;
+        /**
+         * Вызывается для каждого пользователя группы mainGroup.
+         * @param version версия пользователя или 0, если она не записана.
+         * */
+        void user(int id, int fid, int sid, int bid, long version) throws XMLProcessException;
+        /**
+         * Вызывается для каждого элемента вспомогательной группы.
+         * */
+        void item(SupportGroups groupName, int id, String value) throws XMLProcessException;
+        /**
+         * Вызывается для каждого идентификатора групп MGID, FNID, SNID, BDID.
+         * @param position позиция идентификатора в группе. На позиции {@link XMLUtil#maxIdValuePosition}
+         *                 хранится следующий еще не выданный идентификатор, на остальных - свободные идентификаторы.
+         * */
+        void freeId(IDGroups groupName, int position, int id) throws XMLProcessException;
+    }
+}
@@ -0,0 +1,348 @@
+package util;
+
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Класс потоковой записи файла XML хранилища.
+ * Данные записываются через буфер во временный файл, который после вызова {@link StorageWriter#commit()}
+ * сбрасывается на диск и атомарно заменяет файл хранилища, поэтому при сбое записи прежний файл остается целым.
+ * Формат вывода совпадает с выводом {@link javax.xml.transform.Transformer}: заголовок
+ * {@code <?xml version="1.0" encoding="UTF-8" standalone="no"?>}, без отступов, пустые элементы закрываются как
+ * {@code <name/>}, атрибуты пользователей записываются в алфавитном порядке.
+ * */
+public class StorageWriter implements Closeable
+{
+    private static Logger logger = LogManager.getLogger(StorageWriter.class);
+
+    private static final byte[] header = "<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>".getBytes();
+    private static final String tempSuffix = ".tmp";
+    private static final int bufferSize = 1 << 16;
+
+    private final Path path;
+    private final Path tempPath;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+    private final String[] elements = new String[8];
+    private int depth;
+    private boolean startTagOpen;
+    private boolean committed;
+
+    /**
+     * Конструктор класса. Создает временный файл рядом с файлом хранилища и записывает в него заголовок и
+     * открывающий тег корневого элемента.
+     * @param inPath путь к XML файлу хранилища.
+     * @exception IOException throws в случае ошибки создания временного файла.
+     * */
+    public StorageWriter(String inPath) throws IOException
+    {
+        this.path = Paths.get(inPath).toAbsolutePath();
+        this.tempPath = Paths.get(this.path.toString() + tempSuffix);
+        this.channel = FileChannel.open(this.tempPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.buffer.put(header);
+        startElement(XMLUtil.root);
+    }
+
+    /**
+     * Метод записи XML хранилища, содержащегося в {@link org.w3c.dom.Document}, в файл.
+     * @param root корневой элемент XML хранилища;
+     * @param path путь к XML файлу хранилища.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public static void write(Element root, String path) throws IOException
+    {
+        try (StorageWriter writer = new StorageWriter(path))
+        {
+            for (Node group = root.getFirstChild(); group != null; group = group.getNextSibling())
+            {
+                writer.node(group);
+            }
+            writer.commit();
+        }
+    }
+
+    /**
+     * Метод записи открывающего тега группы хранилища.
+     * @param groupName имя группы.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public void startGroup(String groupName) throws IOException
+    {
+        startElement(groupName);
+    }
+
+    /**
+     * Метод записи открывающего тега группы хранилища с числовым атрибутом.
+     * @param groupName имя группы;
+     * @param attributeName имя атрибута;
+     * @param value значение атрибута.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public void startGroup(String groupName, String attributeName, long value) throws IOException
+    {
+        startElement(groupName);
+        attribute(attributeName, Long.toString(value));
+    }
+
+    /**
+     * Метод записи закрывающего тега группы хранилища.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public void endGroup() throws IOException
+    {
+        endElement();
+    }
+
+    /**
+     * Метод записи пользователя группы mainGroup.
+     * @param version версия пользователя. Версия 0 (пользователь не изменялся с момента появления версий)
+     *                не записывается.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public void user(int id, int fid, int sid, int bid, long version) throws IOException
+    {
+        startElement(XMLUtil.baseStorageItem);
+        attribute(XMLUtil.birthDateIdField, bid);
+        attribute(XMLUtil.firstNameIdField, fid);
+        attribute(XMLUtil.idField, id);
+        attribute(XMLUtil.secondNameIdField, sid);
+        if (version > 0) attribute(XMLUtil.versionField, Long.toString(version));
+        endElement();
+    }
+
+    /**
+     * Метод записи элемента вспомогательной группы.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public void item(int id, String value) throws IOException
+    {
+        startElement(XMLUtil.baseStorageItem);
+        attribute(XMLUtil.idField, id);
+        attribute(XMLUtil.mainValueField, value);
+        endElement();
+    }
+
+    /**
+     * Метод записи идентификатора группы MGID, FNID, SNID или BDID.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public void id(int value) throws IOException
+    {
+        startElement(XMLUtil.idField);
+        closeStartTag();
+        ensure(11);
+        ascii(Integer.toString(value));
+        endElement();
+    }
+
+    /**
+     * Метод завершения записи. Записывает закрывающий тег корневого элемента, сбрасывает временный файл на диск
+     * и атомарно переименовывает его в файл хранилища.
+     * @exception IOException throws в случае ошибки записи или переименования файла.
+     * */
+    public void commit() throws IOException
+    {
+        while (depth > 0) endElement();
+        drain();
+        channel.force(true);
+        channel.close();
+
+        Files.move(tempPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        forceDirectory();
+        committed = true;
+    }
+
+    /**
+     * Метод закрытия файла. Если запись не была завершена методом {@link StorageWriter#commit()},
+     * временный файл удаляется, а файл хранилища остается без изменений.
+     * */
+    @Override
+    public void close() throws IOException
+    {
+        if (committed) return;
+
+        channel.close();
+        Files.deleteIfExists(tempPath);
+    }
+
+    /**
+     * Метод записи узла DOM вместе с дочерними узлами.
+     * @param node узел {@link Node}, элемент или текст.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public void node(Node node) throws IOException
+    {
+        if (node.getNodeType() == Node.ELEMENT_NODE)
+        {
+            startElement(node.getNodeName());
+            NamedNodeMap attributes = node.getAttributes();
+            for (int i = 0; i < attributes.getLength(); i++)
+            {
+                Attr attribute = (Attr) attributes.item(i);
+                attribute(attribute.getName(), attribute.getValue());
+            }
+            for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling())
+            {
+                node(child);
+            }
+            endElement();
+        }
+        else if (node.getNodeType() == Node.TEXT_NODE)
+        {
+            closeStartTag();
+            text(node.getNodeValue(), false);
+        }
+    }
+
+    private void startElement(String name) throws IOException
+    {
+        closeStartTag();
+        ensure(name.length() + 1);
+        buffer.put((byte) '<');
+        ascii(name);
+        elements[depth++] = name;
+        startTagOpen = true;
+    }
+
+    private void endElement() throws IOException
+    {
+        String name = elements[--depth];
+        if (startTagOpen)
+        {
+            ensure(2);
+            buffer.put((byte) '/').put((byte) '>');
+            startTagOpen = false;
+            return;
+        }
+        ensure(name.length() + 3);
+        buffer.put((byte) '<').put((byte) '/');
+        ascii(name);
+        buffer.put((byte) '>');
+    }
+
+    private void closeStartTag() throws IOException
+    {
+        if (!startTagOpen) return;
+        ensure(1);
+        buffer.put((byte) '>');
+        startTagOpen = false;
+    }
+
+    private void attribute(String name, int value) throws IOException
+    {
+        attribute(name, Integer.toString(value));
+    }
+
+    private void attribute(String name, String value) throws IOException
+    {
+        ensure(name.length() + 3);
+        buffer.put((byte) ' ');
+        ascii(name);
+        buffer.put((byte) '=').put((byte) '"');
+        text(value, true);
+        ensure(1);
+        buffer.put((byte) '"');
+    }
+
+    private void text(String value, boolean attribute) throws IOException
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            ensure(12);
+            if (c >= 0x20 && c < 0x80)
+            {
+                switch (c)
+                {
+                    case '&': ascii("&amp;"); break;
+                    case '<': ascii("&lt;"); break;
+                    case '>': ascii("&gt;"); break;
+                    case '"':
+                        if (attribute) ascii("&quot;");
+                        else buffer.put((byte) c);
+                        break;
+                    default: buffer.put((byte) c);
+                }
+            }
+            else if (c < 0x20)
+            {
+                if (!attribute && (c == '\t' || c == '\n')) buffer.put((byte) c);
+                else reference(c);
+            }
+            else if (c < 0x800)
+            {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+            else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1)))
+            {
+                reference(Character.toCodePoint(c, value.charAt(++i)));
+            }
+            else
+            {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    private void reference(int codePoint)
+    {
+        ascii("&#");
+        ascii(Integer.toString(codePoint));
+        buffer.put((byte) ';');
+    }
+
+    private void ascii(String value)
+    {
+        for (int i = 0; i < value.length(); i++)
+        {
+            buffer.put((byte) value.charAt(i));
+        }
+    }
+
+    private void ensure(int length) throws IOException
+    {
+        if (buffer.remaining() < length) drain();
+    }
+
+    private void drain() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining()) channel.write(buffer);
+        buffer.clear();
+    }
+
+    private void forceDirectory()
+    {
+        Path directory = path.getParent();
+        if (directory == null) return;
+
+        try (FileChannel directoryChannel = FileChannel.open(directory, StandardOpenOption.READ))
+        {
+            directoryChannel.force(true);
+        }
+        catch (IOException e)
+        {
+            // не все платформы позволяют открыть каталог для синхронизации
+            logger.debug(e);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Класс хранилища строк вне кучи. Строки хранятся в буфере {@link ByteBuffer#allocateDirect(int)} в виде длины
+ * в байтах и байтов UTF-8 и дописываются в конец буфера; смещение строки в буфере хранится в массиве int, индексом
+ * в котором является идентификатор строки. Идентификатор строки по ее значению ищется в таблице {@link StringIndex}.
+ * Поэтому строки не занимают места в куче и не обходятся сборщиком мусора, а объект {@link String} создается
+ * только при чтении значения.
+ * <p>При нехватке места буфер увеличивается вдвое. Место, занятое удаленными строками, освобождается, когда его
+ * становится больше, чем места, занятого действующими строками: действующие строки переписываются в новый буфер.</p>
+ * <p>Изменение выполняется под блокировкой записи хранилища, чтение - под блокировкой чтения или без блокировки
+ * ({@link xml.StorageHandler#optimisticRead}). Прежние буфер и массив смещений остаются действительными, поэтому
+ * читающий без блокировки поток в худшем случае получит неверную строку или исключение, и чтение будет повторено.</p>
+ * */
+public class StringArena implements StringIndex.Source
+{
+    private static final int defaultCapacity = 1 << 16;
+    private static final int compactThreshold = 1 << 20;
+
+    private ByteBuffer data;
+    private int[] offsets;
+    private int end;
+    private int live;
+    private final StringIndex index;
+
+    /**
+     * Конструктор класса.
+     * @param expectedSize ожидаемое количество строк.
+     * */
+    public StringArena(int expectedSize)
+    {
+        this.data = ByteBuffer.allocateDirect(defaultCapacity);
+        this.offsets = new int[Math.max(expectedSize, 16)];
+        Arrays.fill(this.offsets, -1);
+        this.index = new StringIndex(this, expectedSize);
+    }
+
+    /**
+     * @param value строка.
+     * @return идентификатор строки или -1, если строки нет в хранилище.
+     * */
+    public int find(String value)
+    {
+        byte[] bytes = StringIndex.encode(value);
+        return index.get(bytes, StringIndex.hash(bytes));
+    }
+
+    /**
+     * @param id идентификатор строки.
+     * @return строка или null, если строки с таким идентификатором нет.
+     * @exception IllegalStateException throws в случае, если строка изменяется во время чтения без блокировки.
+     * */
+    public String get(int id)
+    {
+        int[] currentOffsets = offsets;
+        if (id < 0 || id >= currentOffsets.length || currentOffsets[id] < 0) return null;
+
+        ByteBuffer view = data.duplicate();
+        int offset = currentOffsets[id];
+        int length = view.getInt(offset);
+        if (length < 0 || offset + 4 + length > view.capacity())
+        {
+            throw new IllegalStateException("String arena was modified during read");
+        }
+        byte[] bytes = new byte[length];
+        view.position(offset + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Метод добавления строки. Строки с таким значением не должно быть в хранилище.
+     * @param id свободный идентификатор строки;
+     * @param value строка.
+     * */
+    public void put(int id, String value)
+    {
+        byte[] bytes = StringIndex.encode(value);
+        ensureCapacity(id + 1, end + 4 + bytes.length);
+
+        data.putInt(end, bytes.length);
+        ByteBuffer view = data.duplicate();
+        view.position(end + 4);
+        view.put(bytes);
+        offsets[id] = end;
+        end += 4 + bytes.length;
+        live += 4 + bytes.length;
+        index.put(id, StringIndex.hash(bytes));
+    }
+
+    /**
+     * Метод удаления строки.
+     * @param id идентификатор строки.
+     * */
+    public void remove(int id)
+    {
+        String value = get(id);
+        if (value == null) return;
+
+        byte[] bytes = StringIndex.encode(value);
+        index.remove(id, StringIndex.hash(bytes));
+        offsets[id] = -1;
+        live -= 4 + bytes.length;
+
+        int garbage = end - live;
+        if (garbage > compactThreshold && garbage > live) compact();
+    }
+
+    /**
+     * @return количество строк.
+     * */
+    public int size()
+    {
+        return index.size();
+    }
+
+    /**
+     * @return количество байтов буфера вне кучи.
+     * */
+    public int capacity()
+    {
+        return data.capacity();
+    }
+
+    @Override
+    public boolean matches(int id, byte[] value)
+    {
+        ByteBuffer currentData = data;
+        int offset = offsets[id];
+        if (offset < 0 || currentData.getInt(offset) != value.length) return false;
+
+        for (int i = 0; i < value.length; i++)
+        {
+            if (currentData.get(offset + 4 + i) != value[i]) return false;
+        }
+        return true;
+    }
+
+    private void ensureCapacity(int idCapacity, long byteCapacity)
+    {
+        if (idCapacity > offsets.length)
+        {
+            int length = offsets.length;
+            int[] newOffsets = Arrays.copyOf(offsets, Math.max(idCapacity, length * 2));
+            Arrays.fill(newOffsets, length, newOffsets.length, -1);
+            offsets = newOffsets;
+        }
+        if (byteCapacity <= data.capacity()) return;
+        if (byteCapacity > Integer.MAX_VALUE) throw new IllegalStateException("String arena can't exceed 2 GB");
+
+        ByteBuffer newData = ByteBuffer.allocateDirect((int) Math.min(Math.max(byteCapacity, 2L * data.capacity()),
+                Integer.MAX_VALUE));
+        ByteBuffer view = data.duplicate();
+        view.limit(end);
+        view.position(0);
+        newData.put(view);
+        data = newData;
+    }
+
+    private void compact()
+    {
+        ByteBuffer newData = ByteBuffer.allocateDirect(Math.max(defaultCapacity, 2 * live));
+        int[] newOffsets = new int[offsets.length];
+        Arrays.fill(newOffsets, -1);
+
+        int newEnd = 0;
+        for (int id = 0; id < offsets.length; id++)
+        {
+            if (offsets[id] < 0) continue;
+
+            int length = 4 + data.getInt(offsets[id]);
+            ByteBuffer view = data.duplicate();
+            view.limit(offsets[id] + length);
+            view.position(offsets[id]);
+            newData.put(view);
+            newOffsets[id] = newEnd;
+            newEnd += length;
+        }
+        data = newData;
+        offsets = newOffsets;
+        end = newEnd;
+    }
+}
@@ -0,0 +1,179 @@
+package util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Хеш таблица идентификаторов строк с открытой адресацией (линейное пробирование). Сами строки в таблице не
+ * хранятся: таблица содержит только идентификаторы и хеши строк, а сравнение искомой строки со строкой,
+ * хранящейся вне кучи, выполняет объект {@link Source}. Поэтому поиск идентификатора строки не создает
+ * объектов, кроме массива байтов искомой строки в кодировке UTF-8.
+ * <p>Используется словарями значений вспомогательных групп хранилища ({@link StringArena},
+ * {@link xml.MappedDictionary}) вместо {@link java.util.HashMap} из строк в идентификаторы.</p>
+ * */
+public class StringIndex
+{
+    private static final int defaultCapacity = 16;
+    private static final float loadFactor = 0.5f;
+
+    private final Source source;
+    /** Пары (хеш строки, идентификатор строки + 1) в соседних ячейках; 0 во второй ячейке - пустая позиция. */
+    private int[] table;
+    private int size;
+    private int threshold;
+
+    /**
+     * Конструктор класса.
+     * @param inSource объект {@link Source}, сравнивающий строки с заданными идентификаторами с искомой строкой;
+     * @param expectedSize ожидаемое количество строк.
+     * */
+    public StringIndex(Source inSource, int expectedSize)
+    {
+        this.source = inSource;
+        int capacity = defaultCapacity;
+        while (capacity * loadFactor < expectedSize) capacity <<= 1;
+        allocate(capacity);
+    }
+
+    /**
+     * Метод поиска идентификатора строки.
+     * @param value байты строки в кодировке UTF-8;
+     * @param hash хеш строки, полученный методом {@link StringIndex#hash(byte[])}.
+     * @return идентификатор строки или -1, если строки нет в таблице.
+     * */
+    public int get(byte[] value, int hash)
+    {
+        int[] current = table;
+        int mask = (current.length >> 1) - 1;
+        for (int i = hash & mask; current[2 * i + 1] != 0; i = (i + 1) & mask)
+        {
+            if (current[2 * i] == hash && source.matches(current[2 * i + 1] - 1, value)) return current[2 * i + 1] - 1;
+        }
+        return -1;
+    }
+
+    /**
+     * Метод добавления идентификатора строки. Строки с таким значением не должно быть в таблице.
+     * @param id идентификатор строки, не может быть отрицательным;
+     * @param hash хеш строки.
+     * */
+    public void put(int id, int hash)
+    {
+        int mask = (table.length >> 1) - 1;
+        int i = hash & mask;
+        while (table[2 * i + 1] != 0) i = (i + 1) & mask;
+
+        table[2 * i] = hash;
+        table[2 * i + 1] = id + 1;
+        if (++size > threshold) resize((table.length >> 1) << 1);
+    }
+
+    /**
+     * Метод удаления идентификатора строки.
+     * @param id идентификатор строки;
+     * @param hash хеш строки.
+     * @return true, если идентификатор был в таблице.
+     * */
+    public boolean remove(int id, int hash)
+    {
+        int mask = (table.length >> 1) - 1;
+        int i = hash & mask;
+        for (; table[2 * i + 1] != 0; i = (i + 1) & mask)
+        {
+            if (table[2 * i + 1] == id + 1) break;
+        }
+        if (table[2 * i + 1] == 0) return false;
+
+        table[2 * i + 1] = 0;
+        size--;
+
+        // сдвигаем следующие элементы цепочки, чтобы не оставлять "дыр" при поиске
+        for (int j = (i + 1) & mask; table[2 * j + 1] != 0; j = (j + 1) & mask)
+        {
+            int home = table[2 * j] & mask;
+            if (((j - home) & mask) >= ((j - i) & mask))
+            {
+                table[2 * i] = table[2 * j];
+                table[2 * i + 1] = table[2 * j + 1];
+                table[2 * j + 1] = 0;
+                i = j;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return количество строк в таблице.
+     * */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Метод кодирования строки в UTF-8. Строки из символов ASCII (имена и даты рождения, как правило) кодируются
+     * без обращения к {@link java.nio.charset.CharsetEncoder}, что в несколько раз быстрее {@link String#getBytes}.
+     * @param value строка.
+     * @return байты строки в кодировке UTF-8.
+     * */
+    public static byte[] encode(String value)
+    {
+        int length = value.length();
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++)
+        {
+            char c = value.charAt(i);
+            if (c >= 0x80) return value.getBytes(StandardCharsets.UTF_8);
+            bytes[i] = (byte) c;
+        }
+        return bytes;
+    }
+
+    /**
+     * @param value байты строки в кодировке UTF-8.
+     * @return хеш строки с перемешанными битами, пригодный для таблицы с размером, равным степени двойки.
+     * */
+    public static int hash(byte[] value)
+    {
+        int h = 0;
+        for (byte b : value) h = 31 * h + b;
+        h *= 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private void resize(int capacity)
+    {
+        int[] old = table;
+        int[] newTable = new int[2 * capacity];
+
+        int mask = capacity - 1;
+        for (int j = 0; j < old.length; j += 2)
+        {
+            if (old[j + 1] == 0) continue;
+            int i = old[j] & mask;
+            while (newTable[2 * i + 1] != 0) i = (i + 1) & mask;
+            newTable[2 * i] = old[j];
+            newTable[2 * i + 1] = old[j + 1];
+        }
+        table = newTable;
+        threshold = (int) (capacity * loadFactor);
+    }
+
+    private void allocate(int capacity)
+    {
+        table = new int[2 * capacity];
+        threshold = (int) (capacity * loadFactor);
+    }
+
+    /**
+     * Интерфейс хранилища строк, идентификаторы которых содержит таблица.
+     * */
+    public interface Source
+    {
+        /**
+         * @param id идентификатор строки, хранящейся в таблице;
+         * @param value байты искомой строки в кодировке UTF-8.
+         * @return true, если строка с идентификатором равна искомой.
+         * */
+        boolean matches(int id, byte[] value);
+    }
+}
@@ -0,0 +1,210 @@
+package util;
+
+import java.util.AbstractMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Класс кэша с политикой вытеснения W-TinyLFU. Кэш состоит из LRU окна (1% размера) и основной части,
+ * разделенной на испытательный (20%) и защищенный (80%) LRU сегменты. Новое значение попадает в окно;
+ * вытесненное из окна значение переходит в испытательный сегмент, только если частота обращений к нему
+ * больше, чем к значению, которое пришлось бы вытеснить из испытательного сегмента. Повторное обращение
+ * к значению испытательного сегмента переводит его в защищенный сегмент.
+ * Частота обращений оценивается приближенно с помощью {@link FrequencySketch}.
+ * */
+public class TinyLfuCache<K, V> implements Cache<K, V>
+{
+    private final Map<K, V> window = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<K, V> probation = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<K, V> protect = new LinkedHashMap<>(16, 0.75f, true);
+    private final int windowCapacity;
+    private final int mainCapacity;
+    private final int protectCapacity;
+    private final FrequencySketch sketch;
+    private long evictions;
+
+    /**
+     * Конструктор класса.
+     * @param capacity наибольшее количество значений в кэше.
+     * */
+    public TinyLfuCache(int capacity)
+    {
+        this.windowCapacity = Math.max(1, capacity / 100);
+        this.mainCapacity = Math.max(0, capacity - this.windowCapacity);
+        this.protectCapacity = this.mainCapacity * 4 / 5;
+        this.sketch = new FrequencySketch(capacity);
+    }
+
+    @Override
+    public V get(K key)
+    {
+        sketch.increment(hash(key));
+
+        V value = window.get(key);
+        if (value != null) return value;
+
+        value = protect.get(key);
+        if (value != null) return value;
+
+        value = probation.remove(key);
+        if (value != null)
+        {
+            protect.put(key, value);
+            if (protect.size() > protectCapacity)
+            {
+                Map.Entry<K, V> eldest = removeEldest(protect);
+                probation.put(eldest.getKey(), eldest.getValue());
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public void put(K key, V value)
+    {
+        if (window.containsKey(key))
+        {
+            window.put(key, value);
+            return;
+        }
+        if (protect.containsKey(key))
+        {
+            protect.put(key, value);
+            return;
+        }
+        if (probation.containsKey(key))
+        {
+            probation.put(key, value);
+            return;
+        }
+
+        window.put(key, value);
+        if (window.size() > windowCapacity) admit(removeEldest(window));
+    }
+
+    @Override
+    public void remove(K key)
+    {
+        if (window.remove(key) != null) return;
+        if (protect.remove(key) != null) return;
+        probation.remove(key);
+    }
+
+    @Override
+    public int size()
+    {
+        return window.size() + probation.size() + protect.size();
+    }
+
+    @Override
+    public long getEvictions()
+    {
+        return evictions;
+    }
+
+    private void admit(Map.Entry<K, V> candidate)
+    {
+        if (probation.size() + protect.size() < mainCapacity)
+        {
+            probation.put(candidate.getKey(), candidate.getValue());
+            return;
+        }
+
+        evictions++;
+        Map<K, V> victims = probation.isEmpty() ? protect : probation;
+        if (victims.isEmpty()) return;
+
+        K victim = victims.keySet().iterator().next();
+        if (sketch.frequency(hash(candidate.getKey())) <= sketch.frequency(hash(victim))) return;
+
+        victims.remove(victim);
+        probation.put(candidate.getKey(), candidate.getValue());
+    }
+
+    private static <K, V> Map.Entry<K, V> removeEldest(Map<K, V> segment)
+    {
+        Iterator<Map.Entry<K, V>> iterator = segment.entrySet().iterator();
+        Map.Entry<K, V> eldest = iterator.next();
+        Map.Entry<K, V> entry = new AbstractMap.SimpleImmutableEntry<>(eldest);
+        iterator.remove();
+        return entry;
+    }
+
+    private static int hash(Object key)
+    {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Класс приближенного подсчета частоты обращений (Count-Min Sketch) с 4-битными счетчиками.
+     * Каждый ключ соответствует четырем счетчикам в разных ячейках таблицы, частотой считается наименьший из них.
+     * После 10 * capacity увеличений все счетчики уменьшаются вдвое, поэтому давние обращения постепенно забываются.
+     * */
+    static class FrequencySketch
+    {
+        private static final long[] seeds = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L,
+                0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+        private static final long resetMask = 0x7777777777777777L;
+        private static final long oneMask = 0x1111111111111111L;
+
+        private final long[] table;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(int capacity)
+        {
+            int length = Integer.highestOneBit(Math.max(capacity - 1, 15)) << 1;
+            this.table = new long[length];
+            this.sampleSize = (int) Math.min(10L * Math.max(capacity, 1), Integer.MAX_VALUE);
+        }
+
+        int frequency(int hash)
+        {
+            int start = (hash & 3) << 2;
+            int frequency = 15;
+            for (int i = 0; i < 4; i++)
+            {
+                int offset = (start + i) << 2;
+                frequency = Math.min(frequency, (int) ((table[indexOf(hash, i)] >>> offset) & 0xFL));
+            }
+            return frequency;
+        }
+
+        void increment(int hash)
+        {
+            int start = (hash & 3) << 2;
+            boolean added = false;
+            for (int i = 0; i < 4; i++)
+            {
+                int index = indexOf(hash, i);
+                long mask = 0xFL << ((start + i) << 2);
+                if ((table[index] & mask) != mask)
+                {
+                    table[index] += 1L << ((start + i) << 2);
+                    added = true;
+                }
+            }
+            if (added && ++additions == sampleSize) reset();
+        }
+
+        private void reset()
+        {
+            int odd = 0;
+            for (int i = 0; i < table.length; i++)
+            {
+                odd += Long.bitCount(table[i] & oneMask);
+                table[i] = (table[i] >>> 1) & resetMask;
+            }
+            additions = (additions >>> 1) - (odd >>> 2);
+        }
+
+        private int indexOf(int hash, int i)
+        {
+            long h = (hash + seeds[i]) * seeds[i];
+            h += h >>> 32;
+            return (int) h & (table.length - 1);
+        }
+    }
+}
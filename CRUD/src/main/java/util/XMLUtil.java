@@ -3,6 +3,7 @@ package util;
 import exceptions.XMLProcessException;
 import application.User;
 import xml.IDGroups;
+import xml.StorageIndex;
 import xml.SupportGroups;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
@@ -12,12 +13,13 @@ import org.w3c.dom.*;
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.*;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Класс содержит набор статических методов, полезных для работы с XML хранилищем.
@@ -35,6 +37,7 @@ public class XMLUtil
     public static final String firstNameIdField = "FID";
     public static final String secondNameIdField = "SID";
     public static final String birthDateIdField = "BID";
+    public static final String versionField = "V";
 
     public static final String baseStorageItem = "user";
 
@@ -106,7 +109,7 @@ public class XMLUtil
         try {
             writeDocument(xmlDocument, path);
         }
-        catch (TransformerException| FileNotFoundException e) {
+        catch (IOException e) {
             logger.error(e);
             throw new XMLProcessException(XMLProcessException.XML_INIT_EXCEPTION, e);
         }
@@ -116,52 +119,181 @@ public class XMLUtil
 
     /**
     * Метод обнолвения файла хранилища на основе объекта реализующего интерфейс {@link Document}.
+     * Запись выполняется потоково через {@link StorageWriter} во временный файл, который затем атомарно
+     * заменяет файл хранилища.
      * @param document объект, который содержит XML хранилище, которое будет записано в файл;
      * @param path путь к XML файлу хранилища.
-     * @exception FileNotFoundException throws в случае отсутствия файла.
-     * @exception  TransformerException throws в случае ошибки инстанцирования объект {@link Transformer}.
+     * @exception IOException throws в случае ошибки записи файла.
     * */
-    public static void writeDocument(Document document, String path) throws FileNotFoundException, TransformerException
+    public static void writeDocument(Document document, String path) throws IOException
     {
-        Transformer transformer = TransformerFactory.newInstance().newTransformer();
+        StorageWriter.write(document.getDocumentElement(), path);
+    }
 
-        transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
-        //transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+    /**
+     * Метод обнолвения файла хранилища, идентификаторы групп MGID, FNID, SNID, BDID которого хранятся
+     * в {@link IdAllocator} индекса хранилища.
+     * @param document объект, который содержит XML хранилище, которое будет записано в файл;
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
+     * @param revision счетчик изменений хранилища, который записывается в атрибут V группы mainGroup;
+     * @param path путь к XML файлу хранилища.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public static void writeDocument(Document document, StorageIndex index, long revision, String path) throws IOException
+    {
+        try (StorageWriter writer = new StorageWriter(path))
+        {
+            for (Node group = document.getDocumentElement().getFirstChild(); group != null; group = group.getNextSibling())
+            {
+                IDGroups idGroup = group.getNodeType() == Node.ELEMENT_NODE ? idGroup(group.getNodeName()) : null;
+                if (idGroup != null)
+                {
+                    index.getIdAllocator(idGroup).write(writer, idGroup.toString());
+                }
+                else if (mainGroup.equals(group.getNodeName()))
+                {
+                    writer.startGroup(mainGroup, versionField, revision);
+                    for (Node user = group.getFirstChild(); user != null; user = user.getNextSibling())
+                    {
+                        writer.node(user);
+                    }
+                    writer.endGroup();
+                }
+                else
+                {
+                    writer.node(group);
+                }
+            }
+            writer.commit();
+        }
+    }
 
-        StreamResult result = new StreamResult(new FileOutputStream(path));
-        transformer.transform(new DOMSource(document), result);
+    /**
+     * Метод получения счетчика изменений хранилища: наибольшего из значения атрибута V группы mainGroup
+     * и версий пользователей.
+     * @param xmlDocument объект, который содержит XML хранилище;
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища.
+     * @return счетчик изменений или 0, если версии в хранилище не записаны.
+     * @exception XMLProcessException throws в случае нарушения структуры XML хранилища.
+     * */
+    public static long getRevision(Document xmlDocument, StorageIndex index) throws XMLProcessException
+    {
+        long[] revision = {parseVersion(((Element) findGroup(xmlDocument, mainGroup)).getAttribute(versionField))};
+        index.getUsers().forEach((id, user) ->
+                revision[0] = Math.max(revision[0], parseVersion(user.getAttribute(versionField))));
+        return revision[0];
+    }
+
+    /**
+     * Метод получения версии пользователя по заданному id.
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
+     * @param id идентификатор пользователя.
+     * @return версия пользователя или 0, если версия не записана.
+     * @exception  XMLProcessException throws в случае отстутсвия пользователя с заданным id.
+     * */
+    public static long getUserVersion(StorageIndex index, Integer id) throws XMLProcessException
+    {
+        Element user = index.getUsers().get(id);
+        if (user != null) return parseVersion(user.getAttribute(versionField));
+
+        XMLProcessException ex = new XMLProcessException(XMLProcessException.XML_USER_SEARCH_EXCEPTION,
+                new StringBuilder()
+                        .append("Storage doesn't have info about user - ID: ")
+                        .append(id.toString())
+                        .toString());
+        logger.info(ex);
+        throw ex;
+    }
+
+    private static long parseVersion(String value)
+    {
+        // getAttribute возвращает пустую строку, если атрибута нет
+        return value.isEmpty() ? 0 : Long.parseLong(value);
+    }
+
+    /**
+     * Метод построения индексов XML хранилища. Для каждой из групп mainGroup, firstNameGroup, secondNameGroup,
+     * birthDateGroup индекс сопоставляет идентификатор элемента самому элементу. Для вспомогательных групп
+     * дополнительно строится обратный индекс, сопоставляющий значению его идентификатор, и подсчитывается
+     * количество ссылок пользователей на каждый элемент и списки этих пользователей. Идентификаторы групп MGID, FNID, SNID, BDID
+     * переносятся в {@link IdAllocator}.
+     * @param xmlDocument объект, который содержит XML хранилище.
+     * @return объект {@link StorageIndex}, содержащий построенные индексы.
+     * @exception XMLProcessException throws в случае нарушения структуры XML хранилища.
+     * */
+    public static StorageIndex buildIndex(Document xmlDocument) throws XMLProcessException
+    {
+        StorageIndex index = new StorageIndex();
+
+        fillIndex(xmlDocument, mainGroup, index);
+        for (SupportGroups group : SupportGroups.values())
+        {
+            fillIndex(xmlDocument, group.toString(), index);
+        }
+        for (IDGroups group : IDGroups.values())
+        {
+            fillIdAllocator(xmlDocument, group, index);
+        }
+
+        // пользователи обходятся в порядке возрастания идентификаторов, чтобы списки пользователей заполнялись
+        // добавлением в конец
+        int[] usersId = new int[index.getUsers().size()];
+        int[] position = new int[1];
+        index.getUsers().forEach((id, user) -> usersId[position[0]++] = id);
+        Arrays.sort(usersId);
+
+        for (int id : usersId)
+        {
+            index.getUserIds().add(id);
+            Element user = index.getUsers().get(id);
+            int fid = Integer.parseInt(user.getAttribute(firstNameIdField));
+            int sid = Integer.parseInt(user.getAttribute(secondNameIdField));
+            int bid = Integer.parseInt(user.getAttribute(birthDateIdField));
+            index.retain(SupportGroups.firstNameGroup, fid);
+            index.retain(SupportGroups.secondNameGroup, sid);
+            index.retain(SupportGroups.birthDateGroup, bid);
+            index.addPosting(SupportGroups.firstNameGroup, fid, id);
+            index.addPosting(SupportGroups.secondNameGroup, sid, id);
+            index.addPosting(SupportGroups.birthDateGroup, bid, id);
+        }
+
+        logger.debug(new StringBuilder("Storage index built - users: ").append(index.getUsers().size()).toString());
+        return index;
+    }
+
+    private static void fillIndex(Document xmlDocument, String groupName, StorageIndex index) throws XMLProcessException
+    {
+        NodeList group = findGroup(xmlDocument, groupName).getChildNodes();
+        IntHashMap<Element> groupIndex = index.getGroup(groupName);
+        Map<String, Integer> valueIndex = index.getValues(groupName);
+
+        for (int i = 0; i < group.getLength(); i++)
+        {
+            if (group.item(i).getNodeType() == Node.ELEMENT_NODE)
+            {
+                Element item = (Element) group.item(i);
+                Integer id = Integer.valueOf(item.getAttribute(idField));
+                groupIndex.put(id, item);
+                if (valueIndex != null) valueIndex.put(item.getAttribute(mainValueField), id);
+            }
+        }
     }
 
     /**
      * Метод проверки наличия в определенной вспомогательной группе элемента с атрибутом, равным переданому значению.
      * @param xmlDocument объект, который содержит XML хранилище;
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
      * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
      * @param value значение, которое нужно проверить.
      * @return идентификатор найденного значения в соответствующей группе или null, если значение не найдено.
      * @exception  XMLProcessException throws в случае нарушения структуры XML хранилища.
      * */
-    public static Integer checkStorage(Document xmlDocument, SupportGroups groupName, String value) throws XMLProcessException
+    public static Integer checkStorage(Document xmlDocument, StorageIndex index, SupportGroups groupName, String value)
+            throws XMLProcessException
     {
         logger.debug(new StringBuilder().append("GroupName: ").append(groupName.toString()).append("\tValue: ").append(value).toString());
 
-        Integer id = null;
-
-        NodeList targetItems = findGroup(xmlDocument, groupName.toString()).getChildNodes();
-
-        for (int i = 0; i < targetItems.getLength(); i++)
-        {
-            NamedNodeMap attributes = targetItems.item(i).getAttributes();
-            if (attributes != null) {
-                /*logger.debug(new StringBuilder().append(attributes.getNamedItem("value").getTextContent())
-                    .append(" ")
-                    .append(attributes.getNamedItem("ID").getTextContent()).toString());*/
-                if (attributes.getNamedItem(mainValueField).getTextContent().equals(value))
-                {
-                    id = Integer.valueOf(attributes.getNamedItem(idField).getTextContent());
-                    break;
-                }
-            }
-        }
+        Integer id = index.getValues(groupName).get(value);
 
         logger.debug(new StringBuilder().append("Found ID: ").append(id).toString());
 
@@ -171,40 +303,66 @@ public class XMLUtil
     /**
      * Метод добавления в вспомогательную группу переданного значения.
      * @param xmlDocument объект, который содержит XML хранилище;
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
      * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
      * @param value значение, которое нужно добавить.
      * @return идентификатор добавленного значения в соответствую группу.
      * @exception  XMLProcessException throws в случае нарушения структуры XML хранилища.
      * */
-    public static Integer addItemToStorage(Document xmlDocument, SupportGroups groupName, String value) throws XMLProcessException
+    public static Integer addItemToStorage(Document xmlDocument, StorageIndex index, SupportGroups groupName, String value)
+            throws XMLProcessException
     {
         Integer id = null;
 
         Node targetGroup = findGroup(xmlDocument, groupName.toString());
 
-        id = getFreeId(xmlDocument, IDGroups.interpret(groupName));
+        id = getFreeId(xmlDocument, index, IDGroups.interpret(groupName));
 
         Element item = xmlDocument.createElement(baseStorageItem);
         item.setAttribute(mainValueField, value);
         item.setAttribute(idField, id.toString());
 
         targetGroup.appendChild(item);
+        index.getGroup(groupName).put(id, item);
+        index.getValues(groupName).put(value, id);
 
         return id;
     }
 
     /**
      * Метод добавления в группу mainGroup переданных значений.
+     * Количество ссылок на соответствующие элементы вспомогательных групп увеличивается.
      * @param xmlDocument объект, который содержит XML хранилище;
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
      * @param fid идентификатор имени из вспомогательной группы firstNameGroup;
      * @param sid идентификатор фамилии из вспомогательной группы secondNameGroup;
      * @param bid идентификатор даты рождения из вспомогательной группы birthDateGroup.
      * @return идентификатор добавленного значения в группу mainGroup.
      * @exception  XMLProcessException throws в случае нарушения структуры XML хранилища.
      * */
-    public static Integer addItemToStorage(Document xmlDocument, Integer fid, Integer sid, Integer bid) throws XMLProcessException {
+    public static Integer addItemToStorage(Document xmlDocument, StorageIndex index, Integer fid, Integer sid, Integer bid)
+            throws XMLProcessException {
+
+        Integer id = getFreeId(xmlDocument, index, IDGroups.MGID);
+        addItemToStorage(xmlDocument, index, id, fid, sid, bid);
+        return id;
+    }
 
-        Integer id = getFreeId(xmlDocument, IDGroups.MGID);
+    /**
+     * Метод добавления в группу mainGroup переданных значений с заданным идентификатором.
+     * Идентификатор должен быть предварительно занят методом {@link XMLUtil#getFreeId(Document, StorageIndex, IDGroups)}
+     * или {@link XMLUtil#claimFreeId(Document, StorageIndex, IDGroups, Integer)}.
+     * Количество ссылок на соответствующие элементы вспомогательных групп увеличивается.
+     * @param xmlDocument объект, который содержит XML хранилище;
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
+     * @param id идентификатор добавляемого пользователя;
+     * @param fid идентификатор имени из вспомогательной группы firstNameGroup;
+     * @param sid идентификатор фамилии из вспомогательной группы secondNameGroup;
+     * @param bid идентификатор даты рождения из вспомогательной группы birthDateGroup.
+     * @exception  XMLProcessException throws в случае нарушения структуры XML хранилища.
+     * */
+    public static void addItemToStorage(Document xmlDocument, StorageIndex index, Integer id, Integer fid, Integer sid, Integer bid)
+            throws XMLProcessException {
 
         Node targetGroup = findGroup(xmlDocument, mainGroup);
 
@@ -215,8 +373,14 @@ public class XMLUtil
         item.setAttribute(idField, id.toString());
 
         targetGroup.appendChild(item);
-
-        return id;
+        index.getUsers().put(id, item);
+        index.getUserIds().add(id);
+        index.retain(SupportGroups.firstNameGroup, fid);
+        index.retain(SupportGroups.secondNameGroup, sid);
+        index.retain(SupportGroups.birthDateGroup, bid);
+        index.addPosting(SupportGroups.firstNameGroup, fid, id);
+        index.addPosting(SupportGroups.secondNameGroup, sid, id);
+        index.addPosting(SupportGroups.birthDateGroup, bid, id);
     }
 
     /**
@@ -227,7 +391,7 @@ public class XMLUtil
      * @exception  XMLProcessException throws в случае нарушения структуры XML хранилища или отсутсвия искомой группы.
      * */
     private static Node findGroup(Document xmlDocument, String groupName) throws XMLProcessException {
-        NodeList groups = xmlDocument.getDocumentElement().getChildNodes();
+        Element groups = xmlDocument.getDocumentElement();
 
         if (groups == null)
         {
@@ -236,20 +400,19 @@ public class XMLUtil
             throw ex;
         }
 
-        if (groups.getLength() == 0)
+        if (groups.getFirstChild() == null)
         {
             XMLProcessException ex = new XMLProcessException(XMLProcessException.XML_FORMAT_EXCEPTION, "XML file <Groups> children is null");
             logger.error(ex);
             throw ex;
         }
 
-        Node targetGroup = null;
-
-        for (int i = 0; i < groups.getLength(); i++)
+        // обход по ссылкам на соседние узлы не изменяет DOM, в отличие от NodeList.item(), который
+        // кэширует позицию, поэтому безопасен при одновременном чтении из нескольких потоков
+        for (Node targetGroup = groups.getFirstChild(); targetGroup != null; targetGroup = targetGroup.getNextSibling())
         {
-            if (groups.item(i).getNodeName().equals(groupName))
+            if (targetGroup.getNodeName().equals(groupName))
             {
-                targetGroup = groups.item(i);
                 logger.debug(new StringBuilder("Found group: ").append(targetGroup.getNodeName()).toString());
                 return targetGroup;
             }
@@ -263,36 +426,29 @@ public class XMLUtil
     /**
      * Метод поиска информации о пользователе в группе mainGroup по заданному id.
      * @param xmlDocument объект, который содержит XML хранилище;
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
      * @param id идентификатор искомого пользователя.
      * @return объект {@link Triplet}, который содержит идентификаторы для вспомогательных групп
      * firstNameGroup, secondNameGroup, birthDateGroup.
      * @exception  XMLProcessException throws в случае нарушения структуры XML хранилища или отстутсвия пользователя с заданным id.
      * */
-    public static Triplet<Integer, Integer, Integer> getUser(Document xmlDocument, Integer id) throws XMLProcessException {
-
-        NodeList group = findGroup(xmlDocument, mainGroup).getChildNodes();
+    public static Triplet<Integer, Integer, Integer> getUser(Document xmlDocument, StorageIndex index, Integer id)
+            throws XMLProcessException {
 
-        String fid = null, sid = null, bid = null;
+        Element user = index.getUsers().get(id);
 
-        for (int i = 0; i < group.getLength(); i++)
+        if (user != null)
         {
-            NamedNodeMap attributes = group.item(i).getAttributes();
-            if (attributes != null)
-            {
-                if (Integer.valueOf(attributes.getNamedItem(idField).getTextContent()) == id)
-                {
-                    fid = attributes.getNamedItem(firstNameIdField).getTextContent();
-                    sid = attributes.getNamedItem(secondNameIdField).getTextContent();
-                    bid = attributes.getNamedItem(birthDateIdField).getTextContent();
-                    logger.debug(new StringBuilder("Found user info - FID: ")
-                            .append(fid)
-                            .append("\tSID: ")
-                            .append(sid)
-                            .append("\tBID: ")
-                            .append(bid).toString());
-                    return new Triplet<>(Integer.valueOf(fid), Integer.valueOf(sid), Integer.valueOf(bid));
-                }
-            }
+            String fid = user.getAttribute(firstNameIdField);
+            String sid = user.getAttribute(secondNameIdField);
+            String bid = user.getAttribute(birthDateIdField);
+            logger.debug(new StringBuilder("Found user info - FID: ")
+                    .append(fid)
+                    .append("\tSID: ")
+                    .append(sid)
+                    .append("\tBID: ")
+                    .append(bid).toString());
+            return new Triplet<>(Integer.valueOf(fid), Integer.valueOf(sid), Integer.valueOf(bid));
         }
         XMLProcessException ex = new XMLProcessException(XMLProcessException.XML_USER_SEARCH_EXCEPTION,
                 new StringBuilder()
@@ -311,11 +467,11 @@ public class XMLUtil
      * */
     public static void getAllUsersId(Document xmlDocument, List<Integer> holdersId) throws XMLProcessException
     {
-        NodeList group = findGroup(xmlDocument, mainGroup).getChildNodes();
+        Node group = findGroup(xmlDocument, mainGroup);
 
-        for (int i = 0; i < group.getLength(); i++)
+        for (Node user = group.getFirstChild(); user != null; user = user.getNextSibling())
         {
-            NamedNodeMap attributes = group.item(i).getAttributes();
+            NamedNodeMap attributes = user.getAttributes();
             if (attributes != null)
             {
                 holdersId.add(Integer.valueOf(attributes.getNamedItem(idField).getTextContent()));
@@ -324,84 +480,66 @@ public class XMLUtil
     }
 
     /**
-     * Метод извлечения идентификатор всех пользователей из группу mainGroup по заданным параметрам.
-     * @param xmlDocument объект, который содержит XML хранилище;
-     * @param holdersId объект, реализующий интерфейс {@link List}, в который будут помещены идентификаторы пользователей;
-     * @param parameters объект {@link User}, который содержит параметры, по которым будет производиться поиск.
-     *                   Некоторые атрибуты могут быть null. В выходной список добавляются идентификаторы тех пользователей,
-     *                   данные которых совпали с соответствующими ненулевыми атрибутами объекта parameters.
-     * @exception  XMLProcessException throws в случае нарушения структуры XML хранилища.
+     * Метод получения пользователей из группы mainGroup, ссылающихся на значение вспомогательной группы.
+     * Значение ищется в обратном индексе группы, после чего возвращается битовая карта ссылающихся на него пользователей.
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param value значение.
+     * @return битовая карта {@link IntBitmap} идентификаторов пользователей или null, если значения нет в группе.
      * */
-    public static void getAllUsersIdParametrized(Document xmlDocument, List<Integer> holdersId, User parameters)
-            throws XMLProcessException
+    public static IntBitmap getUsersByValue(StorageIndex index, SupportGroups groupName, String value)
     {
-        NodeList group = findGroup(xmlDocument, mainGroup).getChildNodes();
-
-        for (int i = 0; i < group.getLength(); i++)
+        Integer id = index.getValues(groupName).get(value);
+        IntBitmap users = id == null ? null : index.getPostings(groupName, id);
+        if (users == null)
         {
-            NamedNodeMap attributes = group.item(i).getAttributes();
-            if (attributes != null)
-            {
-                String firstNameValue = null;
-                String secondNameValue = null;
-                String birthDateValue = null;
-
-                if (parameters.getFirstName() != null)
-                {
-                    firstNameValue = getUserDetail(xmlDocument,
-                            SupportGroups.firstNameGroup,
-                            Integer.valueOf(attributes.getNamedItem(firstNameIdField).getTextContent()));
-                }
-                if (parameters.getSecondName() != null)
-                {
-                    secondNameValue = getUserDetail(xmlDocument,
-                            SupportGroups.secondNameGroup,
-                            Integer.valueOf(attributes.getNamedItem(secondNameIdField).getTextContent()));
-                }
-                if (parameters.getBirthDate() != null)
-                {
-                    birthDateValue = getUserDetail(xmlDocument,
-                            SupportGroups.birthDateGroup,
-                            Integer.valueOf(attributes.getNamedItem(birthDateIdField).getTextContent()));
-                }
+            logger.debug(new StringBuilder("Value not found - Group: ").append(groupName.toString())
+                    .append("\tvalue: ").append(value).toString());
+        }
+        return users;
+    }
 
-                if (firstNameValue.equals(parameters.getFirstName()) &&
-                    secondNameValue.equals(parameters.getSecondName()) &&
-                    birthDateValue.equals(parameters.getBirthDate()))
-                {
-                    holdersId.add(Integer.valueOf(attributes.getNamedItem(idField).getTextContent()));
-                }
-            }
+    /**
+     * Метод получения поля объекта {@link User}, значение которого хранится в заданной вспомогательной группе.
+     * @param user объект {@link User};
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы.
+     * @return значение поля.
+     * */
+    public static String getParameter(User user, SupportGroups groupName)
+    {
+        switch (groupName)
+        {
+            case firstNameGroup:
+                return user.getFirstName();
+            case secondNameGroup:
+                return user.getSecondName();
+            default:
+                return user.getBirthDate();
         }
     }
 
     /**
      * Метод получения детальной информации пользователя из вспомогательной группы по заданному id.
      * @param xmlDocument объект, который содержит XML хранилище;
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
      * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
      * @param id идентификатор искомого значения.
      * @return найденное строковое значение.
      * @exception  XMLProcessException throws в случае нарушения структуры XML хранилища или остутсвия данных с искомым id.
      * */
-    public static String getUserDetail(Document xmlDocument, SupportGroups groupName, Integer id) throws XMLProcessException
+    public static String getUserDetail(Document xmlDocument, StorageIndex index, SupportGroups groupName, Integer id)
+            throws XMLProcessException
     {
-        NodeList group = findGroup(xmlDocument, groupName.toString()).getChildNodes();
+        Element item = index.getGroup(groupName).get(id);
 
-        for (int i = 0; i < group.getLength(); i++)
+        if (item != null)
         {
-            NamedNodeMap attributes = group.item(i).getAttributes();
-            if (attributes != null)
-            {
-                if (Integer.valueOf(attributes.getNamedItem(idField).getTextContent()) == id)
-                {
-                    String result = attributes.getNamedItem(mainValueField).getTextContent();
-                    logger.debug(new StringBuilder().append("Found successfully - ID: ")
-                            .append(id.toString())
-                            .append("\tvalue: ")
-                            .append(result).toString());
-                    return result;
-                }
-            }
+            String result = item.getAttribute(mainValueField);
+            logger.debug(new StringBuilder().append("Found successfully - ID: ")
+                    .append(id.toString())
+                    .append("\tvalue: ")
+                    .append(result).toString());
+            return result;
         }
 
         XMLProcessException ex = new XMLProcessException(XMLProcessException.XML_USER_SEARCH_EXCEPTION,
@@ -413,24 +551,74 @@ public class XMLUtil
         throw ex;
     }
 
+    /**
+     * Метод получения информации о нескольких пользователях по заданным id. Каждый идентификатор значения
+     * вспомогательной группы разрешается один раз за вызов, поэтому пользователи с общими именами, фамилиями
+     * или датами рождения не приводят к повторному поиску значений.
+     * @param xmlDocument объект, который содержит XML хранилище;
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
+     * @param ids идентификаторы пользователей. Идентификаторы, которых нет в хранилище, пропускаются;
+     * @param users {@link Map}, в который помещается информация о найденных пользователях в порядке ids.
+     * @exception  XMLProcessException throws в случае нарушения структуры XML хранилища.
+     * */
+    public static void getUsers(Document xmlDocument, StorageIndex index, Collection<Integer> ids, Map<Integer, User> users)
+            throws XMLProcessException
+    {
+        EnumMap<SupportGroups, IntHashMap<String>> values = new EnumMap<>(SupportGroups.class);
+        for (SupportGroups group : SupportGroups.values())
+        {
+            values.put(group, new IntHashMap<>());
+        }
+
+        for (Integer id : ids)
+        {
+            if (id == null || users.containsKey(id)) continue;
+            Element user = index.getUsers().get(id);
+            if (user == null) continue;
+
+            User info = new User(
+                    getValue(xmlDocument, index, values, SupportGroups.firstNameGroup, user.getAttribute(firstNameIdField)),
+                    getValue(xmlDocument, index, values, SupportGroups.secondNameGroup, user.getAttribute(secondNameIdField)),
+                    getValue(xmlDocument, index, values, SupportGroups.birthDateGroup, user.getAttribute(birthDateIdField)));
+            info.setVersion(parseVersion(user.getAttribute(versionField)));
+            users.put(id, info);
+        }
+    }
+
+    private static String getValue(Document xmlDocument, StorageIndex index, EnumMap<SupportGroups, IntHashMap<String>> values,
+                                   SupportGroups groupName, String id) throws XMLProcessException
+    {
+        IntHashMap<String> groupValues = values.get(groupName);
+        int valueId = Integer.parseInt(id);
+        String value = groupValues.get(valueId);
+        if (value == null)
+        {
+            value = getUserDetail(xmlDocument, index, groupName, valueId);
+            groupValues.put(valueId, value);
+        }
+        return value;
+    }
+
     /**
      * Метод удаления информации пользователя из указанной группы по указанному id и имени атрибута.
-     * Перед удаление производится проверка группы mainGroup на наличие элемента, у которого атрибут с заданным именем равняется id.
-     * Если таких элементов нет, то будет броше исключение {@link XMLProcessException}.
-     * Если таких элементов несколько, то удаление не производим.
-     * Если такой элемент один, то производим удаление.
+     * Для вспомогательной группы количество ссылок на элемент уменьшается на единицу.
+     * Если ссылок на элемент не было, то будет броше исключение {@link XMLProcessException}.
+     * Если ссылки на элемент остались, то удаление не производим.
+     * Если ссылок не осталось, то производим удаление.
      * @param xmlDocument объект, который содержит XML хранилище;
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
      * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
      * @param field строка {@link String}, которая содержит имя атрибута;
      * @param id идентификатор искомого значения.
      * @exception  XMLProcessException throws в случае нарушения структуры XML хранилища или остутсвия данных с искомым id.
      * */
-    public static void deleteUserWithCheck(Document xmlDocument, String groupName, String field, Integer id)
+    public static void deleteUserWithCheck(Document xmlDocument, StorageIndex index, String groupName, String field, Integer id)
             throws XMLProcessException
     {
-        Integer count = XMLUtil.groupHasValue(xmlDocument, mainGroup, field, id.toString());
+        SupportGroups supportGroup = supportGroup(groupName);
+        int count = supportGroup == null ? 0 : index.release(supportGroup, id);
 
-        if (count == 0)
+        if (count < 0)
         {
             XMLProcessException ex = new XMLProcessException(XMLProcessException.XML_USER_SEARCH_EXCEPTION, new StringBuilder().append("The group ")
                     .append(mainGroup.toString())
@@ -441,7 +629,7 @@ public class XMLUtil
             logger.error(ex);
             throw ex;
         }
-        else if (count != 1)
+        else if (count > 0)
         {
             logger.debug(new StringBuilder("More that one user info found - Group: ")
                     .append(mainGroup.toString())
@@ -449,30 +637,33 @@ public class XMLUtil
                     .append(field).append(": ")
                     .append(id.toString())
                     .append("\tcount: ")
-                    .append(count.toString())
+                    .append(count)
                     .toString());
             return;
         }
 
-        Node node = findGroup(xmlDocument, groupName);
-        NodeList group = node.getChildNodes();
+        Element item = index.getGroup(groupName).remove(id);
 
-        for (int i = 0; i < group.getLength(); i++)
+        if (item != null)
         {
-            NamedNodeMap attributes = group.item(i).getAttributes();
-            if (attributes != null)
+            Map<String, Integer> valueIndex = index.getValues(groupName);
+            if (valueIndex != null) valueIndex.remove(item.getAttribute(mainValueField));
+
+            if (supportGroup == null)
             {
-                if (Integer.valueOf(attributes.getNamedItem(idField).getTextContent()) == id)
-                {
-                    addFreeId(xmlDocument, IDGroups.interpret(groupName), id);
-                    node.removeChild(group.item(i));
-                    logger.debug(new StringBuilder("Delete successfully - Group: ")
-                            .append(groupName)
-                            .append("\tID: ")
-                            .append(id).toString());
-                    return;
-                }
+                index.getUserIds().remove(id);
+                index.removePosting(SupportGroups.firstNameGroup, Integer.parseInt(item.getAttribute(firstNameIdField)), id);
+                index.removePosting(SupportGroups.secondNameGroup, Integer.parseInt(item.getAttribute(secondNameIdField)), id);
+                index.removePosting(SupportGroups.birthDateGroup, Integer.parseInt(item.getAttribute(birthDateIdField)), id);
             }
+
+            addFreeId(xmlDocument, index, IDGroups.interpret(groupName), id);
+            item.getParentNode().removeChild(item);
+            logger.debug(new StringBuilder("Delete successfully - Group: ")
+                    .append(groupName)
+                    .append("\tID: ")
+                    .append(id).toString());
+            return;
         }
 
         XMLProcessException ex = new XMLProcessException(XMLProcessException.XML_USER_SEARCH_EXCEPTION, new StringBuilder("Can't find user info - Group: ")
@@ -483,72 +674,60 @@ public class XMLUtil
         throw ex;
     }
 
-    /**
-     * Метод проверки заданной группы на наличие элемента с заданным именем атрибута и значением атрибута.
-     * @param xmlDocument объект, который содержит XML хранилище;
-     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
-     * @param attributeName строка {@link String}, которая содержит имя атрибута.
-     * @param attributeValue проверяемое значение.
-     * @return количество подходящих элементов указанной группы.
-     * @exception  XMLProcessException throws в случае нарушения структуры XML хранилища.
-     * */
-    private static Integer groupHasValue(Document xmlDocument, String groupName, String attributeName, String attributeValue)
-            throws XMLProcessException
+    private static SupportGroups supportGroup(String groupName)
     {
-        Integer counter = 0;
-
-        NodeList group = findGroup(xmlDocument, groupName).getChildNodes();
-
-        if (group.getLength() == 0)
+        for (SupportGroups group : SupportGroups.values())
         {
-            return 0;
-        }
-
-        for (int i = 0; i < group.getLength(); i++)
-        {
-            NamedNodeMap attributes = group.item(i).getAttributes();
-            if (attributes != null)
-            {
-                if (attributes.getNamedItem(attributeName).getTextContent().equals(attributeValue))
-                {
-                    counter++;
-                }
-            }
+            if (group.toString().equals(groupName)) return group;
         }
+        return null;
+    }
 
-        return counter;
+    private static SupportGroups referencedGroup(String attributeName)
+    {
+        if (attributeName.equals(firstNameIdField)) return SupportGroups.firstNameGroup;
+        else if (attributeName.equals(secondNameIdField)) return SupportGroups.secondNameGroup;
+        else if (attributeName.equals(birthDateIdField)) return SupportGroups.birthDateGroup;
+        return null;
     }
 
     /**
      * Метод обновления заданного атрибута элемента в заданной группе по заданному id.
+     * Если обновляется ссылка пользователя на элемент вспомогательной группы, то количество ссылок на новый элемент
+     * увеличивается. Ссылка на прежний элемент должна быть освобождена методом
+     * {@link XMLUtil#deleteUserWithCheck(Document, StorageIndex, String, String, Integer)}.
      * @param xmlDocument объект, который содержит XML хранилище;
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
      * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
      * @param id идентификатор элемента в заданной группе;
      * @param attributeName строка {@link String}, которая содержит имя атрибута;
      * @param attributeValue обновляемое значение.
      * @exception XMLProcessException throws в случае нарушения структуры XML хранилища или отсутсвия искомого элемента.
      * */
-    public static void updateAttributeValue(Document xmlDocument, String groupName, Integer id, String attributeName, String attributeValue)
+    public static void updateAttributeValue(Document xmlDocument, StorageIndex index, String groupName, Integer id,
+                                            String attributeName, String attributeValue)
             throws XMLProcessException
     {
-        NodeList group = findGroup(xmlDocument, groupName).getChildNodes();
+        Element item = index.getGroup(groupName).get(id);
 
-        for (int i = 0; i < group.getLength(); i++)
+        if (item != null)
         {
-            NamedNodeMap attributes = group.item(i).getAttributes();
-            if (attributes != null)
+            SupportGroups referenced = groupName.equals(mainGroup) ? referencedGroup(attributeName) : null;
+            if (referenced != null)
             {
-                if (Integer.valueOf(attributes.getNamedItem(idField).getTextContent()) == id)
-                {
-                    ((Element)group.item(i)).setAttribute(attributeName, attributeValue);
-                    logger.debug(new StringBuilder("Update attribute - Group: ")
-                            .append(groupName).append("\tID: ")
-                            .append(id.toString()).append("\tattribute name: ")
-                            .append(attributeName).append("\tnew attribute value: ")
-                            .append(attributeValue).toString());
-                    return;
-                }
+                index.removePosting(referenced, Integer.parseInt(item.getAttribute(attributeName)), id);
+                index.retain(referenced, Integer.parseInt(attributeValue));
+                index.addPosting(referenced, Integer.parseInt(attributeValue), id);
             }
+
+            item.setAttribute(attributeName, attributeValue);
+
+            logger.debug(new StringBuilder("Update attribute - Group: ")
+                    .append(groupName).append("\tID: ")
+                    .append(id.toString()).append("\tattribute name: ")
+                    .append(attributeName).append("\tnew attribute value: ")
+                    .append(attributeValue).toString());
+            return;
         }
 
         XMLProcessException ex = new XMLProcessException(XMLProcessException.XML_USER_SEARCH_EXCEPTION, new StringBuilder("Can't find user info - Group: ")
@@ -586,40 +765,15 @@ public class XMLUtil
     /**
      * Метод добавления свободного id в заданную группу хранилища.
      * @param xmlDocument объект, который содержит XML хранилище;
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
      * @param groupName объект {@link IDGroups}, содержащий имя группы для хранения свободных id;
      * @param value свободный идентификатор.
-     * @exception XMLProcessException throws в случае нарушения структуры XML хранилища.
      * */
-    public static void addFreeId(Document xmlDocument, IDGroups groupName, Integer value) throws XMLProcessException
+    public static void addFreeId(Document xmlDocument, StorageIndex index, IDGroups groupName, Integer value)
     {
         logger.debug(new StringBuilder("Set free ID to ").append(groupName.toString()).toString());
 
-        Node group = findGroup(xmlDocument, groupName.toString());
-        NodeList items = group.getChildNodes();
-
-        Element item = xmlDocument.createElement(idField);
-        item.setTextContent(value.toString());
-
-        if (items.getLength() == 1)
-        {
-            group.appendChild(item);
-        }
-        else
-        {
-            int i = 0;
-            for (i = priorityFreeIdPosition; i < items.getLength(); i++)
-            {
-                if (Integer.valueOf(items.item(i).getTextContent()) > value)
-                {
-                    group.insertBefore(item, items.item(i));
-                    break;
-                }
-            }
-            if (i == items.getLength())
-            {
-                group.appendChild(item);
-            }
-        }
+        index.getIdAllocator(groupName).release(value);
 
         logger.debug("Set free ID successfully");
     }
@@ -627,38 +781,73 @@ public class XMLUtil
     /**
      * Метод получение свободного id из заданой группы хранилища.
      * @param xmlDocument объект, который содержит XML хранилище;
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
      * @param groupName объект {@link IDGroups}, содержащий имя группы для хранения свободных id.
      * @return свободый идентификатор для соответствующей группы.
-     * @exception XMLProcessException throws в случае нарушения структуры XML хранилища.
      * */
-    public static Integer getFreeId(Document xmlDocument, IDGroups groupName) throws XMLProcessException
+    public static Integer getFreeId(Document xmlDocument, StorageIndex index, IDGroups groupName)
     {
         logger.debug(new StringBuilder("Get ID for new value from ").append(groupName.toString()).toString());
 
-        Node group = findGroup(xmlDocument, groupName.toString());
-        NodeList items = group.getChildNodes();
+        Integer returnValue = index.getIdAllocator(groupName).allocate();
 
-        Integer returnValue = null;
+        logger.debug(new StringBuilder("ID for new value - ").append("ID: ").append(returnValue.toString()).toString());
+
+        return returnValue;
+    }
+
+    /**
+     * Метод занятия заданного идентификатора в заданной группе хранилища. Если идентификатор не меньше
+     * максимального, то максимальный идентификатор увеличивается, а пропущенные идентификаторы становятся свободными.
+     * @param xmlDocument объект, который содержит XML хранилище;
+     * @param index объект {@link StorageIndex}, содержащий индексы хранилища;
+     * @param groupName объект {@link IDGroups}, содержащий имя группы для хранения свободных id;
+     * @param value занимаемый идентификатор.
+     * @exception XMLProcessException throws в случае, если идентификатор уже занят.
+     * */
+    public static void claimFreeId(Document xmlDocument, StorageIndex index, IDGroups groupName, Integer value)
+            throws XMLProcessException
+    {
+        logger.debug(new StringBuilder("Claim ID ").append(value).append(" from ").append(groupName.toString()).toString());
 
-        if (items.getLength() == 0)
+        try
         {
-            XMLProcessException ex = new XMLProcessException(XMLProcessException.XML_FORMAT_EXCEPTION,
-                    new StringBuilder("Group ").append(groupName.toString()).append("is null").toString());
-            throw ex;
+            index.getIdAllocator(groupName).claim(value);
         }
-        else if (items.getLength() == 1)
+        catch (XMLProcessException ex)
         {
-            returnValue = Integer.valueOf(items.item(maxIdValuePosition).getTextContent());
-            items.item(maxIdValuePosition).setTextContent(((Integer)(returnValue+1)).toString());
+            logger.error(ex);
+            throw ex;
         }
-        else
+    }
+
+    private static IDGroups idGroup(String groupName)
+    {
+        for (IDGroups group : IDGroups.values())
         {
-            returnValue = Integer.valueOf(items.item(priorityFreeIdPosition).getTextContent());
-            group.removeChild(items.item(priorityFreeIdPosition));
+            if (group.toString().equals(groupName)) return group;
         }
+        return null;
+    }
 
-        logger.debug(new StringBuilder("ID for new value - ").append("ID: ").append(returnValue.toString()).toString());
+    /**
+     * Метод переноса идентификаторов групп MGID, FNID, SNID, BDID из XML хранилища в {@link IdAllocator}.
+     * Элементы ID удаляются из DOM и при записи хранилища восстанавливаются из {@link IdAllocator}.
+     * */
+    private static void fillIdAllocator(Document xmlDocument, IDGroups groupName, StorageIndex index)
+            throws XMLProcessException
+    {
+        Node group = findGroup(xmlDocument, groupName.toString());
 
-        return returnValue;
+        List<Integer> ids = new ArrayList<>();
+        for (Node item = group.getFirstChild(); item != null; item = item.getNextSibling())
+        {
+            if (item.getNodeType() == Node.ELEMENT_NODE) ids.add(Integer.valueOf(item.getTextContent().trim()));
+        }
+        while (group.getFirstChild() != null) group.removeChild(group.getFirstChild());
+
+        int[] values = new int[ids.size()];
+        for (int i = 0; i < values.length; i++) values[i] = ids.get(i);
+        index.setIdAllocator(groupName, new IdAllocator(values));
     }
 }
@@ -0,0 +1,92 @@
+package xml;
+
+import java.util.Arrays;
+
+/**
+ * Класс отсортированного индекса дат рождения хранилища. Хранит различные даты рождения пользователей в виде
+ * количества дней от 1970-01-01 в отсортированном массиве int и количество пользователей с каждой датой.
+ * Различных дат рождения немного (не более 366 в год), поэтому добавление даты сдвигом массива выполняется быстро,
+ * а поиск дат диапазона - двоичным поиском его начала, после чего перебираются только даты диапазона.
+ * <p>Изменяется под блокировкой записи хранилища, читается под блокировкой чтения.</p>
+ * */
+public class BirthDateIndex
+{
+    private int[] days = new int[16];
+    private int[] counts = new int[16];
+    private int size;
+
+    /**
+     * Метод добавления ссылок пользователей на дату.
+     * @param epochDay количество дней от 1970-01-01;
+     * @param references количество пользователей.
+     * */
+    public void add(int epochDay, int references)
+    {
+        int position = Arrays.binarySearch(days, 0, size, epochDay);
+        if (position >= 0)
+        {
+            counts[position] += references;
+            return;
+        }
+
+        position = -position - 1;
+        if (size == days.length)
+        {
+            days = Arrays.copyOf(days, size * 2);
+            counts = Arrays.copyOf(counts, size * 2);
+        }
+        System.arraycopy(days, position, days, position + 1, size - position);
+        System.arraycopy(counts, position, counts, position + 1, size - position);
+        days[position] = epochDay;
+        counts[position] = references;
+        size++;
+    }
+
+    /**
+     * Метод удаления ссылки пользователя на дату. Дата без ссылок удаляется из индекса.
+     * @param epochDay количество дней от 1970-01-01.
+     * */
+    public void remove(int epochDay)
+    {
+        int position = Arrays.binarySearch(days, 0, size, epochDay);
+        if (position < 0) return;
+        if (--counts[position] > 0) return;
+
+        System.arraycopy(days, position + 1, days, position, size - position - 1);
+        System.arraycopy(counts, position + 1, counts, position, size - position - 1);
+        size--;
+    }
+
+    /**
+     * Метод обхода дат диапазона в порядке возрастания.
+     * @param from начало диапазона включительно;
+     * @param to конец диапазона включительно;
+     * @param visitor объект {@link Visitor}, который будет вызван для каждой даты диапазона.
+     * */
+    public void forEach(int from, int to, Visitor visitor)
+    {
+        int position = Arrays.binarySearch(days, 0, size, from);
+        if (position < 0) position = -position - 1;
+
+        for (; position < size && days[position] <= to; position++)
+        {
+            visitor.visit(days[position]);
+        }
+    }
+
+    /**
+     * @return количество различных дат.
+     * */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Интерфейс для обхода дат методом {@link BirthDateIndex#forEach(int, int, Visitor)}.
+     * */
+    public interface Visitor
+    {
+        void visit(int epochDay);
+    }
+}
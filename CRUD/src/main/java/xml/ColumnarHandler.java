@@ -0,0 +1,283 @@
+package xml;
+
+import application.User;
+import exceptions.XMLProcessException;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import util.IdAllocator;
+import util.IntBitmap;
+import util.StorageWriter;
+import util.XMLUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Класс для работы с хранилищем, которое содержится в памяти в виде столбцов. Идентификаторы имени, фамилии
+ * и даты рождения пользователя хранятся в массивах int, а версии - в массиве long, индексом в которых является идентификатор пользователя,
+ * наличие пользователя отмечается в битовой карте, а значения вспомогательных групп хранятся в словарях
+ * {@link ValueDictionary} вместе с битовыми картами ссылающихся на них пользователей. Хранилище загружается из XML файла и записывается в XML файл того же формата,
+ * что и {@link XMLHandler}.
+ * */
+public class ColumnarHandler extends StorageHandler
+{
+    private static Logger logger = LogManager.getLogger(ColumnarHandler.class);
+
+    private int[] firstNameIds;
+    private int[] secondNameIds;
+    private int[] birthDateIds;
+    private long[] versions;
+    private final BitSet users;
+    private final IdAllocator userIds;
+    private final EnumMap<SupportGroups, ValueDictionary> dictionaries = new EnumMap<>(SupportGroups.class);
+
+    /**
+     * Конструктор класса. Хранилище записывается в файл после каждого изменения ({@link FlushPolicy#sync}).
+     * @param inPath путь к XML файлу хранилища.
+     * @exception XMLProcessException throws в случае ошибки инициализации XML хранилища или в случае ошибки открытия XML файла.
+     * */
+    public ColumnarHandler(String inPath) throws XMLProcessException
+    {
+        this(inPath, new StorageSettings());
+    }
+
+    /**
+     * Конструктор класса. Если включен журнал упреждающей записи, то после загрузки XML файла к хранилищу
+     * применяются записи журнала, после чего XML файл перезаписывается, а журнал очищается.
+     * @param inPath путь к XML файлу хранилища. Журнал хранится в файле с тем же путем и расширением .wal;
+     * @param inSettings объект {@link StorageSettings}, содержащий параметры работы хранилища.
+     * @exception XMLProcessException throws в случае ошибки инициализации XML хранилища или в случае ошибки открытия XML файла.
+     * */
+    public ColumnarHandler(String inPath, StorageSettings inSettings) throws XMLProcessException
+    {
+        super(inPath, inSettings);
+        if (!(new File(getPath()).exists()))
+        {
+            XMLUtil.initXML(getPath());
+        }
+        StorageImage image = StorageImage.load(getPath());
+
+        this.firstNameIds = image.getFirstNameIds();
+        this.secondNameIds = image.getSecondNameIds();
+        this.birthDateIds = image.getBirthDateIds();
+        this.versions = image.getVersions();
+        restoreRevision(image.getRevision());
+        this.users = image.getUsers();
+        this.userIds = new IdAllocator(image.getIds(IDGroups.MGID));
+        for (SupportGroups group : SupportGroups.values())
+        {
+            this.dictionaries.put(group, new ValueDictionary(image.getDictionary(group),
+                    image.getIds(IDGroups.interpret(group))));
+        }
+
+        ValueDictionary firstNames = this.dictionaries.get(SupportGroups.firstNameGroup);
+        ValueDictionary secondNames = this.dictionaries.get(SupportGroups.secondNameGroup);
+        ValueDictionary birthDates = this.dictionaries.get(SupportGroups.birthDateGroup);
+        for (int id = this.users.nextSetBit(0); id >= 0; id = this.users.nextSetBit(id + 1))
+        {
+            firstNames.retain(this.firstNameIds[id], id);
+            secondNames.retain(this.secondNameIds[id], id);
+            birthDates.retain(this.birthDateIds[id], id);
+        }
+
+        open();
+    }
+
+    /**
+     * Метод записи хранилища в XML файл с помощью {@link StorageWriter}.
+     * */
+    @Override
+    protected void writeSnapshot() throws XMLProcessException
+    {
+        try (StorageWriter writer = new StorageWriter(getPath()))
+        {
+            writer.startGroup(XMLUtil.mainGroup, XMLUtil.versionField, getRevision());
+            for (int id = users.nextSetBit(0); id >= 0; id = users.nextSetBit(id + 1))
+            {
+                writer.user(id, firstNameIds[id], secondNameIds[id], birthDateIds[id], versions[id]);
+            }
+            writer.endGroup();
+
+            for (SupportGroups group : SupportGroups.values())
+            {
+                dictionaries.get(group).writeValues(writer, group);
+            }
+
+            userIds.write(writer, IDGroups.MGID.toString());
+            for (SupportGroups group : SupportGroups.values())
+            {
+                dictionaries.get(group).writeIds(writer, IDGroups.interpret(group));
+            }
+            writer.commit();
+        }
+        catch (IOException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_UPDATE_FILE_EXCEPTION, e);
+        }
+    }
+
+    @Override
+    protected boolean contains(int id)
+    {
+        return id >= 0 && users.get(id);
+    }
+
+    @Override
+    protected Integer insert(Integer id, User user, long version) throws XMLProcessException
+    {
+        if (id == null) id = userIds.allocate();
+        else userIds.claim(id);
+
+        ensureCapacity(id + 1);
+        firstNameIds[id] = dictionaries.get(SupportGroups.firstNameGroup).retain(user.getFirstName(), id);
+        secondNameIds[id] = dictionaries.get(SupportGroups.secondNameGroup).retain(user.getSecondName(), id);
+        birthDateIds[id] = dictionaries.get(SupportGroups.birthDateGroup).retain(user.getBirthDate(), id);
+        versions[id] = version;
+        users.set(id);
+
+        logger.debug(new StringBuilder().append("Insert user - ")
+                .append("\tFID: ")
+                .append(firstNameIds[id])
+                .append("\tSID: ")
+                .append(secondNameIds[id])
+                .append("\tBID: ")
+                .append(birthDateIds[id])
+                .append("\tID: ")
+                .append(id).toString());
+        return id;
+    }
+
+    @Override
+    protected void change(Integer id, User newUserInfo, long version) throws XMLProcessException
+    {
+        check(id);
+
+        if (newUserInfo.getFirstName() != null)
+        {
+            firstNameIds[id] = replace(SupportGroups.firstNameGroup, id, firstNameIds[id], newUserInfo.getFirstName());
+        }
+        if (newUserInfo.getSecondName() != null)
+        {
+            secondNameIds[id] = replace(SupportGroups.secondNameGroup, id, secondNameIds[id], newUserInfo.getSecondName());
+        }
+        if (newUserInfo.getBirthDate() != null)
+        {
+            birthDateIds[id] = replace(SupportGroups.birthDateGroup, id, birthDateIds[id], newUserInfo.getBirthDate());
+        }
+        versions[id] = version;
+    }
+
+    @Override
+    protected void remove(Integer id) throws XMLProcessException
+    {
+        check(id);
+
+        dictionaries.get(SupportGroups.firstNameGroup).release(firstNameIds[id], id);
+        dictionaries.get(SupportGroups.secondNameGroup).release(secondNameIds[id], id);
+        dictionaries.get(SupportGroups.birthDateGroup).release(birthDateIds[id], id);
+        users.clear(id);
+        userIds.release(id);
+    }
+
+    @Override
+    protected User find(Integer id) throws XMLProcessException
+    {
+        check(id);
+
+        User user = new User(dictionaries.get(SupportGroups.firstNameGroup).getValue(firstNameIds[id]),
+                dictionaries.get(SupportGroups.secondNameGroup).getValue(secondNameIds[id]),
+                dictionaries.get(SupportGroups.birthDateGroup).getValue(birthDateIds[id]));
+        user.setVersion(versions[id]);
+        return user;
+    }
+
+    @Override
+    protected long findVersion(Integer id) throws XMLProcessException
+    {
+        check(id);
+
+        return versions[id];
+    }
+
+    @Override
+    protected void findAll(List<Integer> usersId)
+    {
+        for (int id = users.nextSetBit(0); id >= 0; id = users.nextSetBit(id + 1))
+        {
+            usersId.add(id);
+        }
+    }
+
+    @Override
+    protected void findAll(int after, int limit, List<Integer> usersId)
+    {
+        if (after == Integer.MAX_VALUE) return;
+
+        int count = 0;
+        for (int id = users.nextSetBit(Math.max(0, after + 1)); id >= 0 && count < limit; id = users.nextSetBit(id + 1))
+        {
+            usersId.add(id);
+            count++;
+        }
+    }
+
+    @Override
+    protected IntBitmap findUsers(SupportGroups groupName, String value)
+    {
+        ValueDictionary dictionary = dictionaries.get(groupName);
+        int id = dictionary.getId(value);
+        return id < 0 ? null : dictionary.getUsers(id);
+    }
+
+    @Override
+    protected Map<Integer, Integer> getReferenceDistribution(SupportGroups groupName)
+    {
+        return dictionaries.get(groupName).getReferenceDistribution();
+    }
+
+    @Override
+    protected void findValues(SupportGroups groupName, ValueVisitor visitor)
+    {
+        dictionaries.get(groupName).findValues(visitor);
+    }
+
+    private int replace(SupportGroups groupName, int userId, int oldId, String value)
+    {
+        ValueDictionary dictionary = dictionaries.get(groupName);
+        if (dictionary.getId(value) == oldId) return oldId;
+
+        int newId = dictionary.retain(value, userId);
+        dictionary.release(oldId, userId);
+        return newId;
+    }
+
+    private void check(Integer id) throws XMLProcessException
+    {
+        if (contains(id)) return;
+
+        XMLProcessException ex = new XMLProcessException(XMLProcessException.XML_USER_SEARCH_EXCEPTION,
+                new StringBuilder()
+                        .append("Storage doesn't have info about user - ID: ")
+                        .append(id.toString())
+                        .toString());
+        logger.info(ex);
+        throw ex;
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity <= firstNameIds.length) return;
+
+        int newCapacity = Math.max(capacity, firstNameIds.length + (firstNameIds.length >> 1));
+        firstNameIds = Arrays.copyOf(firstNameIds, newCapacity);
+        secondNameIds = Arrays.copyOf(secondNameIds, newCapacity);
+        birthDateIds = Arrays.copyOf(birthDateIds, newCapacity);
+        versions = Arrays.copyOf(versions, newCapacity);
+    }
+}
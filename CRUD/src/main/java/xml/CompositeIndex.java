@@ -0,0 +1,165 @@
+package xml;
+
+import application.User;
+
+import java.util.Arrays;
+
+/**
+ * Класс композитного индекса пользователей хранилища по сочетанию имени, фамилии и даты рождения. Хеш таблица
+ * с открытой адресацией (линейное пробирование) хранит пары (хеш сочетания, идентификатор пользователя) в одном
+ * массиве int, поэтому индекс из миллионов пользователей является одним объектом и не увеличивает работу сборщика
+ * мусора. Пользователей с одинаковым сочетанием может быть несколько: каждый хранится в отдельной позиции таблицы.
+ * <p>Индекс содержит только хеши, поэтому найденные пользователи могут иметь другое сочетание с тем же хешем
+ * и должны быть проверены вызывающим методом.</p>
+ * <p>Изменяется под блокировкой записи хранилища, читается под блокировкой чтения.</p>
+ * */
+public class CompositeIndex
+{
+    private static final int defaultCapacity = 16;
+    private static final float loadFactor = 0.5f;
+
+    /** Пары (хеш сочетания, идентификатор пользователя + 1) в соседних ячейках; 0 во второй ячейке - пустая позиция. */
+    private int[] table;
+    private int size;
+    private int threshold;
+
+    /**
+     * Конструктор класса.
+     * @param expectedSize ожидаемое количество пользователей.
+     * */
+    public CompositeIndex(int expectedSize)
+    {
+        int capacity = defaultCapacity;
+        while (capacity * loadFactor < expectedSize) capacity <<= 1;
+        this.table = new int[2 * capacity];
+        this.threshold = (int) (capacity * loadFactor);
+    }
+
+    /**
+     * Метод добавления пользователя.
+     * @param userId идентификатор пользователя;
+     * @param hash хеш сочетания, полученный методом {@link CompositeIndex#hash(User)}.
+     * */
+    public void add(int userId, int hash)
+    {
+        int mask = (table.length >> 1) - 1;
+        int i = hash & mask;
+        while (table[2 * i + 1] != 0) i = (i + 1) & mask;
+
+        table[2 * i] = hash;
+        table[2 * i + 1] = userId + 1;
+        if (++size > threshold) resize(table.length);
+    }
+
+    /**
+     * Метод удаления пользователя.
+     * @param userId идентификатор пользователя;
+     * @param hash хеш сочетания, с которым пользователь был добавлен.
+     * */
+    public void remove(int userId, int hash)
+    {
+        int mask = (table.length >> 1) - 1;
+        int i = hash & mask;
+        for (; table[2 * i + 1] != 0; i = (i + 1) & mask)
+        {
+            if (table[2 * i + 1] == userId + 1) break;
+        }
+        if (table[2 * i + 1] == 0) return;
+
+        table[2 * i + 1] = 0;
+        size--;
+
+        // сдвигаем следующие элементы цепочки, чтобы не оставлять "дыр" при поиске
+        for (int j = (i + 1) & mask; table[2 * j + 1] != 0; j = (j + 1) & mask)
+        {
+            int home = table[2 * j] & mask;
+            if (((j - home) & mask) >= ((j - i) & mask))
+            {
+                table[2 * i] = table[2 * j];
+                table[2 * i + 1] = table[2 * j + 1];
+                table[2 * j + 1] = 0;
+                i = j;
+            }
+        }
+    }
+
+    /**
+     * Метод поиска пользователей по хешу сочетания.
+     * @param hash хеш сочетания.
+     * @return идентификаторы пользователей с таким хешем сочетания в порядке возрастания.
+     * */
+    public int[] find(int hash)
+    {
+        int[] usersId = new int[2];
+        int count = 0;
+        int mask = (table.length >> 1) - 1;
+        for (int i = hash & mask; table[2 * i + 1] != 0; i = (i + 1) & mask)
+        {
+            if (table[2 * i] != hash) continue;
+            if (count == usersId.length) usersId = Arrays.copyOf(usersId, 2 * count);
+            usersId[count++] = table[2 * i + 1] - 1;
+        }
+        usersId = Arrays.copyOf(usersId, count);
+        Arrays.sort(usersId);
+        return usersId;
+    }
+
+    /**
+     * @return количество пользователей в индексе.
+     * */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @param user объект {@link User} с заданными именем, фамилией и датой рождения.
+     * @return хеш сочетания имени, фамилии и даты рождения.
+     * */
+    public static int hash(User user)
+    {
+        int hash = combine(0, user.getFirstName());
+        hash = combine(hash, user.getSecondName());
+        return mix(combine(hash, user.getBirthDate()));
+    }
+
+    /**
+     * Метод добавления значения к хешу сочетания. Позволяет вычислять хеши пользователей по группам:
+     * хеш пользователя равен mix(combine(combine(combine(0, имя), фамилия), дата рождения)).
+     * @param hash хеш предыдущих значений сочетания;
+     * @param value значение группы.
+     * @return хеш сочетания с добавленным значением.
+     * */
+    public static int combine(int hash, String value)
+    {
+        return 31 * hash + value.hashCode();
+    }
+
+    /**
+     * @param hash хеш всех значений сочетания, полученный методом {@link CompositeIndex#combine(int, String)}.
+     * @return хеш сочетания с перемешанными битами.
+     * */
+    public static int mix(int hash)
+    {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private void resize(int capacity)
+    {
+        int[] old = table;
+        int[] newTable = new int[2 * capacity];
+
+        int mask = capacity - 1;
+        for (int j = 0; j < old.length; j += 2)
+        {
+            if (old[j + 1] == 0) continue;
+            int i = old[j] & mask;
+            while (newTable[2 * i + 1] != 0) i = (i + 1) & mask;
+            newTable[2 * i] = old[j];
+            newTable[2 * i + 1] = old[j + 1];
+        }
+        table = newTable;
+        threshold = (int) (capacity * loadFactor);
+    }
+}
@@ -0,0 +1,26 @@
+package xml;
+
+/**
+ * Enum класс содержит политики записи XML хранилища в файл после изменения данных.
+ * Политика задается в application.properties параметром storage.flush.
+ * */
+public enum FlushPolicy {
+    /**
+     * Файл перезаписывается в потоке запроса после каждого изменения. Операция считается выполненной
+     * только после записи файла, поэтому подтвержденные изменения не теряются.
+     * */
+    sync,
+    /**
+     * Групповая запись. Изменения накапливаются фоновым потоком в течение окна storage.flush.window миллисекунд
+     * или до storage.flush.operations операций и записываются одним снимком. Операция считается выполненной
+     * только после записи снимка, в который она попала, поэтому подтвержденные изменения не теряются,
+     * но время ответа увеличивается на время ожидания окна.
+     * */
+    group,
+    /**
+     * Отложенная запись. Операция считается выполненной сразу после изменения данных в памяти, снимок записывается
+     * фоновым потоком по тем же условиям, что и для {@link FlushPolicy#group}. При аварийном завершении приложения
+     * могут быть потеряны изменения, подтвержденные за последнее окно записи.
+     * */
+    interval;
+}
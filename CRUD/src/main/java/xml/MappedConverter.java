@@ -0,0 +1,153 @@
+package xml;
+
+import exceptions.XMLProcessException;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import util.XMLUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.BitSet;
+import java.util.EnumMap;
+
+/**
+ * Класс преобразования хранилища между XML форматом ({@link XMLUtil#initXML(String)}, {@link XMLHandler},
+ * {@link ColumnarHandler}) и двоичным форматом {@link MappedHandler}. Файлы двоичного формата имеют тот же путь,
+ * что и XML файл, и расширения .users, .values и .offsets.
+ * <p>Запуск из командной строки: {@code MappedConverter from-xml|to-xml <путь к XML файлу>}.</p>
+ * */
+public class MappedConverter
+{
+    private static Logger logger = LogManager.getLogger(MappedConverter.class);
+
+    private MappedConverter()
+    {
+    }
+
+    public static void main(String[] args) throws XMLProcessException
+    {
+        if (args.length != 2 || !(args[0].equals("from-xml") || args[0].equals("to-xml")))
+        {
+            System.err.println("Usage: MappedConverter from-xml|to-xml <storage.xml>");
+            System.exit(1);
+        }
+        if (args[0].equals("from-xml")) fromXML(args[1]);
+        else toXML(args[1]);
+    }
+
+    /**
+     * Метод создания файлов двоичного формата из XML файла хранилища. Существующие файлы двоичного формата
+     * заменяются; файл записей создается последним, поэтому прерванное преобразование будет выполнено заново.
+     * @param path путь к XML файлу хранилища.
+     * @exception XMLProcessException throws в случае ошибки чтения XML файла или записи файлов.
+     * */
+    public static void fromXML(String path) throws XMLProcessException
+    {
+        StorageImage image = StorageImage.load(path);
+        BitSet users = image.getUsers();
+
+        EnumMap<SupportGroups, int[]> references = new EnumMap<>(SupportGroups.class);
+        EnumMap<SupportGroups, Integer> bases = new EnumMap<>(SupportGroups.class);
+        EnumMap<SupportGroups, Integer> nexts = new EnumMap<>(SupportGroups.class);
+        for (SupportGroups group : SupportGroups.values())
+        {
+            String[] values = image.getDictionary(group);
+            references.put(group, new int[values.length]);
+
+            int[] ids = image.getIds(IDGroups.interpret(group));
+            int next = ids.length > 0 ? ids[XMLUtil.maxIdValuePosition] : 0;
+            int base = base(ids);
+            for (int id = 0; id < values.length; id++)
+            {
+                if (values[id] == null) continue;
+                base = Math.min(base, id);
+                next = Math.max(next, id + 1);
+            }
+            bases.put(group, base);
+            nexts.put(group, next);
+        }
+        for (int id = users.nextSetBit(0); id >= 0; id = users.nextSetBit(id + 1))
+        {
+            reference(image, references, SupportGroups.firstNameGroup, image.getFirstNameIds()[id]);
+            reference(image, references, SupportGroups.secondNameGroup, image.getSecondNameIds()[id]);
+            reference(image, references, SupportGroups.birthDateGroup, image.getBirthDateIds()[id]);
+        }
+
+        int[] userIds = image.getIds(IDGroups.MGID);
+        int next = Math.max(userIds.length > 0 ? userIds[XMLUtil.maxIdValuePosition] : 0, users.length());
+        int base = users.isEmpty() ? base(userIds) : Math.min(base(userIds), users.nextSetBit(0));
+
+        try
+        {
+            MappedDictionary.create(path, dictionaries(image), references, bases, nexts);
+            MappedHandler.create(path, image, base, next);
+        }
+        catch (IOException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_UPDATE_FILE_EXCEPTION, e);
+        }
+
+        logger.info(new StringBuilder("XML storage converted to mapped format - users: ").append(image.getUserCount())
+                .append("\tpath: ").append(path).toString());
+    }
+
+    /**
+     * Метод записи хранилища двоичного формата в XML файл. Если рядом с файлами есть журнал упреждающей записи,
+     * он применяется перед записью.
+     * @param path путь к XML файлу хранилища.
+     * @exception XMLProcessException throws в случае ошибки открытия файлов или записи XML файла.
+     * */
+    public static void toXML(String path) throws XMLProcessException
+    {
+        StorageSettings settings = new StorageSettings();
+        settings.setWalEnabled(new File(path + ".wal").exists());
+
+        MappedHandler handler = new MappedHandler(path, settings);
+        try
+        {
+            handler.exportXML(path);
+        }
+        finally
+        {
+            handler.close();
+        }
+
+        logger.info(new StringBuilder("Mapped storage converted to XML - path: ").append(path).toString());
+    }
+
+    private static EnumMap<SupportGroups, String[]> dictionaries(StorageImage image)
+    {
+        EnumMap<SupportGroups, String[]> dictionaries = new EnumMap<>(SupportGroups.class);
+        for (SupportGroups group : SupportGroups.values())
+        {
+            dictionaries.put(group, image.getDictionary(group));
+        }
+        return dictionaries;
+    }
+
+    private static void reference(StorageImage image, EnumMap<SupportGroups, int[]> references,
+                                  SupportGroups groupName, int id) throws XMLProcessException
+    {
+        if (id < 0 || id >= references.get(groupName).length || image.getDictionary(groupName)[id] == null)
+        {
+            throw new XMLProcessException(XMLProcessException.XML_FORMAT_EXCEPTION,
+                    new StringBuilder("Dictionary doesn't have value - ID: ").append(id).toString());
+        }
+        references.get(groupName)[id]++;
+    }
+
+    /**
+     * @param ids идентификаторы группы XML хранилища.
+     * @return наименьший из следующего еще не выданного и свободных идентификаторов.
+     * */
+    private static int base(int[] ids)
+    {
+        int base = ids.length > 0 ? ids[XMLUtil.maxIdValuePosition] : 0;
+        for (int i = XMLUtil.priorityFreeIdPosition; i < ids.length; i++)
+        {
+            base = Math.min(base, ids[i]);
+        }
+        return base;
+    }
+}
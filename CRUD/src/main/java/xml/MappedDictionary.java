@@ -0,0 +1,433 @@
+package xml;
+
+import exceptions.XMLProcessException;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import util.IdAllocator;
+import util.MappedFile;
+import util.StorageWriter;
+import util.StringIndex;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Класс словарей значений вспомогательных групп хранилища {@link MappedHandler}, отображенных в память.
+ * Значения всех групп хранятся в файле строк (.values) в виде длины в байтах и байтов UTF-8 и дописываются
+ * в конец файла. Таблица смещений (.offsets) содержит для каждого идентификатора значения каждой группы запись
+ * фиксированной длины: смещение значения в файле строк (0, если идентификатор свободен) и количество ссылок
+ * пользователей. Поэтому получение значения по идентификатору - это вычисление позиции записи в таблице и чтение
+ * строки по смещению. Идентификатор значения ищется в таблицах {@link StringIndex}, хранящих только идентификаторы
+ * и хеши значений, поэтому сами строки в куче не хранятся. Значение удаляется, когда на него не остается ссылок;
+ * место, занятое удаленными строками,
+ * освобождается при открытии словаря, если его больше, чем места, занятого действующими строками.
+ * <p>При освобождении места оба файла записываются заново во временные файлы (.tmp), которые затем заменяют
+ * прежние: сначала файл строк, потом таблица смещений. Если запись прервана, при следующем открытии незаконченные
+ * временные файлы удаляются, а если уже заменен файл строк, заменяется и таблица смещений.</p>
+ * */
+public class MappedDictionary
+{
+    private static Logger logger = LogManager.getLogger(MappedDictionary.class);
+
+    static final String valuesSuffix = ".values";
+    static final String offsetsSuffix = ".offsets";
+
+    private static final int valuesMagic = 0x56414c31;
+    private static final int offsetsMagic = 0x4f464631;
+    private static final int format = 1;
+    private static final int valuesHeaderSize = 16;
+    private static final int valuesEndPosition = 8;
+    private static final int offsetsHeaderSize = 8 + 8 * 3;
+    private static final int entrySize = 16;
+    private static final int groupCount = SupportGroups.values().length;
+    private static final int compactThreshold = 1 << 20;
+    private static final String tempSuffix = ".tmp";
+
+    private final String path;
+    private MappedFile values;
+    private MappedFile offsets;
+    private int end;
+    private final EnumMap<SupportGroups, StringIndex> ids = new EnumMap<>(SupportGroups.class);
+    private final EnumMap<SupportGroups, IdAllocator> allocators = new EnumMap<>(SupportGroups.class);
+
+    /**
+     * Конструктор класса. Открывает файлы словарей и строит соответствие значений идентификаторам.
+     * @param inPath путь к XML файлу хранилища. Файлы словарей имеют тот же путь и расширения .values и .offsets.
+     * @exception XMLProcessException throws в случае ошибки открытия файлов или нарушения их структуры.
+     * */
+    public MappedDictionary(String inPath) throws XMLProcessException
+    {
+        this.path = inPath;
+        try
+        {
+            recover(inPath);
+            this.values = new MappedFile(inPath + valuesSuffix, valuesHeaderSize);
+            this.offsets = new MappedFile(inPath + offsetsSuffix, offsetsHeaderSize);
+            if (this.values.getInt(0) != valuesMagic || this.offsets.getInt(0) != offsetsMagic)
+            {
+                throw new XMLProcessException(XMLProcessException.XML_FORMAT_EXCEPTION,
+                        new StringBuilder("Unknown dictionary file format: ").append(inPath).toString());
+            }
+            this.end = (int) this.values.getLong(valuesEndPosition);
+
+            long live = load();
+            long garbage = this.end - valuesHeaderSize - live;
+            if (garbage > compactThreshold && garbage > live) compact((int) live);
+        }
+        catch (IOException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_INIT_EXCEPTION, e);
+        }
+    }
+
+    /**
+     * Метод создания файлов словарей.
+     * @param path путь к XML файлу хранилища;
+     * @param dictionaries значения групп, индексом является идентификатор значения;
+     * @param references количество ссылок пользователей на значения групп. Значения без ссылок не записываются;
+     * @param bases наименьшие идентификаторы групп;
+     * @param nexts следующие еще не выданные идентификаторы групп.
+     * @exception IOException throws в случае ошибки записи файлов.
+     * */
+    static void create(String path, EnumMap<SupportGroups, String[]> dictionaries,
+                       EnumMap<SupportGroups, int[]> references,
+                       EnumMap<SupportGroups, Integer> bases, EnumMap<SupportGroups, Integer> nexts) throws IOException
+    {
+        int capacity = 0;
+        for (SupportGroups group : SupportGroups.values()) capacity = Math.max(capacity, nexts.get(group));
+        Files.deleteIfExists(Paths.get(path + valuesSuffix));
+        Files.deleteIfExists(Paths.get(path + offsetsSuffix));
+
+        try (MappedFile values = new MappedFile(path + valuesSuffix, valuesHeaderSize);
+             MappedFile offsets = new MappedFile(path + offsetsSuffix, offsetsHeaderSize + capacity * groupCount * entrySize))
+        {
+            int end = valuesHeaderSize;
+            for (SupportGroups group : SupportGroups.values())
+            {
+                String[] groupValues = dictionaries.get(group);
+                int[] groupReferences = references.get(group);
+                for (int id = 0; id < groupValues.length; id++)
+                {
+                    if (groupValues[id] == null || id >= groupReferences.length || groupReferences[id] == 0) continue;
+
+                    byte[] bytes = groupValues[id].getBytes(StandardCharsets.UTF_8);
+                    values.ensureCapacity(end + 4 + bytes.length);
+                    values.putInt(end, bytes.length);
+                    values.putBytes(end + 4, bytes);
+                    offsets.putLong(entryPosition(group, id), end);
+                    offsets.putInt(entryPosition(group, id) + 8, groupReferences[id]);
+                    end += 4 + bytes.length;
+                }
+                offsets.putInt(8 + group.ordinal() * 8, bases.get(group));
+                offsets.putInt(12 + group.ordinal() * 8, nexts.get(group));
+            }
+            values.putInt(0, valuesMagic);
+            values.putInt(4, format);
+            values.putLong(valuesEndPosition, end);
+            offsets.putInt(0, offsetsMagic);
+            offsets.putInt(4, format);
+        }
+    }
+
+    /**
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param value значение.
+     * @return идентификатор значения или -1, если значения нет в словаре.
+     * */
+    public int getId(SupportGroups groupName, String value)
+    {
+        byte[] bytes = StringIndex.encode(value);
+        return ids.get(groupName).get(bytes, StringIndex.hash(bytes));
+    }
+
+    /**
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param id идентификатор значения.
+     * @return значение или null, если значения с таким идентификатором нет.
+     * */
+    public String getValue(SupportGroups groupName, int id)
+    {
+        int offset = offset(groupName, id);
+        if (offset == 0) return null;
+        return new String(values.getBytes(offset + 4, values.getInt(offset)), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Метод сравнения значения с заданным идентификатором с искомым значением без чтения строки.
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param id идентификатор значения;
+     * @param value байты искомого значения в кодировке UTF-8.
+     * @return true, если значения равны.
+     * */
+    private boolean matches(SupportGroups groupName, int id, byte[] value)
+    {
+        int offset = offset(groupName, id);
+        return offset != 0 && values.getInt(offset) == value.length && values.matches(offset + 4, value);
+    }
+
+    /**
+     * Метод добавления ссылки пользователя на значение. Если значения нет в словаре, оно дописывается в файл строк.
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param value значение.
+     * @return идентификатор значения.
+     * @exception XMLProcessException throws в случае ошибки увеличения файлов словаря.
+     * */
+    public int retain(SupportGroups groupName, String value) throws XMLProcessException
+    {
+        byte[] bytes = StringIndex.encode(value);
+        int hash = StringIndex.hash(bytes);
+        int id = ids.get(groupName).get(bytes, hash);
+        if (id >= 0)
+        {
+            int entry = entryPosition(groupName, id);
+            offsets.putInt(entry + 8, offsets.getInt(entry + 8) + 1);
+            return id;
+        }
+
+        id = allocators.get(groupName).allocate();
+        int entry = entryPosition(groupName, id);
+        try
+        {
+            values.ensureCapacity((long) end + 4 + bytes.length);
+            offsets.ensureCapacity(entry + entrySize);
+        }
+        catch (IOException e)
+        {
+            allocators.get(groupName).release(id);
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_UPDATE_FILE_EXCEPTION, e);
+        }
+        values.putInt(end, bytes.length);
+        values.putBytes(end + 4, bytes);
+        offsets.putInt(entry + 8, 1);
+        offsets.putLong(entry, end);
+        end += 4 + bytes.length;
+        ids.get(groupName).put(id, hash);
+        return id;
+    }
+
+    /**
+     * Метод удаления ссылки пользователя на значение. Если ссылок не осталось, значение удаляется из словаря.
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param id идентификатор значения.
+     * @return true, если значение удалено из словаря.
+     * */
+    public boolean release(SupportGroups groupName, int id)
+    {
+        int entry = entryPosition(groupName, id);
+        int references = offsets.getInt(entry + 8) - 1;
+        offsets.putInt(entry + 8, references);
+        if (references > 0) return false;
+
+        int offset = (int) offsets.getLong(entry);
+        ids.get(groupName).remove(id, StringIndex.hash(values.getBytes(offset + 4, values.getInt(offset))));
+        offsets.putLong(entry, 0);
+        allocators.get(groupName).release(id);
+        return true;
+    }
+
+    /**
+     * Метод получения распределения количества ссылок на значения группы.
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы.
+     * @return отсортированный {@link Map}, сопоставляющий количеству ссылок число значений с таким количеством ссылок.
+     * */
+    public Map<Integer, Integer> getReferenceDistribution(SupportGroups groupName)
+    {
+        Map<Integer, Integer> distribution = new TreeMap<>();
+        int next = allocators.get(groupName).getNext();
+        for (int id = 0; id < next; id++)
+        {
+            if (offset(groupName, id) == 0) continue;
+            distribution.merge(offsets.getInt(entryPosition(groupName, id) + 8), 1, Integer::sum);
+        }
+        return distribution;
+    }
+
+    /**
+     * Метод обхода значений группы.
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param visitor объект {@link StorageHandler.ValueVisitor}, который будет вызван для каждого значения.
+     * */
+    public void findValues(SupportGroups groupName, StorageHandler.ValueVisitor visitor)
+    {
+        int next = allocators.get(groupName).getNext();
+        for (int id = 0; id < next; id++)
+        {
+            if (offset(groupName, id) == 0) continue;
+            visitor.visit(getValue(groupName, id), offsets.getInt(entryPosition(groupName, id) + 8));
+        }
+    }
+
+    /**
+     * Метод записи значений группы в группу XML хранилища в порядке идентификаторов.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public void writeValues(StorageWriter writer, SupportGroups groupName) throws IOException
+    {
+        writer.startGroup(groupName.toString());
+        int next = allocators.get(groupName).getNext();
+        for (int id = 0; id < next; id++)
+        {
+            String value = getValue(groupName, id);
+            if (value != null) writer.item(id, value);
+        }
+        writer.endGroup();
+    }
+
+    /**
+     * Метод записи идентификаторов группы в группу XML хранилища.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public void writeIds(StorageWriter writer, SupportGroups groupName) throws IOException
+    {
+        allocators.get(groupName).write(writer, IDGroups.interpret(groupName).toString());
+    }
+
+    /**
+     * Метод записи конца файла строк и следующих идентификаторов групп в заголовки и сброса файлов на диск.
+     * */
+    public void force()
+    {
+        values.putLong(valuesEndPosition, end);
+        for (SupportGroups group : SupportGroups.values())
+        {
+            offsets.putInt(12 + group.ordinal() * 8, allocators.get(group).getNext());
+        }
+        values.force();
+        offsets.force();
+    }
+
+    /**
+     * Метод сброса и закрытия файлов словаря.
+     * @exception IOException throws в случае ошибки закрытия файлов.
+     * */
+    public void close() throws IOException
+    {
+        force();
+        values.close();
+        offsets.close();
+    }
+
+    /**
+     * Метод построения соответствия значений идентификаторам и состояния выделения идентификаторов.
+     * Свободными считаются идентификаторы от наименьшего до следующего еще не выданного, не имеющие значения.
+     * @return количество байтов, занятых действующими строками.
+     * */
+    private long load() throws XMLProcessException
+    {
+        long live = 0;
+        for (SupportGroups group : SupportGroups.values())
+        {
+            int base = offsets.getInt(8 + group.ordinal() * 8);
+            int next = offsets.getInt(12 + group.ordinal() * 8);
+            StringIndex groupIds = new StringIndex((id, value) -> matches(group, id, value), next - base);
+            List<Integer> allocatorIds = new ArrayList<>();
+            allocatorIds.add(next);
+            for (int id = base; id < next; id++)
+            {
+                int offset = offset(group, id);
+                if (offset == 0)
+                {
+                    allocatorIds.add(id);
+                    continue;
+                }
+                int length = values.getInt(offset);
+                groupIds.put(id, StringIndex.hash(values.getBytes(offset + 4, length)));
+                live += 4 + length;
+            }
+            ids.put(group, groupIds);
+            allocators.put(group, new IdAllocator(allocatorIds.stream().mapToInt(Integer::intValue).toArray()));
+        }
+        return live;
+    }
+
+    /**
+     * Метод перезаписи файлов словаря без удаленных значений.
+     * @param live количество байтов, занятых действующими строками.
+     * */
+    private void compact(int live) throws IOException
+    {
+        int newEnd = valuesHeaderSize;
+        try (MappedFile compactedValues = new MappedFile(path + valuesSuffix + tempSuffix, valuesHeaderSize + live);
+             MappedFile compactedOffsets = new MappedFile(path + offsetsSuffix + tempSuffix, offsets.size()))
+        {
+            for (SupportGroups group : SupportGroups.values())
+            {
+                int next = allocators.get(group).getNext();
+                for (int id = 0; id < next; id++)
+                {
+                    int entry = entryPosition(group, id);
+                    int offset = offset(group, id);
+                    if (offset == 0) continue;
+                    int length = 4 + values.getInt(offset);
+                    compactedValues.putBytes(newEnd, values.getBytes(offset, length));
+                    compactedOffsets.putLong(entry, newEnd);
+                    compactedOffsets.putInt(entry + 8, offsets.getInt(entry + 8));
+                    newEnd += length;
+                }
+                compactedOffsets.putInt(8 + group.ordinal() * 8, offsets.getInt(8 + group.ordinal() * 8));
+                compactedOffsets.putInt(12 + group.ordinal() * 8, offsets.getInt(12 + group.ordinal() * 8));
+            }
+            compactedValues.putInt(0, valuesMagic);
+            compactedValues.putInt(4, format);
+            compactedValues.putLong(valuesEndPosition, newEnd);
+            compactedOffsets.putInt(0, offsetsMagic);
+            compactedOffsets.putInt(4, format);
+        }
+
+        values.close();
+        offsets.close();
+        Files.move(Paths.get(path + valuesSuffix + tempSuffix), Paths.get(path + valuesSuffix),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        Files.move(Paths.get(path + offsetsSuffix + tempSuffix), Paths.get(path + offsetsSuffix),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        values = new MappedFile(path + valuesSuffix, valuesHeaderSize);
+        offsets = new MappedFile(path + offsetsSuffix, offsetsHeaderSize);
+
+        logger.info(new StringBuilder("Dictionary strings compacted - bytes: ").append(end)
+                .append(" -> ").append(newEnd).toString());
+        end = newEnd;
+    }
+
+    /**
+     * Метод завершения или отмены прерванной перезаписи файлов словаря.
+     * */
+    private static void recover(String path) throws IOException
+    {
+        File valuesTemp = new File(path + valuesSuffix + tempSuffix);
+        File offsetsTemp = new File(path + offsetsSuffix + tempSuffix);
+        if (offsetsTemp.exists() && !valuesTemp.exists())
+        {
+            Files.move(offsetsTemp.toPath(), Paths.get(path + offsetsSuffix), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            logger.info("Interrupted dictionary compaction completed");
+            return;
+        }
+        Files.deleteIfExists(valuesTemp.toPath());
+        Files.deleteIfExists(offsetsTemp.toPath());
+    }
+
+    /**
+     * @return смещение значения в файле строк или 0, если идентификатор свободен.
+     * */
+    private int offset(SupportGroups groupName, int id)
+    {
+        int entry = entryPosition(groupName, id);
+        return id < 0 || entry + entrySize > offsets.size() ? 0 : (int) offsets.getLong(entry);
+    }
+
+    private static int entryPosition(SupportGroups groupName, int id)
+    {
+        return offsetsHeaderSize + (id * groupCount + groupName.ordinal()) * entrySize;
+    }
+}
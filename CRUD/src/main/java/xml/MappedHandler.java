@@ -0,0 +1,506 @@
+package xml;
+
+import application.User;
+import exceptions.XMLProcessException;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import util.IdAllocator;
+import util.IntBitmap;
+import util.LoadStatistics;
+import util.MappedFile;
+import util.StorageWriter;
+import util.XMLUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Класс для работы с хранилищем в двоичном формате, отображенном в память. Пользователи хранятся в файле
+ * записей (.users) в виде записей фиксированной длины (идентификатор, идентификаторы имени, фамилии и даты рождения,
+ * версия, признаки), позиция которых вычисляется по идентификатору пользователя, а значения вспомогательных групп -
+ * в словарях {@link MappedDictionary}. Файлы имеют тот же путь, что и XML файл хранилища, и свои расширения.
+ * <p>Открытие хранилища не разбирает XML: файлы отображаются в память, после чего просматриваются только признаки
+ * записей и таблица смещений словарей. Получение пользователя - это чтение одной записи и трех строк по смещениям,
+ * а изменение пользователя изменяет только его запись, а также дописывает новые значения в словари. Запись хранилища
+ * сбрасывает на диск измененные страницы файлов. Битовые карты пользователей для поиска по значениям строятся
+ * при первом поиске.</p>
+ * <p>Изменения записываются на месте, поэтому сбой во время записи может оставить файлы несогласованными;
+ * для восстановления после сбоя следует включить журнал упреждающей записи {@link WriteAheadLog}.</p>
+ * <p>Если файлов записей нет, они создаются из XML файла хранилища с помощью {@link MappedConverter},
+ * а если нет и XML файла, - из пустого хранилища {@link XMLUtil#initXML(String)}.</p>
+ * */
+public class MappedHandler extends StorageHandler
+{
+    private static Logger logger = LogManager.getLogger(MappedHandler.class);
+
+    static final String usersSuffix = ".users";
+
+    private static final int usersMagic = 0x55535231;
+    private static final int format = 1;
+    private static final int headerSize = 32;
+    private static final int revisionPosition = 8;
+    private static final int basePosition = 16;
+    private static final int nextPosition = 20;
+    private static final int recordSize = 32;
+    private static final int fidOffset = 4;
+    private static final int sidOffset = 8;
+    private static final int bidOffset = 12;
+    private static final int versionOffset = 16;
+    private static final int flagsOffset = 24;
+    private static final int presentFlag = 1;
+    /** Наибольший идентификатор пользователя, запись которого помещается в файл записей размером до 2 ГБ. */
+    private static final int maxId = (Integer.MAX_VALUE - headerSize) / recordSize - 1;
+
+    private final MappedFile records;
+    private final MappedDictionary dictionary;
+    private final BitSet users;
+    private final IdAllocator userIds;
+    private volatile EnumMap<SupportGroups, List<IntBitmap>> valueUsers;
+
+    /**
+     * Конструктор класса. Хранилище записывается в файл после каждого изменения ({@link FlushPolicy#sync}).
+     * @param inPath путь к XML файлу хранилища.
+     * @exception XMLProcessException throws в случае ошибки инициализации хранилища или в случае ошибки открытия файлов.
+     * */
+    public MappedHandler(String inPath) throws XMLProcessException
+    {
+        this(inPath, new StorageSettings());
+    }
+
+    /**
+     * Конструктор класса. Если включен журнал упреждающей записи, то после открытия файлов к хранилищу
+     * применяются записи журнала, после чего файлы сбрасываются на диск, а журнал очищается.
+     * @param inPath путь к XML файлу хранилища. Файлы хранилища имеют тот же путь и расширения .users, .values
+     *               и .offsets, журнал - расширение .wal;
+     * @param inSettings объект {@link StorageSettings}, содержащий параметры работы хранилища.
+     * @exception XMLProcessException throws в случае ошибки инициализации хранилища или в случае ошибки открытия файлов.
+     * */
+    public MappedHandler(String inPath, StorageSettings inSettings) throws XMLProcessException
+    {
+        super(inPath, inSettings);
+        LoadStatistics statistics = new LoadStatistics();
+        if (!(new File(getPath() + usersSuffix).exists()))
+        {
+            if (!(new File(getPath()).exists()))
+            {
+                XMLUtil.initXML(getPath());
+            }
+            MappedConverter.fromXML(getPath());
+        }
+
+        this.dictionary = new MappedDictionary(getPath());
+        try
+        {
+            this.records = new MappedFile(getPath() + usersSuffix, headerSize);
+        }
+        catch (IOException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_INIT_EXCEPTION, e);
+        }
+        if (this.records.getInt(0) != usersMagic)
+        {
+            throw new XMLProcessException(XMLProcessException.XML_FORMAT_EXCEPTION,
+                    new StringBuilder("Unknown users file format: ").append(getPath()).toString());
+        }
+        restoreRevision(this.records.getLong(revisionPosition));
+
+        int base = this.records.getInt(basePosition);
+        int next = this.records.getInt(nextPosition);
+        this.users = new BitSet(next);
+        List<Integer> ids = new ArrayList<>();
+        ids.add(next);
+        for (int id = base; id < next; id++)
+        {
+            if ((this.records.getInt(position(id) + flagsOffset) & presentFlag) != 0) this.users.set(id);
+            else ids.add(id);
+        }
+        this.userIds = new IdAllocator(ids.stream().mapToInt(Integer::intValue).toArray());
+
+        logger.info(new StringBuilder("Mapped storage opened - ")
+                .append(statistics.finish(this.users.cardinality())).toString());
+
+        open();
+    }
+
+    /**
+     * Метод создания файла записей.
+     * @param path путь к XML файлу хранилища;
+     * @param image объект {@link StorageImage}, содержащий пользователей хранилища;
+     * @param base наименьший идентификатор пользователя;
+     * @param next следующий еще не выданный идентификатор пользователя.
+     * @exception IOException throws в случае ошибки записи файла или если записи не помещаются в файл размером 2 ГБ.
+     * */
+    static void create(String path, StorageImage image, int base, int next) throws IOException
+    {
+        if (next > maxId + 1) throw new IOException("Mapped file can't exceed 2 GB");
+        String tempPath = path + usersSuffix + ".tmp";
+        Files.deleteIfExists(Paths.get(tempPath));
+
+        try (MappedFile records = new MappedFile(tempPath, (int) fileSize(next)))
+        {
+            BitSet users = image.getUsers();
+            for (int id = users.nextSetBit(0); id >= 0; id = users.nextSetBit(id + 1))
+            {
+                int position = position(id);
+                records.putInt(position, id);
+                records.putInt(position + fidOffset, image.getFirstNameIds()[id]);
+                records.putInt(position + sidOffset, image.getSecondNameIds()[id]);
+                records.putInt(position + bidOffset, image.getBirthDateIds()[id]);
+                records.putLong(position + versionOffset, image.getVersions()[id]);
+                records.putInt(position + flagsOffset, presentFlag);
+            }
+            records.putInt(0, usersMagic);
+            records.putInt(4, format);
+            records.putLong(revisionPosition, image.getRevision());
+            records.putInt(basePosition, base);
+            records.putInt(nextPosition, next);
+        }
+        Files.move(Paths.get(tempPath), Paths.get(path + usersSuffix), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Метод записи хранилища в XML файл того же формата, что и {@link XMLHandler}. Используется
+     * {@link MappedConverter} для обратного преобразования.
+     * @param xmlPath путь к XML файлу.
+     * @exception XMLProcessException throws в случае ошибки записи XML файла.
+     * */
+    public void exportXML(String xmlPath) throws XMLProcessException
+    {
+        long stamp = this.lock.readLock();
+        try (StorageWriter writer = new StorageWriter(xmlPath))
+        {
+            writer.startGroup(XMLUtil.mainGroup, XMLUtil.versionField, getRevision());
+            for (int id = users.nextSetBit(0); id >= 0; id = users.nextSetBit(id + 1))
+            {
+                int position = position(id);
+                writer.user(id, records.getInt(position + fidOffset), records.getInt(position + sidOffset),
+                        records.getInt(position + bidOffset), records.getLong(position + versionOffset));
+            }
+            writer.endGroup();
+
+            for (SupportGroups group : SupportGroups.values())
+            {
+                dictionary.writeValues(writer, group);
+            }
+
+            userIds.write(writer, IDGroups.MGID.toString());
+            for (SupportGroups group : SupportGroups.values())
+            {
+                dictionary.writeIds(writer, group);
+            }
+            writer.commit();
+        }
+        catch (IOException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_UPDATE_FILE_EXCEPTION, e);
+        }
+        finally
+        {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Метод записи хранилища: счетчик изменений и следующие идентификаторы записываются в заголовки файлов,
+     * после чего измененные страницы файлов сбрасываются на диск.
+     * */
+    @Override
+    protected void writeSnapshot()
+    {
+        records.putLong(revisionPosition, getRevision());
+        records.putInt(nextPosition, userIds.getNext());
+        records.force();
+        dictionary.force();
+    }
+
+    /**
+     * Метод записи накопленных изменений и закрытия файлов хранилища.
+     * @exception XMLProcessException throws в случае ошибки записи или закрытия файлов.
+     * */
+    @Override
+    public void close() throws XMLProcessException
+    {
+        super.close();
+        try
+        {
+            records.close();
+            dictionary.close();
+        }
+        catch (IOException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_UPDATE_FILE_EXCEPTION, e);
+        }
+    }
+
+    @Override
+    protected boolean contains(int id)
+    {
+        return id >= 0 && users.get(id);
+    }
+
+    @Override
+    protected Integer insert(Integer id, User user, long version) throws XMLProcessException
+    {
+        if (id == null) id = userIds.allocate();
+        else userIds.claim(id);
+
+        if (id > maxId)
+        {
+            userIds.release(id);
+            XMLProcessException ex = new XMLProcessException(XMLProcessException.XML_UPDATE_FILE_EXCEPTION,
+                    new StringBuilder("User ID exceeds mapped storage limit - ID: ").append(id)
+                            .append("\tlimit: ").append(maxId).toString());
+            logger.error(ex);
+            throw ex;
+        }
+
+        int position = position(id);
+        try
+        {
+            records.ensureCapacity(fileSize(id + 1));
+        }
+        catch (IOException e)
+        {
+            userIds.release(id);
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_UPDATE_FILE_EXCEPTION, e);
+        }
+
+        int fid = retain(SupportGroups.firstNameGroup, user.getFirstName(), id);
+        int sid = retain(SupportGroups.secondNameGroup, user.getSecondName(), id);
+        int bid = retain(SupportGroups.birthDateGroup, user.getBirthDate(), id);
+        records.putInt(position, id);
+        records.putInt(position + fidOffset, fid);
+        records.putInt(position + sidOffset, sid);
+        records.putInt(position + bidOffset, bid);
+        records.putLong(position + versionOffset, version);
+        records.putInt(position + flagsOffset, presentFlag);
+        users.set(id);
+
+        logger.debug(new StringBuilder().append("Insert user - ")
+                .append("\tFID: ")
+                .append(fid)
+                .append("\tSID: ")
+                .append(sid)
+                .append("\tBID: ")
+                .append(bid)
+                .append("\tID: ")
+                .append(id).toString());
+        return id;
+    }
+
+    @Override
+    protected void change(Integer id, User newUserInfo, long version) throws XMLProcessException
+    {
+        check(id);
+
+        int position = position(id);
+        if (newUserInfo.getFirstName() != null)
+        {
+            replace(SupportGroups.firstNameGroup, id, position + fidOffset, newUserInfo.getFirstName());
+        }
+        if (newUserInfo.getSecondName() != null)
+        {
+            replace(SupportGroups.secondNameGroup, id, position + sidOffset, newUserInfo.getSecondName());
+        }
+        if (newUserInfo.getBirthDate() != null)
+        {
+            replace(SupportGroups.birthDateGroup, id, position + bidOffset, newUserInfo.getBirthDate());
+        }
+        records.putLong(position + versionOffset, version);
+    }
+
+    @Override
+    protected void remove(Integer id) throws XMLProcessException
+    {
+        check(id);
+
+        int position = position(id);
+        release(SupportGroups.firstNameGroup, records.getInt(position + fidOffset), id);
+        release(SupportGroups.secondNameGroup, records.getInt(position + sidOffset), id);
+        release(SupportGroups.birthDateGroup, records.getInt(position + bidOffset), id);
+        records.putInt(position + flagsOffset, 0);
+        users.clear(id);
+        userIds.release(id);
+    }
+
+    @Override
+    protected User find(Integer id) throws XMLProcessException
+    {
+        check(id);
+
+        int position = position(id);
+        User user = new User(dictionary.getValue(SupportGroups.firstNameGroup, records.getInt(position + fidOffset)),
+                dictionary.getValue(SupportGroups.secondNameGroup, records.getInt(position + sidOffset)),
+                dictionary.getValue(SupportGroups.birthDateGroup, records.getInt(position + bidOffset)));
+        user.setVersion(records.getLong(position + versionOffset));
+        return user;
+    }
+
+    @Override
+    protected long findVersion(Integer id) throws XMLProcessException
+    {
+        check(id);
+
+        return records.getLong(position(id) + versionOffset);
+    }
+
+    @Override
+    protected void findAll(List<Integer> usersId)
+    {
+        for (int id = users.nextSetBit(0); id >= 0; id = users.nextSetBit(id + 1))
+        {
+            usersId.add(id);
+        }
+    }
+
+    @Override
+    protected void findAll(int after, int limit, List<Integer> usersId)
+    {
+        if (after == Integer.MAX_VALUE) return;
+
+        int count = 0;
+        for (int id = users.nextSetBit(Math.max(0, after + 1)); id >= 0 && count < limit; id = users.nextSetBit(id + 1))
+        {
+            usersId.add(id);
+            count++;
+        }
+    }
+
+    @Override
+    protected IntBitmap findUsers(SupportGroups groupName, String value)
+    {
+        int id = dictionary.getId(groupName, value);
+        if (id < 0) return null;
+
+        List<IntBitmap> groupUsers = getValueUsers().get(groupName);
+        return id < groupUsers.size() ? groupUsers.get(id) : null;
+    }
+
+    @Override
+    protected Map<Integer, Integer> getReferenceDistribution(SupportGroups groupName)
+    {
+        return dictionary.getReferenceDistribution(groupName);
+    }
+
+    @Override
+    protected void findValues(SupportGroups groupName, ValueVisitor visitor)
+    {
+        dictionary.findValues(groupName, visitor);
+    }
+
+    /**
+     * Метод получения битовых карт пользователей, ссылающихся на значения. При первом вызове битовые карты
+     * строятся просмотром всех записей; вызывается под блокировкой чтения, поэтому записи в это время не изменяются.
+     * После построения битовые карты изменяются вместе с записями под блокировкой записи.
+     * */
+    private EnumMap<SupportGroups, List<IntBitmap>> getValueUsers()
+    {
+        EnumMap<SupportGroups, List<IntBitmap>> result = valueUsers;
+        if (result != null) return result;
+
+        synchronized (this)
+        {
+            if (valueUsers != null) return valueUsers;
+
+            result = new EnumMap<>(SupportGroups.class);
+            for (SupportGroups group : SupportGroups.values())
+            {
+                result.put(group, new ArrayList<>());
+            }
+            for (int id = users.nextSetBit(0); id >= 0; id = users.nextSetBit(id + 1))
+            {
+                int position = position(id);
+                bitmap(result, SupportGroups.firstNameGroup, records.getInt(position + fidOffset)).add(id);
+                bitmap(result, SupportGroups.secondNameGroup, records.getInt(position + sidOffset)).add(id);
+                bitmap(result, SupportGroups.birthDateGroup, records.getInt(position + bidOffset)).add(id);
+            }
+            valueUsers = result;
+            return result;
+        }
+    }
+
+    private static IntBitmap bitmap(EnumMap<SupportGroups, List<IntBitmap>> valueUsers, SupportGroups groupName, int id)
+    {
+        List<IntBitmap> groupUsers = valueUsers.get(groupName);
+        while (groupUsers.size() <= id) groupUsers.add(null);
+        IntBitmap bitmap = groupUsers.get(id);
+        if (bitmap == null)
+        {
+            bitmap = new IntBitmap();
+            groupUsers.set(id, bitmap);
+        }
+        return bitmap;
+    }
+
+    private int retain(SupportGroups groupName, String value, int userId) throws XMLProcessException
+    {
+        int id = dictionary.retain(groupName, value);
+        EnumMap<SupportGroups, List<IntBitmap>> result = valueUsers;
+        if (result != null) bitmap(result, groupName, id).add(userId);
+        return id;
+    }
+
+    private void release(SupportGroups groupName, int id, int userId)
+    {
+        boolean removed = dictionary.release(groupName, id);
+        EnumMap<SupportGroups, List<IntBitmap>> result = valueUsers;
+        if (result == null) return;
+
+        List<IntBitmap> groupUsers = result.get(groupName);
+        if (removed) groupUsers.set(id, null);
+        else groupUsers.get(id).remove(userId);
+    }
+
+    private void replace(SupportGroups groupName, int userId, int position, String value) throws XMLProcessException
+    {
+        int oldId = records.getInt(position);
+        if (dictionary.getId(groupName, value) == oldId) return;
+
+        records.putInt(position, retain(groupName, value, userId));
+        release(groupName, oldId, userId);
+    }
+
+    private void check(Integer id) throws XMLProcessException
+    {
+        if (contains(id)) return;
+
+        XMLProcessException ex = new XMLProcessException(XMLProcessException.XML_USER_SEARCH_EXCEPTION,
+                new StringBuilder()
+                        .append("Storage doesn't have info about user - ID: ")
+                        .append(id.toString())
+                        .toString());
+        logger.info(ex);
+        throw ex;
+    }
+
+    /**
+     * @param id идентификатор пользователя, не больше {@link MappedHandler#maxId}.
+     * @return позиция записи пользователя в файле записей.
+     * */
+    private static int position(int id)
+    {
+        return (int) (headerSize + (long) id * recordSize);
+    }
+
+    /**
+     * @param next количество идентификаторов пользователей.
+     * @return размер файла записей, вмещающего записи пользователей с идентификаторами меньше next.
+     * */
+    private static long fileSize(int next)
+    {
+        return headerSize + (long) next * recordSize;
+    }
+}
@@ -0,0 +1,219 @@
+package xml;
+
+import exceptions.XMLProcessException;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Класс очереди изменений хранилища с одним пишущим потоком. Потоки запросов помещают изменения в ограниченную
+ * очередь и сразу получают {@link CompletableFuture}, не ожидая блокировки хранилища и записи файла.
+ * Пишущий поток забирает из очереди все накопившиеся изменения (но не больше заданного размера пакета)
+ * и передает их {@link Target}, который применяет пакет под одной блокировкой, записывает хранилище один раз
+ * и завершает {@link CompletableFuture} каждого изменения. Чем больше изменений поступает во время записи,
+ * тем больше следующий пакет, поэтому при пиковой нагрузке количество записей файла растет медленнее,
+ * чем количество изменений.
+ * */
+public class MutationQueue
+{
+    private static Logger logger = LogManager.getLogger(MutationQueue.class);
+
+    private static final long pollTimeout = 100;
+
+    private final BlockingQueue<Mutation<?>> queue;
+    private final int batchSize;
+    private final Target target;
+    private final Thread thread;
+    private final Object closeLock = new Object();
+    private volatile boolean closed;
+
+    /**
+     * Конструктор класса. Запускает пишущий поток.
+     * @param inCapacity наибольшее количество изменений, ожидающих в очереди;
+     * @param inBatchSize наибольшее количество изменений, применяемых одним пакетом;
+     * @param inTarget объект {@link Target}, который применяет пакеты изменений.
+     * */
+    public MutationQueue(int inCapacity, int inBatchSize, Target inTarget)
+    {
+        this.queue = new ArrayBlockingQueue<>(inCapacity);
+        this.batchSize = Math.max(1, inBatchSize);
+        this.target = inTarget;
+
+        this.thread = new Thread(this::run, "storage-writer");
+        this.thread.setDaemon(true);
+        this.thread.start();
+
+        logger.info(new StringBuilder("Storage mutation queue - capacity: ").append(inCapacity)
+                .append("\tbatch size: ").append(this.batchSize).toString());
+    }
+
+    /**
+     * Метод помещения изменения в очередь.
+     * @param operation объект {@link Operation}, выполняющий изменение. Вызывается пишущим потоком
+     *                  под блокировкой записи хранилища.
+     * @return {@link CompletableFuture}, который завершается результатом изменения после записи хранилища
+     * или исключением {@link XMLProcessException}. Если очередь заполнена или закрыта, он сразу завершается
+     * исключением с кодом {@link XMLProcessException#XML_QUEUE_FULL_EXCEPTION}.
+     * */
+    public <T> CompletableFuture<T> submit(Operation<T> operation)
+    {
+        Mutation<T> mutation = new Mutation<>(operation);
+        // проверка закрытия и помещение в очередь выполняются под той же блокировкой, что и закрытие очереди,
+        // поэтому после закрытия в очередь не попадает ни одно изменение
+        synchronized (closeLock)
+        {
+            if (closed)
+            {
+                mutation.future.completeExceptionally(new XMLProcessException(XMLProcessException.XML_QUEUE_FULL_EXCEPTION,
+                        "Storage mutation queue is closed"));
+            }
+            else if (!queue.offer(mutation))
+            {
+                mutation.future.completeExceptionally(new XMLProcessException(XMLProcessException.XML_QUEUE_FULL_EXCEPTION,
+                        "Storage mutation queue is full"));
+            }
+        }
+        return mutation.future;
+    }
+
+    /**
+     * Метод остановки пишущего потока. Изменения, уже помещенные в очередь, применяются до остановки.
+     * Изменения, оставшиеся в очереди после остановки пишущего потока (например, если ожидание остановки прервано),
+     * завершаются исключением с кодом {@link XMLProcessException#XML_QUEUE_FULL_EXCEPTION}.
+     * */
+    public void close()
+    {
+        synchronized (closeLock)
+        {
+            closed = true;
+        }
+        try
+        {
+            thread.join();
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+
+        List<Mutation<?>> rest = new ArrayList<>();
+        queue.drainTo(rest);
+        for (Mutation<?> mutation : rest)
+        {
+            mutation.future.completeExceptionally(new XMLProcessException(XMLProcessException.XML_QUEUE_FULL_EXCEPTION,
+                    "Storage mutation queue is closed"));
+        }
+    }
+
+    private void run()
+    {
+        List<Mutation<?>> batch = new ArrayList<>(batchSize);
+        while (true)
+        {
+            Mutation<?> first;
+            try
+            {
+                first = queue.poll(pollTimeout, TimeUnit.MILLISECONDS);
+            }
+            catch (InterruptedException e)
+            {
+                first = null;
+            }
+            if (first == null)
+            {
+                if (closed && queue.isEmpty()) return;
+                continue;
+            }
+
+            batch.add(first);
+            queue.drainTo(batch, batchSize - 1);
+            try
+            {
+                target.apply(batch);
+            }
+            catch (RuntimeException e)
+            {
+                logger.error(e);
+                for (Mutation<?> mutation : batch) mutation.future.completeExceptionally(e);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Интерфейс изменения хранилища.
+     * @param <T> тип результата изменения.
+     * */
+    public interface Operation<T>
+    {
+        T apply() throws XMLProcessException;
+    }
+
+    /**
+     * Интерфейс применения пакета изменений. Реализация должна вызвать {@link Mutation#apply()} для каждого
+     * изменения под блокировкой хранилища, записать хранилище и вызвать {@link Mutation#complete(XMLProcessException)}.
+     * */
+    public interface Target
+    {
+        void apply(List<Mutation<?>> batch);
+    }
+
+    /**
+     * Класс изменения, ожидающего в очереди, вместе с его результатом.
+     * @param <T> тип результата изменения.
+     * */
+    public static class Mutation<T>
+    {
+        private final Operation<T> operation;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+        private Exception error;
+
+        private Mutation(Operation<T> inOperation)
+        {
+            this.operation = inOperation;
+        }
+
+        /**
+         * Метод выполнения изменения. Исключение изменения (в том числе {@link RuntimeException}) сохраняется
+         * и не прерывает применение пакета.
+         * @return true, если изменение выполнено.
+         * */
+        public boolean apply()
+        {
+            try
+            {
+                result = operation.apply();
+                return true;
+            }
+            catch (XMLProcessException e)
+            {
+                error = e;
+                return false;
+            }
+            catch (RuntimeException e)
+            {
+                logger.error(e);
+                error = e;
+                return false;
+            }
+        }
+
+        /**
+         * Метод завершения {@link CompletableFuture} изменения.
+         * @param failure исключение записи хранилища или null, если хранилище записано.
+         * */
+        public void complete(XMLProcessException failure)
+        {
+            if (error != null) future.completeExceptionally(error);
+            else if (failure != null) future.completeExceptionally(failure);
+            else future.complete(result);
+        }
+    }
+}
@@ -0,0 +1,323 @@
+package xml;
+
+import util.StringIndex;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Класс отсортированного индекса значений вспомогательной группы имен (имени или фамилии) хранилища. Различные
+ * значения группы хранятся в порядке возрастания байтов UTF-8 в блоках до {@link NameIndex#blockCapacity} значений.
+ * Блок хранит значения в одном массиве байтов с префиксным сжатием: для каждого значения записываются длина общего
+ * с предыдущим значением префикса и оставшиеся байты. Поэтому индекс из миллионов имен состоит из нескольких тысяч
+ * объектов и почти не увеличивает работу сборщика мусора, а соседние имена с общим началом занимают мало места.
+ * <p>Блок, содержащий значение, находится двоичным поиском по первым значениям блоков. Добавление и удаление
+ * значения перезаписывают один блок; значения с заданным префиксом перебираются от первого из них по порядку,
+ * т.е. за время, пропорциональное количеству найденных значений.</p>
+ * <p>Изменяется под блокировкой записи хранилища, читается под блокировкой чтения или без блокировки
+ * ({@link StorageHandler#optimisticRead}). Блоки не изменяются после создания, а заменяются новыми, поэтому читающий
+ * без блокировки поток в худшем случае получит устаревший результат, и чтение будет повторено.</p>
+ * */
+public class NameIndex
+{
+    private static final int blockCapacity = 128;
+
+    private Block[] blocks = new Block[0];
+    private int size;
+
+    /**
+     * Конструктор класса. Создает пустой индекс.
+     * */
+    public NameIndex()
+    {
+    }
+
+    /**
+     * Конструктор класса. Значения сортируются один раз, а блоки заполняются последовательно, что быстрее
+     * добавления значений по одному.
+     * @param values значения группы, повторяющиеся значения допускаются.
+     * */
+    public NameIndex(Collection<String> values)
+    {
+        List<byte[]> sorted = new ArrayList<>(values.size());
+        for (String value : values) sorted.add(StringIndex.encode(value));
+        sorted.sort(NameIndex::compare);
+
+        List<Block> filled = new ArrayList<>(sorted.size() / blockCapacity + 1);
+        List<byte[]> block = new ArrayList<>(blockCapacity);
+        byte[] previous = null;
+        for (byte[] value : sorted)
+        {
+            if (previous != null && compare(previous, value) == 0) continue;
+            previous = value;
+            block.add(value);
+            size++;
+            if (block.size() == blockCapacity)
+            {
+                filled.add(new Block(block));
+                block.clear();
+            }
+        }
+        if (!block.isEmpty()) filled.add(new Block(block));
+        this.blocks = filled.toArray(new Block[0]);
+    }
+
+    /**
+     * Метод добавления значения. Повторное добавление значения не изменяет индекс.
+     * @param value значение группы.
+     * */
+    public void add(String value)
+    {
+        byte[] key = StringIndex.encode(value);
+        Block[] current = blocks;
+        if (current.length == 0)
+        {
+            blocks = new Block[]{new Block(Arrays.asList(key))};
+            size++;
+            return;
+        }
+
+        int position = find(current, key);
+        List<byte[]> values = current[position].decode();
+        int i = search(values, key);
+        if (i >= 0) return;
+
+        values.add(-i - 1, key);
+        size++;
+        if (values.size() <= blockCapacity)
+        {
+            current[position] = new Block(values);
+            return;
+        }
+
+        // блок переполнен: делится пополам
+        int half = values.size() / 2;
+        Block[] next = new Block[current.length + 1];
+        System.arraycopy(current, 0, next, 0, position);
+        next[position] = new Block(values.subList(0, half));
+        next[position + 1] = new Block(values.subList(half, values.size()));
+        System.arraycopy(current, position + 1, next, position + 2, current.length - position - 1);
+        blocks = next;
+    }
+
+    /**
+     * Метод удаления значения.
+     * @param value значение группы.
+     * */
+    public void remove(String value)
+    {
+        byte[] key = StringIndex.encode(value);
+        Block[] current = blocks;
+        if (current.length == 0) return;
+
+        int position = find(current, key);
+        List<byte[]> values = current[position].decode();
+        int i = search(values, key);
+        if (i < 0) return;
+
+        values.remove(i);
+        size--;
+        if (!values.isEmpty())
+        {
+            current[position] = new Block(values);
+            return;
+        }
+
+        Block[] next = new Block[current.length - 1];
+        System.arraycopy(current, 0, next, 0, position);
+        System.arraycopy(current, position + 1, next, position, current.length - position - 1);
+        blocks = next;
+    }
+
+    /**
+     * Метод обхода значений с заданным префиксом в порядке возрастания.
+     * @param prefix префикс значения;
+     * @param visitor объект {@link Visitor}, который будет вызван для каждого значения с префиксом.
+     * */
+    public void forEach(String prefix, Visitor visitor)
+    {
+        byte[] key = StringIndex.encode(prefix);
+        Block[] current = blocks;
+        if (current.length == 0) return;
+
+        for (int position = find(current, key); position < current.length; position++)
+        {
+            Cursor cursor = new Cursor(current[position]);
+            while (cursor.next())
+            {
+                if (cursor.startsWith(key))
+                {
+                    visitor.visit(new String(cursor.value, 0, cursor.length, StandardCharsets.UTF_8));
+                }
+                else if (compare(cursor.value, cursor.length, key, key.length) > 0)
+                {
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return количество различных значений.
+     * */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * @return номер последнего блока, первое значение которого не больше key, или 0.
+     * */
+    private static int find(Block[] current, byte[] key)
+    {
+        int low = 0;
+        int high = current.length - 1;
+        while (low < high)
+        {
+            int middle = (low + high + 1) >>> 1;
+            if (compare(current[middle].first, key) <= 0) low = middle;
+            else high = middle - 1;
+        }
+        return low;
+    }
+
+    private static int search(List<byte[]> values, byte[] key)
+    {
+        int low = 0;
+        int high = values.size() - 1;
+        while (low <= high)
+        {
+            int middle = (low + high) >>> 1;
+            int result = compare(values.get(middle), key);
+            if (result < 0) low = middle + 1;
+            else if (result > 0) high = middle - 1;
+            else return middle;
+        }
+        return -(low + 1);
+    }
+
+    private static int compare(byte[] a, byte[] b)
+    {
+        return compare(a, a.length, b, b.length);
+    }
+
+    private static int compare(byte[] a, int aLength, byte[] b, int bLength)
+    {
+        int length = Math.min(aLength, bLength);
+        for (int i = 0; i < length; i++)
+        {
+            if (a[i] != b[i]) return (a[i] & 0xFF) - (b[i] & 0xFF);
+        }
+        return aLength - bLength;
+    }
+
+    /**
+     * Интерфейс для обхода значений методом {@link NameIndex#forEach(String, Visitor)}.
+     * */
+    public interface Visitor
+    {
+        void visit(String value);
+    }
+
+    /**
+     * Блок отсортированных значений с префиксным сжатием. Не изменяется после создания.
+     * */
+    private static class Block
+    {
+        private final byte[] first;
+        private final byte[] data;
+        private final int count;
+
+        private Block(List<byte[]> values)
+        {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] previous = new byte[0];
+            for (byte[] value : values)
+            {
+                int shared = 0;
+                int length = Math.min(previous.length, value.length);
+                while (shared < length && previous[shared] == value[shared]) shared++;
+
+                writeLength(out, shared);
+                writeLength(out, value.length - shared);
+                out.write(value, shared, value.length - shared);
+                previous = value;
+            }
+            this.first = values.get(0);
+            this.data = out.toByteArray();
+            this.count = values.size();
+        }
+
+        private List<byte[]> decode()
+        {
+            List<byte[]> values = new ArrayList<>(count + 1);
+            Cursor cursor = new Cursor(this);
+            while (cursor.next()) values.add(Arrays.copyOf(cursor.value, cursor.length));
+            return values;
+        }
+
+        private static void writeLength(ByteArrayOutputStream out, int length)
+        {
+            while (length >= 0x80)
+            {
+                out.write(length & 0x7F | 0x80);
+                length >>>= 7;
+            }
+            out.write(length);
+        }
+    }
+
+    /**
+     * Последовательное чтение значений блока. Текущее значение восстанавливается на месте предыдущего.
+     * */
+    private static class Cursor
+    {
+        private final byte[] data;
+        private int position;
+        private byte[] value = new byte[32];
+        private int length;
+
+        private Cursor(Block block)
+        {
+            this.data = block.data;
+        }
+
+        private boolean next()
+        {
+            if (position == data.length) return false;
+
+            int shared = readLength();
+            int suffix = readLength();
+            if (shared + suffix > value.length) value = Arrays.copyOf(value, Math.max(shared + suffix, 2 * value.length));
+            System.arraycopy(data, position, value, shared, suffix);
+            position += suffix;
+            length = shared + suffix;
+            return true;
+        }
+
+        private boolean startsWith(byte[] prefix)
+        {
+            if (length < prefix.length) return false;
+            for (int i = 0; i < prefix.length; i++)
+            {
+                if (value[i] != prefix[i]) return false;
+            }
+            return true;
+        }
+
+        private int readLength()
+        {
+            int result = 0;
+            for (int shift = 0; ; shift += 7)
+            {
+                byte b = data[position++];
+                result |= (b & 0x7F) << shift;
+                if (b >= 0) return result;
+            }
+        }
+    }
+}
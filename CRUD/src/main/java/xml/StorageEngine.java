@@ -0,0 +1,22 @@
+package xml;
+
+/**
+ * Enum класс содержит способы хранения данных хранилища в памяти.
+ * Способ задается в application.properties параметром storage.engine.
+ * */
+public enum StorageEngine {
+    /**
+     * Хранилище содержится в памяти в виде DOM ({@link XMLHandler}).
+     * */
+    xml,
+    /**
+     * Хранилище содержится в памяти в виде столбцов примитивных типов и словарей значений ({@link ColumnarHandler}).
+     * Требует в несколько раз меньше памяти на пользователя и не разбирает строки при чтении.
+     * */
+    columnar,
+    /**
+     * Хранилище содержится в файлах двоичного формата, отображенных в память ({@link MappedHandler}).
+     * Открывается без разбора XML, изменение пользователя изменяет только его запись в файле.
+     * */
+    mapped;
+}
@@ -0,0 +1,230 @@
+package xml;
+
+import exceptions.XMLProcessException;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+/**
+ * Класс управляет записью XML хранилища в файл в соответствии с заданной политикой {@link FlushPolicy}.
+ * Каждое изменение хранилища отмечается методом {@link StorageFlusher#markDirty()}, который возвращает номер изменения.
+ * Метод {@link StorageFlusher#await(long)} ожидает записи изменения с этим номером, если этого требует политика.
+ * Для политик {@link FlushPolicy#group} и {@link FlushPolicy#interval} все изменения, накопленные за окно записи,
+ * записываются фоновым потоком одним снимком.
+ * */
+public class StorageFlusher
+{
+    private static Logger logger = LogManager.getLogger(StorageFlusher.class);
+
+    private final FlushPolicy policy;
+    private final long window;
+    private final int operations;
+    private final Target target;
+    private final Object writeLock = new Object();
+
+    private long generation;
+    private long flushedGeneration;
+    private long failedGeneration;
+    private XMLProcessException failure;
+    private long pendingSince;
+    private boolean closed;
+    private Thread thread;
+
+    /**
+     * Конструктор класса.
+     * @param inPolicy политика записи хранилища;
+     * @param inWindow максимальное время в миллисекундах между первым незаписанным изменением и записью снимка;
+     * @param inOperations максимальное количество незаписанных изменений;
+     * @param inTarget объект {@link Target}, который записывает накопленные изменения хранилища.
+     * */
+    public StorageFlusher(FlushPolicy inPolicy, long inWindow, int inOperations, Target inTarget)
+    {
+        this.policy = inPolicy;
+        this.window = inWindow;
+        this.operations = inOperations;
+        this.target = inTarget;
+
+        if (this.policy != FlushPolicy.sync)
+        {
+            this.thread = new Thread(this::run, "storage-flusher");
+            this.thread.setDaemon(true);
+            this.thread.start();
+        }
+        logger.info(new StringBuilder("Storage flush policy: ").append(policy)
+                .append("\twindow: ").append(window)
+                .append("\toperations: ").append(operations).toString());
+    }
+
+    /**
+     * Метод отмечает изменение хранилища. Должен вызываться после изменения, пока изменяющий поток удерживает
+     * блокировку хранилища, чтобы снимок с номером изменения гарантированно содержал само изменение.
+     * @return номер изменения.
+     * */
+    public synchronized long markDirty()
+    {
+        if (generation == flushedGeneration)
+        {
+            pendingSince = System.currentTimeMillis();
+            notifyAll();
+        }
+        generation++;
+        if (generation - flushedGeneration >= operations) notifyAll();
+        return generation;
+    }
+
+    /**
+     * Метод ожидания записи изменения в соответствии с политикой. Не должен вызываться под блокировкой хранилища.
+     * @param ticket номер изменения, полученный от {@link StorageFlusher#markDirty()}.
+     * @exception XMLProcessException throws в случае ошибки записи снимка, содержащего изменение.
+     * */
+    public void await(long ticket) throws XMLProcessException
+    {
+        switch (policy)
+        {
+            case sync:
+                flush(ticket);
+                return;
+            case group:
+                waitFor(ticket);
+                return;
+            default:
+        }
+    }
+
+    /**
+     * Метод записи всех накопленных изменений и остановки фонового потока.
+     * @exception XMLProcessException throws в случае ошибки записи снимка.
+     * */
+    public void close() throws XMLProcessException
+    {
+        synchronized (this)
+        {
+            closed = true;
+            notifyAll();
+        }
+        if (thread != null)
+        {
+            try
+            {
+                thread.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush(Long.MAX_VALUE);
+    }
+
+    private synchronized void waitFor(long ticket) throws XMLProcessException
+    {
+        while (flushedGeneration < ticket)
+        {
+            if (failedGeneration >= ticket)
+            {
+                throw new XMLProcessException(XMLProcessException.XML_UPDATE_FILE_EXCEPTION, failure);
+            }
+            try
+            {
+                wait();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new XMLProcessException(XMLProcessException.XML_UPDATE_FILE_EXCEPTION, e);
+            }
+        }
+    }
+
+    private void flush(long ticket) throws XMLProcessException
+    {
+        synchronized (writeLock)
+        {
+            long covered;
+            synchronized (this)
+            {
+                if (flushedGeneration >= Math.min(ticket, generation)) return;
+                covered = generation;
+            }
+
+            try
+            {
+                target.write();
+            }
+            catch (XMLProcessException e)
+            {
+                synchronized (this)
+                {
+                    failure = e;
+                    failedGeneration = covered;
+                    notifyAll();
+                }
+                throw e;
+            }
+
+            synchronized (this)
+            {
+                flushedGeneration = covered;
+                notifyAll();
+            }
+        }
+    }
+
+    private void run()
+    {
+        while (true)
+        {
+            synchronized (this)
+            {
+                try
+                {
+                    while (!closed && !due())
+                    {
+                        long pending = generation - flushedGeneration;
+                        wait(pending == 0 ? 0 : Math.max(1, pendingSince + window - System.currentTimeMillis()));
+                    }
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+                if (closed) return;
+            }
+
+            try
+            {
+                flush(Long.MAX_VALUE);
+            }
+            catch (XMLProcessException e)
+            {
+                logger.error(e);
+                synchronized (this)
+                {
+                    try
+                    {
+                        // повторяем запись не раньше, чем через окно записи
+                        if (!closed) wait(Math.max(window, 1));
+                    }
+                    catch (InterruptedException ex)
+                    {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean due()
+    {
+        long pending = generation - flushedGeneration;
+        return pending > 0 &&
+                (pending >= operations || System.currentTimeMillis() - pendingSince >= window);
+    }
+
+    /**
+     * Интерфейс записи накопленных изменений хранилища.
+     * */
+    public interface Target
+    {
+        void write() throws XMLProcessException;
+    }
+}
@@ -0,0 +1,1465 @@
+package xml;
+
+import application.BatchResult;
+import application.CRUD;
+import application.User;
+import application.UserQuery;
+import exceptions.XMLProcessException;
+import lombok.Getter;
+import lombok.Setter;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import util.DateUtil;
+import util.IntBitmap;
+import util.XMLUtil;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Базовый класс хранилищ, сохраняемых в XML файл. Реализует операции интерфейса {@link CRUD}, запись хранилища
+ * в файл в соответствии с политикой {@link FlushPolicy} и журнал упреждающей записи {@link WriteAheadLog}.
+ * Наследники определяют способ хранения данных в памяти и запись XML файла.
+ * <p>Доступ к данным разграничивается блокировкой {@link StampedLock}: методы, изменяющие данные, вызываются
+ * под блокировкой записи и выполняются последовательно; поиск пользователя по идентификатору выполняется
+ * без блокировки (оптимистичное чтение) и повторяется под блокировкой чтения, если во время поиска данные
+ * были изменены; получение списков пользователей и запись XML файла выполняются под блокировкой чтения
+ * и не мешают друг другу. Поэтому методы чтения наследников не должны изменять общие данные.</p>
+ * <p>Каждое добавление или обновление пользователя присваивает ему новую версию - следующее значение счетчика
+ * изменений хранилища. Поэтому версия пользователя только возрастает и не повторяется, даже если идентификатор
+ * удаленного пользователя выдается новому. Наследники хранят версию каждого пользователя и счетчик изменений
+ * в XML файле.</p>
+ * <p>Если в {@link StorageSettings} задана емкость очереди, одиночные изменения, переданные асинхронными методами,
+ * помещаются в очередь {@link MutationQueue} и применяются ее пишущим потоком пакетами: под одной блокировкой
+ * записи и с одной записью хранилища на пакет.</p>
+ * <p>Даты рождения проверяются и приводятся к формату yyyy-MM-dd ({@link DateUtil}) при записи, а различные даты
+ * рождения хранятся в отсортированном индексе {@link BirthDateIndex}, по которому выполняется поиск пользователей
+ * по диапазону дат рождения. Даты рождения в другом формате, загруженные из XML файла, приводятся к формату
+ * yyyy-MM-dd при запуске хранилища.</p>
+ * <p>Различные имена и фамилии хранятся в отсортированных индексах {@link NameIndex}, по которым выполняется поиск
+ * пользователей по префиксу имени и фамилии, и в триграммных индексах {@link TrigramIndex}, по которым выполняется
+ * нечеткий поиск пользователей по имени и фамилии.</p>
+ * <p>Пользователи хранятся в композитном индексе {@link CompositeIndex} по сочетанию имени, фамилии и даты рождения,
+ * по которому выполняется поиск пользователей с заданными значениями всех трех полей и поиск существующего
+ * пользователя при добавлении в режиме уникальных пользователей ({@link StorageSettings#isUniqueUsers()}).</p>
+ * */
+public abstract class StorageHandler implements CRUD
+{
+    private static Logger logger = LogManager.getLogger(StorageHandler.class);
+
+    private static final int pageCapacity = 4096;
+    private static final SupportGroups[] nameGroups = {SupportGroups.firstNameGroup, SupportGroups.secondNameGroup};
+
+    private StorageFlusher flusher;
+    private MutationQueue queue;
+    private WriteAheadLog wal;
+    private long lastSnapshotTime;
+    private long revision;
+    private final BirthDateIndex birthDates = new BirthDateIndex();
+    private final Map<SupportGroups, NameIndex> names = new EnumMap<>(SupportGroups.class);
+    private final Map<SupportGroups, TrigramIndex> trigrams = new EnumMap<>(SupportGroups.class);
+    private CompositeIndex triples;
+
+    protected final StorageSettings settings;
+    protected final StampedLock lock = new StampedLock();
+
+    @Getter
+    @Setter
+    private String path;
+
+    /**
+     * Конструктор класса. Наследник должен загрузить хранилище и вызвать {@link StorageHandler#open()}.
+     * @param inPath путь к XML файлу хранилища;
+     * @param inSettings объект {@link StorageSettings}, содержащий параметры работы хранилища.
+     * */
+    protected StorageHandler(String inPath, StorageSettings inSettings)
+    {
+        this.path = inPath;
+        this.settings = inSettings;
+    }
+
+    /**
+     * Метод запуска хранилища после загрузки. Если включен журнал упреждающей записи, то к хранилищу
+     * применяются записи журнала, после чего XML файл перезаписывается, а журнал очищается.
+     * Журнал хранится в файле с тем же путем, что и XML файл, и расширением .wal. Если журнал содержит поврежденную
+     * запись (кроме прерванной последней записи), хранилище не запускается, а журнал не изменяется.
+     * Затем даты рождения приводятся к формату yyyy-MM-dd (если они были изменены, XML файл перезаписывается)
+     * и строятся индексы дат рождения, имен, фамилий и композитный индекс пользователей.
+     * @exception XMLProcessException throws в случае ошибки применения журнала или записи XML файла.
+     * */
+    protected void open() throws XMLProcessException
+    {
+        if (this.settings.isWalEnabled())
+        {
+            this.wal = new WriteAheadLog(this.path + ".wal");
+            try
+            {
+                this.wal.replay(new WriteAheadLog.Replayer() {
+                    @Override
+                    public void put(int id, User user, long version) throws XMLProcessException {
+                        restoreRevision(version);
+                        if (contains(id)) change(id, user, version);
+                        else insert(id, user, version);
+                    }
+
+                    @Override
+                    public void delete(int id) throws XMLProcessException {
+                        if (contains(id)) remove(id);
+                    }
+                });
+            }
+            catch (XMLProcessException e)
+            {
+                // журнал не очищается: поврежденную запись и следующие за ней записи нужно восстановить вручную
+                this.wal.close();
+                throw e;
+            }
+        }
+
+        int migrated = migrateBirthDates();
+        if (this.wal != null && (this.wal.size() > 0 || migrated > 0))
+        {
+            compact();
+        }
+        else if (migrated > 0)
+        {
+            long stamp = this.lock.readLock();
+            try
+            {
+                writeSnapshot();
+            }
+            finally
+            {
+                this.lock.unlockRead(stamp);
+            }
+        }
+
+        findValues(SupportGroups.birthDateGroup, (value, references) -> {
+            Integer epochDay = DateUtil.toEpochDay(value);
+            if (epochDay != null) birthDates.add(epochDay, references);
+        });
+        for (SupportGroups group : nameGroups)
+        {
+            List<String> values = new ArrayList<>();
+            findValues(group, (value, references) -> values.add(value));
+            names.put(group, new NameIndex(values));
+
+            TrigramIndex index = new TrigramIndex();
+            for (String value : values) index.add(value);
+            trigrams.put(group, index);
+        }
+        buildTriples();
+        this.lastSnapshotTime = System.currentTimeMillis();
+
+        this.flusher = new StorageFlusher(this.settings.getFlushPolicy(), this.settings.getFlushWindow(),
+                this.settings.getFlushOperations(), this::persist);
+        if (this.settings.getQueueCapacity() > 0)
+        {
+            this.queue = new MutationQueue(this.settings.getQueueCapacity(), this.settings.getQueueBatchSize(),
+                    this::applyBatch);
+        }
+    }
+
+    /**
+     * Метод построения композитного индекса пользователей.
+     * */
+    private void buildTriples() throws XMLProcessException
+    {
+        CompositeIndex index = new CompositeIndex(pageCapacity);
+        findHashes(index::add);
+        this.triples = index;
+    }
+
+    /**
+     * Метод записи накопленных изменений в файл и остановки фоновой записи хранилища. Изменения, ожидающие
+     * в очереди, применяются до остановки. При использовании журнала XML файл перезаписывается, а журнал очищается.
+     * @exception XMLProcessException throws в случае ошибки записи XML файла.
+     * */
+    @Override
+    public void close() throws XMLProcessException
+    {
+        if (this.queue != null) this.queue.close();
+        this.flusher.close();
+        if (this.wal != null)
+        {
+            compact();
+            this.wal.close();
+        }
+        logger.info("XML storage closed");
+    }
+
+    /**
+     * Метод записи изменений, накопленных с момента предыдущей записи. Вызывается {@link StorageFlusher}.
+     * Без журнала перезаписывается XML файл. С журналом записи журнала сбрасываются на диск, а XML файл
+     * перезаписывается, если журнал превысил допустимый размер или истек интервал между записями XML файла.
+     * */
+    private void persist() throws XMLProcessException
+    {
+        if (this.wal == null)
+        {
+            long stamp = this.lock.readLock();
+            try
+            {
+                writeSnapshot();
+            }
+            finally
+            {
+                this.lock.unlockRead(stamp);
+            }
+            return;
+        }
+
+        this.wal.sync();
+        if (this.wal.size() > this.settings.getWalMaxSize() ||
+                System.currentTimeMillis() - this.lastSnapshotTime > this.settings.getSnapshotInterval())
+        {
+            compact();
+        }
+    }
+
+    private void compact() throws XMLProcessException
+    {
+        // блокировка чтения не допускает изменений, которые попали бы в журнал до его очистки, но не в XML файл
+        long stamp = this.lock.readLock();
+        try
+        {
+            writeSnapshot();
+            this.wal.truncate();
+            this.lastSnapshotTime = System.currentTimeMillis();
+        }
+        finally
+        {
+            this.lock.unlockRead(stamp);
+        }
+        logger.info("Write-ahead log compacted into XML snapshot");
+    }
+
+    /**
+     * Метод учета версии пользователя, загруженной из XML файла, или сохраненного счетчика изменений.
+     * Вызывается наследником при загрузке хранилища, до вызова {@link StorageHandler#open()}.
+     * @param version версия.
+     * */
+    protected void restoreRevision(long version)
+    {
+        if (version > this.revision) this.revision = version;
+    }
+
+    /**
+     * @return счетчик изменений хранилища - наибольшая выданная версия. Записывается в XML файл вместе с хранилищем.
+     * */
+    protected long getRevision()
+    {
+        return this.revision;
+    }
+
+    /**
+     * Метод записи хранилища в XML файл. Вызывается под блокировкой чтения.
+     * @exception XMLProcessException throws в случае ошибки записи XML файла.
+     * */
+    protected abstract void writeSnapshot() throws XMLProcessException;
+
+    /**
+     * @param id идентификатор пользователя.
+     * @return true, если пользователь с заданным идентификатором есть в хранилище.
+     * */
+    protected abstract boolean contains(int id);
+
+    /**
+     * Метод добавления пользователя в хранилище.
+     * @param id идентификатор пользователя или null, если идентификатор нужно выделить;
+     * @param version версия добавленного пользователя.
+     * @return идентификатор добавленного пользователя.
+     * */
+    protected abstract Integer insert(Integer id, User user, long version) throws XMLProcessException;
+
+    /**
+     * Метод обновления информации о пользователе в хранилище. Поля newUserInfo, равные null, не изменяются.
+     * @param version новая версия пользователя.
+     * */
+    protected abstract void change(Integer id, User newUserInfo, long version) throws XMLProcessException;
+
+    /**
+     * Метод удаления пользователя из хранилища.
+     * */
+    protected abstract void remove(Integer id) throws XMLProcessException;
+
+    /**
+     * Метод поиска пользователя по идентификатору.
+     * @return объект {@link User} с заполненной версией.
+     * @exception XMLProcessException throws в случае остутсвия пользователя с заданным id.
+     * */
+    protected abstract User find(Integer id) throws XMLProcessException;
+
+    /**
+     * Метод получения версии пользователя без получения значений его полей.
+     * @exception XMLProcessException throws в случае остутсвия пользователя с заданным id.
+     * */
+    protected abstract long findVersion(Integer id) throws XMLProcessException;
+
+    /**
+     * Метод вычисления хешей сочетаний имени, фамилии и даты рождения ({@link CompositeIndex#hash(User)}) всех
+     * пользователей. Вызывается при запуске хранилища для построения композитного индекса. По умолчанию
+     * пользователи перебираются страницами и читаются методом {@link StorageHandler#find(Integer)}.
+     * @param visitor объект {@link HashVisitor}, который будет вызван для каждого пользователя.
+     * @exception XMLProcessException throws в случае ошибки получения данных пользователей.
+     * */
+    protected void findHashes(HashVisitor visitor) throws XMLProcessException
+    {
+        List<Integer> page = new ArrayList<>(pageCapacity);
+        for (int after = -1; ; after = page.get(page.size() - 1))
+        {
+            page.clear();
+            findAll(after, pageCapacity, page);
+            for (Integer id : page) visitor.visit(id, CompositeIndex.hash(find(id)));
+            if (page.size() < pageCapacity) return;
+        }
+    }
+
+    /**
+     * Интерфейс для обхода хешей сочетаний пользователей методом {@link StorageHandler#findHashes(HashVisitor)}.
+     * */
+    protected interface HashVisitor
+    {
+        /**
+         * @param id идентификатор пользователя;
+         * @param hash хеш сочетания имени, фамилии и даты рождения пользователя.
+         * */
+        void visit(int id, int hash);
+    }
+
+    /**
+     * Метод проверки имени, фамилии и даты рождения пользователя. Используется для проверки пользователей,
+     * найденных композитным индексом {@link CompositeIndex}. По умолчанию сравнивает значения полей
+     * пользователя, полученного методом {@link StorageHandler#find(Integer)}.
+     * @param id идентификатор существующего пользователя;
+     * @param user объект {@link User} с искомыми именем, фамилией и датой рождения.
+     * @return true, если значения полей пользователя совпадают с искомыми.
+     * @exception XMLProcessException throws в случае ошибки получения данных пользователя.
+     * */
+    protected boolean matches(int id, User user) throws XMLProcessException
+    {
+        User stored = find(id);
+        return user.getFirstName().equals(stored.getFirstName())
+                && user.getSecondName().equals(stored.getSecondName())
+                && user.getBirthDate().equals(stored.getBirthDate());
+    }
+
+    /**
+     * Метод получения информации о нескольких пользователях по идентификаторам. Идентификаторы, которых нет
+     * в хранилище, пропускаются.
+     * @param ids идентификаторы пользователей;
+     * @param users {@link Map}, в который помещается информация о найденных пользователях.
+     * */
+    protected void findAll(Collection<Integer> ids, Map<Integer, User> users) throws XMLProcessException
+    {
+        for (Integer id : ids)
+        {
+            if (id == null || users.containsKey(id) || !contains(id)) continue;
+            users.put(id, find(id));
+        }
+    }
+
+    /**
+     * Метод получения идентификаторов всех пользователей хранилища.
+     * @param usersId список {@link List}, в который будут добавлены идентификаторы.
+     * */
+    protected abstract void findAll(List<Integer> usersId) throws XMLProcessException;
+
+    /**
+     * Метод получения идентификаторов пользователей хранилища, больших заданного, в порядке возрастания.
+     * @param after идентификатор, после которого начинается поиск;
+     * @param limit наибольшее количество идентификаторов;
+     * @param usersId список {@link List}, в который будут добавлены идентификаторы.
+     * */
+    protected abstract void findAll(int after, int limit, List<Integer> usersId) throws XMLProcessException;
+
+    /**
+     * Метод получения пользователей, ссылающихся на значение вспомогательной группы.
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param value значение.
+     * @return битовая карта {@link IntBitmap} идентификаторов пользователей или null, если значения нет в группе.
+     * Битовая карта принадлежит хранилищу и не должна изменяться.
+     * */
+    protected abstract IntBitmap findUsers(SupportGroups groupName, String value);
+
+    /**
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы.
+     * @return отсортированный {@link Map}, сопоставляющий количеству ссылок число элементов с таким количеством ссылок.
+     * */
+    protected abstract Map<Integer, Integer> getReferenceDistribution(SupportGroups groupName);
+
+    /**
+     * Метод обхода значений вспомогательной группы.
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param visitor объект {@link ValueVisitor}, который будет вызван для каждого значения группы.
+     * */
+    protected abstract void findValues(SupportGroups groupName, ValueVisitor visitor) throws XMLProcessException;
+
+    /**
+     * Интерфейс для обхода значений вспомогательной группы методом
+     * {@link StorageHandler#findValues(SupportGroups, ValueVisitor)}.
+     * */
+    protected interface ValueVisitor
+    {
+        /**
+         * @param value значение;
+         * @param references количество пользователей, ссылающихся на значение.
+         * */
+        void visit(String value, int references);
+    }
+
+    private void findAll(UserQuery query, int after, int limit, List<Integer> usersId) throws XMLProcessException
+    {
+        User triple = exactTriple(query);
+        if (triple != null)
+        {
+            // заданы только имя, фамилия и дата рождения: пользователи находятся композитным индексом
+            findTriple(triple, after, limit, usersId);
+            return;
+        }
+
+        IntBitmap result = null;
+        IntBitmap excluded = new IntBitmap();
+
+        for (SupportGroups group : SupportGroups.values())
+        {
+            List<String> values = query.getIncluded(group);
+            if (!values.isEmpty())
+            {
+                IntBitmap matched = null;
+                for (String value : values)
+                {
+                    IntBitmap users = findUsers(group, queryValue(group, value));
+                    if (users != null) matched = matched == null ? users : matched.or(users);
+                }
+                if (matched == null) return;
+                result = result == null ? matched : result.and(matched);
+                if (result.isEmpty()) return;
+            }
+
+            for (String value : query.getExcluded(group))
+            {
+                IntBitmap users = findUsers(group, queryValue(group, value));
+                if (users != null) excluded = excluded.or(users);
+            }
+        }
+
+        for (SupportGroups group : nameGroups)
+        {
+            String prefix = query.getPrefix(group);
+            if (prefix == null) continue;
+
+            List<IntBitmap> prefixed = new ArrayList<>();
+            names.get(group).forEach(prefix, value -> {
+                IntBitmap users = findUsers(group, value);
+                if (users != null) prefixed.add(users);
+            });
+            if (prefixed.isEmpty()) return;
+            IntBitmap matched = union(prefixed);
+            result = result == null ? matched : result.and(matched);
+            if (result.isEmpty()) return;
+        }
+
+        if (query.hasBirthDateRange())
+        {
+            List<IntBitmap> ranged = new ArrayList<>();
+            birthDates.forEach(query.getBirthDateFrom(), query.getBirthDateTo(), epochDay -> {
+                IntBitmap users = findUsers(SupportGroups.birthDateGroup, DateUtil.format(epochDay));
+                if (users != null) ranged.add(users);
+            });
+            if (ranged.isEmpty()) return;
+            IntBitmap matched = union(ranged);
+            result = result == null ? matched : result.and(matched);
+            if (result.isEmpty()) return;
+        }
+
+        if (result != null)
+        {
+            result.andNot(excluded).addTo(after, limit, usersId);
+            return;
+        }
+
+        // заданы только исключаемые значения: все пользователи перебираются страницами
+        List<Integer> page = new ArrayList<>(pageCapacity);
+        int found = 0;
+        while (found < limit)
+        {
+            page.clear();
+            findAll(after, pageCapacity, page);
+            for (Integer id : page)
+            {
+                if (excluded.contains(id)) continue;
+                usersId.add(id);
+                if (++found == limit) return;
+            }
+            if (page.size() < pageCapacity) return;
+            after = page.get(page.size() - 1);
+        }
+    }
+
+    /**
+     * @return объект {@link User} с искомыми именем, фамилией и датой рождения, если запрос задает по одному
+     * допустимому значению каждой группы и не содержит других условий, иначе null.
+     * */
+    private static User exactTriple(UserQuery query)
+    {
+        if (query.hasBirthDateRange()) return null;
+
+        String[] values = new String[3];
+        int i = 0;
+        for (SupportGroups group : SupportGroups.values())
+        {
+            List<String> included = query.getIncluded(group);
+            if (included.size() != 1 || !query.getExcluded(group).isEmpty() || query.getPrefix(group) != null)
+            {
+                return null;
+            }
+            values[i++] = queryValue(group, included.get(0));
+        }
+        return new User(values[0], values[1], values[2]);
+    }
+
+    /**
+     * Метод поиска пользователей с заданными именем, фамилией и датой рождения по композитному индексу.
+     * Пользователи с тем же хешем сочетания проверяются методом {@link StorageHandler#matches(int, User)}.
+     * */
+    private void findTriple(User triple, int after, int limit, List<Integer> usersId) throws XMLProcessException
+    {
+        int found = 0;
+        for (int id : triples.find(CompositeIndex.hash(triple)))
+        {
+            if (id <= after || !matches(id, triple)) continue;
+            usersId.add(id);
+            if (++found == limit) return;
+        }
+    }
+
+    /**
+     * @return идентификатор пользователя с такими же именем, фамилией и датой рождения или null, если такого
+     * пользователя нет или режим уникальных пользователей выключен.
+     * @exception XMLProcessException throws в случае, если дата рождения не является прошедшей датой.
+     * */
+    private Integer findExisting(User user) throws XMLProcessException
+    {
+        if (!this.settings.isUniqueUsers() || user.hasNull()) return null;
+
+        List<Integer> usersId = new ArrayList<>(1);
+        findTriple(normalize(user), -1, 1, usersId);
+        return usersId.isEmpty() ? null : usersId.get(0);
+    }
+
+    private static IntBitmap union(List<IntBitmap> bitmaps)
+    {
+        return bitmaps.size() == 1 ? bitmaps.get(0) : IntBitmap.or(bitmaps);
+    }
+
+    /**
+     * @return значение запроса, приведенное к формату хранилища: даты рождения ищутся в формате yyyy-MM-dd.
+     * */
+    private static String queryValue(SupportGroups groupName, String value)
+    {
+        return groupName == SupportGroups.birthDateGroup ? DateUtil.canonical(value) : value;
+    }
+
+    /**
+     * Метод чтения данных без блокировки. Если во время чтения данные были изменены, результат и возникшие
+     * исключения отбрасываются, а чтение повторяется под блокировкой чтения.
+     * @param reader объект {@link Reader}, выполняющий чтение.
+     * @return результат чтения.
+     * @exception XMLProcessException throws в случае ошибки чтения согласованных данных.
+     * */
+    protected <T> T optimisticRead(Reader<T> reader) throws XMLProcessException
+    {
+        long stamp = this.lock.tryOptimisticRead();
+        if (stamp != 0)
+        {
+            try
+            {
+                T result = reader.read();
+                if (this.lock.validate(stamp)) return result;
+            }
+            catch (XMLProcessException | RuntimeException e)
+            {
+                if (this.lock.validate(stamp)) throw e;
+            }
+        }
+
+        stamp = this.lock.readLock();
+        try
+        {
+            return reader.read();
+        }
+        finally
+        {
+            this.lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для добовление нового пользователя в хранилище.
+     * Более подробное описание можно получить в {@link CRUD#create(User)}.
+     * В режиме уникальных пользователей ({@link StorageSettings#isUniqueUsers()}) для пользователя с такими же
+     * именем, фамилией и датой рождения, как у существующего, возвращается идентификатор существующего пользователя.
+     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время добовления нового пользователя.
+     * */
+    @Override
+    public Integer create(User user) throws XMLProcessException
+    {
+        logger.info(new StringBuilder().append("Create request -\t").append(user.toString()).toString());
+
+        Integer id;
+        long ticket;
+
+        long stamp = this.lock.writeLock();
+        try
+        {
+            id = findExisting(user);
+            if (id == null)
+            {
+                id = createLocked(user);
+                ticket = this.flusher.markDirty();
+            }
+            else
+            {
+                ticket = 0;
+            }
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+
+        if (ticket > 0) this.flusher.await(ticket);
+
+        logger.info(new StringBuilder().append("Create successfully - ID: ").append(id).toString());
+
+        return id;
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для пакетного добавления пользователей в хранилище.
+     * Более подробное описание можно получить в {@link CRUD#createAll(List)}.
+     * В режиме уникальных пользователей результатом повторяющегося пользователя является идентификатор
+     * существующего пользователя.
+     * @exception XMLProcessException throws в случае ошибки записи XML файла или журнала.
+     * */
+    @Override
+    public List<BatchResult> createAll(List<User> users) throws XMLProcessException
+    {
+        logger.info(new StringBuilder().append("Create batch request - size: ").append(users.size()).toString());
+
+        List<BatchResult> results = new ArrayList<>(users.size());
+        int created = 0;
+        int existing = 0;
+        long ticket = 0;
+
+        long stamp = this.lock.writeLock();
+        try
+        {
+            for (User user : users)
+            {
+                if (user == null || user.hasNull())
+                {
+                    results.add(new BatchResult(null, userDataException("User data contains null value fields")));
+                    continue;
+                }
+
+                Integer id;
+                try
+                {
+                    id = findExisting(user);
+                    if (id != null)
+                    {
+                        results.add(new BatchResult(id));
+                        existing++;
+                        continue;
+                    }
+                    id = createLocked(user);
+                }
+                catch (XMLProcessException e)
+                {
+                    logger.error(e);
+                    results.add(new BatchResult(null, e));
+                    continue;
+                }
+                results.add(new BatchResult(id));
+                created++;
+            }
+            if (created > 0) ticket = this.flusher.markDirty();
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+
+        if (ticket > 0) this.flusher.await(ticket);
+
+        logger.info(new StringBuilder().append("Create batch successfully - created: ").append(created)
+                .append("\texisting: ").append(existing)
+                .append("\tfailed: ").append(users.size() - created - existing).toString());
+
+        return results;
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для получения информации о всех пользователях.
+     * Более подробное описание можно получить в {@link CRUD#read()}.
+     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время получения данных пользователей.
+     * */
+    @Override
+    public List<Integer> read() throws XMLProcessException
+    {
+        logger.info(new StringBuilder().append("Read all users info request\t").toString());
+
+        List<Integer> usersId = new ArrayList<Integer>();
+        long stamp = this.lock.readLock();
+        try
+        {
+            findAll(usersId);
+        }
+        finally
+        {
+            this.lock.unlockRead(stamp);
+        }
+
+        logger.info(new StringBuilder().append("Read all users info successfully\t").toString());
+
+        return usersId;
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для получения информации о пользователях по заданным параметрам.
+     * Более подробное описание можно получить в {@link CRUD#read(User)}.
+     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время получения данных пользователей.
+     * */
+    @Override
+    public List<Integer> read(User parameters) throws XMLProcessException
+    {
+        return read(new UserQuery(parameters));
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для получения информации о пользователях, удовлетворяющих запросу.
+     * Более подробное описание можно получить в {@link CRUD#read(UserQuery)}.
+     * <p>Для каждой группы объединяются битовые карты пользователей, ссылающихся на допустимые значения, затем
+     * результаты групп пересекаются и из пересечения вычитается объединение битовых карт исключаемых значений.
+     * Если допустимые значения не заданы, исключаемые значения вычитаются из списка всех пользователей.
+     * Если запрос задает только имя, фамилию и дату рождения, пользователи находятся композитным индексом
+     * {@link CompositeIndex}.</p>
+     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время получения данных пользователей.
+     * */
+    @Override
+    public List<Integer> read(UserQuery query) throws XMLProcessException
+    {
+        logger.info(new StringBuilder().append("Read users info request with params -").append(query.toString()).toString());
+
+        List<Integer> usersId = new ArrayList<Integer>();
+        long stamp = this.lock.readLock();
+        try
+        {
+            if (query.isEmpty())
+            {
+                findAll(usersId);
+            }
+            else
+            {
+                findAll(query, -1, Integer.MAX_VALUE, usersId);
+            }
+        }
+        finally
+        {
+            this.lock.unlockRead(stamp);
+        }
+
+        logger.info(new StringBuilder().append("Read all users info successfully\t").toString());
+
+        return usersId;
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для нечеткого поиска пользователей по имени и фамилии.
+     * Более подробное описание можно получить в {@link CRUD#search(String, int)}.
+     * Значения имени и фамилии находятся триграммными индексами {@link TrigramIndex}, после чего пользователи
+     * значений на расстоянии 0, 1, 2 объединяются по порядку, пока не будет получено limit пользователей.
+     * */
+    @Override
+    public List<Integer> search(String text, int limit)
+    {
+        logger.info(new StringBuilder().append("Search users request - text: ").append(text)
+                .append("\tlimit: ").append(limit).toString());
+
+        List<Integer> usersId = new ArrayList<Integer>();
+        long stamp = this.lock.readLock();
+        try
+        {
+            // допустимое расстояние определяет триграммный индекс, поэтому списки создаются по расстояниям найденных значений
+            List<List<IntBitmap>> matched = new ArrayList<>();
+            for (SupportGroups group : nameGroups)
+            {
+                for (TrigramIndex.Match match : trigrams.get(group).search(text))
+                {
+                    IntBitmap users = findUsers(group, match.getValue());
+                    if (users == null) continue;
+                    while (matched.size() <= match.getDistance()) matched.add(new ArrayList<>());
+                    matched.get(match.getDistance()).add(users);
+                }
+            }
+
+            IntBitmap found = new IntBitmap();
+            for (List<IntBitmap> bitmaps : matched)
+            {
+                if (bitmaps.isEmpty()) continue;
+
+                IntBitmap users = union(bitmaps).andNot(found);
+                users.addTo(-1, limit - usersId.size(), usersId);
+                if (usersId.size() >= limit) break;
+                found = found.or(users);
+            }
+        }
+        finally
+        {
+            this.lock.unlockRead(stamp);
+        }
+
+        logger.info(new StringBuilder().append("Search users successfully - found: ").append(usersId.size()).toString());
+
+        return usersId;
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для постраничного получения информации о пользователях,
+     * удовлетворяющих запросу. Более подробное описание можно получить в {@link CRUD#read(UserQuery, Integer, int)}.
+     * Блокировка чтения удерживается только на время получения одной страницы.
+     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время получения данных пользователей.
+     * */
+    @Override
+    public List<Integer> read(UserQuery query, Integer cursor, int limit) throws XMLProcessException
+    {
+        logger.debug(new StringBuilder().append("Read users page request - cursor: ").append(cursor)
+                .append("\tlimit: ").append(limit).append("\tparams -").append(query.toString()).toString());
+
+        List<Integer> usersId = new ArrayList<Integer>(Math.min(limit, pageCapacity));
+        int after = cursor == null ? -1 : cursor;
+        long stamp = this.lock.readLock();
+        try
+        {
+            if (query.isEmpty())
+            {
+                findAll(after, limit, usersId);
+            }
+            else
+            {
+                findAll(query, after, limit, usersId);
+            }
+        }
+        finally
+        {
+            this.lock.unlockRead(stamp);
+        }
+
+        return usersId;
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для получения информации о пользователе по заданному id.
+     * Более подробное описание можно получить в {@link CRUD#read(Integer)}.
+     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время получения данных пользователя
+     * или в случае остутсвия данных рассматриваемого пользователя.
+     * */
+    @Override
+    public User read(Integer id) throws XMLProcessException
+    {
+        logger.info(new StringBuilder().append("Read info about user - ID: ").append(id.toString()).toString());
+
+        User user = optimisticRead(() -> find(id));
+
+        logger.info(new StringBuilder().append("Found user info - ").append(user.toString()).toString());
+
+        return user;
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для получения версии пользователя по заданному id.
+     * Более подробное описание можно получить в {@link CRUD#readVersion(Integer)}.
+     * @exception XMLProcessException throws в случае остутсвия данных рассматриваемого пользователя.
+     * */
+    @Override
+    public long readVersion(Integer id) throws XMLProcessException
+    {
+        return optimisticRead(() -> findVersion(id));
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для получения информации о нескольких пользователях по заданным id.
+     * Более подробное описание можно получить в {@link CRUD#read(Collection)}.
+     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время получения данных пользователей.
+     * */
+    @Override
+    public Map<Integer, User> read(Collection<Integer> ids) throws XMLProcessException
+    {
+        logger.info(new StringBuilder().append("Read users info request - count: ").append(ids.size()).toString());
+
+        Map<Integer, User> users = new LinkedHashMap<>();
+        long stamp = this.lock.readLock();
+        try
+        {
+            findAll(ids, users);
+        }
+        finally
+        {
+            this.lock.unlockRead(stamp);
+        }
+
+        logger.info(new StringBuilder().append("Read users info successfully - found: ").append(users.size()).toString());
+
+        return users;
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для удаления информации о пользователе из хранилища по заданному id.
+     * Более подробное описание можно получить в {@link CRUD#delete(Integer)}.
+     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время удаления данных пользователя
+     * или в случае остутсвия данных рассматриваемого пользователя.
+     * */
+    @Override
+    public void delete(Integer id) throws XMLProcessException
+    {
+        logger.info(new StringBuilder().append("Delete request - ID: ").append(id.toString()).toString());
+
+        long ticket;
+
+        long stamp = this.lock.writeLock();
+        try
+        {
+            deleteLocked(id);
+            ticket = this.flusher.markDirty();
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+
+        this.flusher.await(ticket);
+
+        logger.info(new StringBuilder().append("Delete successfully ID: ").append(id.toString()).toString());
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для пакетного удаления пользователей из хранилища.
+     * Более подробное описание можно получить в {@link CRUD#deleteAll(List)}.
+     * @exception XMLProcessException throws в случае ошибки записи XML файла или журнала.
+     * */
+    @Override
+    public List<BatchResult> deleteAll(List<Integer> ids) throws XMLProcessException
+    {
+        logger.info(new StringBuilder().append("Delete batch request - size: ").append(ids.size()).toString());
+
+        List<BatchResult> results = new ArrayList<>(ids.size());
+        int deleted = 0;
+        long ticket = 0;
+
+        long stamp = this.lock.writeLock();
+        try
+        {
+            for (Integer id : ids)
+            {
+                if (id == null)
+                {
+                    results.add(new BatchResult(null, userDataException("User ID is null")));
+                    continue;
+                }
+
+                try
+                {
+                    removeIndexed(id);
+                }
+                catch (XMLProcessException e)
+                {
+                    results.add(new BatchResult(id, e));
+                    continue;
+                }
+                if (this.wal != null) this.wal.delete(id);
+                results.add(new BatchResult(id));
+                deleted++;
+            }
+            if (deleted > 0) ticket = this.flusher.markDirty();
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+
+        if (ticket > 0) this.flusher.await(ticket);
+
+        logger.info(new StringBuilder().append("Delete batch successfully - deleted: ").append(deleted)
+                .append("\tfailed: ").append(ids.size() - deleted).toString());
+
+        return results;
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для обновления информации о пользователе по заданному id.
+     * Более подробное описание можно получить в {@link CRUD#update(Integer, User)}.
+     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время обновления данных пользователя
+     * или в случае остутсвия данных рассматриваемого пользователя.
+     * */
+    @Override
+    public User update(Integer id, User newUserInfo)
+            throws XMLProcessException
+    {
+        return update(id, newUserInfo, null);
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для условного обновления информации о пользователе по заданному id.
+     * Более подробное описание можно получить в {@link CRUD#update(Integer, User, Collection)}.
+     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время обновления данных пользователя,
+     * в случае остутсвия данных рассматриваемого пользователя или в случае несовпадения версии пользователя.
+     * */
+    @Override
+    public User update(Integer id, User newUserInfo, Collection<Long> versions)
+            throws XMLProcessException
+    {
+        logger.info(new StringBuilder().append("Update request - ID: ")
+                .append(id.toString())
+                .append("\tUser info: ")
+                .append(newUserInfo)
+                .append("\tExpected versions: ")
+                .append(versions).toString());
+
+        User newUser;
+        long ticket;
+
+        long stamp = this.lock.writeLock();
+        try
+        {
+            newUser = updateLocked(id, newUserInfo, versions);
+            ticket = this.flusher.markDirty();
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+
+        this.flusher.await(ticket);
+
+        logger.info(new StringBuilder().append("Update successfully - ").append(newUser.toString()).toString());
+        return newUser;
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для пакетного обновления информации о пользователях.
+     * Более подробное описание можно получить в {@link CRUD#updateAll(Map)}.
+     * @exception XMLProcessException throws в случае ошибки записи XML файла или журнала.
+     * */
+    @Override
+    public List<BatchResult> updateAll(Map<Integer, User> users) throws XMLProcessException
+    {
+        logger.info(new StringBuilder().append("Update batch request - size: ").append(users.size()).toString());
+
+        List<BatchResult> results = new ArrayList<>(users.size());
+        int updated = 0;
+        long ticket = 0;
+
+        long stamp = this.lock.writeLock();
+        try
+        {
+            for (Map.Entry<Integer, User> entry : users.entrySet())
+            {
+                Integer id = entry.getKey();
+                User user = entry.getValue();
+                if (id == null || user == null ||
+                        (user.getFirstName() == null && user.getSecondName() == null && user.getBirthDate() == null))
+                {
+                    results.add(new BatchResult(id, userDataException("User ID or user data is null")));
+                    continue;
+                }
+
+                // ревизия увеличивается, только если пользователь найден и изменен
+                User newUser;
+                long version = this.revision + 1;
+                try
+                {
+                    changeIndexed(id, normalize(user), version);
+                    newUser = find(id);
+                }
+                catch (XMLProcessException e)
+                {
+                    results.add(new BatchResult(id, e));
+                    continue;
+                }
+                this.revision = version;
+                if (this.wal != null) this.wal.put(id, newUser, version);
+                results.add(new BatchResult(id));
+                updated++;
+            }
+            if (updated > 0) ticket = this.flusher.markDirty();
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+
+        if (ticket > 0) this.flusher.await(ticket);
+
+        logger.info(new StringBuilder().append("Update batch successfully - updated: ").append(updated)
+                .append("\tfailed: ").append(users.size() - updated).toString());
+
+        return results;
+    }
+
+    /**
+     * Определение метода интерфейса {@link CRUD} для получения распределения количества ссылок на значения
+     * вспомогательных групп. Более подробное описание можно получить в {@link CRUD#getReferenceDistribution()}.
+     * */
+    @Override
+    public Map<String, Map<Integer, Integer>> getReferenceDistribution()
+    {
+        Map<String, Map<Integer, Integer>> distribution = new LinkedHashMap<>();
+
+        long stamp = this.lock.readLock();
+        try
+        {
+            for (SupportGroups group : SupportGroups.values())
+            {
+                distribution.put(group.toString(), getReferenceDistribution(group));
+            }
+        }
+        finally
+        {
+            this.lock.unlockRead(stamp);
+        }
+
+        return distribution;
+    }
+
+    /**
+     * Переопределение метода интерфейса {@link CRUD} для добавления пользователя через очередь изменений.
+     * Более подробное описание можно получить в {@link CRUD#createAsync(User)}.
+     * Если очередь не используется, пользователь добавляется в вызывающем потоке.
+     * */
+    @Override
+    public CompletableFuture<Integer> createAsync(User user)
+    {
+        if (this.queue == null) return CRUD.super.createAsync(user);
+
+        logger.info(new StringBuilder().append("Create request (queued) -\t").append(user.toString()).toString());
+        return this.queue.submit(() -> {
+            Integer id = findExisting(user);
+            return id != null ? id : createLocked(user);
+        });
+    }
+
+    /**
+     * Переопределение метода интерфейса {@link CRUD} для условного обновления пользователя через очередь изменений.
+     * Более подробное описание можно получить в {@link CRUD#updateAsync(Integer, User, Collection)}.
+     * Если очередь не используется, пользователь обновляется в вызывающем потоке.
+     * */
+    @Override
+    public CompletableFuture<User> updateAsync(Integer id, User newUserInfo, Collection<Long> versions)
+    {
+        if (this.queue == null) return CRUD.super.updateAsync(id, newUserInfo, versions);
+
+        logger.info(new StringBuilder().append("Update request (queued) - ID: ")
+                .append(id.toString())
+                .append("\tUser info: ")
+                .append(newUserInfo)
+                .append("\tExpected versions: ")
+                .append(versions).toString());
+        return this.queue.submit(() -> updateLocked(id, newUserInfo, versions));
+    }
+
+    /**
+     * Переопределение метода интерфейса {@link CRUD} для удаления пользователя через очередь изменений.
+     * Более подробное описание можно получить в {@link CRUD#deleteAsync(Integer)}.
+     * Если очередь не используется, пользователь удаляется в вызывающем потоке.
+     * */
+    @Override
+    public CompletableFuture<Void> deleteAsync(Integer id)
+    {
+        if (this.queue == null) return CRUD.super.deleteAsync(id);
+
+        logger.info(new StringBuilder().append("Delete request (queued) - ID: ").append(id.toString()).toString());
+        return this.queue.submit(() -> {
+            deleteLocked(id);
+            return null;
+        });
+    }
+
+    /**
+     * Метод применения пакета изменений из очереди {@link MutationQueue}. Вызывается пишущим потоком очереди.
+     * Все изменения пакета применяются под одной блокировкой записи, после чего хранилище записывается один раз
+     * и завершаются {@link CompletableFuture} всех изменений. Ошибка одного изменения не прерывает остальные,
+     * а ошибка записи хранилища передается всем примененным изменениям.
+     * @param batch список {@link List} изменений.
+     * */
+    private void applyBatch(List<MutationQueue.Mutation<?>> batch)
+    {
+        int applied = 0;
+        long ticket = 0;
+
+        long stamp = this.lock.writeLock();
+        try
+        {
+            try
+            {
+                for (MutationQueue.Mutation<?> mutation : batch)
+                {
+                    if (mutation.apply()) applied++;
+                }
+            }
+            finally
+            {
+                // примененные изменения записываются, даже если применение пакета прервано
+                if (applied > 0) ticket = this.flusher.markDirty();
+            }
+        }
+        finally
+        {
+            this.lock.unlockWrite(stamp);
+        }
+
+        XMLProcessException failure = null;
+        if (ticket > 0)
+        {
+            try
+            {
+                this.flusher.await(ticket);
+            }
+            catch (XMLProcessException e)
+            {
+                logger.error(e);
+                failure = e;
+            }
+        }
+        for (MutationQueue.Mutation<?> mutation : batch)
+        {
+            mutation.complete(failure);
+        }
+
+        logger.debug(new StringBuilder().append("Mutation batch applied - size: ").append(batch.size())
+                .append("\tapplied: ").append(applied).toString());
+    }
+
+    /**
+     * Метод добавления пользователя вместе с записью журнала. Вызывается под блокировкой записи.
+     * Счетчик изменений увеличивается только после успешного добавления.
+     * @return идентификатор добавленного пользователя.
+     * */
+    private Integer createLocked(User user) throws XMLProcessException
+    {
+        User stored = normalize(user);
+        long version = this.revision + 1;
+        Integer id = insertIndexed(stored, version);
+        this.revision = version;
+        if (this.wal != null) this.wal.put(id, stored, version);
+        return id;
+    }
+
+    /**
+     * Метод проверки версии и обновления пользователя вместе с записью журнала. Вызывается под блокировкой записи.
+     * @param versions допустимые текущие версии пользователя или null, если версия не проверяется.
+     * @return объект {@link User} обновленного пользователя.
+     * */
+    private User updateLocked(Integer id, User newUserInfo, Collection<Long> versions) throws XMLProcessException
+    {
+        if (versions != null)
+        {
+            long current = findVersion(id);
+            if (!versions.contains(current)) throw versionConflict(id, current);
+        }
+        User stored = normalize(newUserInfo);
+        long version = this.revision + 1;
+        changeIndexed(id, stored, version);
+        this.revision = version;
+        User newUser = find(id);
+        if (this.wal != null) this.wal.put(id, newUser, version);
+        return newUser;
+    }
+
+    /**
+     * Метод удаления пользователя вместе с записью журнала. Вызывается под блокировкой записи.
+     * */
+    private void deleteLocked(Integer id) throws XMLProcessException
+    {
+        removeIndexed(id);
+        if (this.wal != null) this.wal.delete(id);
+    }
+
+    /**
+     * Метод добавления пользователя с учетом его даты рождения, имени и фамилии в индексах.
+     * @return идентификатор добавленного пользователя.
+     * */
+    private Integer insertIndexed(User user, long version) throws XMLProcessException
+    {
+        Integer id = insert(null, user, version);
+        Integer epochDay = DateUtil.toEpochDay(user.getBirthDate());
+        if (epochDay != null) birthDates.add(epochDay, 1);
+        for (SupportGroups group : nameGroups)
+        {
+            retainName(group, XMLUtil.getParameter(user, group));
+        }
+        triples.add(id, CompositeIndex.hash(user));
+        return id;
+    }
+
+    /**
+     * Метод обновления пользователя с заменой его даты рождения, имени и фамилии в индексах.
+     * */
+    private void changeIndexed(Integer id, User newUserInfo, long version) throws XMLProcessException
+    {
+        User oldUser = find(id);
+        change(id, newUserInfo, version);
+
+        if (newUserInfo.getBirthDate() != null)
+        {
+            Integer oldEpochDay = DateUtil.toEpochDay(oldUser.getBirthDate());
+            if (oldEpochDay != null) birthDates.remove(oldEpochDay);
+            birthDates.add(DateUtil.toEpochDay(newUserInfo.getBirthDate()), 1);
+        }
+        for (SupportGroups group : nameGroups)
+        {
+            String value = XMLUtil.getParameter(newUserInfo, group);
+            if (value == null) continue;
+
+            retainName(group, value);
+            releaseName(group, XMLUtil.getParameter(oldUser, group));
+        }
+
+        User newUser = new User(
+                newUserInfo.getFirstName() != null ? newUserInfo.getFirstName() : oldUser.getFirstName(),
+                newUserInfo.getSecondName() != null ? newUserInfo.getSecondName() : oldUser.getSecondName(),
+                newUserInfo.getBirthDate() != null ? newUserInfo.getBirthDate() : oldUser.getBirthDate());
+        triples.remove(id, CompositeIndex.hash(oldUser));
+        triples.add(id, CompositeIndex.hash(newUser));
+    }
+
+    /**
+     * Метод удаления пользователя с удалением его даты рождения, имени и фамилии из индексов.
+     * */
+    private void removeIndexed(Integer id) throws XMLProcessException
+    {
+        User oldUser = find(id);
+        remove(id);
+
+        Integer epochDay = DateUtil.toEpochDay(oldUser.getBirthDate());
+        if (epochDay != null) birthDates.remove(epochDay);
+        for (SupportGroups group : nameGroups)
+        {
+            releaseName(group, XMLUtil.getParameter(oldUser, group));
+        }
+        triples.remove(id, CompositeIndex.hash(oldUser));
+    }
+
+    /**
+     * Метод добавления имени (фамилии) в индексы. Имя, уже содержащееся в индексах, не добавляется повторно.
+     * */
+    private void retainName(SupportGroups groupName, String value)
+    {
+        names.get(groupName).add(value);
+        trigrams.get(groupName).add(value);
+    }
+
+    /**
+     * Метод удаления имени (фамилии) из индексов, если на него не ссылается ни один пользователь.
+     * */
+    private void releaseName(SupportGroups groupName, String value)
+    {
+        IntBitmap users = findUsers(groupName, value);
+        if (users != null && !users.isEmpty()) return;
+
+        names.get(groupName).remove(value);
+        trigrams.get(groupName).remove(value);
+    }
+
+    /**
+     * Метод проверки даты рождения пользователя и приведения ее к формату yyyy-MM-dd.
+     * @return объект {@link User} с датой рождения в формате хранилища.
+     * @exception XMLProcessException throws в случае, если дата рождения задана и не является прошедшей датой.
+     * */
+    private static User normalize(User user) throws XMLProcessException
+    {
+        if (user.getBirthDate() == null) return user;
+
+        String birthDate = DateUtil.normalizeBirthDate(user.getBirthDate());
+        if (birthDate.equals(user.getBirthDate())) return user;
+        return new User(user.getFirstName(), user.getSecondName(), birthDate);
+    }
+
+    /**
+     * Метод приведения дат рождения, загруженных из XML файла, к формату yyyy-MM-dd. Каждый пользователь с датой
+     * рождения в другом формате обновляется и получает новую версию. Значения, не являющиеся датами, не изменяются.
+     * Вызывается при запуске хранилища, до построения индекса дат рождения.
+     * @return количество обновленных пользователей.
+     * */
+    private int migrateBirthDates() throws XMLProcessException
+    {
+        Map<String, Integer> values = new HashMap<>();
+        findValues(SupportGroups.birthDateGroup, values::put);
+
+        int migrated = 0;
+        int invalid = 0;
+        for (Map.Entry<String, Integer> value : values.entrySet())
+        {
+            Integer epochDay = DateUtil.toEpochDay(value.getKey());
+            if (epochDay == null)
+            {
+                invalid += value.getValue();
+                continue;
+            }
+            String birthDate = DateUtil.format(epochDay);
+            if (birthDate.equals(value.getKey())) continue;
+
+            List<Integer> usersId = new ArrayList<>();
+            findUsers(SupportGroups.birthDateGroup, value.getKey()).addTo(usersId);
+            User newUserInfo = new User(null, null, birthDate);
+            for (Integer id : usersId)
+            {
+                change(id, newUserInfo, ++this.revision);
+                migrated++;
+            }
+        }
+
+        if (migrated > 0)
+        {
+            logger.info(new StringBuilder("Birth dates converted to yyyy-MM-dd format - users: ").append(migrated).toString());
+        }
+        if (invalid > 0)
+        {
+            logger.warn(new StringBuilder("Birth dates are not dates and are not indexed - users: ").append(invalid).toString());
+        }
+        return migrated;
+    }
+
+    private static XMLProcessException versionConflict(Integer id, long current)
+    {
+        XMLProcessException ex = new XMLProcessException(XMLProcessException.XML_VERSION_CONFLICT_EXCEPTION,
+                new StringBuilder("User version doesn't match - ID: ").append(id)
+                        .append("\tcurrent version: ").append(current).toString());
+        logger.info(ex);
+        return ex;
+    }
+
+    private static XMLProcessException userDataException(String message)
+    {
+        XMLProcessException ex = new XMLProcessException(XMLProcessException.XML_USER_DATA_EXCEPTION, message);
+        logger.info(ex);
+        return ex;
+    }
+
+    /**
+     * Интерфейс чтения данных хранилища для {@link StorageHandler#optimisticRead(Reader)}.
+     * @param <T> тип результата чтения.
+     * */
+    protected interface Reader<T>
+    {
+        T read() throws XMLProcessException;
+    }
+}
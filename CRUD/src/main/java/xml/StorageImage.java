@@ -0,0 +1,201 @@
+package xml;
+
+import exceptions.XMLProcessException;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+import util.LoadStatistics;
+import util.StorageReader;
+import util.XMLUtil;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.EnumMap;
+
+/**
+ * Класс содержит XML хранилище, загруженное в компактные структуры данных без построения DOM.
+ * Ссылки пользователей на вспомогательные группы хранятся в массивах примитивов, индексом в которых является
+ * идентификатор пользователя, как и версии пользователей, наличие пользователя отмечается в битовой карте.
+ * Значения вспомогательных групп
+ * хранятся в массивах строк, индексом в которых является идентификатор значения.
+ * */
+public class StorageImage
+{
+    private static Logger logger = LogManager.getLogger(StorageImage.class);
+
+    private int[] firstNameIds = new int[16];
+    private int[] secondNameIds = new int[16];
+    private int[] birthDateIds = new int[16];
+    private long[] versions = new long[16];
+    private long revision;
+    private final BitSet users = new BitSet();
+    private int userCount;
+    private final EnumMap<SupportGroups, String[]> dictionaries = new EnumMap<>(SupportGroups.class);
+    private final EnumMap<IDGroups, int[]> ids = new EnumMap<>(IDGroups.class);
+    private final EnumMap<IDGroups, Integer> idCounts = new EnumMap<>(IDGroups.class);
+
+    private StorageImage()
+    {
+        for (SupportGroups group : SupportGroups.values())
+        {
+            dictionaries.put(group, new String[16]);
+        }
+        for (IDGroups group : IDGroups.values())
+        {
+            ids.put(group, new int[0]);
+        }
+    }
+
+    /**
+     * Метод потоковой загрузки XML хранилища из файла.
+     * @param path путь к файлу XML хранилища.
+     * @return объект {@link StorageImage}, содержащий загруженное хранилище.
+     * @exception XMLProcessException throws в случае ошибки чтения файла или нарушения структуры XML хранилища.
+     * */
+    public static StorageImage load(String path) throws XMLProcessException
+    {
+        LoadStatistics statistics = new LoadStatistics();
+        StorageImage image = new StorageImage();
+
+        StorageReader.read(path, new StorageReader.Visitor() {
+            @Override
+            public void group(String groupName) {
+            }
+
+            @Override
+            public void revision(long revision) {
+                image.revision = Math.max(image.revision, revision);
+            }
+
+            @Override
+            public void user(int id, int fid, int sid, int bid, long version) {
+                image.ensureUserCapacity(id + 1);
+                image.firstNameIds[id] = fid;
+                image.secondNameIds[id] = sid;
+                image.birthDateIds[id] = bid;
+                image.versions[id] = version;
+                image.revision = Math.max(image.revision, version);
+                image.users.set(id);
+                image.userCount++;
+            }
+
+            @Override
+            public void item(SupportGroups groupName, int id, String value) {
+                String[] values = image.dictionaries.get(groupName);
+                if (id >= values.length)
+                {
+                    values = Arrays.copyOf(values, Math.max(id + 1, values.length * 2));
+                    image.dictionaries.put(groupName, values);
+                }
+                values[id] = value;
+            }
+
+            @Override
+            public void freeId(IDGroups groupName, int position, int id) {
+                int[] groupIds = image.ids.get(groupName);
+                if (position >= groupIds.length)
+                {
+                    groupIds = Arrays.copyOf(groupIds, Math.max(position + 1, groupIds.length * 2));
+                    image.ids.put(groupName, groupIds);
+                }
+                groupIds[position] = id;
+                image.idCounts.merge(groupName, position + 1, Math::max);
+            }
+        });
+
+        for (IDGroups group : IDGroups.values())
+        {
+            image.ids.put(group, Arrays.copyOf(image.ids.get(group), image.idCounts.getOrDefault(group, 0)));
+        }
+
+        logger.info(new StringBuilder("XML storage loaded without DOM - ")
+                .append(statistics.finish(image.userCount)).toString());
+        return image;
+    }
+
+    private void ensureUserCapacity(int capacity)
+    {
+        if (capacity <= firstNameIds.length) return;
+
+        int newCapacity = Math.max(capacity, firstNameIds.length * 2);
+        firstNameIds = Arrays.copyOf(firstNameIds, newCapacity);
+        secondNameIds = Arrays.copyOf(secondNameIds, newCapacity);
+        birthDateIds = Arrays.copyOf(birthDateIds, newCapacity);
+        versions = Arrays.copyOf(versions, newCapacity);
+    }
+
+    /**
+     * @return массив идентификаторов имен из группы firstNameGroup, индексом является идентификатор пользователя.
+     * */
+    public int[] getFirstNameIds()
+    {
+        return firstNameIds;
+    }
+
+    /**
+     * @return массив идентификаторов фамилий из группы secondNameGroup, индексом является идентификатор пользователя.
+     * */
+    public int[] getSecondNameIds()
+    {
+        return secondNameIds;
+    }
+
+    /**
+     * @return массив идентификаторов дат рождения из группы birthDateGroup, индексом является идентификатор пользователя.
+     * */
+    public int[] getBirthDateIds()
+    {
+        return birthDateIds;
+    }
+
+    /**
+     * @return массив версий пользователей, индексом является идентификатор пользователя.
+     * */
+    public long[] getVersions()
+    {
+        return versions;
+    }
+
+    /**
+     * @return счетчик изменений хранилища: наибольшее из значения атрибута V группы mainGroup и версий пользователей.
+     * */
+    public long getRevision()
+    {
+        return revision;
+    }
+
+    /**
+     * @return битовая карта идентификаторов пользователей, которые есть в хранилище.
+     * */
+    public BitSet getUsers()
+    {
+        return users;
+    }
+
+    /**
+     * @return количество пользователей в хранилище.
+     * */
+    public int getUserCount()
+    {
+        return userCount;
+    }
+
+    /**
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы.
+     * @return массив значений вспомогательной группы, индексом является идентификатор значения.
+     * Элементы, соответствующие свободным идентификаторам, равны null.
+     * */
+    public String[] getDictionary(SupportGroups groupName)
+    {
+        return dictionaries.get(groupName);
+    }
+
+    /**
+     * @param groupName объект {@link IDGroups}, содержащий имя группы для хранения свободных id.
+     * @return идентификаторы группы в порядке хранения. На позиции {@link XMLUtil#maxIdValuePosition} хранится
+     * следующий еще не выданный идентификатор, на остальных - свободные идентификаторы.
+     * */
+    public int[] getIds(IDGroups groupName)
+    {
+        return ids.get(groupName);
+    }
+}
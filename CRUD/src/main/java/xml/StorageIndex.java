@@ -0,0 +1,223 @@
+package xml;
+
+import util.IdAllocator;
+import util.IntHashMap;
+import util.IntBitmap;
+import util.XMLUtil;
+import org.w3c.dom.Element;
+
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Класс содержит индексы XML хранилища, которые по идентификатору возвращают соответствующий элемент группы,
+ * а для вспомогательных групп также по значению возвращают его идентификатор и хранят количество ссылок
+ * пользователей из группы mainGroup на каждый элемент, а также битовые карты этих пользователей {@link IntBitmap},
+ * по которым выполняется поиск пользователей по значениям. Свободные идентификаторы групп хранятся в {@link IdAllocator}.
+ * Индексы строятся при загрузке хранилища и поддерживаются методами {@link XMLUtil}, изменяющими хранилище.
+ * */
+public class StorageIndex
+{
+    private final IntHashMap<Element> users;
+    private final IntBitmap userIds = new IntBitmap();
+    private final EnumMap<SupportGroups, IntHashMap<Element>> details = new EnumMap<>(SupportGroups.class);
+    private final EnumMap<SupportGroups, Map<String, Integer>> values = new EnumMap<>(SupportGroups.class);
+    private final EnumMap<SupportGroups, IntHashMap<Counter>> references = new EnumMap<>(SupportGroups.class);
+    private final EnumMap<SupportGroups, IntHashMap<IntBitmap>> postings = new EnumMap<>(SupportGroups.class);
+    private final EnumMap<IDGroups, IdAllocator> ids = new EnumMap<>(IDGroups.class);
+
+    /**
+     * Конструктор класса.
+     * */
+    public StorageIndex()
+    {
+        this.users = new IntHashMap<>();
+        for (SupportGroups group : SupportGroups.values())
+        {
+            this.details.put(group, new IntHashMap<>());
+            this.values.put(group, new HashMap<>());
+            this.references.put(group, new IntHashMap<>());
+            this.postings.put(group, new IntHashMap<>());
+        }
+    }
+
+    /**
+     * Метод получения индекса группы по ее имени.
+     * @param groupName строка {@link String}, которая содержит имя одной из групп хранилища
+     *                  (mainGroup, firstNameGroup, secondNameGroup, birthDateGroup).
+     * @return индекс группы или null, если groupName содержит неподходящее имя.
+     * */
+    public IntHashMap<Element> getGroup(String groupName)
+    {
+        if (groupName.equals(XMLUtil.mainGroup)) return users;
+        for (SupportGroups group : SupportGroups.values())
+        {
+            if (group.toString().equals(groupName)) return details.get(group);
+        }
+        return null;
+    }
+
+    /**
+     * @return индекс группы mainGroup.
+     * */
+    public IntHashMap<Element> getUsers()
+    {
+        return users;
+    }
+
+    /**
+     * @return битовая карта идентификаторов пользователей группы mainGroup, по которой пользователи
+     * перебираются в порядке возрастания идентификаторов.
+     * */
+    public IntBitmap getUserIds()
+    {
+        return userIds;
+    }
+
+    /**
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы.
+     * @return индекс вспомогательной группы.
+     * */
+    public IntHashMap<Element> getGroup(SupportGroups groupName)
+    {
+        return details.get(groupName);
+    }
+
+    /**
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы.
+     * @return обратный индекс вспомогательной группы, сопоставляющий значению его идентификатор.
+     * */
+    public Map<String, Integer> getValues(SupportGroups groupName)
+    {
+        return values.get(groupName);
+    }
+
+    /**
+     * @param groupName строка {@link String}, которая содержит имя одной из групп хранилища.
+     * @return обратный индекс вспомогательной группы или null, если groupName не является именем вспомогательной группы.
+     * */
+    public Map<String, Integer> getValues(String groupName)
+    {
+        for (SupportGroups group : SupportGroups.values())
+        {
+            if (group.toString().equals(groupName)) return values.get(group);
+        }
+        return null;
+    }
+
+    /**
+     * Метод увеличения количества ссылок на элемент вспомогательной группы.
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param id идентификатор элемента.
+     * @return количество ссылок после увеличения.
+     * */
+    public int retain(SupportGroups groupName, int id)
+    {
+        IntHashMap<Counter> group = references.get(groupName);
+        Counter counter = group.get(id);
+        if (counter == null)
+        {
+            counter = new Counter();
+            group.put(id, counter);
+        }
+        return ++counter.value;
+    }
+
+    /**
+     * Метод уменьшения количества ссылок на элемент вспомогательной группы.
+     * Если ссылок не осталось, счетчик элемента удаляется.
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param id идентификатор элемента.
+     * @return количество ссылок после уменьшения или -1, если ссылок на элемент не было.
+     * */
+    public int release(SupportGroups groupName, int id)
+    {
+        IntHashMap<Counter> group = references.get(groupName);
+        Counter counter = group.get(id);
+        if (counter == null) return -1;
+        if (--counter.value == 0) group.remove(id);
+        return counter.value;
+    }
+
+    /**
+     * Метод получения распределения количества ссылок на элементы вспомогательной группы.
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы.
+     * @return отсортированный {@link Map}, сопоставляющий количеству ссылок число элементов с таким количеством ссылок.
+     * */
+    public Map<Integer, Integer> getReferenceDistribution(SupportGroups groupName)
+    {
+        Map<Integer, Integer> distribution = new TreeMap<>();
+        references.get(groupName).forEach((id, counter) -> distribution.merge(counter.value, 1, Integer::sum));
+        return distribution;
+    }
+
+    /**
+     * Метод добавления пользователя в список пользователей, ссылающихся на элемент вспомогательной группы.
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param id идентификатор элемента;
+     * @param userId идентификатор пользователя.
+     * */
+    public void addPosting(SupportGroups groupName, int id, int userId)
+    {
+        IntHashMap<IntBitmap> group = postings.get(groupName);
+        IntBitmap users = group.get(id);
+        if (users == null)
+        {
+            users = new IntBitmap();
+            group.put(id, users);
+        }
+        users.add(userId);
+    }
+
+    /**
+     * Метод удаления пользователя из списка пользователей, ссылающихся на элемент вспомогательной группы.
+     * Пустой список удаляется.
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param id идентификатор элемента;
+     * @param userId идентификатор пользователя.
+     * */
+    public void removePosting(SupportGroups groupName, int id, int userId)
+    {
+        IntHashMap<IntBitmap> group = postings.get(groupName);
+        IntBitmap users = group.get(id);
+        if (users == null) return;
+        users.remove(userId);
+        if (users.isEmpty()) group.remove(id);
+    }
+
+    /**
+     * @param groupName объект {@link SupportGroups}, содержащий имя вспомагательной группы;
+     * @param id идентификатор элемента.
+     * @return битовая карта идентификаторов пользователей, ссылающихся на элемент, или null,
+     * если таких пользователей нет.
+     * */
+    public IntBitmap getPostings(SupportGroups groupName, int id)
+    {
+        return postings.get(groupName).get(id);
+    }
+
+    /**
+     * @param groupName объект {@link IDGroups}, содержащий имя группы для хранения свободных id.
+     * @return объект {@link IdAllocator}, выделяющий идентификаторы группы.
+     * */
+    public IdAllocator getIdAllocator(IDGroups groupName)
+    {
+        return ids.get(groupName);
+    }
+
+    /**
+     * @param groupName объект {@link IDGroups}, содержащий имя группы для хранения свободных id;
+     * @param allocator объект {@link IdAllocator}, выделяющий идентификаторы группы.
+     * */
+    public void setIdAllocator(IDGroups groupName, IdAllocator allocator)
+    {
+        ids.put(groupName, allocator);
+    }
+
+    private static class Counter
+    {
+        private int value;
+    }
+}
@@ -0,0 +1,51 @@
+package xml;
+
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Класс для хранения параметров работы XML хранилища. Значения по умолчанию соответствуют записи хранилища
+ * в файл после каждого изменения без журнала упреждающей записи.
+ * */
+public class StorageSettings
+{
+    /**
+     * Политика записи хранилища в файл.
+     * */
+    @Getter @Setter private FlushPolicy flushPolicy = FlushPolicy.sync;
+    /**
+     * Максимальное время в миллисекундах, в течение которого изменения накапливаются перед записью.
+     * */
+    @Getter @Setter private long flushWindow = 50;
+    /**
+     * Максимальное количество изменений, накапливаемых перед записью.
+     * */
+    @Getter @Setter private int flushOperations = 1000;
+    /**
+     * Признак использования журнала упреждающей записи {@link WriteAheadLog}.
+     * */
+    @Getter @Setter private boolean walEnabled = false;
+    /**
+     * Размер журнала в байтах, после превышения которого записывается XML файл хранилища и журнал очищается.
+     * */
+    @Getter @Setter private long walMaxSize = 16 * 1024 * 1024;
+    /**
+     * Максимальное время в миллисекундах между записями XML файла хранилища при использовании журнала.
+     * */
+    @Getter @Setter private long snapshotInterval = 10 * 60 * 1000;
+    /**
+     * Наибольшее количество изменений, ожидающих в очереди {@link MutationQueue}, или 0, если изменения
+     * выполняются потоками запросов без очереди.
+     * */
+    @Getter @Setter private int queueCapacity = 0;
+    /**
+     * Наибольшее количество изменений из очереди, применяемых под одной блокировкой с одной записью хранилища.
+     * */
+    @Getter @Setter private int queueBatchSize = 256;
+    /**
+     * Режим уникальных пользователей: при добавлении пользователя с такими же именем, фамилией и датой рождения,
+     * как у существующего, возвращается идентификатор существующего пользователя, а хранилище не изменяется.
+     * Обновление пользователей уникальность не проверяет.
+     * */
+    @Getter @Setter private boolean uniqueUsers = false;
+}
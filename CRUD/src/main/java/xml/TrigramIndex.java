@@ -0,0 +1,243 @@
+package xml;
+
+import lombok.Getter;
+import util.IntBitmap;
+import util.IntHashMap;
+import util.StringArena;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Класс триграммного индекса значений вспомогательной группы имен (имени или фамилии) хранилища для нечеткого
+ * поиска. Каждое различное значение группы получает собственный идентификатор и хранится вне кучи
+ * ({@link StringArena}), а для каждой триграммы значения (трех соседних символов в нижнем регистре, начало и конец
+ * значения дополняются пробелами) хранится битовая карта идентификаторов значений, содержащих триграмму.
+ * Индекс строится по различным значениям, поэтому его размер и время поиска зависят от количества различных имен,
+ * а не пользователей.
+ * <p>Поиск подсчитывает количество общих с искомой строкой триграмм для всех значений одним проходом по битовым
+ * картам триграмм искомой строки и отбирает кандидатов: одна правка (вставка, удаление или замена символа)
+ * затрагивает не больше трех триграмм, поэтому значение на расстоянии Левенштейна не больше k имеет не меньше
+ * g - 3k общих триграмм, где g - количество триграмм искомой строки, и отличается от нее по длине не больше чем на k.
+ * Для коротких строк этим условиям удовлетворяет
+ * слишком много значений, поэтому расстояние Левенштейна вычисляется не больше чем для
+ * {@link TrigramIndex#maxCandidates} кандидатов с наибольшим количеством общих триграмм, и значения упорядочиваются
+ * по нему.</p>
+ * <p>Изменяется под блокировкой записи хранилища, читается под блокировкой чтения.</p>
+ * */
+public class TrigramIndex
+{
+    /** Наибольшее количество кандидатов, для которых вычисляется расстояние Левенштейна. */
+    private static final int maxCandidates = 5000;
+    /** Наибольшая длина искомой строки: количество общих триграмм хранится в char. */
+    private static final int maxQueryLength = 1024;
+
+    private final StringArena values = new StringArena(16);
+    private final IntHashMap<IntBitmap> postings = new IntHashMap<>();
+    /** Длины значений в нижнем регистре по идентификаторам значений. */
+    private char[] lengths = new char[16];
+    private int[] freeIds = new int[16];
+    private int freeCount;
+    private int nextId;
+
+    /**
+     * Метод добавления значения. Повторное добавление значения не изменяет индекс.
+     * @param value значение группы.
+     * */
+    public void add(String value)
+    {
+        if (values.find(value) >= 0) return;
+
+        int id = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+        String normalized = normalize(value);
+        if (id == lengths.length) lengths = Arrays.copyOf(lengths, 2 * id);
+        lengths[id] = (char) Math.min(normalized.length(), Character.MAX_VALUE);
+        values.put(id, value);
+        for (int gram : grams(normalized))
+        {
+            IntBitmap ids = postings.get(gram);
+            if (ids == null)
+            {
+                ids = new IntBitmap();
+                postings.put(gram, ids);
+            }
+            ids.add(id);
+        }
+    }
+
+    /**
+     * Метод удаления значения.
+     * @param value значение группы.
+     * */
+    public void remove(String value)
+    {
+        int id = values.find(value);
+        if (id < 0) return;
+
+        for (int gram : grams(normalize(value)))
+        {
+            IntBitmap ids = postings.get(gram);
+            ids.remove(id);
+            if (ids.isEmpty()) postings.remove(gram);
+        }
+        values.remove(id);
+        if (freeCount == freeIds.length) freeIds = Arrays.copyOf(freeIds, 2 * freeCount);
+        freeIds[freeCount++] = id;
+    }
+
+    /**
+     * Метод нечеткого поиска значений.
+     * @param text искомая строка, регистр не учитывается.
+     * @return список {@link List} значений {@link Match} на расстоянии Левенштейна не больше
+     * {@link TrigramIndex#maxDistance(int)} от искомой строки в порядке возрастания расстояния, а при равном
+     * расстоянии - в порядке возрастания значений. Если кандидатов больше {@link TrigramIndex#maxCandidates},
+     * расстояние вычисляется только для кандидатов с наибольшим количеством общих триграмм.
+     * */
+    public List<Match> search(String text)
+    {
+        String query = normalize(text);
+        if (query.length() > maxQueryLength) query = query.substring(0, maxQueryLength);
+        int limit = maxDistance(query.length());
+        int[] grams = grams(query);
+        int threshold = Math.max(1, grams.length - 3 * limit);
+
+        // количество общих с искомой строкой триграмм для каждого значения
+        char[] shared = new char[nextId];
+        for (int gram : grams)
+        {
+            IntBitmap ids = postings.get(gram);
+            if (ids != null) ids.forEach(id -> shared[id]++);
+        }
+
+        // значение на расстоянии не больше limit отличается от искомой строки по длине не больше чем на limit
+        int[] histogram = new int[grams.length + 1];
+        for (int id = 0; id < shared.length; id++)
+        {
+            if (shared[id] < threshold) continue;
+            if (Math.abs(lengths[id] - query.length()) > limit) shared[id] = 0;
+            else histogram[shared[id]]++;
+        }
+        // наименьшее количество общих триграмм отбираемых кандидатов
+        int minShared = grams.length;
+        int selected = histogram[minShared];
+        while (minShared > threshold && selected + histogram[minShared - 1] <= maxCandidates)
+        {
+            selected += histogram[--minShared];
+        }
+
+        List<Match> matches = new ArrayList<>();
+        int verified = 0;
+        for (int id = 0; id < shared.length && verified < maxCandidates; id++)
+        {
+            if (shared[id] < minShared) continue;
+
+            verified++;
+            String value = values.get(id);
+            int distance = distance(query, normalize(value), limit);
+            if (distance <= limit) matches.add(new Match(value, distance));
+        }
+        matches.sort(Comparator.comparingInt(Match::getDistance).thenComparing(Match::getValue));
+        return matches;
+    }
+
+    /**
+     * @return количество различных значений.
+     * */
+    public int size()
+    {
+        return values.size();
+    }
+
+    /**
+     * Метод определения допустимого количества опечаток.
+     * @param length длина искомой строки.
+     * @return наибольшее расстояние Левенштейна найденных значений: 0 для строк до 2 символов, 1 для строк
+     * до 5 символов, 2 для более длинных строк.
+     * */
+    public static int maxDistance(int length)
+    {
+        if (length <= 2) return 0;
+        if (length <= 5) return 1;
+        return 2;
+    }
+
+    private static String normalize(String value)
+    {
+        return value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * @return различные триграммы значения, дополненного двумя пробелами в начале и одним в конце,
+     * в порядке возрастания.
+     * */
+    private static int[] grams(String value)
+    {
+        String padded = "  " + value + " ";
+        int[] grams = new int[padded.length() - 2];
+        for (int i = 0; i < grams.length; i++)
+        {
+            grams[i] = (padded.charAt(i) * 31 + padded.charAt(i + 1)) * 31 + padded.charAt(i + 2);
+        }
+        Arrays.sort(grams);
+
+        int count = 0;
+        for (int i = 0; i < grams.length; i++)
+        {
+            if (i == 0 || grams[i] != grams[i - 1]) grams[count++] = grams[i];
+        }
+        return Arrays.copyOf(grams, count);
+    }
+
+    /**
+     * @return расстояние Левенштейна между строками или limit + 1, если оно больше limit.
+     * */
+    private static int distance(String a, String b, int limit)
+    {
+        if (Math.abs(a.length() - b.length()) > limit) return limit + 1;
+
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) previous[j] = j;
+
+        for (int i = 1; i <= a.length(); i++)
+        {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++)
+            {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1], previous[j]) + 1, previous[j - 1] + cost);
+                rowMin = Math.min(rowMin, current[j]);
+            }
+            if (rowMin > limit) return limit + 1;
+
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return Math.min(previous[b.length()], limit + 1);
+    }
+
+    /**
+     * Класс найденного значения.
+     * */
+    public static class Match
+    {
+        @Getter private final String value;
+        @Getter private final int distance;
+
+        /**
+         * Конструктор класса.
+         * @param inValue значение группы;
+         * @param inDistance расстояние Левенштейна до искомой строки.
+         * */
+        public Match(String inValue, int inDistance)
+        {
+            this.value = inValue;
+            this.distance = inDistance;
+        }
+    }
+}
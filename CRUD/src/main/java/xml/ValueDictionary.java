@@ -0,0 +1,179 @@
+package xml;
+
+import exceptions.XMLProcessException;
+import util.IdAllocator;
+import util.IntBitmap;
+import util.StorageWriter;
+import util.StringArena;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Класс словаря значений вспомогательной группы хранилища. Значения хранятся вне кучи в {@link StringArena}
+ * под своими идентификаторами, битовые карты пользователей, ссылающихся на значения, - в массиве {@link IntBitmap},
+ * индексом в котором является идентификатор значения.
+ * Значение удаляется из словаря, когда на него не остается ссылок, а его идентификатор становится свободным.
+ * */
+public class ValueDictionary
+{
+    private final StringArena values;
+    private IntBitmap[] users;
+    private final IdAllocator allocator;
+
+    /**
+     * Конструктор класса.
+     * @param inValues значения группы, индексом является идентификатор значения;
+     * @param inIds идентификаторы группы в порядке хранения в XML хранилище.
+     * @exception XMLProcessException throws в случае нарушения структуры XML хранилища.
+     * */
+    public ValueDictionary(String[] inValues, int[] inIds) throws XMLProcessException
+    {
+        this.values = new StringArena(inValues.length);
+        this.users = new IntBitmap[inValues.length];
+        for (int id = 0; id < inValues.length; id++)
+        {
+            if (inValues[id] != null) this.values.put(id, inValues[id]);
+        }
+        this.allocator = new IdAllocator(inIds);
+    }
+
+    /**
+     * @param value значение.
+     * @return идентификатор значения или -1, если значения нет в словаре.
+     * */
+    public int getId(String value)
+    {
+        return values.find(value);
+    }
+
+    /**
+     * @param id идентификатор значения.
+     * @return значение или null, если значения с таким идентификатором нет.
+     * */
+    public String getValue(int id)
+    {
+        return values.get(id);
+    }
+
+    /**
+     * Метод добавления ссылки пользователя на значение. Если значения нет в словаре, оно добавляется.
+     * @param value значение;
+     * @param userId идентификатор пользователя.
+     * @return идентификатор значения.
+     * */
+    public int retain(String value, int userId)
+    {
+        int id = values.find(value);
+        if (id < 0)
+        {
+            id = allocator.allocate();
+            ensureCapacity(id + 1);
+            values.put(id, value);
+            users[id] = new IntBitmap();
+        }
+        users[id].add(userId);
+        return id;
+    }
+
+    /**
+     * Метод добавления ссылки пользователя на значение с заданным идентификатором.
+     * @param id идентификатор значения;
+     * @param userId идентификатор пользователя.
+     * @exception XMLProcessException throws в случае, если значения с таким идентификатором нет.
+     * */
+    public void retain(int id, int userId) throws XMLProcessException
+    {
+        if (getValue(id) == null)
+        {
+            throw new XMLProcessException(XMLProcessException.XML_FORMAT_EXCEPTION,
+                    new StringBuilder("Dictionary doesn't have value - ID: ").append(id).toString());
+        }
+        if (users[id] == null) users[id] = new IntBitmap();
+        users[id].add(userId);
+    }
+
+    /**
+     * Метод удаления ссылки пользователя на значение. Если ссылок не осталось, значение удаляется из словаря.
+     * @param id идентификатор значения;
+     * @param userId идентификатор пользователя.
+     * */
+    public void release(int id, int userId)
+    {
+        users[id].remove(userId);
+        if (!users[id].isEmpty()) return;
+
+        values.remove(id);
+        users[id] = null;
+        allocator.release(id);
+    }
+
+    /**
+     * @param id идентификатор значения.
+     * @return битовая карта идентификаторов пользователей, ссылающихся на значение, или null,
+     * если значения с таким идентификатором нет.
+     * */
+    public IntBitmap getUsers(int id)
+    {
+        return id >= 0 && id < users.length ? users[id] : null;
+    }
+
+    /**
+     * Метод получения распределения количества ссылок на значения.
+     * @return отсортированный {@link Map}, сопоставляющий количеству ссылок число значений с таким количеством ссылок.
+     * */
+    public Map<Integer, Integer> getReferenceDistribution()
+    {
+        Map<Integer, Integer> distribution = new TreeMap<>();
+        for (IntBitmap valueUsers : users)
+        {
+            if (valueUsers != null) distribution.merge(valueUsers.cardinality(), 1, Integer::sum);
+        }
+        return distribution;
+    }
+
+    /**
+     * Метод обхода значений словаря.
+     * @param visitor объект {@link StorageHandler.ValueVisitor}, который будет вызван для каждого значения.
+     * */
+    public void findValues(StorageHandler.ValueVisitor visitor)
+    {
+        for (int id = 0; id < users.length; id++)
+        {
+            if (users[id] != null) visitor.visit(values.get(id), users[id].cardinality());
+        }
+    }
+
+    /**
+     * Метод записи значений словаря в группу XML хранилища.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public void writeValues(StorageWriter writer, SupportGroups groupName) throws IOException
+    {
+        writer.startGroup(groupName.toString());
+        for (int id = 0; id < users.length; id++)
+        {
+            String value = values.get(id);
+            if (value != null) writer.item(id, value);
+        }
+        writer.endGroup();
+    }
+
+    /**
+     * Метод записи идентификаторов словаря в группу XML хранилища.
+     * @exception IOException throws в случае ошибки записи файла.
+     * */
+    public void writeIds(StorageWriter writer, IDGroups groupName) throws IOException
+    {
+        allocator.write(writer, groupName.toString());
+    }
+
+    private void ensureCapacity(int capacity)
+    {
+        if (capacity <= users.length) return;
+
+        users = Arrays.copyOf(users, Math.max(capacity, users.length * 2));
+    }
+}
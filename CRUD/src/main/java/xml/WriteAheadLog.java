@@ -0,0 +1,301 @@
+package xml;
+
+import application.User;
+import exceptions.XMLProcessException;
+import org.apache.log4j.LogManager;
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Класс журнала упреждающей записи (write-ahead log) XML хранилища.
+ * Каждое изменение хранилища дописывается в конец журнала одной строкой, а XML файл хранилища записывается
+ * только при сжатии журнала. Строка журнала содержит итоговое состояние пользователя:
+ * <pre>
+ * {@code P<TAB>id<TAB>=firstName<TAB>=secondName<TAB>=birthDate<TAB>version} пользователь с заданным id добавлен
+ * или обновлен
+ * {@code D<TAB>id} пользователь с заданным id удален
+ * </pre>
+ * Запись содержит итоговое состояние и версию пользователя, поэтому повторное применение журнала к хранилищу,
+ * уже содержащему часть изменений, приводит к тому же результату.
+ * */
+public class WriteAheadLog
+{
+    private static Logger logger = LogManager.getLogger(WriteAheadLog.class);
+
+    private static final char putRecord = 'P';
+    private static final char deleteRecord = 'D';
+    private static final char separator = '\t';
+    private static final char valueMarker = '=';
+
+    private final File file;
+    private FileChannel channel;
+    private Writer writer;
+
+    /**
+     * Конструктор класса.
+     * @param inPath путь к файлу журнала. Если файла нет, он будет создан.
+     * @exception XMLProcessException throws в случае ошибки открытия файла журнала.
+     * */
+    public WriteAheadLog(String inPath) throws XMLProcessException
+    {
+        this.file = new File(inPath);
+        try
+        {
+            this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            this.channel.position(this.channel.size());
+        }
+        catch (IOException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_LOG_EXCEPTION, e);
+        }
+        this.writer = new BufferedWriter(new OutputStreamWriter(Channels.newOutputStream(this.channel), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Метод добавления в журнал записи о добавлении или обновлении пользователя.
+     * Запись попадает на диск после вызова {@link WriteAheadLog#sync()}.
+     * @param id идентификатор пользователя;
+     * @param user объект {@link User}, содержащий итоговую информацию о пользователе;
+     * @param version версия пользователя после изменения.
+     * @exception XMLProcessException throws в случае ошибки записи в журнал.
+     * */
+    public void put(int id, User user, long version) throws XMLProcessException
+    {
+        StringBuilder record = new StringBuilder().append(putRecord).append(separator).append(id);
+        appendValue(record, user.getFirstName());
+        appendValue(record, user.getSecondName());
+        appendValue(record, user.getBirthDate());
+        record.append(separator).append(version);
+        append(record);
+    }
+
+    /**
+     * Метод добавления в журнал записи об удалении пользователя.
+     * Запись попадает на диск после вызова {@link WriteAheadLog#sync()}.
+     * @param id идентификатор пользователя.
+     * @exception XMLProcessException throws в случае ошибки записи в журнал.
+     * */
+    public void delete(int id) throws XMLProcessException
+    {
+        append(new StringBuilder().append(deleteRecord).append(separator).append(id));
+    }
+
+    /**
+     * Метод записи накопленных записей журнала на диск (fsync).
+     * @exception XMLProcessException throws в случае ошибки записи в журнал.
+     * */
+    public synchronized void sync() throws XMLProcessException
+    {
+        try
+        {
+            writer.flush();
+            channel.force(false);
+        }
+        catch (IOException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_LOG_EXCEPTION, e);
+        }
+    }
+
+    /**
+     * @return размер журнала в байтах, включая еще не записанные на диск записи.
+     * @exception XMLProcessException throws в случае ошибки работы с файлом журнала.
+     * */
+    public synchronized long size() throws XMLProcessException
+    {
+        try
+        {
+            writer.flush();
+            return channel.size();
+        }
+        catch (IOException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_LOG_EXCEPTION, e);
+        }
+    }
+
+    /**
+     * Метод очистки журнала. Вызывается после записи XML файла хранилища, который содержит все изменения журнала.
+     * @exception XMLProcessException throws в случае ошибки работы с файлом журнала.
+     * */
+    public synchronized void truncate() throws XMLProcessException
+    {
+        try
+        {
+            writer.flush();
+            channel.truncate(0);
+            channel.position(0);
+            channel.force(false);
+        }
+        catch (IOException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_LOG_EXCEPTION, e);
+        }
+    }
+
+    /**
+     * Метод закрытия журнала.
+     * @exception XMLProcessException throws в случае ошибки работы с файлом журнала.
+     * */
+    public synchronized void close() throws XMLProcessException
+    {
+        try
+        {
+            writer.close();
+        }
+        catch (IOException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_LOG_EXCEPTION, e);
+        }
+    }
+
+    /**
+     * Метод применения всех записей журнала. Последняя строка, запись которой была прервана, игнорируется.
+     * Поврежденная запись в остальной части журнала прерывает применение: следующие за ней записи не могут быть
+     * применены, и журнал не должен очищаться.
+     * @param replayer объект {@link Replayer}, применяющий записи журнала к хранилищу.
+     * @return количество примененных записей.
+     * @exception XMLProcessException throws в случае ошибки чтения журнала, поврежденной записи или ошибки
+     * применения записи.
+     * */
+    public synchronized int replay(Replayer replayer) throws XMLProcessException
+    {
+        int count = 0;
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                Files.newInputStream(file.toPath()), StandardCharsets.UTF_8)))
+        {
+            boolean complete = endsWithNewLine();
+            String line = reader.readLine();
+            for (String next; line != null; line = next)
+            {
+                next = reader.readLine();
+                if (next == null && !complete)
+                {
+                    logger.warn(new StringBuilder("Skip incomplete write-ahead log record: ").append(line).toString());
+                    break;
+                }
+
+                String[] fields = line.split(String.valueOf(separator), -1);
+                if (fields[0].length() == 1 && fields[0].charAt(0) == putRecord && fields.length == 6)
+                {
+                    replayer.put(Integer.parseInt(fields[1]),
+                            new User(parseValue(fields[2]), parseValue(fields[3]), parseValue(fields[4])),
+                            Long.parseLong(fields[5]));
+                }
+                else if (fields[0].length() == 1 && fields[0].charAt(0) == deleteRecord && fields.length == 2)
+                {
+                    replayer.delete(Integer.parseInt(fields[1]));
+                }
+                else
+                {
+                    XMLProcessException ex = new XMLProcessException(XMLProcessException.XML_LOG_EXCEPTION,
+                            new StringBuilder("Broken write-ahead log record - line: ").append(count + 1)
+                                    .append("\trecord: ").append(line).toString());
+                    logger.error(ex);
+                    throw ex;
+                }
+                count++;
+            }
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_LOG_EXCEPTION, e);
+        }
+
+        logger.info(new StringBuilder("Write-ahead log replayed - records: ").append(count).toString());
+        return count;
+    }
+
+    private boolean endsWithNewLine() throws IOException
+    {
+        try (FileChannel input = FileChannel.open(file.toPath(), StandardOpenOption.READ))
+        {
+            if (input.size() == 0) return true;
+            ByteBuffer last = ByteBuffer.allocate(1);
+            input.read(last, input.size() - 1);
+            return last.get(0) == '\n';
+        }
+    }
+
+    private synchronized void append(StringBuilder record) throws XMLProcessException
+    {
+        try
+        {
+            writer.append(record).append('\n');
+        }
+        catch (IOException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_LOG_EXCEPTION, e);
+        }
+    }
+
+    private static void appendValue(StringBuilder record, String value)
+    {
+        record.append(separator);
+        if (value == null) return;
+
+        record.append(valueMarker);
+        for (int i = 0; i < value.length(); i++)
+        {
+            char c = value.charAt(i);
+            switch (c)
+            {
+                case '\\': record.append("\\\\"); break;
+                case '\t': record.append("\\t"); break;
+                case '\n': record.append("\\n"); break;
+                case '\r': record.append("\\r"); break;
+                default: record.append(c);
+            }
+        }
+    }
+
+    private static String parseValue(String field)
+    {
+        if (field.isEmpty()) return null;
+
+        StringBuilder value = new StringBuilder(field.length());
+        for (int i = 1; i < field.length(); i++)
+        {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 1 < field.length())
+            {
+                char next = field.charAt(++i);
+                value.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            }
+            else
+            {
+                value.append(c);
+            }
+        }
+        return value.toString();
+    }
+
+    /**
+     * Интерфейс применения записей журнала к хранилищу.
+     * */
+    public interface Replayer
+    {
+        void put(int id, User user, long version) throws XMLProcessException;
+        void delete(int id) throws XMLProcessException;
+    }
+}
@@ -1,11 +1,10 @@
 package xml;
 
-import application.CRUD;
 import application.User;
+import util.IntBitmap;
+import util.LoadStatistics;
 import util.XMLUtil;
 import exceptions.XMLProcessException;
-import lombok.Getter;
-import lombok.Setter;
 import org.apache.log4j.LogManager;
 import org.apache.log4j.Logger;
 import org.javatuples.Triplet;
@@ -15,81 +14,123 @@ import org.xml.sax.SAXException;
 
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.TransformerException;
 import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Класс для работы с XML хранилищем. Позволяет осуществлять основные CRUD операции в хранилище.
+ * Хранилище содержится в памяти в виде DOM, доступ к элементам выполняется через индексы {@link StorageIndex}.
+ * Запись хранилища в файл после изменений выполняется в соответствии с политикой {@link FlushPolicy}.
+ * Если включен журнал упреждающей записи {@link WriteAheadLog}, изменения дописываются в журнал,
+ * а XML файл записывается только при сжатии журнала.
  * */
 @Repository
-public class XMLHandler implements CRUD
+public class XMLHandler extends StorageHandler
 {
     private static Logger logger = LogManager.getLogger(xml.XMLHandler.class);
     private Document xmlDocument;
-
-    @Getter
-    @Setter
-    private String path;
+    private StorageIndex index;
 
     /**
-     * Конструктор класса.
+     * Конструктор класса. Хранилище записывается в файл после каждого изменения ({@link FlushPolicy#sync}).
      * @param inPath путь к XML файлу хранилища.
      * @exception XMLProcessException throws в случае ошибки инициализации XML хранилища или в случае ошибки открытия XML файла.
      * */
     public XMLHandler(String inPath) throws XMLProcessException
     {
-        this.path = inPath;
-        if (!(new File(this.path).exists()))
+        this(inPath, new StorageSettings());
+    }
+
+    /**
+     * Конструктор класса. Если включен журнал упреждающей записи, то после загрузки XML файла к хранилищу
+     * применяются записи журнала, после чего XML файл перезаписывается, а журнал очищается.
+     * @param inPath путь к XML файлу хранилища. Журнал хранится в файле с тем же путем и расширением .wal;
+     * @param inSettings объект {@link StorageSettings}, содержащий параметры работы хранилища.
+     * @exception XMLProcessException throws в случае ошибки инициализации XML хранилища или в случае ошибки открытия XML файла.
+     * */
+    public XMLHandler(String inPath, StorageSettings inSettings) throws XMLProcessException
+    {
+        super(inPath, inSettings);
+        LoadStatistics statistics = new LoadStatistics();
+        if (!(new File(getPath()).exists()))
         {
-            this.xmlDocument = XMLUtil.initXML(this.path);
+            this.xmlDocument = XMLUtil.initXML(getPath());
         }
         else
         {
             try {
-                this.xmlDocument = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(path);
+                this.xmlDocument = DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(getPath());
             } catch (SAXException | IOException | ParserConfigurationException e) {
                 logger.error(e);
                 throw new XMLProcessException(XMLProcessException.XML_INIT_EXCEPTION, e);
             }
-            logger.info("Open and parse xml file successfully");
         }
+        this.index = XMLUtil.buildIndex(this.xmlDocument);
+        restoreRevision(XMLUtil.getRevision(this.xmlDocument, this.index));
+        logger.info(new StringBuilder("Open and parse xml file successfully - ")
+                .append(statistics.finish(this.index.getUsers().size())).toString());
+
+        open();
     }
 
     /**
-     * Определение метода интерфейса {@link CRUD} для добовление нового пользователя в хранилище.
-     * Более подробное описание можно получить в {@link CRUD#create(User)}.
-     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время добовления нового пользователя.
+     * Метод записи DOM хранилища в XML файл.
      * */
     @Override
-    public Integer create(User user) throws XMLProcessException
+    protected void writeSnapshot() throws XMLProcessException
     {
-        logger.info(new StringBuilder().append("Create request -\t").append(user.toString()).toString());
+        try
+        {
+            XMLUtil.writeDocument(this.xmlDocument, this.index, getRevision(), getPath());
+        }
+        catch (IOException e)
+        {
+            logger.error(e);
+            throw new XMLProcessException(XMLProcessException.XML_UPDATE_FILE_EXCEPTION, e);
+        }
+    }
 
-        Integer fid = XMLUtil.checkStorage(this.xmlDocument, SupportGroups.firstNameGroup, user.getFirstName());
-        Integer sid = XMLUtil.checkStorage(this.xmlDocument, SupportGroups.secondNameGroup, user.getSecondName());
-        Integer bid = XMLUtil.checkStorage(this.xmlDocument, SupportGroups.birthDateGroup, user.getBirthDate());
+    @Override
+    protected boolean contains(int id)
+    {
+        return this.index.getUsers().containsKey(id);
+    }
 
-        if (fid == null) fid = XMLUtil.addItemToStorage(this.xmlDocument, SupportGroups.firstNameGroup, user.getFirstName());
-        if (sid == null) sid = XMLUtil.addItemToStorage(this.xmlDocument, SupportGroups.secondNameGroup, user.getSecondName());
-        if (bid == null) bid = XMLUtil.addItemToStorage(this.xmlDocument, SupportGroups.birthDateGroup, user.getBirthDate());
+    private Integer resolve(SupportGroups groupName, String value) throws XMLProcessException
+    {
+        Integer id = XMLUtil.checkStorage(this.xmlDocument, this.index, groupName, value);
+        if (id == null) id = XMLUtil.addItemToStorage(this.xmlDocument, this.index, groupName, value);
+        return id;
+    }
 
-        Integer id = XMLUtil.addItemToStorage(this.xmlDocument, fid, sid, bid);
+    /**
+     * Метод добавления пользователя в XML хранилище.
+     * @param id идентификатор пользователя или null, если идентификатор нужно выделить.
+     * @return идентификатор добавленного пользователя.
+     * */
+    @Override
+    protected Integer insert(Integer id, User user, long version) throws XMLProcessException
+    {
+        Integer fid = resolve(SupportGroups.firstNameGroup, user.getFirstName());
+        Integer sid = resolve(SupportGroups.secondNameGroup, user.getSecondName());
+        Integer bid = resolve(SupportGroups.birthDateGroup, user.getBirthDate());
 
-        try
+        if (id == null)
         {
-            XMLUtil.writeDocument(this.xmlDocument, this.path);
+            id = XMLUtil.addItemToStorage(this.xmlDocument, this.index, fid, sid, bid);
         }
-        catch (TransformerException | FileNotFoundException e)
+        else
         {
-            logger.error(e);
-            throw new XMLProcessException(XMLProcessException.XML_UPDATE_FILE_EXCEPTION, e);
+            XMLUtil.claimFreeId(this.xmlDocument, this.index, IDGroups.MGID, id);
+            XMLUtil.addItemToStorage(this.xmlDocument, this.index, id, fid, sid, bid);
         }
+        XMLUtil.updateAttributeValue(this.xmlDocument, this.index, XMLUtil.mainGroup, id, XMLUtil.versionField,
+                Long.toString(version));
 
-        logger.info(new StringBuilder().append("Create successfully - ")
+        logger.debug(new StringBuilder().append("Insert user - ")
                 .append("\tFID: ")
                 .append(fid)
                 .append("\tSID: ")
@@ -98,167 +139,151 @@ public class XMLHandler implements CRUD
                 .append(bid)
                 .append("\tID: ")
                 .append(id).toString());
-
         return id;
     }
 
     /**
-     * Определение метода интерфейса {@link CRUD} для получения информации о всех пользователях.
-     * Более подробное описание можно получить в {@link CRUD#read()}.
-     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время получения данных пользователей.
+     * Метод обновления информации о пользователе в XML хранилище. Поля newUserInfo, равные null, не изменяются.
      * */
     @Override
-    public List<Integer> read() throws XMLProcessException
+    protected void change(Integer id, User newUserInfo, long version) throws XMLProcessException
     {
-        logger.info(new StringBuilder().append("Read all users info request\t").toString());
+        Triplet<Integer, Integer, Integer> userInfo = XMLUtil.getUser(this.xmlDocument, this.index, id);
 
-        List<Integer> usersId = new ArrayList<Integer>();
-        XMLUtil.getAllUsersId(xmlDocument, usersId);
-
-        logger.info(new StringBuilder().append("Read all users info successfully\t").toString());
-
-        return usersId;
+        if (newUserInfo.getFirstName() != null)
+        {
+            XMLUtil.deleteUserWithCheck(xmlDocument, index, SupportGroups.firstNameGroup.toString(), XMLUtil.firstNameIdField, userInfo.getValue0());
+            Integer newFID = resolve(SupportGroups.firstNameGroup, newUserInfo.getFirstName());
+            XMLUtil.updateAttributeValue(this.xmlDocument, this.index, XMLUtil.mainGroup, id, XMLUtil.firstNameIdField, newFID.toString());
+        }
+        if (newUserInfo.getSecondName() != null)
+        {
+            XMLUtil.deleteUserWithCheck(xmlDocument, index, SupportGroups.secondNameGroup.toString(), XMLUtil.secondNameIdField, userInfo.getValue1());
+            Integer newSID = resolve(SupportGroups.secondNameGroup, newUserInfo.getSecondName());
+            XMLUtil.updateAttributeValue(this.xmlDocument, this.index, XMLUtil.mainGroup, id, XMLUtil.secondNameIdField, newSID.toString());
+        }
+        if (newUserInfo.getBirthDate() != null)
+        {
+            XMLUtil.deleteUserWithCheck(xmlDocument, index, SupportGroups.birthDateGroup.toString(), XMLUtil.birthDateIdField, userInfo.getValue2());
+            Integer newBID = resolve(SupportGroups.birthDateGroup, newUserInfo.getBirthDate());
+            XMLUtil.updateAttributeValue(this.xmlDocument, this.index, XMLUtil.mainGroup, id, XMLUtil.birthDateIdField, newBID.toString());
+        }
+        XMLUtil.updateAttributeValue(this.xmlDocument, this.index, XMLUtil.mainGroup, id, XMLUtil.versionField,
+                Long.toString(version));
     }
 
     /**
-     * Определение метода интерфейса {@link CRUD} для получения информации о пользователях по заданным параметрам.
-     * Более подробное описание можно получить в {@link CRUD#read(User)}.
-     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время получения данных пользователей.
+     * Метод удаления пользователя из XML хранилища.
      * */
     @Override
-    public List<Integer> read(User parameters) throws XMLProcessException
+    protected void remove(Integer id) throws XMLProcessException
     {
-        StringBuilder sb = new StringBuilder().append("Read users info request with params -");
-
-        if (parameters.getFirstName() != null) sb.append("\tFirstName: ").append(parameters.getFirstName());
-        if (parameters.getSecondName() != null) sb.append("\tSecondName: ").append(parameters.getSecondName());
-        if (parameters.getBirthDate() != null) sb.append("\tBirthDate: ").append(parameters.getBirthDate());
-
-        logger.info(sb.toString());
-
-        List<Integer> usersId = new ArrayList<Integer>();
-
-        if (parameters.getFirstName() == null &&
-                parameters.getSecondName() == null &&
-                parameters.getBirthDate() == null)
-        {
-            XMLUtil.getAllUsersId(xmlDocument, usersId);
-        }
-        else
-        {
-            XMLUtil.getAllUsersIdParametrized(xmlDocument, usersId, parameters);
-        }
+        Triplet<Integer, Integer, Integer> userInfo = XMLUtil.getUser(this.xmlDocument, this.index, id);
 
-        logger.info(new StringBuilder().append("Read all users info successfully\t").toString());
-
-        return usersId;
+        XMLUtil.deleteUserWithCheck(xmlDocument, index, SupportGroups.firstNameGroup.toString(), XMLUtil.firstNameIdField, userInfo.getValue0());
+        XMLUtil.deleteUserWithCheck(xmlDocument, index, SupportGroups.secondNameGroup.toString(), XMLUtil.secondNameIdField, userInfo.getValue1());
+        XMLUtil.deleteUserWithCheck(xmlDocument, index, SupportGroups.birthDateGroup.toString(), XMLUtil.birthDateIdField, userInfo.getValue2());
+        XMLUtil.deleteUserWithCheck(xmlDocument, index, XMLUtil.mainGroup, XMLUtil.idField, id);
     }
 
     /**
-     * Определение метода интерфейса {@link CRUD} для получения информации о пользователе по заданному id.
-     * Более подробное описание можно получить в {@link CRUD#read(Integer)}.
-     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время получения данных пользователя
-     * или в случае остутсвия данных рассматриваемого пользователя.
+     * Метод поиска пользователя в XML хранилище по идентификатору.
      * */
     @Override
-    public User read(Integer id) throws XMLProcessException
+    protected User find(Integer id) throws XMLProcessException
     {
-        logger.info(new StringBuilder().append("Read info about user - ID: ").append(id.toString()).toString());
-
-        Triplet<Integer, Integer, Integer> userInfo = XMLUtil.getUser(this.xmlDocument, id);
+        Triplet<Integer, Integer, Integer> userInfo = XMLUtil.getUser(this.xmlDocument, this.index, id);
 
-        String firstNameValue = XMLUtil.getUserDetail(xmlDocument, SupportGroups.firstNameGroup, userInfo.getValue0());
-        String secondNameValue = XMLUtil.getUserDetail(xmlDocument, SupportGroups.secondNameGroup, userInfo.getValue1());
-        String birthDateValue = XMLUtil.getUserDetail(xmlDocument, SupportGroups.birthDateGroup, userInfo.getValue2());
+        String firstNameValue = XMLUtil.getUserDetail(xmlDocument, index, SupportGroups.firstNameGroup, userInfo.getValue0());
+        String secondNameValue = XMLUtil.getUserDetail(xmlDocument, index, SupportGroups.secondNameGroup, userInfo.getValue1());
+        String birthDateValue = XMLUtil.getUserDetail(xmlDocument, index, SupportGroups.birthDateGroup, userInfo.getValue2());
 
         User user = new User(firstNameValue, secondNameValue, birthDateValue);
-
-        logger.info(new StringBuilder().append("Found user info - ").append(user.toString()).toString());
-
+        user.setVersion(XMLUtil.getUserVersion(index, id));
         return user;
     }
 
-    /**
-     * Определение метода интерфейса {@link CRUD} для удаления информации о пользователе из хранилища по заданному id.
-     * Более подробное описание можно получить в {@link CRUD#delete(Integer)}.
-     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время удаления данных пользователя
-     * или в случае остутсвия данных рассматриваемого пользователя.
-     * */
     @Override
-    public void delete(Integer id) throws XMLProcessException
+    protected long findVersion(Integer id) throws XMLProcessException
     {
-        logger.info(new StringBuilder().append("Delete request - ID: ").append(id.toString()).toString());
+        return XMLUtil.getUserVersion(index, id);
+    }
 
-        Triplet<Integer, Integer, Integer> userInfo = XMLUtil.getUser(this.xmlDocument, id);
+    @Override
+    protected void findAll(Collection<Integer> ids, Map<Integer, User> users) throws XMLProcessException
+    {
+        XMLUtil.getUsers(xmlDocument, index, ids, users);
+    }
 
-        XMLUtil.deleteUserWithCheck(xmlDocument, SupportGroups.firstNameGroup.toString(), XMLUtil.firstNameIdField, userInfo.getValue0());
-        XMLUtil.deleteUserWithCheck(xmlDocument, SupportGroups.secondNameGroup.toString(), XMLUtil.secondNameIdField, userInfo.getValue1());
-        XMLUtil.deleteUserWithCheck(xmlDocument, SupportGroups.birthDateGroup.toString(), XMLUtil.birthDateIdField, userInfo.getValue2());
-        XMLUtil.deleteUserWithCheck(xmlDocument, XMLUtil.mainGroup, XMLUtil.idField, id);
+    @Override
+    protected void findAll(List<Integer> usersId) throws XMLProcessException
+    {
+        XMLUtil.getAllUsersId(xmlDocument, usersId);
+    }
 
-        try
-        {
-            XMLUtil.writeDocument(this.xmlDocument, this.path);
-        }
-        catch (TransformerException| FileNotFoundException e)
-        {
-            logger.error(e);
-            throw new XMLProcessException(XMLProcessException.XML_UPDATE_FILE_EXCEPTION, e);
-        }
+    @Override
+    protected void findAll(int after, int limit, List<Integer> usersId)
+    {
+        index.getUserIds().addTo(after, limit, usersId);
+    }
 
-        logger.info(new StringBuilder().append("Delete successfully ID: ").append(id.toString()).toString());
+    @Override
+    protected IntBitmap findUsers(SupportGroups groupName, String value)
+    {
+        return XMLUtil.getUsersByValue(index, groupName, value);
     }
 
     /**
-     * Определение метода интерфейса {@link CRUD} для обновления информации о пользователе по заданному id.
-     * Более подробное описание можно получить в {@link CRUD#update(Integer, User)}.
-     * @exception XMLProcessException throws в случае ошибки при работе с XML файлом во время обновления данных пользователя
-     * или в случае остутсвия данных рассматриваемого пользователя.
+     * Хеши вычисляются по группам: значение группы добавляется к хешам всех ссылающихся на него пользователей,
+     * поэтому элементы пользователей XML документа не читаются.
      * */
     @Override
-    public User update(Integer id, User newUserInfo)
-            throws XMLProcessException
+    protected void findHashes(HashVisitor visitor)
     {
-        logger.info(new StringBuilder().append("Update request - ID: ")
-                .append(id.toString())
-                .append("\tUser info: ")
-                .append(newUserInfo).toString());
-
-        Triplet<Integer, Integer, Integer> userInfo = XMLUtil.getUser(this.xmlDocument, id);
+        IntBitmap usersId = index.getUserIds();
+        int[] maxId = {-1};
+        usersId.forEach(id -> maxId[0] = id);
 
-        if (newUserInfo.getFirstName() != null)
+        int[] hashes = new int[maxId[0] + 1];
+        // группы перебираются в порядке значений сочетания: имя, фамилия, дата рождения
+        for (SupportGroups group : SupportGroups.values())
         {
-            XMLUtil.deleteUserWithCheck(xmlDocument, SupportGroups.firstNameGroup.toString(), XMLUtil.firstNameIdField, userInfo.getValue0());
-            Integer newFID = XMLUtil.checkStorage(this.xmlDocument, SupportGroups.firstNameGroup, newUserInfo.getFirstName());;
-            if (newFID == null) newFID = XMLUtil.addItemToStorage(this.xmlDocument, SupportGroups.firstNameGroup, newUserInfo.getFirstName());
-            XMLUtil.updateAttributeValue(this.xmlDocument, XMLUtil.mainGroup, id, XMLUtil.firstNameIdField, newFID.toString());
+            for (Map.Entry<String, Integer> value : index.getValues(group).entrySet())
+            {
+                IntBitmap users = index.getPostings(group, value.getValue());
+                if (users != null) users.forEach(id -> hashes[id] = CompositeIndex.combine(hashes[id], value.getKey()));
+            }
         }
+        usersId.forEach(id -> visitor.visit(id, CompositeIndex.mix(hashes[id])));
+    }
 
-        if (newUserInfo.getSecondName() != null)
-        {
-            XMLUtil.deleteUserWithCheck(xmlDocument, SupportGroups.secondNameGroup.toString(), XMLUtil.secondNameIdField, userInfo.getValue1());
-            Integer newSID = XMLUtil.checkStorage(this.xmlDocument, SupportGroups.secondNameGroup, newUserInfo.getSecondName());;
-            if (newSID == null) newSID = XMLUtil.addItemToStorage(this.xmlDocument, SupportGroups.secondNameGroup, newUserInfo.getSecondName());
-            XMLUtil.updateAttributeValue(this.xmlDocument, XMLUtil.mainGroup, id, XMLUtil.secondNameIdField, newSID.toString());
-        }
-        if (newUserInfo.getBirthDate() != null)
+    /**
+     * Значения проверяются по битовым картам пользователей, ссылающихся на них, без чтения атрибутов
+     * элементов XML документа.
+     * */
+    @Override
+    protected boolean matches(int id, User user)
+    {
+        for (SupportGroups group : SupportGroups.values())
         {
-            XMLUtil.deleteUserWithCheck(xmlDocument, SupportGroups.birthDateGroup.toString(), XMLUtil.birthDateIdField, userInfo.getValue2());
-            Integer newBID = XMLUtil.checkStorage(this.xmlDocument, SupportGroups.birthDateGroup, newUserInfo.getBirthDate());;
-            if (newBID == null) newBID = XMLUtil.addItemToStorage(this.xmlDocument, SupportGroups.birthDateGroup, newUserInfo.getBirthDate());
-            XMLUtil.updateAttributeValue(this.xmlDocument, XMLUtil.mainGroup, id, XMLUtil.birthDateIdField, newBID.toString());
+            IntBitmap users = findUsers(group, XMLUtil.getParameter(user, group));
+            if (users == null || !users.contains(id)) return false;
         }
+        return true;
+    }
 
-        try {
-            XMLUtil.writeDocument(this.xmlDocument, this.path);
-        } catch (TransformerException | FileNotFoundException e) {
-            logger.error(e);
-            throw new XMLProcessException(XMLProcessException.XML_UPDATE_FILE_EXCEPTION, e);
-        }
+    @Override
+    protected Map<Integer, Integer> getReferenceDistribution(SupportGroups groupName)
+    {
+        return this.index.getReferenceDistribution(groupName);
+    }
 
-        User newUser = this.read(id);
-        logger.info(new StringBuilder().append("Update successfully - ").append(newUser.toString()).toString());
-        return newUser;
+    @Override
+    protected void findValues(SupportGroups groupName, ValueVisitor visitor)
+    {
+        this.index.getValues(groupName).forEach((value, id) -> {
+            IntBitmap users = this.index.getPostings(groupName, id);
+            if (users != null) visitor.visit(value, users.cardinality());
+        });
     }
 }
-
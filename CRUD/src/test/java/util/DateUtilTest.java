@@ -0,0 +1,73 @@
+package util;
+
+import exceptions.XMLProcessException;
+import org.junit.Test;
+
+import java.time.LocalDate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+/**
+ * Тесты {@link DateUtil}: строгий разбор дат в форматах yyyy-MM-dd, без ведущих нулей и dd.MM.yyyy,
+ * приведение к формату хранилища и отказ записи несуществующих и еще не наступивших дат рождения.
+ * */
+public class DateUtilTest
+{
+    @Test
+    public void supportedFormatsAreNormalized() throws XMLProcessException
+    {
+        assertEquals("1990-01-02", DateUtil.normalizeBirthDate("1990-01-02"));
+        assertEquals("1990-01-02", DateUtil.normalizeBirthDate("1990-1-2"));
+        assertEquals("1990-01-02", DateUtil.normalizeBirthDate("02.01.1990"));
+        assertEquals("1990-01-02", DateUtil.normalizeBirthDate(" 2.1.1990 "));
+        assertEquals("2020-02-29", DateUtil.normalizeBirthDate("2020-2-29"));
+        assertEquals(LocalDate.now().toString(), DateUtil.normalizeBirthDate(LocalDate.now().toString()));
+    }
+
+    @Test
+    public void nonexistentDatesAreRejected()
+    {
+        // строгий разбор: 30 февраля не заменяется на 28 февраля
+        for (String value : new String[]{"2021-2-30", "30.02.2021", "2021-02-29", "1990-13-01", "1990-01-32",
+                "1990/01/02", "01.02", "Pavel", "", null})
+        {
+            assertNull(DateUtil.toEpochDay(value));
+            assertRejected(value);
+        }
+        // недопустимая дата возвращается без изменений
+        assertEquals("2021-2-30", DateUtil.canonical("2021-2-30"));
+        assertEquals("1990-01-02", DateUtil.canonical("02.01.1990"));
+    }
+
+    @Test
+    public void futureDatesAreRejected()
+    {
+        LocalDate tomorrow = LocalDate.now().plusDays(1);
+        assertRejected(tomorrow.toString());
+        assertRejected(tomorrow.getDayOfMonth() + "." + tomorrow.getMonthValue() + "." + tomorrow.getYear());
+        assertRejected("3000-01-01");
+    }
+
+    @Test
+    public void epochDayRoundTrip()
+    {
+        assertEquals(Integer.valueOf(0), DateUtil.toEpochDay("1970-01-01"));
+        assertEquals(Integer.valueOf(-1), DateUtil.toEpochDay("31.12.1969"));
+        assertEquals("1990-01-02", DateUtil.format(DateUtil.toEpochDay("1990-1-2")));
+    }
+
+    private static void assertRejected(String value)
+    {
+        try
+        {
+            DateUtil.normalizeBirthDate(value);
+            fail("Birth date accepted: " + value);
+        }
+        catch (XMLProcessException e)
+        {
+            assertEquals(XMLProcessException.XML_USER_DATA_EXCEPTION, e.getCode());
+        }
+    }
+}
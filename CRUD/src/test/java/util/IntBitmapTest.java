@@ -0,0 +1,252 @@
+package util;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Тесты {@link IntBitmap}: замена массива битовой картой и обратно на границе 4096 чисел, операции
+ * and/or/andNot для всех сочетаний контейнеров и добавление чисел в список после заданного числа.
+ * Результаты сравниваются с {@link TreeSet}.
+ * */
+public class IntBitmapTest
+{
+    private static final int arrayLimit = 4096;
+
+    @Test
+    public void addContainsRemove()
+    {
+        IntBitmap bitmap = new IntBitmap();
+        assertTrue(bitmap.isEmpty());
+
+        bitmap.add(5);
+        bitmap.add(70000);
+        bitmap.add(5);
+        assertEquals(2, bitmap.cardinality());
+        assertTrue(bitmap.contains(5));
+        assertTrue(bitmap.contains(70000));
+        assertFalse(bitmap.contains(6));
+        assertFalse(bitmap.contains(5 + 65536));
+
+        bitmap.remove(70000);
+        bitmap.remove(123);
+        assertEquals(Arrays.asList(5), values(bitmap));
+        assertEquals(Arrays.asList("ArrayContainer"), containers(bitmap));
+
+        bitmap.remove(5);
+        assertTrue(bitmap.isEmpty());
+        assertEquals(0, containers(bitmap).size());
+    }
+
+    @Test
+    public void arrayContainerBecomesBitmapAfterLimit()
+    {
+        IntBitmap bitmap = new IntBitmap();
+        TreeSet<Integer> expected = new TreeSet<>();
+        // числа через одно, чтобы битовая карта не совпадала с непрерывным диапазоном
+        for (int i = 0; i < arrayLimit; i++)
+        {
+            bitmap.add(2 * i);
+            expected.add(2 * i);
+        }
+        assertEquals(Arrays.asList("ArrayContainer"), containers(bitmap));
+        assertEquals(arrayLimit, bitmap.cardinality());
+
+        bitmap.add(2 * arrayLimit);
+        expected.add(2 * arrayLimit);
+        assertEquals(Arrays.asList("BitmapContainer"), containers(bitmap));
+        assertEquals(arrayLimit + 1, bitmap.cardinality());
+        assertEquals(new ArrayList<>(expected), values(bitmap));
+
+        bitmap.remove(0);
+        expected.remove(0);
+        assertEquals(Arrays.asList("ArrayContainer"), containers(bitmap));
+        assertEquals(new ArrayList<>(expected), values(bitmap));
+        assertFalse(bitmap.contains(0));
+        assertTrue(bitmap.contains(2 * arrayLimit));
+    }
+
+    @Test
+    public void operationsNormalizeContainers()
+    {
+        IntBitmap first = range(0, 3000);
+        IntBitmap second = range(3000, 6000);
+
+        // объединение двух массивов больше 4096 чисел хранится битовой картой
+        IntBitmap union = first.or(second);
+        assertEquals(Arrays.asList("BitmapContainer"), containers(union));
+        assertEquals(6000, union.cardinality());
+
+        // пересечение и разность двух битовых карт меньше 4096 чисел хранятся массивом
+        IntBitmap other = range(5000, 10000);
+        assertEquals(Arrays.asList("ArrayContainer"), containers(union.and(other)));
+        assertEquals(1000, union.and(other).cardinality());
+        assertEquals(Arrays.asList("ArrayContainer"), containers(other.andNot(union)));
+        assertEquals(4000, other.andNot(union).cardinality());
+
+        // пустые контейнеры в результат не попадают
+        assertTrue(first.and(second).isEmpty());
+        assertEquals(0, containers(first.andNot(first)).size());
+
+        // исходные битовые карты не изменяются
+        assertEquals(3000, first.cardinality());
+        assertEquals(3000, second.cardinality());
+    }
+
+    @Test
+    public void operationsMatchTreeSet()
+    {
+        Random random = new Random(12);
+        List<TreeSet<Integer>> sets = Arrays.asList(
+                sparse(random, 500, 300000),
+                sparse(random, 20000, 200000),
+                dense(70000, 90000),
+                dense(0, 70000),
+                new TreeSet<>());
+
+        for (TreeSet<Integer> a : sets)
+        {
+            for (TreeSet<Integer> b : sets)
+            {
+                IntBitmap x = bitmap(a);
+                IntBitmap y = bitmap(b);
+
+                TreeSet<Integer> and = new TreeSet<>(a);
+                and.retainAll(b);
+                TreeSet<Integer> or = new TreeSet<>(a);
+                or.addAll(b);
+                TreeSet<Integer> andNot = new TreeSet<>(a);
+                andNot.removeAll(b);
+
+                assertEquals(new ArrayList<>(and), values(x.and(y)));
+                assertEquals(new ArrayList<>(or), values(x.or(y)));
+                assertEquals(new ArrayList<>(or), values(IntBitmap.or(Arrays.asList(x, y))));
+                assertEquals(new ArrayList<>(andNot), values(x.andNot(y)));
+                assertEquals(and.size(), x.and(y).cardinality());
+            }
+        }
+
+        Collection<IntBitmap> all = new ArrayList<>();
+        TreeSet<Integer> union = new TreeSet<>();
+        for (TreeSet<Integer> set : sets)
+        {
+            all.add(bitmap(set));
+            union.addAll(set);
+        }
+        assertEquals(new ArrayList<>(union), values(IntBitmap.or(all)));
+    }
+
+    @Test
+    public void addToAfterWithLimit()
+    {
+        TreeSet<Integer> expected = sparse(new Random(3), 3000, 200000);
+        expected.addAll(dense(65530, 65540));
+        expected.addAll(dense(131072, 131072 + 5000));
+        IntBitmap bitmap = bitmap(expected);
+
+        for (int after : new int[]{-1, 0, 65533, 65535, 65536, 100000, 131071, 131072 + 4000, 199999})
+        {
+            for (int limit : new int[]{1, 7, 5000, Integer.MAX_VALUE})
+            {
+                List<Integer> reference = new ArrayList<>();
+                for (Integer value : expected.tailSet(after, false))
+                {
+                    if (reference.size() == limit) break;
+                    reference.add(value);
+                }
+
+                List<Integer> values = new ArrayList<>();
+                assertEquals(reference.size(), bitmap.addTo(after, limit, values));
+                assertEquals(reference, values);
+            }
+        }
+
+        List<Integer> values = new ArrayList<>();
+        assertEquals(0, bitmap.addTo(Integer.MAX_VALUE, 10, values));
+        assertEquals(0, bitmap.addTo(expected.last(), 10, values));
+        assertTrue(values.isEmpty());
+
+        // добавление продолжает существующий список
+        values.add(-5);
+        bitmap.addTo(-1, 2, values);
+        assertEquals(Arrays.asList(-5, expected.first(), expected.higher(expected.first())), values);
+    }
+
+    @Test
+    public void forEachVisitsInOrder()
+    {
+        TreeSet<Integer> expected = sparse(new Random(5), 10000, 400000);
+        List<Integer> visited = new ArrayList<>();
+        bitmap(expected).forEach(visited::add);
+        assertEquals(new ArrayList<>(expected), visited);
+    }
+
+    private static IntBitmap range(int from, int to)
+    {
+        return bitmap(dense(from, to));
+    }
+
+    private static IntBitmap bitmap(Collection<Integer> values)
+    {
+        IntBitmap bitmap = new IntBitmap();
+        for (Integer value : values) bitmap.add(value);
+        return bitmap;
+    }
+
+    private static TreeSet<Integer> dense(int from, int to)
+    {
+        TreeSet<Integer> set = new TreeSet<>();
+        for (int i = from; i < to; i++) set.add(i);
+        return set;
+    }
+
+    private static TreeSet<Integer> sparse(Random random, int count, int bound)
+    {
+        TreeSet<Integer> set = new TreeSet<>();
+        for (int i = 0; i < count; i++) set.add(random.nextInt(bound));
+        return set;
+    }
+
+    private static List<Integer> values(IntBitmap bitmap)
+    {
+        List<Integer> values = new ArrayList<>();
+        bitmap.addTo(values);
+        return values;
+    }
+
+    /**
+     * @return имена классов контейнеров битовой карты в порядке ключей.
+     * */
+    private static List<String> containers(IntBitmap bitmap)
+    {
+        try
+        {
+            Field containersField = IntBitmap.class.getDeclaredField("containers");
+            Field sizeField = IntBitmap.class.getDeclaredField("size");
+            containersField.setAccessible(true);
+            sizeField.setAccessible(true);
+
+            Object[] containers = (Object[]) containersField.get(bitmap);
+            List<String> names = new ArrayList<>();
+            for (int i = 0; i < sizeField.getInt(bitmap); i++)
+            {
+                names.add(containers[i].getClass().getSimpleName());
+            }
+            return names;
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+}
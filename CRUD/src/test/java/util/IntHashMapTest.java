@@ -0,0 +1,111 @@
+package util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Тесты {@link IntHashMap}: замена значений, увеличение таблицы и удаление со сдвигом следующих элементов цепочки.
+ * Результаты сравниваются с {@link HashMap}.
+ * */
+public class IntHashMapTest
+{
+    @Test
+    public void putGetReplace()
+    {
+        IntHashMap<String> map = new IntHashMap<>();
+        assertNull(map.put(1, "a"));
+        assertNull(map.put(-1, "b"));
+        assertNull(map.put(0, "c"));
+        assertEquals("a", map.put(1, "d"));
+
+        assertEquals(3, map.size());
+        assertEquals("d", map.get(1));
+        assertEquals("b", map.get(-1));
+        assertEquals("c", map.get(0));
+        assertNull(map.get(2));
+        assertTrue(map.containsKey(0));
+        assertFalse(map.containsKey(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullValueIsRejected()
+    {
+        new IntHashMap<String>().put(1, null);
+    }
+
+    @Test
+    public void resizeKeepsAllEntries()
+    {
+        IntHashMap<Integer> map = new IntHashMap<>();
+        for (int i = -5000; i < 5000; i++)
+        {
+            map.put(i * 31, i);
+        }
+        assertEquals(10000, map.size());
+        for (int i = -5000; i < 5000; i++)
+        {
+            assertEquals(Integer.valueOf(i), map.get(i * 31));
+        }
+        assertNull(map.get(1));
+
+        Map<Integer, Integer> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(10000, visited.size());
+        assertEquals(Integer.valueOf(-5000), visited.get(-5000 * 31));
+    }
+
+    @Test
+    public void removeShiftsCollidingEntries()
+    {
+        // ключи небольшого диапазона в таблице размера 16-64 образуют длинные цепочки, поэтому удаление
+        // из середины цепочки проверяется для всех вариантов сдвига, в том числе через конец таблицы
+        Random random = new Random(7);
+        IntHashMap<Integer> map = new IntHashMap<>();
+        Map<Integer, Integer> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++)
+        {
+            int key = random.nextInt(48);
+            if (random.nextInt(3) == 0)
+            {
+                assertEquals(expected.remove(key), map.remove(key));
+            }
+            else
+            {
+                assertEquals(expected.put(key, i), map.put(key, i));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        for (int key = 0; key < 48; key++)
+        {
+            assertEquals(expected.get(key), map.get(key));
+        }
+    }
+
+    @Test
+    public void removeAndClear()
+    {
+        IntHashMap<String> map = new IntHashMap<>(100);
+        for (int i = 0; i < 100; i++) map.put(i, "v" + i);
+
+        assertEquals("v50", map.remove(50));
+        assertNull(map.remove(50));
+        assertNull(map.remove(1000));
+        assertEquals(99, map.size());
+        assertNull(map.get(50));
+        assertEquals("v51", map.get(51));
+
+        map.clear();
+        assertEquals(0, map.size());
+        assertNull(map.get(51));
+        map.put(51, "x");
+        assertEquals("x", map.get(51));
+    }
+}
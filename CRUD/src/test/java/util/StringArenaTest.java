@@ -0,0 +1,109 @@
+package util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Тесты {@link StringArena}: добавление, поиск и удаление строк, увеличение буфера и освобождение места,
+ * занятого удаленными строками.
+ * */
+public class StringArenaTest
+{
+    @Test
+    public void putFindGetRemove()
+    {
+        StringArena arena = new StringArena(4);
+        arena.put(0, "Pavel");
+        arena.put(1, "Чистов");
+        arena.put(7, "");
+
+        assertEquals(3, arena.size());
+        assertEquals(0, arena.find("Pavel"));
+        assertEquals(1, arena.find("Чистов"));
+        assertEquals(7, arena.find(""));
+        assertEquals(-1, arena.find("pavel"));
+        assertEquals("Чистов", arena.get(1));
+        assertNull(arena.get(2));
+        assertNull(arena.get(100));
+        assertNull(arena.get(-1));
+
+        arena.remove(0);
+        arena.remove(0);
+        assertEquals(2, arena.size());
+        assertEquals(-1, arena.find("Pavel"));
+        assertNull(arena.get(0));
+
+        // освобожденный идентификатор используется для другой строки
+        arena.put(0, "Ivan");
+        assertEquals(0, arena.find("Ivan"));
+        assertEquals("Ivan", arena.get(0));
+    }
+
+    @Test
+    public void bufferGrowsAndKeepsStrings()
+    {
+        StringArena arena = new StringArena(16);
+        int capacity = arena.capacity();
+        Map<Integer, String> expected = new HashMap<>();
+        for (int id = 0; id < 20000; id++)
+        {
+            String value = "Value" + id;
+            arena.put(id, value);
+            expected.put(id, value);
+        }
+
+        assertTrue(arena.capacity() > capacity);
+        assertEquals(expected.size(), arena.size());
+        for (Map.Entry<Integer, String> value : expected.entrySet())
+        {
+            assertEquals(value.getValue(), arena.get(value.getKey()));
+            assertEquals((int) value.getKey(), arena.find(value.getValue()));
+        }
+    }
+
+    @Test
+    public void removedSpaceIsCompacted()
+    {
+        StringArena arena = new StringArena(16);
+        StringBuilder padding = new StringBuilder();
+        for (int i = 0; i < 1000; i++) padding.append('x');
+
+        for (int id = 0; id < 3000; id++)
+        {
+            arena.put(id, id + padding.toString());
+        }
+        int capacity = arena.capacity();
+
+        // удаленные строки занимают больше 1 МБ и больше действующих строк
+        for (int id = 0; id < 3000; id++)
+        {
+            if (id % 10 != 0) arena.remove(id);
+        }
+
+        assertTrue(arena.capacity() < capacity);
+        assertEquals(300, arena.size());
+        for (int id = 0; id < 3000; id++)
+        {
+            String value = id + padding.toString();
+            if (id % 10 == 0)
+            {
+                assertEquals(value, arena.get(id));
+                assertEquals(id, arena.find(value));
+            }
+            else
+            {
+                assertNull(arena.get(id));
+                assertEquals(-1, arena.find(value));
+            }
+        }
+
+        arena.put(1, "after compaction");
+        assertEquals(1, arena.find("after compaction"));
+    }
+}
@@ -0,0 +1,129 @@
+package util;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Тесты {@link StringIndex}: поиск строк с одинаковыми хешами, удаление со сдвигом следующих элементов цепочки,
+ * увеличение таблицы и кодирование строк в UTF-8.
+ * */
+public class StringIndexTest
+{
+    private final Map<Integer, byte[]> strings = new HashMap<>();
+    private final StringIndex.Source source = (id, value) -> Arrays.equals(strings.get(id), value);
+
+    @Test
+    public void putGetRemove()
+    {
+        StringIndex index = new StringIndex(source, 4);
+        put(index, 0, "First");
+        put(index, 5, "Second");
+
+        assertEquals(2, index.size());
+        assertEquals(0, get(index, "First"));
+        assertEquals(5, get(index, "Second"));
+        assertEquals(-1, get(index, "Third"));
+
+        assertTrue(index.remove(0, hash("First")));
+        assertFalse(index.remove(0, hash("First")));
+        assertEquals(1, index.size());
+        assertEquals(-1, get(index, "First"));
+        assertEquals(5, get(index, "Second"));
+    }
+
+    @Test
+    public void equalHashesAreResolvedBySource()
+    {
+        StringIndex index = new StringIndex(source, 16);
+        // одинаковый хеш у всех строк: все они попадают в одну цепочку
+        int hash = 7;
+        for (int id = 0; id < 6; id++)
+        {
+            strings.put(id, StringIndex.encode("s" + id));
+            index.put(id, hash);
+        }
+        for (int id = 0; id < 6; id++)
+        {
+            assertEquals(id, index.get(StringIndex.encode("s" + id), hash));
+        }
+        assertEquals(-1, index.get(StringIndex.encode("s6"), hash));
+
+        // удаление из середины цепочки не делает следующие элементы недоступными
+        assertTrue(index.remove(2, hash));
+        strings.remove(2);
+        assertEquals(-1, index.get(StringIndex.encode("s2"), hash));
+        for (int id : new int[]{0, 1, 3, 4, 5})
+        {
+            assertEquals(id, index.get(StringIndex.encode("s" + id), hash));
+        }
+    }
+
+    @Test
+    public void randomChangesMatchHashMap()
+    {
+        StringIndex index = new StringIndex(source, 1);
+        Map<String, Integer> expected = new HashMap<>();
+        Random random = new Random(11);
+        int next = 0;
+        for (int i = 0; i < 50000; i++)
+        {
+            String value = "v" + random.nextInt(300);
+            Integer id = expected.get(value);
+            if (id == null)
+            {
+                put(index, next, value);
+                expected.put(value, next++);
+            }
+            else if (random.nextBoolean())
+            {
+                assertTrue(index.remove(id, hash(value)));
+                strings.remove(id);
+                expected.remove(value);
+            }
+            assertEquals(expected.size(), index.size());
+        }
+        for (int v = 0; v < 300; v++)
+        {
+            String value = "v" + v;
+            Integer id = expected.get(value);
+            assertEquals(id == null ? -1 : id, get(index, value));
+        }
+    }
+
+    @Test
+    public void encodeMatchesUtf8()
+    {
+        for (String value : new String[]{"", "Pavel", "1990-01-01", "Чистов",
+                "Renée", "😀"})
+        {
+            assertArrayEquals(value.getBytes(StandardCharsets.UTF_8), StringIndex.encode(value));
+        }
+        assertEquals(hash("Pavel"), StringIndex.hash("Pavel".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private void put(StringIndex index, int id, String value)
+    {
+        strings.put(id, StringIndex.encode(value));
+        index.put(id, hash(value));
+    }
+
+    private static int get(StringIndex index, String value)
+    {
+        return index.get(StringIndex.encode(value), hash(value));
+    }
+
+    private static int hash(String value)
+    {
+        return StringIndex.hash(StringIndex.encode(value));
+    }
+}
@@ -0,0 +1,109 @@
+package util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Тесты {@link TinyLfuCache}: допуск значения в основную часть кэша по частоте обращений, вытеснение
+ * при заполнении, устойчивость часто запрашиваемых значений к однократным обращениям и уменьшение
+ * счетчиков частоты.
+ * */
+public class TinyLfuCacheTest
+{
+    @Test
+    public void putGetRemove()
+    {
+        Cache<Integer, String> cache = new TinyLfuCache<>(10);
+        cache.put(1, "a");
+        cache.put(2, "b");
+        cache.put(1, "c");
+
+        assertEquals(2, cache.size());
+        assertEquals("c", cache.get(1));
+        assertEquals("b", cache.get(2));
+        assertNull(cache.get(3));
+
+        cache.remove(1);
+        cache.remove(3);
+        assertEquals(1, cache.size());
+        assertNull(cache.get(1));
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void admissionComparesFrequency()
+    {
+        // окно из одного значения и основная часть из 99 значений
+        Cache<Integer, Integer> cache = new TinyLfuCache<>(100);
+        for (int key = 0; key < 100; key++) cache.put(key, key);
+        assertEquals(100, cache.size());
+
+        // значение 99, вытесняемое из окна, не запрашивалось: оно не допускается в заполненную основную часть
+        cache.put(1000, 1000);
+        assertEquals(100, cache.size());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(99));
+
+        // значение 2000 запрашивалось чаще, чем вытесняемое значение 0, и допускается вместо него
+        for (int i = 0; i < 3; i++) assertNull(cache.get(2000));
+        cache.put(2000, 2000);
+        cache.put(3000, 3000);
+        assertEquals(100, cache.size());
+        assertEquals(3, cache.getEvictions());
+        assertEquals(Integer.valueOf(2000), cache.get(2000));
+        assertNull(cache.get(0));
+        assertNull(cache.get(1000));
+    }
+
+    @Test
+    public void frequentValuesSurviveScan()
+    {
+        Cache<Integer, Integer> cache = new TinyLfuCache<>(100);
+        for (int key = 0; key < 50; key++) cache.put(key, key);
+        for (int i = 0; i < 5; i++)
+        {
+            for (int key = 0; key < 50; key++) assertNotNull(cache.get(key));
+        }
+
+        // однократные обращения к 500 другим значениям
+        for (int key = 1000; key < 1500; key++)
+        {
+            if (cache.get(key) == null) cache.put(key, key);
+        }
+
+        assertTrue(cache.size() <= 100);
+        assertTrue(cache.getEvictions() >= 400);
+        for (int key = 0; key < 50; key++) assertNotNull(cache.get(key));
+    }
+
+    @Test
+    public void sizeIsBounded()
+    {
+        Cache<Integer, Integer> cache = new TinyLfuCache<>(64);
+        for (int key = 0; key < 10000; key++)
+        {
+            cache.get(key % 700);
+            cache.put(key % 700, key);
+            assertTrue(cache.size() <= 64);
+        }
+        assertTrue(cache.getEvictions() > 0);
+    }
+
+    @Test
+    public void sketchCountersSaturateAndAge()
+    {
+        TinyLfuCache.FrequencySketch sketch = new TinyLfuCache.FrequencySketch(16);
+        int hash = 0x12345678;
+        for (int i = 0; i < 20; i++) sketch.increment(hash);
+        assertEquals(15, sketch.frequency(hash));
+        assertEquals(0, sketch.frequency(0x7654321));
+
+        // после 10 * capacity увеличений счетчики уменьшаются вдвое
+        for (int i = 0; i < 200; i++) sketch.increment(i * 0x9E3779B9);
+        assertTrue(sketch.frequency(hash) <= 7);
+    }
+}
@@ -0,0 +1,223 @@
+package xml;
+
+import application.User;
+import application.UserQuery;
+import exceptions.XMLProcessException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import util.DateUtil;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Тесты {@link BirthDateIndex}: обход диапазона с включенными границами, пустые диапазоны, удаление последней ссылки
+ * на дату, а также проверка дат рождения при записи и приведение дат прежних форматов к yyyy-MM-dd при загрузке
+ * хранилища.
+ * */
+public class BirthDateIndexTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void rangeIncludesBothEnds()
+    {
+        BirthDateIndex index = index(10, 20, 30, 40);
+
+        assertEquals(Arrays.asList(20, 30), scan(index, 20, 30));
+        assertEquals(Arrays.asList(10, 20, 30, 40), scan(index, 10, 40));
+        assertEquals(Arrays.asList(10, 20, 30, 40), scan(index, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        assertEquals(Arrays.asList(20), scan(index, 20, 20));
+        assertEquals(Arrays.asList(20, 30), scan(index, 11, 39));
+        assertEquals(Arrays.asList(-5, 10), scan(index(-5, 10, 20), -10, 10));
+    }
+
+    @Test
+    public void emptyRangesVisitNothing()
+    {
+        BirthDateIndex index = index(10, 20, 30);
+
+        assertEquals(Collections.emptyList(), scan(index, 21, 29));
+        assertEquals(Collections.emptyList(), scan(index, 0, 9));
+        assertEquals(Collections.emptyList(), scan(index, 31, 100));
+        assertEquals(Collections.emptyList(), scan(index, 30, 10));
+        assertEquals(Collections.emptyList(), scan(new BirthDateIndex(), Integer.MIN_VALUE, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void removeDropsDayWithoutReferences()
+    {
+        BirthDateIndex index = index(10, 20, 30);
+        index.add(20, 2);
+        assertEquals(3, index.size());
+
+        index.remove(20);
+        index.remove(20);
+        assertEquals(Arrays.asList(10, 20, 30), scan(index, 10, 30));
+
+        // последняя ссылка: дата удаляется, соседние даты остаются
+        index.remove(20);
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList(10, 30), scan(index, 10, 30));
+        assertEquals(Collections.emptyList(), scan(index, 20, 20));
+
+        // отсутствующая дата не изменяет индекс
+        index.remove(20);
+        index.remove(25);
+        assertEquals(Arrays.asList(10, 30), scan(index, 0, 100));
+
+        index.remove(10);
+        index.remove(30);
+        assertEquals(0, index.size());
+        assertEquals(Collections.emptyList(), scan(index, 0, 100));
+    }
+
+    @Test
+    public void randomChangesMatchTreeMap()
+    {
+        Random random = new Random(29);
+        BirthDateIndex index = new BirthDateIndex();
+        TreeMap<Integer, Integer> expected = new TreeMap<>();
+        for (int i = 0; i < 20000; i++)
+        {
+            int day = random.nextInt(500) - 100;
+            if (random.nextInt(3) > 0)
+            {
+                index.add(day, 1);
+                expected.merge(day, 1, Integer::sum);
+            }
+            else
+            {
+                index.remove(day);
+                if (expected.containsKey(day) && expected.merge(day, -1, Integer::sum) == 0) expected.remove(day);
+            }
+        }
+        assertEquals(expected.size(), index.size());
+
+        for (int i = 0; i < 100; i++)
+        {
+            int from = random.nextInt(600) - 150;
+            int to = from + random.nextInt(200);
+            assertEquals(new ArrayList<>(expected.subMap(from, true, to, true).keySet()), scan(index, from, to));
+        }
+    }
+
+    @Test
+    public void invalidBirthDatesAreNotWritten() throws XMLProcessException
+    {
+        StorageHandler storage = open(new File(folder.getRoot(), "storage.xml").getPath());
+        try
+        {
+            Integer id = storage.create(new User("Pavel", "Chistov", "02.01.1990"));
+            assertEquals("1990-01-02", storage.read(id).getBirthDate());
+
+            for (String birthDate : new String[]{"2021-2-30", LocalDate.now().plusDays(1).toString()})
+            {
+                try
+                {
+                    storage.create(new User("Ivan", "Ivanov", birthDate));
+                    fail("Birth date accepted: " + birthDate);
+                }
+                catch (XMLProcessException e)
+                {
+                    assertEquals(XMLProcessException.XML_USER_DATA_EXCEPTION, e.getCode());
+                }
+                try
+                {
+                    storage.update(id, new User(null, null, birthDate));
+                    fail("Birth date accepted: " + birthDate);
+                }
+                catch (XMLProcessException e)
+                {
+                    assertEquals(XMLProcessException.XML_USER_DATA_EXCEPTION, e.getCode());
+                }
+            }
+            assertEquals(Arrays.asList(id), storage.read());
+            assertEquals("1990-01-02", storage.read(id).getBirthDate());
+        }
+        finally
+        {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void legacyDatesAreMigratedOnOpen() throws Exception
+    {
+        File xml = new File(folder.getRoot(), "storage.xml");
+        StorageHandler storage = open(xml.getPath());
+        Integer first = storage.create(new User("Pavel", "Chistov", "1990-01-02"));
+        Integer second = storage.create(new User("Ivan", "Ivanov", "1991-02-03"));
+        Integer third = storage.create(new User("Anna", "Petrova", "1992-03-04"));
+        long firstVersion = storage.readVersion(first);
+        long secondVersion = storage.readVersion(second);
+        long thirdVersion = storage.readVersion(third);
+        storage.close();
+
+        // даты в формате, который хранилище записывало до проверки дат
+        String content = new String(Files.readAllBytes(xml.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content.contains("1990-01-02") && content.contains("1991-02-03"));
+        content = content.replace("1990-01-02", "1990-1-2").replace("1991-02-03", "03.02.1991");
+        Files.write(xml.toPath(), content.getBytes(StandardCharsets.UTF_8));
+
+        storage = open(xml.getPath());
+        try
+        {
+            assertEquals("1990-01-02", storage.read(first).getBirthDate());
+            assertEquals("1991-02-03", storage.read(second).getBirthDate());
+            assertEquals("1992-03-04", storage.read(third).getBirthDate());
+            assertTrue(storage.readVersion(first) > thirdVersion);
+            assertTrue(storage.readVersion(second) > thirdVersion);
+            assertTrue(storage.readVersion(first) != storage.readVersion(second));
+            assertEquals(thirdVersion, storage.readVersion(third));
+            assertTrue(firstVersion < thirdVersion && secondVersion < thirdVersion);
+
+            // приведенные даты попадают в индекс дат рождения и находятся по значению
+            assertEquals(Arrays.asList(first, second), storage.read(new UserQuery().birthDateRange(
+                    DateUtil.toEpochDay("1990-01-02"), DateUtil.toEpochDay("1991-02-03"))));
+            assertEquals(Arrays.asList(second), storage.read(new User(null, null, "1991-02-03")));
+        }
+        finally
+        {
+            storage.close();
+        }
+
+        // приведенные даты записаны в XML файл
+        content = new String(Files.readAllBytes(xml.toPath()), StandardCharsets.UTF_8);
+        assertTrue(content.contains("1990-01-02") && content.contains("1991-02-03"));
+        assertTrue(!content.contains("1990-1-2") && !content.contains("03.02.1991"));
+    }
+
+    private static StorageHandler open(String path) throws XMLProcessException
+    {
+        return new XMLHandler(path, new StorageSettings());
+    }
+
+    private static BirthDateIndex index(int... days)
+    {
+        BirthDateIndex index = new BirthDateIndex();
+        for (int day : days) index.add(day, 1);
+        return index;
+    }
+
+    private static List<Integer> scan(BirthDateIndex index, int from, int to)
+    {
+        List<Integer> days = new ArrayList<>();
+        index.forEach(from, to, days::add);
+        return days;
+    }
+}
@@ -0,0 +1,134 @@
+package xml;
+
+import application.User;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+/**
+ * Тесты {@link CompositeIndex}: пользователи с одинаковым хешем сочетания, хеши с одинаковой начальной позицией
+ * в таблице и удаление со сдвигом следующих элементов цепочки, в том числе через конец таблицы.
+ * */
+public class CompositeIndexTest
+{
+    @Test
+    public void usersWithEqualHashAreFoundInOrder()
+    {
+        CompositeIndex index = new CompositeIndex(4);
+        int hash = CompositeIndex.hash(new User("Pavel", "Chistov", "1990-01-01"));
+        index.add(7, hash);
+        index.add(3, hash);
+        index.add(5, hash + 1);
+
+        assertEquals(3, index.size());
+        assertArrayEquals(new int[]{3, 7}, index.find(hash));
+        assertArrayEquals(new int[]{5}, index.find(hash + 1));
+        assertArrayEquals(new int[0], index.find(hash + 2));
+
+        index.remove(7, hash);
+        index.remove(7, hash);
+        assertEquals(2, index.size());
+        assertArrayEquals(new int[]{3}, index.find(hash));
+    }
+
+    @Test
+    public void collidingHashesAreSeparated()
+    {
+        // таблица из 16 позиций: хеши 5, 21 и 37 начинают поиск с одной позиции
+        CompositeIndex index = new CompositeIndex(4);
+        index.add(1, 5);
+        index.add(2, 21);
+        index.add(3, 37);
+        index.add(4, 5);
+
+        assertArrayEquals(new int[]{1, 4}, index.find(5));
+        assertArrayEquals(new int[]{2}, index.find(21));
+        assertArrayEquals(new int[]{3}, index.find(37));
+        assertArrayEquals(new int[0], index.find(53));
+    }
+
+    @Test
+    public void removeShiftsChainAcrossTableEnd()
+    {
+        // цепочка начинается в последней позиции таблицы и продолжается с ее начала
+        CompositeIndex index = new CompositeIndex(4);
+        index.add(1, 15);
+        index.add(2, 31);
+        index.add(3, 0);
+        index.add(4, 47);
+
+        index.remove(1, 15);
+        assertArrayEquals(new int[0], index.find(15));
+        assertArrayEquals(new int[]{2}, index.find(31));
+        assertArrayEquals(new int[]{3}, index.find(0));
+        assertArrayEquals(new int[]{4}, index.find(47));
+
+        index.remove(2, 31);
+        assertArrayEquals(new int[]{3}, index.find(0));
+        assertArrayEquals(new int[]{4}, index.find(47));
+    }
+
+    @Test
+    public void randomChangesMatchReference()
+    {
+        // немного различных хешей и пользователей: длинные цепочки и частые повторы хешей
+        Random random = new Random(23);
+        CompositeIndex index = new CompositeIndex(1);
+        Map<Integer, Integer> hashes = new HashMap<>();
+        for (int i = 0; i < 100000; i++)
+        {
+            int userId = random.nextInt(200);
+            Integer hash = hashes.get(userId);
+            if (hash != null)
+            {
+                index.remove(userId, hash);
+                hashes.remove(userId);
+            }
+            else
+            {
+                hash = random.nextInt(64) * 32 + random.nextInt(3);
+                index.add(userId, hash);
+                hashes.put(userId, hash);
+            }
+            assertEquals(hashes.size(), index.size());
+        }
+
+        for (int hash : new TreeSet<>(hashes.values()))
+        {
+            List<Integer> expected = new ArrayList<>();
+            for (Map.Entry<Integer, Integer> user : hashes.entrySet())
+            {
+                if (user.getValue() == hash) expected.add(user.getKey());
+            }
+            expected.sort(null);
+
+            List<Integer> found = new ArrayList<>();
+            for (int userId : index.find(hash)) found.add(userId);
+            assertEquals(expected, found);
+        }
+    }
+
+    @Test
+    public void hashCombinesAllFields()
+    {
+        User user = new User("Pavel", "Chistov", "1990-01-01");
+        int hash = CompositeIndex.hash(user);
+        assertEquals(hash, CompositeIndex.hash(new User("Pavel", "Chistov", "1990-01-01")));
+
+        int combined = CompositeIndex.combine(CompositeIndex.combine(CompositeIndex.combine(0, "Pavel"), "Chistov"),
+                "1990-01-01");
+        assertEquals(hash, CompositeIndex.mix(combined));
+
+        assertNotEquals(hash, CompositeIndex.hash(new User("Chistov", "Pavel", "1990-01-01")));
+        assertNotEquals(hash, CompositeIndex.hash(new User("Pavel", "Chistov", "1990-01-02")));
+    }
+}
@@ -0,0 +1,155 @@
+package xml;
+
+import org.junit.Test;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Тесты {@link NameIndex}: деление блока при добавлении 129-го значения, удаление опустевших блоков
+ * и обход значений с префиксом, захватывающий несколько блоков. Результаты сравниваются с {@link TreeSet}.
+ * */
+public class NameIndexTest
+{
+    private static final int blockCapacity = 128;
+
+    @Test
+    public void blockSplitsAfterCapacity()
+    {
+        NameIndex index = new NameIndex();
+        for (int i = 0; i < blockCapacity; i++) index.add(name(i));
+        assertEquals(1, blocks(index));
+        assertEquals(blockCapacity, index.size());
+
+        index.add(name(blockCapacity));
+        assertEquals(2, blocks(index));
+        assertEquals(blockCapacity + 1, index.size());
+        assertEquals(names(0, blockCapacity + 1), scan(index, ""));
+
+        // значение, меньшее первого значения второго блока, добавляется в первый блок
+        index.add(name(10) + "a");
+        assertEquals(2, blocks(index));
+        assertEquals(Arrays.asList(name(10), name(10) + "a"), scan(index, name(10)));
+    }
+
+    @Test
+    public void emptiedBlocksAreRemoved()
+    {
+        NameIndex index = new NameIndex(names(0, 3 * blockCapacity));
+        assertEquals(3, blocks(index));
+
+        // значения среднего блока удаляются полностью, блок удаляется из индекса
+        for (int i = blockCapacity; i < 2 * blockCapacity; i++) index.remove(name(i));
+        assertEquals(2, blocks(index));
+        assertEquals(2 * blockCapacity, index.size());
+
+        List<String> expected = new ArrayList<>(names(0, blockCapacity));
+        expected.addAll(names(2 * blockCapacity, 3 * blockCapacity));
+        assertEquals(expected, scan(index, ""));
+
+        // значения между оставшимися блоками снова добавляются
+        index.add(name(blockCapacity));
+        assertEquals(name(blockCapacity), scan(index, name(blockCapacity)).get(0));
+
+        for (String value : names(0, 3 * blockCapacity)) index.remove(value);
+        assertEquals(0, blocks(index));
+        assertEquals(0, index.size());
+        assertEquals(Collections.emptyList(), scan(index, ""));
+    }
+
+    @Test
+    public void prefixScanAcrossBlocksMatchesTreeSet()
+    {
+        Random random = new Random(17);
+        TreeSet<String> expected = new TreeSet<>();
+        NameIndex index = new NameIndex();
+        for (int i = 0; i < 5000; i++)
+        {
+            String value = randomName(random);
+            expected.add(value);
+            index.add(value);
+            if (random.nextInt(4) == 0)
+            {
+                String removed = randomName(random);
+                expected.remove(removed);
+                index.remove(removed);
+            }
+        }
+        assertEquals(expected.size(), index.size());
+
+        for (String prefix : new String[]{"", "A", "Ab", "Abc", "B", "Ca", "Z", "0", "Abcabc", "Cc"})
+        {
+            List<String> values = new ArrayList<>();
+            for (String value : expected.tailSet(prefix))
+            {
+                if (!value.startsWith(prefix)) break;
+                values.add(value);
+            }
+            assertEquals(values, scan(index, prefix));
+        }
+        // префикс длиннее одного блока значений
+        assertEquals(expected.subSet("A", "B").size(), scan(index, "A").size());
+    }
+
+    @Test
+    public void bulkConstructorSkipsDuplicatesAndOrdersByUtf8()
+    {
+        NameIndex index = new NameIndex(Arrays.asList("Zed", "Ärger", "Adam", "Zed", "Ärger", "Ölaf", "adam"));
+        assertEquals(5, index.size());
+        // порядок байтов UTF-8: латинские буквы ASCII раньше двухбайтовых символов
+        assertEquals(Arrays.asList("Adam", "Zed", "adam", "Ärger", "Ölaf"), scan(index, ""));
+        assertEquals(Arrays.asList("Ärger"), scan(index, "Ä"));
+
+        index.add("Adam");
+        index.remove("Nobody");
+        assertEquals(5, index.size());
+    }
+
+    private static String name(int i)
+    {
+        return String.format("Name%05d", i);
+    }
+
+    private static List<String> names(int from, int to)
+    {
+        List<String> names = new ArrayList<>();
+        for (int i = from; i < to; i++) names.add(name(i));
+        return names;
+    }
+
+    private static String randomName(Random random)
+    {
+        StringBuilder name = new StringBuilder();
+        int length = 1 + random.nextInt(8);
+        for (int i = 0; i < length; i++) name.append((char) ('A' + random.nextInt(3)));
+        return name.toString();
+    }
+
+    private static List<String> scan(NameIndex index, String prefix)
+    {
+        List<String> values = new ArrayList<>();
+        index.forEach(prefix, values::add);
+        return values;
+    }
+
+    private static int blocks(NameIndex index)
+    {
+        try
+        {
+            Field field = NameIndex.class.getDeclaredField("blocks");
+            field.setAccessible(true);
+            return ((Object[]) field.get(index)).length;
+        }
+        catch (ReflectiveOperationException e)
+        {
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package xml;
+
+import application.User;
+import exceptions.XMLProcessException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.File;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Нагрузочный тест хранилища: несколько потоков одновременно добавляют, изменяют, удаляют и читают пользователей,
+ * после чего содержимое хранилища сравнивается с ожидаемым - сначала в открытом хранилище, затем после его
+ * закрытия и повторного открытия файла. Каждый поток изменяет только добавленных им пользователей, поэтому
+ * итоговое содержимое не зависит от порядка выполнения потоков, а читать поток может любого пользователя.
+ * <p>Тест выполняется для каждого способа хранения {@link StorageEngine} с групповой записью файла,
+ * с журналом упреждающей записи и с очередью изменений (через асинхронные методы).</p>
+ * */
+@RunWith(Parameterized.class)
+public class StorageHandlerStressTest
+{
+    private static final int threads = 8;
+    private static final int operations = 300;
+    private static final int names = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final StorageEngine engine;
+    private final String mode;
+
+    public StorageHandlerStressTest(StorageEngine inEngine, String inMode)
+    {
+        this.engine = inEngine;
+        this.mode = inMode;
+    }
+
+    @Parameterized.Parameters(name = "{0} {1}")
+    public static Collection<Object[]> parameters()
+    {
+        List<Object[]> parameters = new ArrayList<>();
+        for (StorageEngine engine : StorageEngine.values())
+        {
+            for (String mode : Arrays.asList("group", "wal", "queue"))
+            {
+                parameters.add(new Object[]{engine, mode});
+            }
+        }
+        return parameters;
+    }
+
+    @Test
+    public void concurrentChangesSurviveReopen() throws Exception
+    {
+        String path = new File(folder.getRoot(), "storage.xml").getPath();
+        Map<Integer, User> expected = new ConcurrentHashMap<>();
+
+        StorageHandler storage = open(path);
+        try
+        {
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++)
+            {
+                long seed = t;
+                futures.add(executor.submit(() -> {
+                    work(storage, expected, new Random(seed));
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) future.get();
+            executor.shutdown();
+
+            check(storage, expected);
+        }
+        finally
+        {
+            storage.close();
+        }
+
+        StorageHandler reopened = open(path);
+        try
+        {
+            check(reopened, expected);
+        }
+        finally
+        {
+            reopened.close();
+        }
+    }
+
+    private void work(StorageHandler storage, Map<Integer, User> expected, Random random) throws Exception
+    {
+        List<Integer> own = new ArrayList<>();
+        for (int i = 0; i < operations; i++)
+        {
+            int operation = random.nextInt(100);
+            if (own.isEmpty() || operation < 40)
+            {
+                User user = user(random);
+                Integer id = isQueue() ? storage.createAsync(user).get() : storage.create(user);
+                own.add(id);
+                expected.put(id, user);
+            }
+            else if (operation < 65)
+            {
+                Integer id = own.get(random.nextInt(own.size()));
+                User change = random.nextBoolean() ? new User(firstName(random), null, null) :
+                        new User(null, secondName(random), birthDate(random));
+                User updated = isQueue() ? storage.updateAsync(id, change, null).get() : storage.update(id, change);
+                User old = expected.get(id);
+                User merged = new User(
+                        change.getFirstName() != null ? change.getFirstName() : old.getFirstName(),
+                        change.getSecondName() != null ? change.getSecondName() : old.getSecondName(),
+                        change.getBirthDate() != null ? change.getBirthDate() : old.getBirthDate());
+                assertEquals(merged.toString(), updated.toString());
+                expected.put(id, merged);
+            }
+            else if (operation < 80)
+            {
+                // идентификатор удаленного пользователя может сразу получить пользователь другого потока,
+                // поэтому ожидаемый пользователь удаляется до удаления из хранилища
+                Integer id = own.remove(random.nextInt(own.size()));
+                expected.remove(id);
+                if (isQueue()) storage.deleteAsync(id).get();
+                else storage.delete(id);
+            }
+            else if (operation < 90)
+            {
+                Integer id = own.get(random.nextInt(own.size()));
+                assertEquals(expected.get(id).toString(), storage.read(id).toString());
+            }
+            else
+            {
+                // пользователь другого потока может быть удален в любой момент
+                List<Integer> all = storage.read();
+                if (all.isEmpty()) continue;
+                try
+                {
+                    storage.read(all.get(random.nextInt(all.size())));
+                }
+                catch (XMLProcessException e)
+                {
+                    assertEquals(XMLProcessException.XML_USER_SEARCH_EXCEPTION, e.getCode());
+                }
+            }
+        }
+    }
+
+    private static void check(StorageHandler storage, Map<Integer, User> expected) throws XMLProcessException
+    {
+        List<Integer> ids = storage.read();
+        assertEquals(expected.size(), ids.size());
+        assertEquals(expected.keySet(), new HashSet<>(ids));
+        for (Map.Entry<Integer, User> user : expected.entrySet())
+        {
+            assertEquals(user.getValue().toString(), storage.read(user.getKey()).toString());
+        }
+
+        if (expected.isEmpty()) return;
+        User probe = expected.values().iterator().next();
+        List<Integer> found = storage.read(new User(probe.getFirstName(), probe.getSecondName(), probe.getBirthDate()));
+        assertTrue(found.containsAll(matching(expected, probe)));
+        assertEquals(matching(expected, probe).size(), found.size());
+    }
+
+    private static List<Integer> matching(Map<Integer, User> expected, User probe)
+    {
+        List<Integer> ids = new ArrayList<>();
+        for (Map.Entry<Integer, User> user : expected.entrySet())
+        {
+            if (user.getValue().toString().equals(probe.toString())) ids.add(user.getKey());
+        }
+        return ids;
+    }
+
+    private StorageHandler open(String path) throws XMLProcessException
+    {
+        StorageSettings settings = new StorageSettings();
+        settings.setFlushPolicy(FlushPolicy.group);
+        settings.setFlushWindow(5);
+        settings.setWalEnabled("wal".equals(mode));
+        if (isQueue())
+        {
+            settings.setFlushPolicy(FlushPolicy.interval);
+            settings.setQueueCapacity(1024);
+            settings.setQueueBatchSize(64);
+        }
+
+        switch (engine)
+        {
+            case columnar:
+                return new ColumnarHandler(path, settings);
+            case mapped:
+                return new MappedHandler(path, settings);
+            default:
+                return new XMLHandler(path, settings);
+        }
+    }
+
+    private boolean isQueue()
+    {
+        return "queue".equals(mode);
+    }
+
+    private static User user(Random random)
+    {
+        return new User(firstName(random), secondName(random), birthDate(random));
+    }
+
+    private static String firstName(Random random)
+    {
+        return "First" + random.nextInt(names);
+    }
+
+    private static String secondName(Random random)
+    {
+        return "Second" + random.nextInt(names);
+    }
+
+    private static String birthDate(Random random)
+    {
+        return LocalDate.of(1980, 1, 1).plusDays(random.nextInt(names)).toString();
+    }
+}
@@ -0,0 +1,136 @@
+package xml;
+
+import application.User;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Тесты {@link TrigramIndex}: значения на расстоянии Левенштейна 0, 1 и 2, допустимое количество опечаток
+ * для коротких строк, ограничение количества проверяемых кандидатов (5000) и поиск строки, которая удлиняется
+ * при приведении к нижнему регистру.
+ * */
+public class TrigramIndexTest
+{
+    private static final int maxCandidates = 5000;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void matchesAreOrderedByDistance()
+    {
+        TrigramIndex index = index("Chistov", "Chystov", "Chistova", "Cistov", "Chystova", "Hristov", "Petrov");
+
+        assertEquals(Arrays.asList("Chistov:0", "Chistova:1", "Chystov:1", "Cistov:1", "Chystova:2", "Hristov:2"),
+                matches(index.search("Chistov")));
+        // регистр и пробелы по краям не учитываются
+        assertEquals(matches(index.search("Chistov")), matches(index.search("  cHISTOV ")));
+        assertEquals(Arrays.asList("Petrov:0"), matches(index.search("petrov")));
+        assertEquals(Arrays.asList(), matches(index.search("Ivanov")));
+    }
+
+    @Test
+    public void shortQueriesAllowFewerTypos()
+    {
+        assertEquals(0, TrigramIndex.maxDistance(2));
+        assertEquals(1, TrigramIndex.maxDistance(3));
+        assertEquals(1, TrigramIndex.maxDistance(5));
+        assertEquals(2, TrigramIndex.maxDistance(6));
+
+        TrigramIndex index = index("Al", "Ali", "Ak", "Anna", "Anya", "Ann", "Ivan");
+        assertEquals(Arrays.asList("Al:0"), matches(index.search("al")));
+        assertEquals(Arrays.asList("Anna:0", "Ann:1", "Anya:1"), matches(index.search("Anna")));
+    }
+
+    @Test
+    public void lowerCaseLengthDefinesTypoLimit() throws Exception
+    {
+        // "İv" в нижнем регистре - три символа (i, точка сверху, v): допускается одна опечатка, хотя в запросе два символа
+        TrigramIndex index = index("Iv", "Ivan");
+        assertEquals(Arrays.asList("Iv:1"), matches(index.search("İv")));
+
+        // хранилище создает списки пользователей по расстояниям найденных значений, а не по длине запроса
+        StorageHandler storage = new XMLHandler(new File(folder.getRoot(), "storage.xml").getPath(),
+                new StorageSettings());
+        try
+        {
+            Integer id = storage.create(new User("Iv", "Petrov", "1990-01-01"));
+            storage.create(new User("Ivan", "Sidorov", "1991-02-03"));
+            assertEquals(Arrays.asList(id), storage.search("İv", 10));
+        }
+        finally
+        {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void removedValuesAreNotFound()
+    {
+        TrigramIndex index = index("Chistov", "Chystov", "Cistov");
+        index.remove("Chystov");
+        index.remove("Unknown");
+        assertEquals(2, index.size());
+        assertEquals(Arrays.asList("Chistov:0", "Cistov:1"), matches(index.search("Chistov")));
+
+        // идентификатор удаленного значения используется повторно
+        index.add("Chastov");
+        index.add("Chastov");
+        assertEquals(3, index.size());
+        assertEquals(Arrays.asList("Chistov:0", "Chastov:1", "Cistov:1"), matches(index.search("Chistov")));
+    }
+
+    @Test
+    public void candidatesAreLimited()
+    {
+        // значения из искомой строки и двух дописанных символов: 8 из 9 триграмм общие, расстояние 2
+        String query = "abcdefgh";
+
+        TrigramIndex below = new TrigramIndex();
+        below.add(query);
+        below.add("abcdefgx");
+        for (int i = 0; i < maxCandidates - 10; i++) below.add(query + suffix(i));
+        List<TrigramIndex.Match> all = below.search(query);
+        assertEquals(maxCandidates - 8, all.size());
+        assertEquals("abcdefgh:0", matches(all).get(0));
+        assertEquals("abcdefgx:1", matches(all).get(1));
+
+        // кандидатов с одинаковым количеством общих триграмм больше 5000: проверяются только кандидаты
+        // с большим количеством общих триграмм
+        TrigramIndex above = new TrigramIndex();
+        above.add(query);
+        above.add("abcdefgx");
+        for (int i = 0; i < maxCandidates + 1000; i++) above.add(query + suffix(i));
+        assertEquals(Arrays.asList("abcdefgh:0"), matches(above.search(query)));
+        assertTrue(above.size() > maxCandidates);
+    }
+
+    private static String suffix(int i)
+    {
+        // символы без регистра, поэтому значения остаются различными после приведения к нижнему регистру
+        return new String(new char[]{(char) (0x4E00 + i / 100), (char) (0x4E00 + i % 100)});
+    }
+
+    private static TrigramIndex index(String... values)
+    {
+        TrigramIndex index = new TrigramIndex();
+        for (String value : values) index.add(value);
+        return index;
+    }
+
+    private static List<String> matches(List<TrigramIndex.Match> matches)
+    {
+        List<String> values = new ArrayList<>();
+        for (TrigramIndex.Match match : matches) values.add(match.getValue() + ":" + match.getDistance());
+        return values;
+    }
+}
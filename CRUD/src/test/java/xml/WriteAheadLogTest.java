@@ -0,0 +1,205 @@
+package xml;
+
+import application.User;
+import exceptions.XMLProcessException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Тесты {@link WriteAheadLog}: запись и применение записей со служебными символами в значениях, пропуск прерванной
+ * последней записи, отказ запуска хранилища при поврежденной записи в середине журнала и повторное применение
+ * журнала к XML файлу, уже содержащему часть его записей.
+ * */
+public class WriteAheadLogTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordsRoundTripWithEscapedValues() throws Exception
+    {
+        String path = new File(folder.getRoot(), "storage.xml.wal").getPath();
+        WriteAheadLog wal = new WriteAheadLog(path);
+        wal.put(1, new User("Pa\tvel", "Chi\nstov", "C:\\dir\\"), 3);
+        wal.put(2, new User("=Anna", "\\t", null), 4);
+        wal.delete(1);
+        wal.put(1, new User("Ivan", "", "1990-01-02"), 5);
+        wal.sync();
+        wal.close();
+
+        WriteAheadLog reopened = new WriteAheadLog(path);
+        List<String> records = new ArrayList<>();
+        assertEquals(4, reopened.replay(recorder(records)));
+        reopened.close();
+
+        assertEquals(Arrays.asList(
+                "put 1 [Pa\tvel|Chi\nstov|C:\\dir\\] 3",
+                "put 2 [=Anna|\\t|null] 4",
+                "delete 1",
+                "put 1 [Ivan||1990-01-02] 5"), records);
+    }
+
+    @Test
+    public void incompleteLastRecordIsSkipped() throws Exception
+    {
+        String path = new File(folder.getRoot(), "storage.xml.wal").getPath();
+        WriteAheadLog wal = new WriteAheadLog(path);
+        wal.put(1, new User("Pavel", "Chistov", "1990-01-01"), 1);
+        wal.delete(2);
+        wal.close();
+        // запись последней строки прервана до перевода строки
+        Files.write(new File(path).toPath(), "P\t3\t=Ivan\t=Iva".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        WriteAheadLog reopened = new WriteAheadLog(path);
+        List<String> records = new ArrayList<>();
+        assertEquals(2, reopened.replay(recorder(records)));
+        reopened.close();
+
+        assertEquals(Arrays.asList("put 1 [Pavel|Chistov|1990-01-01] 1", "delete 2"), records);
+    }
+
+    @Test
+    public void brokenRecordStopsOpenAndKeepsLog() throws Exception
+    {
+        // запись без части полей и запись добавления без версии
+        String[] broken = {"P\t3\t=Broken", "P\t3\t=Anna\t=Petrova\t=1992-03-04"};
+        for (StorageEngine engine : StorageEngine.values())
+        {
+            for (int i = 0; i < broken.length; i++)
+            {
+                File directory = folder.newFolder(engine.name() + i);
+                String path = new File(directory, "storage.xml").getPath();
+                StorageHandler storage = open(engine, path);
+                storage.create(new User("Pavel", "Chistov", "1990-01-01"));
+                storage.close();
+
+                File log = new File(path + ".wal");
+                byte[] content = ("P\t2\t=Ivan\t=Ivanov\t=1991-02-03\t7\n" +
+                        broken[i] + "\n" +
+                        "D\t2\n").getBytes(StandardCharsets.UTF_8);
+                Files.write(log.toPath(), content);
+
+                try
+                {
+                    open(engine, path);
+                    fail("Storage opened with a broken write-ahead log record: " + engine + " " + broken[i]);
+                }
+                catch (XMLProcessException e)
+                {
+                    assertEquals(XMLProcessException.XML_LOG_EXCEPTION, e.getCode());
+                }
+                assertArrayEquals(content, Files.readAllBytes(log.toPath()));
+            }
+        }
+    }
+
+    @Test
+    public void replayOntoSnapshotWithAppliedRecords() throws Exception
+    {
+        File xml = new File(folder.getRoot(), "storage.xml");
+        File log = new File(xml.getPath() + ".wal");
+
+        // изменения до первого XML файла
+        StorageHandler storage = open(StorageEngine.xml, xml.getPath());
+        Integer first = storage.create(new User("Pavel", "Chistov", "1990-01-01"));
+        Integer second = storage.create(new User("Ivan", "Ivanov", "1991-02-03"));
+        storage.update(first, new User("Petr", null, null));
+        byte[] firstLog = Files.readAllBytes(log.toPath());
+        storage.close();
+        byte[] firstSnapshot = Files.readAllBytes(xml.toPath());
+
+        // изменения после первого XML файла
+        storage = open(StorageEngine.xml, xml.getPath());
+        storage.delete(second);
+        Integer third = storage.create(new User("Anna", "Petrova", "1992-03-04"));
+        storage.update(first, new User(null, "Sidorov", null));
+        byte[] secondLog = Files.readAllBytes(log.toPath());
+        Map<Integer, String> expected = state(storage);
+        storage.close();
+        byte[] secondSnapshot = Files.readAllBytes(xml.toPath());
+        assertEquals(Arrays.asList(first, third), new ArrayList<>(expected.keySet()));
+
+        byte[] allLog = new byte[firstLog.length + secondLog.length];
+        System.arraycopy(firstLog, 0, allLog, 0, firstLog.length);
+        System.arraycopy(secondLog, 0, allLog, firstLog.length, secondLog.length);
+
+        // XML файл содержит записи журнала полностью, частично или не содержит их
+        for (byte[][] files : new byte[][][]{{secondSnapshot, secondLog}, {secondSnapshot, allLog},
+                {firstSnapshot, allLog}, {firstSnapshot, secondLog}})
+        {
+            Files.write(xml.toPath(), files[0]);
+            Files.write(log.toPath(), files[1]);
+            StorageHandler recovered = open(StorageEngine.xml, xml.getPath());
+            assertEquals(expected, state(recovered));
+            // новая версия больше версий из журнала
+            Integer created = recovered.create(new User("New", "User", "1993-04-05"));
+            for (Integer id : expected.keySet())
+            {
+                assertTrue(recovered.readVersion(created) > recovered.readVersion(id));
+            }
+            recovered.close();
+            assertEquals(0, log.length());
+        }
+    }
+
+    private static Map<Integer, String> state(StorageHandler storage) throws XMLProcessException
+    {
+        Map<Integer, String> users = new TreeMap<>();
+        for (Integer id : storage.read())
+        {
+            users.put(id, storage.read(id).toString() + " " + storage.readVersion(id));
+        }
+        return users;
+    }
+
+    private static StorageHandler open(StorageEngine engine, String path) throws XMLProcessException
+    {
+        StorageSettings settings = new StorageSettings();
+        settings.setWalEnabled(true);
+        switch (engine)
+        {
+            case columnar:
+                return new ColumnarHandler(path, settings);
+            case mapped:
+                return new MappedHandler(path, settings);
+            default:
+                return new XMLHandler(path, settings);
+        }
+    }
+
+    private static WriteAheadLog.Replayer recorder(List<String> records)
+    {
+        return new WriteAheadLog.Replayer()
+        {
+            @Override
+            public void put(int id, User user, long version)
+            {
+                records.add("put " + id + " [" + user.getFirstName() + "|" + user.getSecondName() + "|" +
+                        user.getBirthDate() + "] " + version);
+            }
+
+            @Override
+            public void delete(int id)
+            {
+                records.add("delete " + id);
+            }
+        };
+    }
+}